@@ -1,13 +1,17 @@
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.Random;
 
 import matrix.Matrix;
+import matrix.MatrixWriter;
+import matrix.ProductVerifier;
 import complex_numbers.ComplexNumber;
+import decomposition.OneQubit;
 import decomposition.TwoQubit;
 
 
 public class Main {
 
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
 		Matrix a = new Matrix(new ComplexNumber[][] {
 				{new ComplexNumber(0.127774690458, 0.628226236624), new ComplexNumber(-0.284765147979, 0.174667496593), new ComplexNumber(0.16219383748, -0.590367257527), new ComplexNumber(0.315586101297, -0.0545029652155)},
 				{new ComplexNumber(-0.568506183644, -0.1684967195), new ComplexNumber(-0.0455575166338, -0.347446440038), new ComplexNumber(-0.511944142827, -0.436709206973), new ComplexNumber(0.121322978658, -0.241027087023)},
@@ -35,7 +39,185 @@ public class Main {
 
 
 		
-		System.out.println(Arrays.toString(TwoQubit.SU4(a)));
+		MatrixWriter out = new MatrixWriter(System.out);
+		out.angles(TwoQubit.SU4(a));
+		out.flush();
+		
+		if (!checkSU4() | !checkProductVerifier() | !checkDeterminant())
+			System.exit(1);
+	}
+	
+	/**
+	 * Runs common gates through SU4, the angles must be finite and give the gate back up to a global phase <br />
+	 * SU4 of all gates at once must give the same angles, most of the gates have repeated eigenvalues of M^2
+	 */
+	private static boolean checkSU4() {
+		Matrix u = OneQubit.YZYMatrix(0.4, 1.3, 2.2);
+		String[] names = {"CNOT", "SWAP", "identity", "RY(0.3) kron RZ(1.1)", "iSWAP", "U kron U", "(Z kron RY(pi/4)) * CNOT * (X kron I)"};
+		Matrix[] gates = {
+				Matrix.CNOT(),
+				new Matrix(4, new double[] {1, 0, 0, 0,  0, 0, 1, 0,  0, 1, 0, 0,  0, 0, 0, 1}, new double[16]),
+				new Matrix(4, new double[] {1, 0, 0, 0,  0, 1, 0, 0,  0, 0, 1, 0,  0, 0, 0, 1}, new double[16]),
+				Matrix.kron(OneQubit.RY(0.3), OneQubit.RZ(1.1)),
+				new Matrix(4, new double[] {1, 0, 0, 0,  0, 0, 0, 0,  0, 0, 0, 0,  0, 0, 0, 1},
+						new double[] {0, 0, 0, 0,  0, 0, 1, 0,  0, 1, 0, 0,  0, 0, 0, 0}),
+				Matrix.kron(u, u),
+				Matrix.mul(Matrix.kron(Matrix.PAULIZ(), OneQubit.RY(Math.PI/4)), Matrix.CNOT(), Matrix.kron(Matrix.PAULIX(), Matrix.Identity2x2()))
+		};
+		
+		boolean ok = true;
+		double[][] batch = TwoQubit.SU4(gates);
+		for (int g = 0; g < gates.length; g++) {
+			double[] angles = TwoQubit.SU4(gates[g]);
+			boolean finite = true;
+			for (double angle : angles)
+				finite &= !Double.isNaN(angle) && !Double.isInfinite(angle);
+			boolean rebuilt = finite && equalsUpToPhase(gates[g], TwoQubit.SU4Matrix(angles));
+			System.out.println("SU4 " + names[g] + ": " + (rebuilt ? "ok" : finite ? "wrong product" : "not finite"));
+			ok &= rebuilt;
+			
+			boolean same = true;
+			for (int i = 0; i < angles.length; i++)
+				same &= Math.abs(angles[i] - batch[g][i]) <= 1.0E-9;
+			System.out.println("SU4 batch " + names[g] + ": " + (same ? "ok" : "differs"));
+			ok &= same;
+		}
+		return ok;
+	}
+	
+	/**
+	 * Matrix.determinant must keep the old semantics: a pivot below 1e-10 before the last column
+	 * gives 0, a tiny last pivot gives a tiny determinant
+	 */
+	private static boolean checkDeterminant() {
+		String[] names = {"tiny last pivot", "1e-4 * identity", "tiny first pivot"};
+		Matrix[] matrices = {
+				new Matrix(3, new double[] {1, 0, 0,  0, 1, 0,  0, 0, 1.0E-12}, new double[9]),
+				new Matrix(3, new double[] {1.0E-4, 0, 0,  0, 1.0E-4, 0,  0, 0, 1.0E-4}, new double[9]),
+				new Matrix(3, new double[] {1.0E-12, 0, 0,  0, 1, 0,  0, 0, 1}, new double[9])
+		};
+		double[] expected = {1.0E-12, 1.0E-12, 0};
+		
+		boolean ok = true;
+		for (int m = 0; m < matrices.length; m++) {
+			ComplexNumber det = Matrix.determinant(matrices[m]);
+			boolean same = Math.abs(det.getReal() - expected[m]) <= 1.0E-15 * expected[m] && det.getImaginary() == 0;
+			System.out.println("determinant " + names[m] + ": " + (same ? "ok" : det.getReal() + " + " + det.getImaginary() + "i"));
+			ok &= same;
+		}
+		return ok;
+	}
+	
+	/**
+	 * Returns true if first = e^(i*phi) * second for some phi, as Matrix.equals
+	 */
+	private static boolean equalsUpToPhase(Matrix first, Matrix second) {
+		// phase of the trace of second^+ * first
+		double re = 0, im = 0;
+		int n = first.len();
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				double fr = first.getReal(i, j), fi = first.getImaginary(i, j);
+				double sr = second.getReal(i, j), si = second.getImaginary(i, j);
+				re += sr*fr + si*fi;
+				im += sr*fi - si*fr;
+			}
+		}
+		double abs = Math.hypot(re, im);
+		if (abs == 0)
+			return false;
+		return Matrix.equals(first, Matrix.mul(new ComplexNumber(re/abs, im/abs), second));
+	}
+	
+	/**
+	 * ProductVerifier must accept the correct product of two dense 256x256 unitaries and reject
+	 * products with wrong entries that Matrix.equals rejects <br />
+	 * Two entries of one row that are off by +d and -d cancel in half of the probes, the worst case of the
+	 * bound, so verifiers with false accept probability 1/4 must accept such a product in about 1/4 of the trials
+	 */
+	private static boolean checkProductVerifier() {
+		Random random = new Random(1);
+		int qubits = 8;
+		int n = 1 << qubits;
+		Matrix u = randomUnitary(qubits, random);
+		Matrix v = randomUnitary(qubits, random);
+		Matrix good = Matrix.mul(u, v);
+		
+		// one entry off by 1e-4
+		Matrix single = Matrix.mul(u, v);
+		single.getRealPart()[random.nextInt(n*n)] += 1.0E-4;
+		// six entries off by 1e-4 in both directions, spread over the matrix
+		Matrix several = Matrix.mul(u, v);
+		for (int k = 0; k < 6; k++)
+			several.getImaginaryPart()[random.nextInt(n*n)] += k % 2 == 0 ? 1.0E-4 : -1.0E-4;
+		// two entries of one row off by +1e-4 and -1e-4
+		Matrix cancelling = Matrix.mul(u, v);
+		int row = random.nextInt(n);
+		cancelling.getRealPart()[row*n] += 1.0E-4;
+		cancelling.getRealPart()[row*n+n-1] -= 1.0E-4;
+		
+		boolean ok = true;
+		Matrix[] wrong = {single, several, cancelling};
+		String[] names = {"one wrong entry", "six wrong entries", "two cancelling entries"};
+		for (int w = 0; w < wrong.length; w++) {
+			if (Matrix.equals(wrong[w], good)) {
+				System.out.println("Matrix.equals accepts " + names[w]);
+				ok = false;
+			}
+		}
+		
+		for (double tolerance : new double[] {1.0E-9, 1.0E-6}) {
+			ProductVerifier verifier = new ProductVerifier(1.0E-6, random);
+			verifier.setTolerance(tolerance);
+			boolean accepted = verifier.verify(good, u, v);
+			System.out.println("ProductVerifier tolerance " + tolerance + " correct product: " + (accepted ? "ok" : "rejected"));
+			ok &= accepted;
+			for (int w = 0; w < wrong.length; w++) {
+				boolean rejected = !verifier.verify(wrong[w], u, v);
+				System.out.println("ProductVerifier tolerance " + tolerance + " " + names[w] + ": " + (rejected ? "ok" : "accepted"));
+				ok &= rejected;
+			}
+		}
+		
+		// 2 probes, each misses the cancelling entries with probability 1/2
+		int trials = 400, accepted = 0;
+		ProductVerifier weak = new ProductVerifier(0.25, random);
+		for (int t = 0; t < trials; t++) {
+			if (weak.verify(cancelling, u, v))
+				accepted++;
+		}
+		// 1/4 plus three standard deviations
+		boolean bound = weak.getProbes() == 2 && accepted <= trials * (0.25 + 3 * Math.sqrt(0.25*0.75/trials));
+		System.out.println("ProductVerifier false accepts " + accepted + "/" + trials + " at probability 0.25: " + (bound ? "ok" : "above bound"));
+		ok &= bound;
+		return ok;
+	}
+	
+	/**
+	 * Returns a dense unitary on the given number of qubits: one qubit rotations
+	 * on every qubit, random phases, and one qubit rotations again
+	 */
+	private static Matrix randomUnitary(int qubits, Random random) {
+		Matrix left = rotations(qubits, random);
+		Matrix right = rotations(qubits, random);
+		int n = 1 << qubits;
+		double[] re = new double[n*n], im = new double[n*n];
+		for (int i = 0; i < n; i++) {
+			double phi = 2 * Math.PI * random.nextDouble();
+			re[i*n+i] = Math.cos(phi);
+			im[i*n+i] = Math.sin(phi);
+		}
+		return Matrix.mul(left, new Matrix(n, re, im), right);
+	}
+	
+	/**
+	 * Returns the Kronecker product of random one qubit rotations
+	 */
+	private static Matrix rotations(int qubits, Random random) {
+		Matrix result = OneQubit.YZYMatrix(2 * Math.PI * random.nextDouble(), Math.PI * random.nextDouble(), 2 * Math.PI * random.nextDouble());
+		for (int q = 1; q < qubits; q++)
+			result = Matrix.kron(result, OneQubit.YZYMatrix(2 * Math.PI * random.nextDouble(), Math.PI * random.nextDouble(), 2 * Math.PI * random.nextDouble()));
+		return result;
 	}
 
 }
@@ -0,0 +1,352 @@
+package complex_numbers;
+
+/**
+ * Trigonometric functions over arrays of angles and arguments <br />
+ * Every kernel works in passes: a pass with the branches (argument reduction, choice
+ * of interval), a branch free pass that evaluates the polynomials over the whole
+ * batch, so the JIT can use vector instructions, and a pass that puts the result
+ * together. The reductions and polynomials are those of fdlibm, so the results are
+ * those of StrictMath, within 1 ulp of the exact values. Arguments fdlibm handles as special
+ * cases (NaN, infinities, zeros of atan2, |x| >= 1 for acos, large angles) are
+ * passed to StrictMath <br />
+ * Output arrays may be the input arrays
+ * @author Arsen Babakhanyan
+ */
+public final class BatchTrig {
+	
+	// below it an angle is not reduced: the smallest double whose high word is above that of pi/4, as e_rem_pio2.c
+	private static final double UNREDUCED = 0.7853984832763672;
+	// below it sin(x) rounds to x, 2^-27
+	private static final double SIN_TINY = 7.450580596923828e-09;
+	// largest angle the three part reduction by pi/2 is exact for
+	private static final double MEDIUM = (1 << 19)*(Math.PI/2);
+	
+	// 2/pi and pi/2 in three parts of 33 bits with the rest of each, see fdlibm e_rem_pio2.c
+	private static final double INV_PIO2 = 6.36619772367581382433e-01;
+	private static final double PIO2_1 = 1.57079632673412561417e+00;
+	private static final double PIO2_1T = 6.07710050650619224932e-11;
+	private static final double PIO2_2 = 6.07710050630396597660e-11;
+	private static final double PIO2_2T = 2.02226624879595063154e-21;
+	private static final double PIO2_3 = 2.02226624871116645580e-21;
+	private static final double PIO2_3T = 8.47842766036889956997e-32;
+	
+	// sin and cos on [-pi/4, pi/4], fdlibm k_sin.c and k_cos.c
+	private static final double S1 = -1.66666666666666324348e-01;
+	private static final double S2 = 8.33333333332248946124e-03;
+	private static final double S3 = -1.98412698298579493134e-04;
+	private static final double S4 = 2.75573137070700676789e-06;
+	private static final double S5 = -2.50507602534068634195e-08;
+	private static final double S6 = 1.58969099521155010221e-10;
+	private static final double C1 = 4.16666666666666019037e-02;
+	private static final double C2 = -1.38888888888741095749e-03;
+	private static final double C3 = 2.48015872894767294178e-05;
+	private static final double C4 = -2.75573143513906633035e-07;
+	private static final double C5 = 2.08757232129817482790e-09;
+	private static final double C6 = -1.13596475577881948265e-11;
+	
+	// atan at the interval points 0.5, 1, 1.5 and infinity, high and low part, fdlibm s_atan.c
+	private static final double[] ATAN_HI = {4.63647609000806093515e-01, 7.85398163397448278999e-01,
+			9.82793723247329054082e-01, 1.57079632679489655800e+00};
+	private static final double[] ATAN_LO = {2.26987774529616870924e-17, 3.06161699786838301793e-17,
+			1.39033110312309984516e-17, 6.12323399573676603587e-17};
+	private static final double T0 = 3.33333333333329318027e-01;
+	private static final double T1 = -1.99999999998764832476e-01;
+	private static final double T2 = 1.42857142725034663711e-01;
+	private static final double T3 = -1.11111104054623557880e-01;
+	private static final double T4 = 9.09088713343650656196e-02;
+	private static final double T5 = -7.69187620504482999495e-02;
+	private static final double T6 = 6.66107313738753120669e-02;
+	private static final double T7 = -5.83357013379057348645e-02;
+	private static final double T8 = 4.97687799461593236017e-02;
+	private static final double T9 = -3.65315727442169155270e-02;
+	private static final double T10 = 1.62858201153657823623e-02;
+	
+	// pi and pi/2 in high and low part
+	private static final double PI = 3.1415926535897931160e+00;
+	private static final double PI_LO = 1.2246467991473531772e-16;
+	private static final double PIO2_HI = 1.57079632679489655800e+00;
+	private static final double PIO2_LO = 6.12323399573676603587e-17;
+	
+	// rational approximation of acos, fdlibm e_acos.c
+	private static final double P0 = 1.66666666666666657415e-01;
+	private static final double P1 = -3.25565818622400915405e-01;
+	private static final double P2 = 2.01212532134862925881e-01;
+	private static final double P3 = -4.00555345006794114027e-02;
+	private static final double P4 = 7.91534994289814532176e-04;
+	private static final double P5 = 3.47933107596021167570e-05;
+	private static final double Q1 = -2.40339491173441421878e+00;
+	private static final double Q2 = 2.02094576023350569471e+00;
+	private static final double Q3 = -6.88283971605453293030e-01;
+	private static final double Q4 = 7.70381505559019352791e-02;
+	
+	// marks an element whose result was computed in the first pass
+	private static final int DONE = -2;
+	// marks a sincos element that is left to StrictMath, its low bits are quadrant 0
+	private static final int SPECIAL = 4;
+	// marks an atan2 element whose angle in the first quadrant was found in the first pass
+	private static final int ANGLE = 4;
+	
+	// below it acos(x) rounds to pi/2, 2^-57
+	private static final double ACOS_TINY = 6.938893903907228e-18;
+	
+	private BatchTrig() {
+	}
+	
+	/**
+	 * Computes sin[i] = sin(x[i]) and cos[i] = cos(x[i]) for the first count elements,
+	 * both from one reduction of x[i]
+	 */
+	public static void sincos(int count, double[] x, double[] sin, double[] cos) {
+		checkLength(count, x, sin, cos);
+		
+		// x = n*pi/2 + (y + tail), y goes to sin and tail to cos until the kernels replace them,
+		// quadrant is n mod 4, angles up to about pi/4 get n = 0 and stay as they are
+		int[] quadrant = new int[count];
+		int special = 0;
+		for (int i = 0; i < count; i++) {
+			double xi = x[i];
+			double a = Math.abs(xi);
+			if (!(a < MEDIUM)) {
+				// large, infinite or NaN, kept for StrictMath
+				sin[i] = xi;
+				cos[i] = 0.0;
+				quadrant[i] = SPECIAL;
+				special++;
+				continue;
+			}
+			int n = a < UNREDUCED ? 0 : (int)(a*INV_PIO2 + 0.5);
+			double fn = n;
+			double r = a - fn*PIO2_1;
+			double w = fn*PIO2_1T;
+			double r0 = r - w;
+			int e = Math.getExponent(a);
+			if (e - Math.getExponent(r0) > 16) {
+				// a is close to a multiple of pi/2, take the next 33 bits of pi/2
+				double t = r;
+				w = fn*PIO2_2;
+				r = t - w;
+				w = fn*PIO2_2T - ((t - r) - w);
+				r0 = r - w;
+				if (e - Math.getExponent(r0) > 49) {
+					t = r;
+					w = fn*PIO2_3;
+					r = t - w;
+					w = fn*PIO2_3T - ((t - r) - w);
+					r0 = r - w;
+				}
+			}
+			double r1 = (r - r0) - w;
+			double sign = Math.copySign(1.0, xi);
+			sin[i] = sign*r0;
+			cos[i] = sign*r1;
+			quadrant[i] = (xi < 0 ? -n : n) & 3;
+		}
+		
+		// kernels on [-pi/4, pi/4], k_sin.c with the tail and k_cos.c
+		for (int i = 0; i < count; i++) {
+			double y = sin[i], tail = cos[i];
+			double z = y*y;
+			double v = z*y;
+			double r = S2 + z*(S3 + z*(S4 + z*(S5 + z*S6)));
+			// without a tail the shorter form, as k_sin.c
+			double s = tail == 0 ? y + v*(S1 + z*r) : y - ((z*(0.5*tail - v*r) - tail) - v*S1);
+			double c = z*(C1 + z*(C2 + z*(C3 + z*(C4 + z*(C5 + z*C6)))));
+			double q = cosShift(y);
+			// tiny angles unchanged, as k_sin.c, and the angles left to StrictMath as well
+			double a = Math.abs(y);
+			sin[i] = a < SIN_TINY || !(a < MEDIUM) ? y : s;
+			cos[i] = (1.0 - q) - ((0.5*z - q) - (z*c - y*tail));
+		}
+		
+		// sin is ks, kc, -ks, -kc and cos is kc, -ks, -kc, ks in the four quadrants
+		for (int i = 0; i < count; i++) {
+			int n = quadrant[i] & 3;
+			boolean odd = (n & 1) != 0;
+			double ks = sin[i], kc = cos[i];
+			double s = odd ? kc : ks;
+			double c = odd ? ks : kc;
+			sin[i] = n >= 2 ? -s : s;
+			cos[i] = n == 1 || n == 2 ? -c : c;
+		}
+		
+		for (int i = 0; special > 0 && i < count; i++) {
+			if (quadrant[i] == SPECIAL) {
+				// the kernels and quadrant 0 left the angle in sin
+				double xi = sin[i];
+				sin[i] = StrictMath.sin(xi);
+				cos[i] = StrictMath.cos(xi);
+				special--;
+			}
+		}
+	}
+	
+	/**
+	 * Computes out[i] = atan2(y[i], x[i]), the argument of x[i] + y[i]*i, for the first count elements
+	 */
+	public static void atan2(int count, double[] y, double[] x, double[] out) {
+		checkLength(count, y, x, out);
+		
+		// argument of the atan polynomial and its interval, -1 for |y/x| < 7/16
+		double[] t = new double[count];
+		int[] interval = new int[count], quadrant = new int[count];
+		for (int i = 0; i < count; i++) {
+			double yi = y[i], xi = x[i];
+			if (yi == 0 || xi == 0 || Double.isNaN(yi) || Double.isNaN(xi)
+					|| Double.isInfinite(yi) || Double.isInfinite(xi)) {
+				t[i] = StrictMath.atan2(yi, xi);
+				interval[i] = DONE;
+				continue;
+			}
+			quadrant[i] = (yi < 0 ? 1 : 0) | (xi < 0 ? 2 : 0);
+			int k = Math.getExponent(yi) - Math.getExponent(xi);
+			if (k > 60) {
+				// |y/x| > 2^60
+				t[i] = PIO2_HI + 0.5*PI_LO;
+				interval[i] = ANGLE;
+				continue;
+			}
+			if (xi < 0 && k < -60) {
+				t[i] = 0.0;
+				interval[i] = ANGLE;
+				continue;
+			}
+			double a = Math.abs(yi/xi);
+			if (a < 0.4375) {
+				t[i] = a;
+				interval[i] = -1;
+			} else if (a < 0.6875) {
+				t[i] = (2.0*a - 1.0)/(2.0 + a);
+				interval[i] = 0;
+			} else if (a < 1.1875) {
+				t[i] = (a - 1.0)/(a + 1.0);
+				interval[i] = 1;
+			} else if (a < 2.4375) {
+				t[i] = (a - 1.5)/(1.0 + 1.5*a);
+				interval[i] = 2;
+			} else {
+				t[i] = -1.0/a;
+				interval[i] = 3;
+			}
+		}
+		
+		double[] p = new double[count];
+		for (int i = 0; i < count; i++) {
+			double z = t[i]*t[i];
+			double w = z*z;
+			double s1 = z*(T0 + w*(T2 + w*(T4 + w*(T6 + w*(T8 + w*T10)))));
+			double s2 = w*(T1 + w*(T3 + w*(T5 + w*(T7 + w*T9))));
+			p[i] = t[i]*(s1 + s2);
+		}
+		
+		for (int i = 0; i < count; i++) {
+			int id = interval[i];
+			double z;
+			if (id == DONE) {
+				out[i] = t[i];
+				continue;
+			}
+			if (id == ANGLE) {
+				z = t[i];
+			} else if (id < 0) {
+				z = t[i] - p[i];
+			} else {
+				z = ATAN_HI[id] - ((p[i] - ATAN_LO[id]) - t[i]);
+			}
+			switch (quadrant[i]) {
+			case 0:
+				out[i] = z;
+				break;
+			case 1:
+				out[i] = -z;
+				break;
+			case 2:
+				out[i] = PI - (z - PI_LO);
+				break;
+			default:
+				out[i] = (z - PI_LO) - PI;
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Computes out[i] = acos(x[i]) for the first count elements
+	 */
+	public static void acos(int count, double[] x, double[] out) {
+		checkLength(count, x, out, out);
+		
+		// z is x^2 for |x| < 0.5 and (1 - |x|)/2 else, the rational function is evaluated at z
+		double[] z = new double[count], s = new double[count];
+		int[] interval = new int[count];
+		for (int i = 0; i < count; i++) {
+			double xi = x[i];
+			double a = Math.abs(xi);
+			if (a < 0.5) {
+				z[i] = xi*xi;
+				s[i] = xi;
+			} else if (a < 1) {
+				z[i] = (1.0 - a)*0.5;
+				s[i] = xi;
+				interval[i] = xi < 0 ? 1 : 2;
+			} else {
+				// |x| >= 1 or NaN
+				s[i] = StrictMath.acos(xi);
+				interval[i] = DONE;
+			}
+		}
+		
+		double[] r = new double[count];
+		for (int i = 0; i < count; i++) {
+			double zi = z[i];
+			double p = zi*(P0 + zi*(P1 + zi*(P2 + zi*(P3 + zi*(P4 + zi*P5)))));
+			double q = 1.0 + zi*(Q1 + zi*(Q2 + zi*(Q3 + zi*Q4)));
+			r[i] = p/q;
+		}
+		
+		for (int i = 0; i < count; i++) {
+			double xi = s[i];
+			switch (interval[i]) {
+			case 0:
+				if (Math.abs(xi) <= ACOS_TINY)
+					out[i] = PIO2_HI + PIO2_LO;
+				else
+					out[i] = PIO2_HI - (xi - (PIO2_LO - xi*r[i]));
+				break;
+			case 1: {
+				double sq = Math.sqrt(z[i]);
+				double w = r[i]*sq - PIO2_LO;
+				out[i] = PI - 2.0*(sq + w);
+				break;
+			}
+			case 2: {
+				double sq = Math.sqrt(z[i]);
+				// sq cut to its high 21 bits of mantissa, the square is exact
+				double df = Double.longBitsToDouble(Double.doubleToRawLongBits(sq) & 0xffffffff00000000L);
+				double c = (z[i] - df*df)/(sq + df);
+				double w = r[i]*sq + c;
+				out[i] = 2.0*(df + w);
+				break;
+			}
+			default:
+				out[i] = xi;
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Returns qx of fdlibm k_cos.c for the reduced angle y: cos(y) = (1 - qx) - (y^2/2 - qx) - ...
+	 * splits off an exact part when y^2/2 is not small against 1
+	 */
+	private static double cosShift(double y) {
+		double a = Math.abs(y);
+		// a/4 cut to the high word
+		double quarter = Double.longBitsToDouble((Double.doubleToRawLongBits(a) - (2L << 52)) & 0xffffffff00000000L);
+		return a < 0.3 ? 0.0 : a > 0.78125 ? 0.28125 : quarter;
+	}
+	
+	private static void checkLength(int count, double[] first, double[] second, double[] third) {
+		if (count < 0 || first.length < count || second.length < count || third.length < count)
+			throw new IllegalArgumentException("Arrays are shorter than count " + count);
+	}
+}
@@ -3,7 +3,10 @@ package complex_numbers;
 //import java.math.BigDecimal;
 
 /**
- * Class to work with ComplexNumbers
+ * Class to work with ComplexNumbers <br />
+ * The instance methods change the number in place, so one ComplexNumber can serve as
+ * accumulator of a loop (addMul), the static methods on (re, im) pairs allocate nothing
+ * and the static methods on ComplexNumbers return a new number
  * @author Arsen Babakhanyan
  *
  */
@@ -65,6 +68,14 @@ public class ComplexNumber {
 		this.imaginary = imaginary;
 	}
 	
+	/**
+	 * Sets this number to re + im*i
+	 */
+	public void set(double re, double im) {
+		real = re;
+		imaginary = im;
+	}
+	
 	/**
 	 * Conjugates the ComplexNumber
 	 */
@@ -76,44 +87,121 @@ public class ComplexNumber {
 	 * Computes this += that 
 	 */
 	public void add(ComplexNumber that) {
-		double tmp = real + that.getReal();
-		imaginary = imaginary + that.getImaginary();
-		real = tmp;
+		add(that.getReal(), that.getImaginary());
+	}
+	
+	/**
+	 * Computes this += re + im*i
+	 */
+	public void add(double re, double im) {
+		real = real + re;
+		imaginary = imaginary + im;
 	}
 	
 	/**
 	 * Computes this -= that
 	 */
 	public void sub(ComplexNumber that) {
-		double tmp;
-		tmp = real - that.getReal();
-		imaginary = imaginary - that.getImaginary();
-		real = tmp;
+		sub(that.getReal(), that.getImaginary());
+	}
+	
+	/**
+	 * Computes this -= re + im*i
+	 */
+	public void sub(double re, double im) {
+		real = real - re;
+		imaginary = imaginary - im;
 	}
 	
 	/**
 	 * Computes this *= that
 	 */
 	public void mul(ComplexNumber that) {
-		double tmp;
-		tmp = (real*that.getReal()) - (imaginary*that.getImaginary());
-		imaginary = (imaginary*that.getReal()) + (real * (that.getImaginary()));
+		mul(that.getReal(), that.getImaginary());
+	}
+	
+	/**
+	 * Computes this *= re + im*i
+	 */
+	public void mul(double re, double im) {
+		double tmp = mulReal(real, imaginary, re, im);
+		imaginary = mulImaginary(real, imaginary, re, im);
 		real = tmp;
-		
 	}
 	
 	/**
 	 * Computes this /= that
 	 */
 	public void div(ComplexNumber that) {
-		double tmp;
-		double denom = (that.getReal()*that.getReal()) + (that.getImaginary()*that.getImaginary());
+		div(that.getReal(), that.getImaginary());
+	}
+	
+	/**
+	 * Computes this /= re + im*i
+	 */
+	public void div(double re, double im) {
+		double denom = (re*re) + (im*im);
 		
-		tmp = (real * that.getReal() + imaginary * that.getImaginary())/denom;
-		imaginary = (imaginary * that.getReal() - real * that.getImaginary())/denom;
+		double tmp = (real * re + imaginary * im)/denom;
+		imaginary = (imaginary * re - real * im)/denom;
 		real = tmp;
 	}
 	
+	/**
+	 * Computes this += first * second
+	 */
+	public void addMul(ComplexNumber first, ComplexNumber second) {
+		addMul(first.getReal(), first.getImaginary(), second.getReal(), second.getImaginary());
+	}
+	
+	/**
+	 * Computes this += (fr + fi*i) * (sr + si*i) <br />
+	 * The product is rounded before it is added, as with add(mul(first, second)), so
+	 * sums come out the same as with the allocating methods
+	 */
+	public void addMul(double fr, double fi, double sr, double si) {
+		real = real + mulReal(fr, fi, sr, si);
+		imaginary = imaginary + mulImaginary(fr, fi, sr, si);
+	}
+	
+	/**
+	 * Computes this -= (fr + fi*i) * (sr + si*i)
+	 */
+	public void subMul(double fr, double fi, double sr, double si) {
+		real = real - mulReal(fr, fi, sr, si);
+		imaginary = imaginary - mulImaginary(fr, fi, sr, si);
+	}
+	
+	/**
+	 * Computes this = sqrt(this), the principal root
+	 */
+	public void sqrt() {
+		double absRe, absIm, w, r;
+		if ((real == 0) && (imaginary == 0)) {
+			real = 0;
+			imaginary = 0;
+			return;
+		}
+		absRe = Math.abs(real);
+		absIm = Math.abs(imaginary);
+		if (absRe >= absIm) {
+			r = absIm/absRe;
+			w = Math.sqrt(absRe)*Math.sqrt(0.5*(1.0+Math.sqrt(1.0+r*r)));
+		} else {
+			r = absRe/absIm;
+			w = Math.sqrt(absIm)*Math.sqrt(0.5*(r+Math.sqrt(1.0+r*r)));
+		}
+		if (real >= 0) {
+			real = w;
+			imaginary = imaginary/(2.0*w);
+		} else {
+			if (imaginary < 0)
+				w = -w;
+			real = imaginary/(2.0*w);
+			imaginary = w;
+		}
+	}
+	
 	/**
 	 * Negates the complexNumber
 	 */
@@ -127,17 +215,22 @@ public class ComplexNumber {
 	 * Returns String { [real] +/- [imaginary]i }
 	 */
 	public String toString() {
-		String str = "{" + real;
+		return appendTo(new StringBuilder(), real, imaginary).toString();
+	}
+	
+	/**
+	 * Appends real + imaginary*i to str in the format of toString and returns str
+	 */
+	public static StringBuilder appendTo(StringBuilder str, double real, double imaginary) {
+		str.append('{').append(real);
 		
 		if (Math.signum(imaginary) >= 0) {
-			str += " + " + Math.abs(imaginary);
+			str.append(" + ").append(Math.abs(imaginary));
 		}
 		else {
-			str += " - " + Math.abs(imaginary);
+			str.append(" - ").append(Math.abs(imaginary));
 		}
-		str += "i}";
-		
-		return str;
+		return str.append("i}");
 	}
 	
 
@@ -145,9 +238,7 @@ public class ComplexNumber {
 	 * Returns conjugate of ComplexNumber that without changing it
 	 */
 	public static ComplexNumber conjugate(ComplexNumber that) {
-		ComplexNumber tmp = new ComplexNumber(that.getReal(), that.getImaginary()); 
-		tmp.conjugate();
-		return tmp;
+		return new ComplexNumber(that.getReal(), -that.getImaginary());
 	}
 	
 	/**
@@ -202,8 +293,16 @@ public class ComplexNumber {
 	 * sqrt (re^2 + im^2)
 	 */
 	public static double abs(ComplexNumber that) {
-		double absRe = Math.abs(that.getReal());
-	    double absIm = Math.abs(that.getImaginary());
+		return abs(that.getReal(), that.getImaginary());
+	}
+	
+	/**
+	 * Returns abs of re + im*i <br />
+	 * sqrt (re^2 + im^2)
+	 */
+	public static double abs(double re, double im) {
+		double absRe = Math.abs(re);
+	    double absIm = Math.abs(im);
 	    if((absRe==0)&&(absIm==0)) {
 	      return 0;
 	    } else if(absRe>absIm) {
@@ -219,31 +318,46 @@ public class ComplexNumber {
 	 *	Returns sqrt of the ComplexNumber 
 	 */
 	public static ComplexNumber sqrt(ComplexNumber that) {
-	    ComplexNumber c;
-	    double absRe, absIm, w, r;
-	    if((that.getReal()==0)&&(that.getImaginary()==0)) {
-	      c = new ComplexNumber();
-	    } else {
-	      absRe = Math.abs(that.getReal());
-	      absIm = Math.abs(that.getImaginary());
-	      if(absRe>=absIm) {
-	        r = absIm/absRe;
-	        w = Math.sqrt(absRe)*Math.sqrt(0.5*(1.0+Math.sqrt(1.0+r*r)));
-	      } else {
-	        r = absRe/absIm;
-	        w = Math.sqrt(absIm)*Math.sqrt(0.5*(r+Math.sqrt(1.0+r*r)));
-	      }
-	      if(that.getReal()>=0) {
-	        c = new ComplexNumber(w, that.getImaginary()/(2.0*w));
-	      } else {
-	        if(that.getImaginary()<0) {
-	          w = -w;
-	        }
-	        c = new ComplexNumber(that.getImaginary()/(2.0*w), w);
-	      }
-	    }
-	    return c;
-	  }
+		ComplexNumber tmp = new ComplexNumber(that);
+		tmp.sqrt();
+		return tmp;
+	}
+	
+	/**
+	 * Returns real part of (fr + fi*i) * (sr + si*i)
+	 */
+	public static double mulReal(double fr, double fi, double sr, double si) {
+		return (fr*sr) - (fi*si);
+	}
+	
+	/**
+	 * Returns imaginary part of (fr + fi*i) * (sr + si*i)
+	 */
+	public static double mulImaginary(double fr, double fi, double sr, double si) {
+		return (fi*sr) + (fr*si);
+	}
+	
+	/**
+	 * Returns real part of (fr + fi*i) / (sr + si*i)
+	 */
+	public static double divReal(double fr, double fi, double sr, double si) {
+		return (fr*sr + fi*si)/((sr*sr) + (si*si));
+	}
+	
+	/**
+	 * Returns imaginary part of (fr + fi*i) / (sr + si*i)
+	 */
+	public static double divImaginary(double fr, double fi, double sr, double si) {
+		return (fi*sr - fr*si)/((sr*sr) + (si*si));
+	}
+	
+	/**
+	 * Returns squared abs of re + im*i <br />
+	 * re^2 + im^2, without the scaling of abs
+	 */
+	public static double abs2(double re, double im) {
+		return (re*re) + (im*im);
+	}
 	
 	/**
 	 * Returns a new ComplexNumber with -that.re and -that.im
@@ -253,14 +367,18 @@ public class ComplexNumber {
 	}
 	
 	/**
-	 * Returns arguments of given ComplexNumbers
+	 * Returns arguments of given ComplexNumbers, computed together by BatchTrig.atan2
 	 */
 	public static double[] angle(ComplexNumber... vals) {
 		int len = vals.length;
+		double[] re = new double[len];
 		double[] angles = new double[len];
 		
-		for (int i = 0; i < len; i++)
-			angles[i] = Math.atan2(vals[i].getImaginary(), vals[i].getReal());
+		for (int i = 0; i < len; i++) {
+			re[i] = vals[i].getReal();
+			angles[i] = vals[i].getImaginary();
+		}
+		BatchTrig.atan2(len, angles, re, angles);
 		
 		return angles;
 	}
@@ -275,4 +393,20 @@ public class ComplexNumber {
 		return new ComplexNumber(re, im);
 	}
 	
+	/**
+	 * Returns ComplexNumbers based on arguments, argToNum of each, sin and cos by BatchTrig.sincos
+	 */
+	public static ComplexNumber[] argToNum(double[] args) {
+		int len = args.length;
+		double[] re = new double[len];
+		double[] im = new double[len];
+		BatchTrig.sincos(len, args, im, re);
+		
+		ComplexNumber[] nums = new ComplexNumber[len];
+		for (int i = 0; i < len; i++)
+			nums[i] = new ComplexNumber(re[i], im[i]);
+		
+		return nums;
+	}
+	
 }
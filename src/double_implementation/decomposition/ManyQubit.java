@@ -3,9 +3,11 @@ package decomposition;
 import java.util.LinkedList;
 import java.util.List;
 
-import complex_numbers.ComplexNumber;
-
+import matrix.EigenResult;
 import matrix.Matrix;
+import matrix.MatrixOps;
+import matrix.PauliString;
+import matrix.Workspace;
 
 
 
@@ -63,16 +65,17 @@ public class ManyQubit {
 	
 	
 	public static LevelDecompositionResultContainer levelDecompose(Matrix that, boolean flag) {
-		Matrix M2 = MSquared(that);
-		uniControlXRot(M2);
+		try (Workspace ws = Workspace.open()) {
+			Matrix M2 = MSquared(that, ws);
+			uniControlXRot(M2);
+		}
 		return null;
 	}
 	
 	private static void uniControlXRot(Matrix that) {
-		Object[] obj = Matrix.eigenValuesAndVector(that);
-		ComplexNumber[] eigens = (ComplexNumber[]) obj[0];
-		ComplexNumber[][] eigenVectors = (ComplexNumber[][]) obj[1];
-		Matrix P = new Matrix(eigenVectors);
+		EigenResult eig = Matrix.eigenDecomposition(that, true);
+		// eigenvectors as columns
+		Matrix P = eig.getVectors();
 		// chop(P)
 		P.makeSpecial();
 		
@@ -80,18 +83,28 @@ public class ManyQubit {
 		
 	}
 	
-	private static Matrix MSquared(Matrix that) {
-		return Matrix.mul(SUInvolution(Matrix.adjoint(that)), that);
+	/**
+	 * Returns SUInvolution(adjoint(that)) * that, the result lives in the workspace
+	 */
+	private static Matrix MSquared(Matrix that, Workspace ws) {
+		Matrix res = ws.matrix(that.len());
+		MatrixOps.mul(SUInvolution(Matrix.adjointView(that), ws), that, res);
+		return res;
 	}
 	
-	private static Matrix SUInvolution(Matrix that) {
-		int numberOfQubits = log2(that.len());
-		Matrix identity2x2 = Matrix.Identity2x2();
-		Matrix IZN = Matrix.PAULIZ();
+	/**
+	 * Returns IZN * that * IZN, where IZN = I (x) ... (x) I (x) Z, the result lives in the workspace <br />
+	 * IZN only changes signs, so it is applied as Pauli string instead of two dense products
+	 */
+	private static Matrix SUInvolution(Matrix that, Workspace ws) {
+		int n = that.len();
+		PauliString IZN = PauliString.lastZ(log2(n));
 		
-		for (int i = 0; i < numberOfQubits-1; i++)
-			IZN = Matrix.kron(identity2x2, IZN);
-		return Matrix.mul(IZN, that, IZN);
+		Matrix tmp = ws.matrix(n);
+		Matrix res = ws.matrix(n);
+		MatrixOps.mul(IZN, that, tmp);
+		MatrixOps.mul(tmp, IZN, res);
+		return res;
 	}
 	
 	/**
@@ -1,6 +1,7 @@
 package decomposition;
+import complex_numbers.BatchTrig;
 import matrix.Matrix;
-import complex_numbers.ComplexNumber;
+import matrix.Matrix2;
 
 /**
  * This class provides all functionality concerning decomposition of one qubit systems
@@ -8,80 +9,177 @@ import complex_numbers.ComplexNumber;
  */
 public class OneQubit {
 	
+	// below this sin(2b) the middle angle is taken as 0 or pi/2, rounding alone makes acos(1) about 1e-8
+	private static final double GIMBAL = 1.0E-7;
+	
+	// values this close to a branch cut of the angles are taken on one side of it,
+	// so that rounding does not move an angle by pi
+	private static final double NOISE = 1.0E-12;
+	
 	/**
 	 * This method decomposes Matrix G into three matrices (YZY) <br />
 	 * and returns array containing angles of rotations matrices
 	 */
 	public static double[] KAKDec(Matrix G) {
+		return KAKDec(Matrix2.of(G));
+	}
+	
+	/**
+	 * This method decomposes 2x2 matrix G into three matrices (YZY) <br />
+	 * and returns array containing angles of rotations matrices
+	 */
+	public static double[] KAKDec(Matrix2 G) {
 		double[] abc = new double[3];
 		
 		// M^2 = Y G^* Y G
-		Matrix M_2 = Matrix.mul(Matrix.PAULIY(), Matrix.adjoint(G), Matrix.PAULIY(), G);
+		Matrix2 M_2 = Matrix2.PAULI_Y.mul(G.adjoint()).mul(Matrix2.PAULI_Y).mul(G);
 		
-		abc[1] = Math.acos(M_2.getElement(0, 0).getReal())/2.;
+		abc[1] = Math.acos(clamp(M_2.getReal(0, 0)))/2.;
 		
-		abc[2] = Math.acos((M_2.getElement(0, 0).getImaginary())/(Math.sin(abc[1]*2)));
+		double sin = Math.sin(abc[1]*2);
+		if (Math.abs(sin) < GIMBAL) {
+			// RZ(b) is +-1 or +-iZ, only a + c or a - c is defined and c is taken as 0
+			abc[2] = 0;
+		} else {
+			abc[2] = Math.acos(clamp((M_2.getImaginary(0, 0))/sin));
 
-		if (M_2.getElement(0, 1).getImaginary() < 0) {
-			abc[2] = 2*Math.PI - abc[2];
+			if (M_2.getImaginary(0, 1) < -NOISE) {
+				abc[2] = 2*Math.PI - abc[2];
+			}
+			
+			abc[2] /= 2.;
 		}
 		
-		abc[2] /= 2.;
-		
-		Matrix tp = Matrix.mul(G, Matrix.adjoint(RY(abc[2])), Matrix.adjoint(RZ(abc[1])));
+		Matrix2 tp = G.mul(Matrix2.RY(abc[2]).adjoint()).mul(Matrix2.RZ(abc[1]).adjoint());
 		
-		abc[0] = Math.atan2(tp.getElement(0, 1).getReal(), tp.getElement(0, 0).getReal());
+		abc[0] = Math.atan2(tp.getReal(0, 1), tp.getReal(0, 0));
 		
-		if (abc[0] < 0)
-			abc[0] += Math.PI;
+		abc[0] = fold(abc[0]);
 		
 		return abc;
 	}
 	
+	/**
+	 * Decomposition of every 2x2 matrix of gates into YZY, result[g] is KAKDec(gates[g]) <br />
+	 * Each step takes acos, sin and atan2 of all gates at once with BatchTrig
+	 */
+	public static double[][] KAKDec(Matrix2[] gates) {
+		int count = gates.length;
+		Matrix2[] M_2 = new Matrix2[count];
+		double[] b = new double[count], c = new double[count];
+		double[] sin = new double[count], cos = new double[count];
+		
+		// M^2 = Y G^* Y G
+		for (int g = 0; g < count; g++) {
+			M_2[g] = Matrix2.PAULI_Y.mul(gates[g].adjoint()).mul(Matrix2.PAULI_Y).mul(gates[g]);
+			b[g] = clamp(M_2[g].getReal(0, 0));
+		}
+		BatchTrig.acos(count, b, b);
+		
+		for (int g = 0; g < count; g++) {
+			b[g] /= 2.;
+			c[g] = b[g]*2;
+		}
+		BatchTrig.sincos(count, c, sin, cos);
+		
+		for (int g = 0; g < count; g++)
+			c[g] = clamp(M_2[g].getImaginary(0, 0)/sin[g]);
+		BatchTrig.acos(count, c, c);
+		
+		for (int g = 0; g < count; g++) {
+			if (M_2[g].getImaginary(0, 1) < -NOISE) {
+				c[g] = 2*Math.PI - c[g];
+			}
+			c[g] /= 2.;
+			// as in KAKDec(Matrix2)
+			if (Math.abs(sin[g]) < GIMBAL)
+				c[g] = 0;
+		}
+		
+		Matrix2[] RY = Matrix2.RY(c);
+		Matrix2[] RZ = Matrix2.RZ(b);
+		double[] tp01 = new double[count], tp00 = new double[count];
+		for (int g = 0; g < count; g++) {
+			Matrix2 tp = gates[g].mul(RY[g].adjoint()).mul(RZ[g].adjoint());
+			tp01[g] = tp.getReal(0, 1);
+			tp00[g] = tp.getReal(0, 0);
+		}
+		double[] a = new double[count];
+		BatchTrig.atan2(count, tp01, tp00, a);
+		
+		double[][] result = new double[count][];
+		for (int g = 0; g < count; g++) {
+			a[g] = fold(a[g]);
+			result[g] = new double[] {a[g], b[g], c[g]};
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns angle from atan2 moved by pi into [-NOISE, pi - NOISE], the sign of RY does not matter
+	 */
+	private static double fold(double angle) {
+		if (angle < -NOISE)
+			return angle + Math.PI;
+		if (angle > Math.PI - NOISE)
+			return angle - Math.PI;
+		return angle;
+	}
+	
+	/**
+	 * Returns x limited to [-1, 1], rounding can put cosines just outside
+	 */
+	private static double clamp(double x) {
+		return Math.max(-1, Math.min(1, x));
+	}
+	
 	/**
 	 * Returns rotation Matrix around X axis by angle = value 
 	 */
 	public static Matrix RX(double value) {
-
-		double cosa = Math.cos(value);
-		double sina = Math.sin(value);
-
-		Matrix tmp = new Matrix(new ComplexNumber[][] {
-				{new ComplexNumber(cosa, 0), new ComplexNumber(0, sina) },
-				{new ComplexNumber(0, sina), new ComplexNumber(cosa, 0)}
-		});
-
-		return tmp;
+		return Matrix2.RX(value).toMatrix();
 	}
 	
 	/**
 	 * Returns rotation Matrix around Y axis by angle = value 
 	 */
 	public static Matrix RY(double value) {
-
-		double cosa = Math.cos(value);
-		double sina = Math.sin(value);
-
-		Matrix tmp = new Matrix(new ComplexNumber[][] {
-				{new ComplexNumber(cosa, 0), new ComplexNumber(sina, 0) },
-				{new ComplexNumber(-sina, 0), new ComplexNumber(cosa, 0)}
-		});
-
-		return tmp;
+		return Matrix2.RY(value).toMatrix();
 	}
 	
 	/**
 	 * Returns rotation Matrix around Z axis by angle = value 
 	 */
 	public static Matrix RZ(double value) {
-		double cosa = Math.cos(value);
-		double sina = Math.sin(value);
-		
-		Matrix tmp = new Matrix(new ComplexNumber[][] {
-				{new ComplexNumber(cosa, sina), new ComplexNumber()},
-				{new ComplexNumber(), new ComplexNumber(cosa, -sina)}
-		});
-		return tmp;
+		return Matrix2.RZ(value).toMatrix();
+	}
+	
+	/**
+	 * Returns rotation Matrices around X axis by the given angles, see Matrix2.RX(double[])
+	 */
+	public static Matrix[] RX(double[] values) {
+		return toMatrices(Matrix2.RX(values));
+	}
+	
+	/**
+	 * Returns rotation Matrices around Y axis by the given angles, see Matrix2.RY(double[])
+	 */
+	public static Matrix[] RY(double[] values) {
+		return toMatrices(Matrix2.RY(values));
+	}
+	
+	/**
+	 * Returns rotation Matrices around Z axis by the given angles, see Matrix2.RZ(double[])
+	 */
+	public static Matrix[] RZ(double[] values) {
+		return toMatrices(Matrix2.RZ(values));
+	}
+	
+	private static Matrix[] toMatrices(Matrix2[] that) {
+		Matrix[] matrices = new Matrix[that.length];
+		for (int k = 0; k < that.length; k++)
+			matrices[k] = that[k].toMatrix();
+		return matrices;
 	}
 	
 	
@@ -89,6 +187,13 @@ public class OneQubit {
 	 * Returns RY(a) * RZ(b) * RY(c) matrix 
 	 */
 	public static Matrix YZYMatrix(double a, double b, double c) {
-		return Matrix.mul(RY(a), RZ(b), RY(c));
+		return YZYMatrix2(a, b, c).toMatrix();
+	}
+	
+	/**
+	 * Returns RY(a) * RZ(b) * RY(c) as 2x2 matrix
+	 */
+	public static Matrix2 YZYMatrix2(double a, double b, double c) {
+		return Matrix2.RY(a).mul(Matrix2.RZ(b)).mul(Matrix2.RY(c));
 	}
 }
@@ -2,8 +2,14 @@ package decomposition;
 
 import java.util.Arrays;
 
+import complex_numbers.BatchTrig;
 import complex_numbers.ComplexNumber;
+import matrix.EigenResult;
 import matrix.Matrix;
+import matrix.Matrix2;
+import matrix.Matrix4;
+import matrix.SymmetricEigen4;
+import matrix.Workspace;
 
 /**
  * This class provides all functionality concerning decomposition of two qubit
@@ -21,6 +27,9 @@ public class TwoQubit {
 		First, Second
 	};
 
+	// quaternion components below this part of the largest one are rounding noise
+	private static final double NOISE = 1.0E-12;
+
 	/**
 	 * Returns partial trace of the given 4x4 matrix
 	 */
@@ -28,77 +37,66 @@ public class TwoQubit {
 		if (that.len() != 4) {
 			throw new IllegalArgumentException("Matrix must be of size 4x4");
 		}
-		Matrix m = new Matrix();
+		return partialTrace(Matrix4.of(that), num).toMatrix();
+	}
+
+	/**
+	 * Returns partial trace of the given 4x4 matrix
+	 */
+	public static Matrix2 partialTrace(Matrix4 that, Qubit2 num) {
 		switch (num) {
 		case First:
-			m.setElement(
-					0,
-					0,
-					ComplexNumber.add(that.getElement(0, 0),
-							that.getElement(1, 1)));
-			m.setElement(
-					0,
-					1,
-					ComplexNumber.add(that.getElement(0, 2),
-							that.getElement(1, 3)));
-			m.setElement(
-					1,
-					0,
-					ComplexNumber.add(that.getElement(2, 0),
-							that.getElement(3, 1)));
-			m.setElement(
-					1,
-					1,
-					ComplexNumber.add(that.getElement(2, 2),
-							that.getElement(3, 3)));
-			break;
+			return new Matrix2(
+					that.getReal(0, 0) + that.getReal(1, 1), that.getImaginary(0, 0) + that.getImaginary(1, 1),
+					that.getReal(0, 2) + that.getReal(1, 3), that.getImaginary(0, 2) + that.getImaginary(1, 3),
+					that.getReal(2, 0) + that.getReal(3, 1), that.getImaginary(2, 0) + that.getImaginary(3, 1),
+					that.getReal(2, 2) + that.getReal(3, 3), that.getImaginary(2, 2) + that.getImaginary(3, 3));
 		case Second:
-			m.setElement(
-					0,
-					0,
-					ComplexNumber.add(that.getElement(0, 0),
-							that.getElement(2, 2)));
-			m.setElement(
-					0,
-					1,
-					ComplexNumber.add(that.getElement(0, 1),
-							that.getElement(2, 3)));
-			m.setElement(
-					1,
-					0,
-					ComplexNumber.add(that.getElement(1, 0),
-							that.getElement(3, 2)));
-			m.setElement(
-					1,
-					1,
-					ComplexNumber.add(that.getElement(1, 1),
-							that.getElement(3, 3)));
+		default:
+			return new Matrix2(
+					that.getReal(0, 0) + that.getReal(2, 2), that.getImaginary(0, 0) + that.getImaginary(2, 2),
+					that.getReal(0, 1) + that.getReal(2, 3), that.getImaginary(0, 1) + that.getImaginary(2, 3),
+					that.getReal(1, 0) + that.getReal(3, 2), that.getImaginary(1, 0) + that.getImaginary(3, 2),
+					that.getReal(1, 1) + that.getReal(3, 3), that.getImaginary(1, 1) + that.getImaginary(3, 3));
 		}
-		return m;
 	}
 
 	/**
 	 * returns sqrt(|first|^2 + |second|^2)
 	 */
 	public static double SAP2(ComplexNumber first, ComplexNumber second) {
-		return Math.sqrt(ComplexNumber.abs(ComplexNumber.mul(first, first))
-				+ ComplexNumber.abs(ComplexNumber.mul(second, second)));
+		return SAP2(first.getReal(), first.getImaginary(), second.getReal(), second.getImaginary());
+	}
+
+	/**
+	 * returns sqrt(|first|^2 + |second|^2) for first = fr + fi*i, second = sr + si*i
+	 */
+	public static double SAP2(double fr, double fi, double sr, double si) {
+		return Math.sqrt(ComplexNumber.abs(ComplexNumber.mulReal(fr, fi, fr, fi), ComplexNumber.mulImaginary(fr, fi, fr, fi))
+				+ ComplexNumber.abs(ComplexNumber.mulReal(sr, si, sr, si), ComplexNumber.mulImaginary(sr, si, sr, si)));
 	}
 
 	/**
 	 * Decomposition of Matrix that according SU2xSU2 procedure (multi-thraded)
 	 */
-	public static double[] SU2SU2(final Matrix that) {
+	public static double[] SU2SU2(Matrix that) {
+		return SU2SU2(Matrix4.of(that));
+	}
+
+	/**
+	 * Decomposition of 4x4 matrix that according SU2xSU2 procedure (multi-thraded)
+	 */
+	public static double[] SU2SU2(final Matrix4 that) {
 
 		final double[] val0 = new double[3];
 		final double[] val1 = new double[3];
 
 		Thread t1 = new Thread(new Runnable() {
 			public void run() {
-				Matrix S1 = partialTrace(that, Qubit2.Second);
+				Matrix2 S1 = partialTrace(that, Qubit2.Second);
 
-				double c1 = SAP2(S1.getElement(0, 0), S1.getElement(1, 0));
-				S1.div(new ComplexNumber(c1, 0)); // / Q
+				double c1 = SAP2(S1.getReal(0, 0), S1.getImaginary(0, 0), S1.getReal(1, 0), S1.getImaginary(1, 0));
+				S1 = S1.div(c1); // / Q
 
 				double[] val = OneQubit.KAKDec(S1);
 				val1[0] = val[0];
@@ -109,10 +107,10 @@ public class TwoQubit {
 
 		Thread t2 = new Thread(new Runnable() {
 			public void run() {
-				Matrix S2 = partialTrace(that, Qubit2.First);
+				Matrix2 S2 = partialTrace(that, Qubit2.First);
 
-				double c2 = SAP2(S2.getElement(0, 0), S2.getElement(1, 0));
-				S2.div(new ComplexNumber(c2, 0)); // / P
+				double c2 = SAP2(S2.getReal(0, 0), S2.getImaginary(0, 0), S2.getReal(1, 0), S2.getImaginary(1, 0));
+				S2 = S2.div(c2); // / P
 
 				double[] val = OneQubit.KAKDec(S2);
 				val0[0] = val[0];
@@ -140,158 +138,173 @@ public class TwoQubit {
 	 * Returns associate matrix of SO4
 	 */
 	public static Matrix associateSO4(Matrix that) {
-		Matrix associate = new Matrix(4);
+		return associateSO4(Matrix4.of(that)).toMatrix();
+	}
+
+	/**
+	 * Returns associate matrix of SO4
+	 */
+	public static Matrix4 associateSO4(Matrix4 that) {
+		double[] associate = new double[16];
 		double tmp;
 		
-		tmp =     that.getElement(0, 0).getReal()
-				+ that.getElement(1, 1).getReal()
-				+ that.getElement(2, 2).getReal()
-				+ that.getElement(3, 3).getReal();
-		associate.setElement(0, 0, new ComplexNumber(tmp/4., 0));
-	
-		tmp =   - that.getElement(0, 1).getReal()
-				+ that.getElement(1, 0).getReal()
-				+ that.getElement(2, 3).getReal()
-				- that.getElement(3, 2).getReal();
-		associate.setElement(0, 1, new ComplexNumber(tmp/4., 0));
-	
-		tmp =   - that.getElement(0, 2).getReal()
-				- that.getElement(1, 3).getReal()
-				+ that.getElement(2, 0).getReal()
-				+ that.getElement(3, 1).getReal();
-		associate.setElement(0, 2, new ComplexNumber(tmp/4., 0));
-		
-		tmp =   - that.getElement(0, 3).getReal()
-				+ that.getElement(1, 2).getReal()
-				- that.getElement(2, 1).getReal()
-				+ that.getElement(3, 0).getReal();
-		associate.setElement(0, 3, new ComplexNumber(tmp/4., 0));
-	
-		
-		tmp =   - that.getElement(0, 1).getReal()
-				+ that.getElement(1, 0).getReal()
-				- that.getElement(2, 3).getReal()
-				+ that.getElement(3, 2).getReal();
-		associate.setElement(1, 0, new ComplexNumber(tmp/4., 0));
-	
-		tmp =   - that.getElement(0, 0).getReal()
-				- that.getElement(1, 1).getReal()
-				+ that.getElement(2, 2).getReal()
-				+ that.getElement(3, 3).getReal();
-		associate.setElement(1, 1, new ComplexNumber(tmp/4., 0));
-	
-		tmp =     that.getElement(0, 3).getReal()
-				- that.getElement(1, 2).getReal()
-				- that.getElement(2, 1).getReal()
-				+ that.getElement(3, 0).getReal();
-		associate.setElement(1, 2, new ComplexNumber(tmp/4., 0));
-		
-		tmp =   - that.getElement(0, 2).getReal()
-				- that.getElement(1, 3).getReal()
-				- that.getElement(2, 0).getReal()
-				- that.getElement(3, 1).getReal();
-		associate.setElement(1, 3, new ComplexNumber(tmp/4., 0));
-	
-	
-		tmp =   - that.getElement(0, 2).getReal()
-				+ that.getElement(1, 3).getReal()
-				+ that.getElement(2, 0).getReal()
-				- that.getElement(3, 1).getReal();
-		associate.setElement(2, 0, new ComplexNumber(tmp/4., 0));
-	
-		tmp =   - that.getElement(0, 3).getReal()
-				- that.getElement(1, 2).getReal()
-				- that.getElement(2, 1).getReal()
-				- that.getElement(3, 0).getReal();
-		associate.setElement(2, 1, new ComplexNumber(tmp/4., 0));
-	
-		tmp =   - that.getElement(0, 0).getReal()
-				+ that.getElement(1, 1).getReal()
-				- that.getElement(2, 2).getReal()
-				+ that.getElement(3, 3).getReal();
-		associate.setElement(2, 2, new ComplexNumber(tmp/4., 0));
-		
-		tmp =     that.getElement(0, 1).getReal()
-				+ that.getElement(1, 0).getReal()
-				- that.getElement(2, 3).getReal()
-				- that.getElement(3, 2).getReal();
-		associate.setElement(2, 3, new ComplexNumber(tmp/4., 0));
-		
-		tmp =   - that.getElement(0, 3).getReal()
-				- that.getElement(1, 2).getReal()
-				+ that.getElement(2, 1).getReal()
-				+ that.getElement(3, 0).getReal();
-		associate.setElement(3, 0, new ComplexNumber(tmp/4., 0));
-	
-		tmp =     that.getElement(0, 2).getReal()
-				- that.getElement(1, 3).getReal()
-				+ that.getElement(2, 0).getReal()
-				- that.getElement(3, 1).getReal();
-		associate.setElement(3, 1, new ComplexNumber(tmp/4., 0));
-	
-		tmp =   - that.getElement(0, 1).getReal()
-				- that.getElement(1, 0).getReal()
-				- that.getElement(2, 3).getReal()
-				- that.getElement(3, 2).getReal();
-		associate.setElement(3, 2, new ComplexNumber(tmp/4., 0));
-		
-		tmp =   - that.getElement(0, 0).getReal()
-				+ that.getElement(1, 1).getReal()
-				+ that.getElement(2, 2).getReal()
-				- that.getElement(3, 3).getReal();
-		associate.setElement(3, 3, new ComplexNumber(tmp/4., 0));
-	
-	
-		return associate;
+		tmp =     that.getReal(0, 0)
+				+ that.getReal(1, 1)
+				+ that.getReal(2, 2)
+				+ that.getReal(3, 3);
+		associate[0] = tmp/4.;
+	
+		tmp =   - that.getReal(0, 1)
+				+ that.getReal(1, 0)
+				+ that.getReal(2, 3)
+				- that.getReal(3, 2);
+		associate[1] = tmp/4.;
+	
+		tmp =   - that.getReal(0, 2)
+				- that.getReal(1, 3)
+				+ that.getReal(2, 0)
+				+ that.getReal(3, 1);
+		associate[2] = tmp/4.;
+		
+		tmp =   - that.getReal(0, 3)
+				+ that.getReal(1, 2)
+				- that.getReal(2, 1)
+				+ that.getReal(3, 0);
+		associate[3] = tmp/4.;
+	
+		
+		tmp =   - that.getReal(0, 1)
+				+ that.getReal(1, 0)
+				- that.getReal(2, 3)
+				+ that.getReal(3, 2);
+		associate[4] = tmp/4.;
+	
+		tmp =   - that.getReal(0, 0)
+				- that.getReal(1, 1)
+				+ that.getReal(2, 2)
+				+ that.getReal(3, 3);
+		associate[5] = tmp/4.;
+	
+		tmp =     that.getReal(0, 3)
+				- that.getReal(1, 2)
+				- that.getReal(2, 1)
+				+ that.getReal(3, 0);
+		associate[6] = tmp/4.;
+		
+		tmp =   - that.getReal(0, 2)
+				- that.getReal(1, 3)
+				- that.getReal(2, 0)
+				- that.getReal(3, 1);
+		associate[7] = tmp/4.;
+	
+	
+		tmp =   - that.getReal(0, 2)
+				+ that.getReal(1, 3)
+				+ that.getReal(2, 0)
+				- that.getReal(3, 1);
+		associate[8] = tmp/4.;
+	
+		tmp =   - that.getReal(0, 3)
+				- that.getReal(1, 2)
+				- that.getReal(2, 1)
+				- that.getReal(3, 0);
+		associate[9] = tmp/4.;
+	
+		tmp =   - that.getReal(0, 0)
+				+ that.getReal(1, 1)
+				- that.getReal(2, 2)
+				+ that.getReal(3, 3);
+		associate[10] = tmp/4.;
+		
+		tmp =     that.getReal(0, 1)
+				+ that.getReal(1, 0)
+				- that.getReal(2, 3)
+				- that.getReal(3, 2);
+		associate[11] = tmp/4.;
+		
+		tmp =   - that.getReal(0, 3)
+				- that.getReal(1, 2)
+				+ that.getReal(2, 1)
+				+ that.getReal(3, 0);
+		associate[12] = tmp/4.;
+	
+		tmp =     that.getReal(0, 2)
+				- that.getReal(1, 3)
+				+ that.getReal(2, 0)
+				- that.getReal(3, 1);
+		associate[13] = tmp/4.;
+	
+		tmp =   - that.getReal(0, 1)
+				- that.getReal(1, 0)
+				- that.getReal(2, 3)
+				- that.getReal(3, 2);
+		associate[14] = tmp/4.;
+		
+		tmp =   - that.getReal(0, 0)
+				+ that.getReal(1, 1)
+				+ that.getReal(2, 2)
+				- that.getReal(3, 3);
+		associate[15] = tmp/4.;
+	
+	
+		return new Matrix4(associate, new double[16]);
 	}
 
 	/**
 	 * Returns quaternion from left 
 	 */
 	public static double[] abcd(Matrix that) {
+		return abcd(Matrix4.of(that));
+	}
+
+	/**
+	 * Returns quaternion from left 
+	 */
+	public static double[] abcd(Matrix4 that) {
 		
 		double a,b,c,d;
 		
-		a = Math.sqrt(Math.pow(that.getElement(0, 0).getReal(), 2)
-				    + Math.pow(that.getElement(0, 1).getReal(), 2)
-				    + Math.pow(that.getElement(0, 2).getReal(), 2)
-				    + Math.pow(that.getElement(0, 3).getReal(), 2));
-		
-		b = Math.sqrt(Math.pow(that.getElement(1, 0).getReal(), 2)
-					+ Math.pow(that.getElement(1, 1).getReal(), 2)
-					+ Math.pow(that.getElement(1, 2).getReal(), 2)
-					+ Math.pow(that.getElement(1, 3).getReal(), 2));
-	
-		c = Math.sqrt(Math.pow(that.getElement(2, 0).getReal(), 2)
-			    	+ Math.pow(that.getElement(2, 1).getReal(), 2)
-			    	+ Math.pow(that.getElement(2, 2).getReal(), 2)
-			    	+ Math.pow(that.getElement(2, 3).getReal(), 2));
-	
-		d = Math.sqrt(Math.pow(that.getElement(3, 0).getReal(), 2)
-			    	+ Math.pow(that.getElement(3, 1).getReal(), 2)
-			    	+ Math.pow(that.getElement(3, 2).getReal(), 2)
-			    	+ Math.pow(that.getElement(3, 3).getReal(), 2));
-	
-		// determine signs
-		if (that.getElement(0, 0).getReal() < 0)
-			a = -Math.abs(a);
-		else 
-			a = Math.abs(a);
-		
-		if (that.getElement(1, 0).getReal() < 0)
-			b = -Math.abs(b);
-		else 
-			b = Math.abs(b);
-		
-		if (that.getElement(2, 0).getReal() < 0)
-			c = -Math.abs(c);
-		else 
-			c = Math.abs(c);
-		
-		if (that.getElement(3, 0).getReal() < 0)
-			d = -Math.abs(d);
-		else 
-			d = Math.abs(d);
+		a = Math.sqrt(Math.pow(that.getReal(0, 0), 2)
+				    + Math.pow(that.getReal(0, 1), 2)
+				    + Math.pow(that.getReal(0, 2), 2)
+				    + Math.pow(that.getReal(0, 3), 2));
+		
+		b = Math.sqrt(Math.pow(that.getReal(1, 0), 2)
+					+ Math.pow(that.getReal(1, 1), 2)
+					+ Math.pow(that.getReal(1, 2), 2)
+					+ Math.pow(that.getReal(1, 3), 2));
+	
+		c = Math.sqrt(Math.pow(that.getReal(2, 0), 2)
+			    	+ Math.pow(that.getReal(2, 1), 2)
+			    	+ Math.pow(that.getReal(2, 2), 2)
+			    	+ Math.pow(that.getReal(2, 3), 2));
+	
+		d = Math.sqrt(Math.pow(that.getReal(3, 0), 2)
+			    	+ Math.pow(that.getReal(3, 1), 2)
+			    	+ Math.pow(that.getReal(3, 2), 2)
+			    	+ Math.pow(that.getReal(3, 3), 2));
+	
+		// determine signs from the column of the largest element, column 0 can be 0 (CNOT)
+		int row = 0, col = 0;
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 4; j++) {
+				if (Math.abs(that.getReal(i, j)) > Math.abs(that.getReal(row, col))) {
+					row = i;
+					col = j;
+				}
+			}
+		}
+		// same signs as by column 0 when it is not 0 in the pivot row
+		double pivot = that.getReal(row, col);
+		double first = that.getReal(row, 0);
+		if (Math.abs(first) > NOISE*Math.abs(pivot) && first*pivot < 0)
+			pivot = -pivot;
+		
+		double scale = Math.max(Math.max(a, b), Math.max(c, d));
+		a = signed(a, that.getReal(0, col)*pivot, scale);
+		b = signed(b, that.getReal(1, col)*pivot, scale);
+		c = signed(c, that.getReal(2, col)*pivot, scale);
+		d = signed(d, that.getReal(3, col)*pivot, scale);
 				
 		return new double[]{a, b, c, d};
 	}
@@ -300,46 +313,53 @@ public class TwoQubit {
 	 * Returns quaternion from right 
 	 */
 	public static double[] pqrs(Matrix that, double a) {
+		return pqrs(Matrix4.of(that), a);
+	}
+
+	/**
+	 * Returns quaternion from right 
+	 */
+	public static double[] pqrs(Matrix4 that, double a) {
 	
 		double p,q,r,s;
 		
-		p = Math.sqrt(Math.pow(that.getElement(0, 0).getReal(), 2)
-				    + Math.pow(that.getElement(1, 0).getReal(), 2)
-				    + Math.pow(that.getElement(2, 0).getReal(), 2)
-				    + Math.pow(that.getElement(3, 0).getReal(), 2));
+		p = Math.sqrt(Math.pow(that.getReal(0, 0), 2)
+				    + Math.pow(that.getReal(1, 0), 2)
+				    + Math.pow(that.getReal(2, 0), 2)
+				    + Math.pow(that.getReal(3, 0), 2));
 	
-		q = Math.sqrt(Math.pow(that.getElement(0, 1).getReal(), 2)
-					+ Math.pow(that.getElement(1, 1).getReal(), 2)
-					+ Math.pow(that.getElement(2, 1).getReal(), 2)
-					+ Math.pow(that.getElement(3, 1).getReal(), 2));
+		q = Math.sqrt(Math.pow(that.getReal(0, 1), 2)
+					+ Math.pow(that.getReal(1, 1), 2)
+					+ Math.pow(that.getReal(2, 1), 2)
+					+ Math.pow(that.getReal(3, 1), 2));
 	
-		r = Math.sqrt(Math.pow(that.getElement(0, 2).getReal(), 2)
-			    	+ Math.pow(that.getElement(1, 2).getReal(), 2)
-			    	+ Math.pow(that.getElement(2, 2).getReal(), 2)
-			    	+ Math.pow(that.getElement(3, 2).getReal(), 2));
+		r = Math.sqrt(Math.pow(that.getReal(0, 2), 2)
+			    	+ Math.pow(that.getReal(1, 2), 2)
+			    	+ Math.pow(that.getReal(2, 2), 2)
+			    	+ Math.pow(that.getReal(3, 2), 2));
 	
-		s = Math.sqrt(Math.pow(that.getElement(0, 3).getReal(), 2)
-			    	+ Math.pow(that.getElement(1, 3).getReal(), 2)
-			    	+ Math.pow(that.getElement(2, 3).getReal(), 2)
-			    	+ Math.pow(that.getElement(3, 3).getReal(), 2));
+		s = Math.sqrt(Math.pow(that.getReal(0, 3), 2)
+			    	+ Math.pow(that.getReal(1, 3), 2)
+			    	+ Math.pow(that.getReal(2, 3), 2)
+			    	+ Math.pow(that.getReal(3, 3), 2));
 		
 		// determine signs
-		if (that.getElement(0, 0).getReal() < 0)
+		if (that.getReal(0, 0) < 0)
 			p = -Math.abs(p);
 		else 
 			p = Math.abs(p);
 		
-		if (that.getElement(0, 1).getReal() < 0)
+		if (that.getReal(0, 1) < 0)
 			q = -Math.abs(q);
 		else 
 			q = Math.abs(q);
 		
-		if (that.getElement(0, 2).getReal() < 0)
+		if (that.getReal(0, 2) < 0)
 			r = -Math.abs(r);
 		else 
 			r = Math.abs(r);
 		
-		if (that.getElement(0, 3).getReal() < 0)
+		if (that.getReal(0, 3) < 0)
 			s = -Math.abs(s);
 		else 
 			s = Math.abs(s);
@@ -354,47 +374,107 @@ public class TwoQubit {
 		return new double[]{p, q, r, s};
 	}
 
+	/**
+	 * Returns quaternion from right with the signs matching abcd(that) <br />
+	 * Unlike pqrs(that, a) it also works when a is 0
+	 */
+	public static double[] pqrs(Matrix that, double[] abcd) {
+		return pqrs(Matrix4.of(that), abcd);
+	}
+
+	/**
+	 * Returns quaternion from right with the signs matching abcd(that) <br />
+	 * Unlike pqrs(that, a) it also works when a is 0
+	 */
+	public static double[] pqrs(Matrix4 that, double[] abcd) {
+		double[] pqrs = pqrs(that, 1);
+		
+		// signs from the row of the largest of a, b, c, d
+		int row = 0;
+		for (int i = 1; i < 4; i++) {
+			if (Math.abs(abcd[i]) > Math.abs(abcd[row]))
+				row = i;
+		}
+		
+		double scale = 0;
+		for (int j = 0; j < 4; j++)
+			scale = Math.max(scale, Math.abs(pqrs[j]));
+		for (int j = 0; j < 4; j++)
+			pqrs[j] = signed(Math.abs(pqrs[j]), that.getReal(row, j)*abcd[row], scale);
+		return pqrs;
+	}
+
+	/**
+	 * Returns norm with the sign of sign, or 0 if norm is rounding noise against scale
+	 */
+	private static double signed(double norm, double sign, double scale) {
+		if (norm <= NOISE*scale)
+			return 0;
+		return sign < 0 ? -norm : norm;
+	}
+
 	/**
 	 * Returns left isoclinic factor based on a, b, c, d 
 	 */
 	public static Matrix leftFactor(double[] abcd) {
-		return new Matrix (new ComplexNumber[][] {
-				{new ComplexNumber(abcd[0], 0), new ComplexNumber(-abcd[1], 0), new ComplexNumber(-abcd[2], 0), new ComplexNumber(-abcd[3], 0)},
-				{new ComplexNumber(abcd[1], 0), new ComplexNumber( abcd[0], 0), new ComplexNumber(-abcd[3], 0), new ComplexNumber( abcd[2], 0)},
-				{new ComplexNumber(abcd[2], 0), new ComplexNumber( abcd[3], 0), new ComplexNumber( abcd[0], 0), new ComplexNumber(-abcd[1], 0)},
-				{new ComplexNumber(abcd[3], 0), new ComplexNumber(-abcd[2], 0), new ComplexNumber( abcd[1], 0), new ComplexNumber( abcd[0], 0)}
-		});
+		return leftFactor4(abcd).toMatrix();
+	}
+
+	/**
+	 * Returns left isoclinic factor based on a, b, c, d as 4x4 matrix
+	 */
+	private static Matrix4 leftFactor4(double[] abcd) {
+		return new Matrix4(new double[] {
+				abcd[0], -abcd[1], -abcd[2], -abcd[3],
+				abcd[1],  abcd[0], -abcd[3],  abcd[2],
+				abcd[2],  abcd[3],  abcd[0], -abcd[1],
+				abcd[3], -abcd[2],  abcd[1],  abcd[0]
+		}, new double[16]);
 	}
 
 	/**
 	 * Returns right isoclinic factor based on p, q, r, s 
 	 */
 	public static Matrix rightFactor(double[] pqrs) {
-		return new Matrix (new ComplexNumber[][] {
-				{new ComplexNumber(pqrs[0], 0), new ComplexNumber(-pqrs[1], 0), new ComplexNumber(-pqrs[2], 0), new ComplexNumber(-pqrs[3], 0)},
-				{new ComplexNumber(pqrs[1], 0), new ComplexNumber( pqrs[0], 0), new ComplexNumber( pqrs[3], 0), new ComplexNumber(-pqrs[2], 0)},
-				{new ComplexNumber(pqrs[2], 0), new ComplexNumber(-pqrs[3], 0), new ComplexNumber( pqrs[0], 0), new ComplexNumber( pqrs[1], 0)},
-				{new ComplexNumber(pqrs[3], 0), new ComplexNumber( pqrs[2], 0), new ComplexNumber(-pqrs[1], 0), new ComplexNumber( pqrs[0], 0)}
-		});
+		return rightFactor4(pqrs).toMatrix();
+	}
+
+	/**
+	 * Returns right isoclinic factor based on p, q, r, s as 4x4 matrix
+	 */
+	private static Matrix4 rightFactor4(double[] pqrs) {
+		return new Matrix4(new double[] {
+				pqrs[0], -pqrs[1], -pqrs[2], -pqrs[3],
+				pqrs[1],  pqrs[0],  pqrs[3], -pqrs[2],
+				pqrs[2], -pqrs[3],  pqrs[0],  pqrs[1],
+				pqrs[3],  pqrs[2], -pqrs[1],  pqrs[0]
+		}, new double[16]);
 	}
 
 	/**
 	 * Isoclinic decomposition of SO4
 	 */
 	public static double[] SO4(Matrix that) {
-		Matrix A = associateSO4(that);
+		return SO4(Matrix4.of(that));
+	}
+
+	/**
+	 * Isoclinic decomposition of SO4
+	 */
+	public static double[] SO4(Matrix4 that) {
+		Matrix4 A = associateSO4(that);
 		
 		double[] abcd = abcd(A);
 		
-		final Matrix leftFactor = leftFactor(abcd);
-		final Matrix rightFactor = rightFactor(pqrs(A, abcd[0]));
+		final Matrix4 leftFactor = leftFactor4(abcd);
+		final Matrix4 rightFactor = rightFactor4(pqrs(A, abcd));
 		
 		final double[] a = new double[3];
 		final double[] b = new double[3];
 
 		Thread t1 = new Thread(new Runnable() {
 			public void run() {
-				Matrix left = Matrix.mul(Matrix.B(), leftFactor, Matrix.adjoint(Matrix.B()));
+				Matrix4 left = Matrix4.B.mul(leftFactor).mul(Matrix4.B_ADJOINT);
 				double[] m = SU2SU2(left);
 				a[0] = m[3];
 				a[1] = m[4];
@@ -404,7 +484,7 @@ public class TwoQubit {
 
 		Thread t2 = new Thread(new Runnable() {
 			public void run() {
-				Matrix right = Matrix.mul(Matrix.B(), rightFactor, Matrix.adjoint(Matrix.B()));
+				Matrix4 right = Matrix4.B.mul(rightFactor).mul(Matrix4.B_ADJOINT);
 				double[] m = SU2SU2(right);
 				b[0] = m[0];
 				b[1] = m[1];
@@ -430,26 +510,142 @@ public class TwoQubit {
 	
 	
 	
+	/**
+	 * Decomposition of 4x4 unitary matrix that according SU4 procedure <br />
+	 * Returns YZY angles of the first and second qubit of K1, a, b, c of A and
+	 * YZY angles of the first and second qubit of K2, that = K1 * A * K2 up to a global phase,
+	 * see SU4Matrix
+	 */
 	public static double[] SU4(Matrix that) {
-		Matrix G = Matrix.mul(Matrix.adjoint(Matrix.B()), that, Matrix.B());
-		Matrix Msquare = Matrix.mul(Matrix.transpose(G), G);
+		Matrix4 U = special(Matrix4.of(that));
+		Matrix4 G = Matrix4.B_ADJOINT.mul(U).mul(Matrix4.B);
+		Matrix4 Msquare = G.transpose().mul(G);
 		
 		double[] abc = new double[3];
-		Matrix[] AK = MsqDec(Msquare, abc);
+		Matrix4[] AK;
+		try (Workspace ws = Workspace.open()) {
+			double[] re = ws.vector(16), im = ws.vector(16);
+			Msquare.copyTo(re, im);
+			AK = MsqDec(re, im, abc);
+		}
+		
+		return SU4(U, AK, abc);
+	}
+	
+	/**
+	 * Returns the 4x4 matrix K1 * A * K2 given by the result of SU4 <br />
+	 * K1 = YZYMatrix(angles[0], angles[1], angles[2]) kron YZYMatrix(angles[3], angles[4], angles[5]),
+	 * K2 the same from angles[9..14] and for a, b, c = angles[6..8]
+	 * A = B * diag(e^(i*(a-b+c)), e^(i*(a+b-c)), e^(-i*(a+b+c)), e^(i*(b+c-a))) * B^+ / 2
+	 */
+	public static Matrix SU4Matrix(double[] angles) {
+		Matrix4 K1 = OneQubit.YZYMatrix2(angles[0], angles[1], angles[2]).kron(OneQubit.YZYMatrix2(angles[3], angles[4], angles[5]));
+		Matrix4 K2 = OneQubit.YZYMatrix2(angles[9], angles[10], angles[11]).kron(OneQubit.YZYMatrix2(angles[12], angles[13], angles[14]));
+		
+		double a = angles[6], b = angles[7], c = angles[8];
+		double[] t = {a - b + c, a + b - c, -(a + b + c), b + c - a};
+		double[] re = new double[16], im = new double[16];
+		for (int i = 0; i < 4; i++) {
+			re[i*5] = Math.cos(t[i]);
+			im[i*5] = Math.sin(t[i]);
+		}
+		// B is not normalized, B * B^+ = 2
+		Matrix4 A = Matrix4.B.mul(new Matrix4(re, im)).mul(Matrix4.B_ADJOINT).mul(0.5);
 		
-		Matrix k2SO = AK[0];
-		Matrix ASo = AK[1];
+		return K1.mul(A).mul(K2).toMatrix();
+	}
+	
+	/**
+	 * Decomposition of every matrix of gates according SU4 procedure,
+	 * result[g] is SU4(gates[g]) <br />
+	 * The eigen decompositions of all M^2 are solved together by SymmetricEigen4.decomposeBatch
+	 */
+	public static double[][] SU4(Matrix[] gates) {
+		int count = gates.length;
+		Matrix4[] U = new Matrix4[count];
+		double[] re = new double[16*count], im = new double[16*count];
+		double[] mRe = new double[16], mIm = new double[16];
+		for (int g = 0; g < count; g++) {
+			U[g] = special(Matrix4.of(gates[g]));
+			Matrix4 G = Matrix4.B_ADJOINT.mul(U[g]).mul(Matrix4.B);
+			G.transpose().mul(G).copyTo(mRe, mIm);
+			for (int e = 0; e < 16; e++) {
+				re[e*count+g] = mRe[e];
+				im[e*count+g] = mIm[e];
+			}
+		}
+		
+		double[] q = new double[16*count];
+		double[] valRe = new double[4*count], valIm = new double[4*count];
+		boolean[] ok = new boolean[count];
+		SymmetricEigen4.decomposeBatch(count, re, im, q, valRe, valIm, ok);
+		
+		double[][] result = new double[count][];
+		double[] vecRe = new double[16], vecIm = new double[16];
+		double[] lRe = new double[4], lIm = new double[4];
+		for (int g = 0; g < count; g++) {
+			if (ok[g]) {
+				for (int e = 0; e < 16; e++) {
+					vecRe[e] = q[e*count+g];
+					vecIm[e] = 0;
+				}
+				for (int k = 0; k < 4; k++) {
+					lRe[k] = valRe[k*count+g];
+					lIm[k] = valIm[k*count+g];
+				}
+			} else {
+				for (int e = 0; e < 16; e++) {
+					mRe[e] = re[e*count+g];
+					mIm[e] = im[e*count+g];
+				}
+				generalEigen(new Matrix(4, mRe, mIm), lRe, lIm, vecRe, vecIm);
+			}
+			
+			double[] abc = new double[3];
+			result[g] = SU4(U[g], MsqDec(lRe, lIm, vecRe, vecIm, abc), abc);
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns that times e^(-i*phi/4) for det(that) = e^(i*phi), so that the result is in SU(4) <br />
+	 * MsqDec chooses the phases of A for determinant 1
+	 */
+	private static Matrix4 special(Matrix4 that) {
+		double[] det = new double[2];
+		that.determinant(det);
+		double phi = -Math.atan2(det[1], det[0])/4;
+		double scale = Math.pow(Math.hypot(det[0], det[1]), -0.25);
+		double cos = scale*Math.cos(phi), sin = scale*Math.sin(phi);
+		
+		double[] re = new double[16], im = new double[16];
+		that.copyTo(re, im);
+		for (int i = 0; i < 16; i++) {
+			double r = re[i];
+			re[i] = r*cos - im[i]*sin;
+			im[i] = r*sin + im[i]*cos;
+		}
+		return new Matrix4(re, im);
+	}
+	
+	/**
+	 * Rest of SU4 after MsqDec gave K2 and A in the magic basis
+	 */
+	private static double[] SU4(Matrix4 U, Matrix4[] AK, double[] abc) {
+		Matrix4 k2SO = AK[0];
+		Matrix4 ASo = AK[1];
 		
 		double[] factorsk2SO = positiveSU2SU2(k2SO);
 		
-		Matrix P2 = OneQubit.YZYMatrix(factorsk2SO[0], factorsk2SO[1], factorsk2SO[2]);
-		Matrix Q2 = OneQubit.YZYMatrix(factorsk2SO[3], factorsk2SO[4], factorsk2SO[5]);
+		// positiveSU2SU2 and SO4 give the angles of the second qubit first
+		Matrix2 P2 = OneQubit.YZYMatrix2(factorsk2SO[3], factorsk2SO[4], factorsk2SO[5]);
+		Matrix2 Q2 = OneQubit.YZYMatrix2(factorsk2SO[0], factorsk2SO[1], factorsk2SO[2]);
 		
-		Matrix K2 = Matrix.kron(P2, Q2);
-		Matrix A = Matrix.mul(Matrix.B(), ASo, Matrix.adjoint(Matrix.B()));
-		Matrix K1 = Matrix.mul(that, Matrix.adjoint(K2), Matrix.adjoint(A));
+		Matrix4 K2 = P2.kron(Q2);
+		Matrix4 A = Matrix4.B.mul(ASo).mul(Matrix4.B_ADJOINT);
+		Matrix4 K1 = U.mul(K2.adjoint()).mul(A.adjoint());
 				
-		Matrix K1So = Matrix.mul(Matrix.adjoint(Matrix.B()), K1, Matrix.B());
+		Matrix4 K1So = Matrix4.B_ADJOINT.mul(K1).mul(Matrix4.B);
 		
 		double[] abcd12 = SO4(K1So);
 //					a2,b2,c2 = su2.fcartanYZYf(P1)
@@ -459,81 +655,171 @@ public class TwoQubit {
 //
 //		return [a2,b2,c2,a1,b1,c1,a,b,c,p2,q2,r2,p1,q1,r1,K1,A,K2,P2,Q2,P1,Q1]
 		
-		
-		return new double[] {abcd12[0], abcd12[1], abcd12[2], abcd12[3], abcd12[4], abcd12[5],
+
+		return new double[] {abcd12[3], abcd12[4], abcd12[5], abcd12[0], abcd12[1], abcd12[2],
 							 abc[0], abc[1], abc[2], 
-							 factorsk2SO[0], factorsk2SO[1], factorsk2SO[2], factorsk2SO[3], factorsk2SO[4], factorsk2SO[5] };
+							 factorsk2SO[3], factorsk2SO[4], factorsk2SO[5], factorsk2SO[0], factorsk2SO[1], factorsk2SO[2] };
 	}
 	
 	public static Matrix[] MsqDec (Matrix Msq, double[] abc) {
-
-		Object[] eigenvalEigenvect  = Matrix.eigenValuesAndVector(Msq);
-		
-		ComplexNumber[] MsqEigs = (ComplexNumber[])eigenvalEigenvect[0];
-		
-		ComplexNumber[][] MsqEigVecs = (ComplexNumber[][])eigenvalEigenvect[1];
-		
-		double[] MsqArgs = ComplexNumber.angle(MsqEigs);
-		
-		double[] MArgs = new double[MsqArgs.length];
-		Arrays.sort(MArgs);
-
-		for (int i = 0; i < MsqArgs.length; i++)
-			MArgs[i] = MsqArgs[i]/2;
-		
-		double sum = 0;
-		double t0, t1, t2, t3;
-		for (int i = 0; i < MArgs.length; i++)
-			sum += MArgs[i];
- 
-////		System.out.println(sum);
-
-		ComplexNumber[][] k2C = new ComplexNumber[4][4];
-		
-		if( Math.abs(sum - Math.PI) < 0.00001 ) {
-			t0 = MArgs[1];
-			t1 = MArgs[2];
-			t2 = MArgs[3]-Math.PI;
-			t3 = MArgs[0];
-		
-			k2C[0] = MsqEigVecs[1];
-			k2C[1] = MsqEigVecs[2];
-			k2C[2] = MsqEigVecs[3];
-			k2C[3] = MsqEigVecs[0];
+		Matrix4[] AK = MsqDec(Msq.getRealPart(), Msq.getImaginaryPart(), abc);
+		return new Matrix[] {AK[0].toMatrix(), AK[1].toMatrix()};
+	}
+	
+	/**
+	 * MsqDec for Msq given by its planes, returns K2 and A as Matrix4 <br />
+	 * Eigenvectors and eigenvalues are kept in the Workspace
+	 */
+	private static Matrix4[] MsqDec(double[] re, double[] im, double[] abc) {
+		try (Workspace ws = Workspace.open()) {
+			// eigenvectors as rows, real orthogonal unless the general solver was needed
+			double[] vecRe = ws.vector(16), vecIm = ws.vector(16);
+			double[] valRe = ws.vector(4), valIm = ws.vector(4);
+			
+			if (!SymmetricEigen4.decompose(re, im, vecRe, valRe, valIm)) {
+				// real and imaginary parts do not commute, Msq is not G^T*G of a unitary G
+				generalEigen(new Matrix(4, re, im), valRe, valIm, vecRe, vecIm);
+			}
+			
+			return MsqDec(valRe, valIm, vecRe, vecIm, abc);
+		}
+	}
+	
+	/**
+	 * Eigen decomposition of Msq by Matrix.eigenDecomposition, normalized eigenvectors as rows <br />
+	 * Msq of a unitary gate is unitary, then the eigenvectors are orthonormal also for
+	 * repeated eigenvalues
+	 */
+	private static void generalEigen(Matrix Msq, double[] valRe, double[] valIm, double[] vecRe, double[] vecIm) {
+		EigenResult eig = Matrix.eigenDecomposition(Msq, true);
+		for (int i = 0; i < 4; i++) {
+			valRe[i] = eig.getValueReal(i);
+			valIm[i] = eig.getValueImaginary(i);
+			double norm = 0;
+			for (int j = 0; j < 4; j++) {
+				// the solver gives eigenvector i as column i
+				vecRe[i*4+j] = eig.getVectorReal(j, i);
+				vecIm[i*4+j] = eig.getVectorImaginary(j, i);
+				norm += vecRe[i*4+j]*vecRe[i*4+j] + vecIm[i*4+j]*vecIm[i*4+j];
+			}
+			norm = Math.sqrt(norm);
+			for (int j = 0; j < 4; j++) {
+				vecRe[i*4+j] /= norm;
+				vecIm[i*4+j] /= norm;
+			}
+		}
+	}
+	
+	/**
+	 * MsqDec for eigenvalues valRe + i*valIm of Msq and eigenvectors vecRe + i*vecIm given as rows,
+	 * the double temporaries come from the Workspace, the index and sign arrays are local
+	 */
+	private static Matrix4[] MsqDec(double[] valRe, double[] valIm, double[] vecRe, double[] vecIm, double[] abc) {
+		try (Workspace ws = Workspace.open()) {
+			// half arguments of the eigenvalues in ascending order, order keeps the indices
+			int[] order = new int[4];
+			double[] MsqArgs = ws.vector(4);
+			for (int i = 0; i < 4; i++) {
+				order[i] = i;
+				MsqArgs[i] = Math.atan2(valIm[i], valRe[i]);
+				for (int j = i; j > 0 && MsqArgs[order[j-1]] > MsqArgs[i]; j--) {
+					order[j] = order[j-1];
+					order[j-1] = i;
+				}
+			}
+			
+			// negate[i] is set if the i-th sorted eigenvector is taken with sign -1
+			double[] MArgs = ws.vector(4);
+			boolean[] negate = new boolean[4];
+			for (int i = 0; i < 4; i++)
+				MArgs[i] = MsqArgs[order[i]]/2;
 			
-			for (int i = 0; i < k2C[3].length; i++)
-				k2C[3][i].neg();
+			// sorting by an odd permutation changes the sign of the determinant, keep it +1
+			int swaps = 0;
+			for (int i = 0; i < 4; i++) {
+				for (int j = i+1; j < 4; j++) {
+					if (order[i] > order[j])
+						swaps++;
+				}
+			}
+			if (swaps % 2 == 1)
+				negate[0] = !negate[0];
+			
+			double sum = 0;
+			double t0, t1, t2, t3;
+			for (int i = 0; i < MArgs.length; i++)
+				sum += MArgs[i];
+			
+			// rows[i] is the sorted eigenvector that becomes row i of K2
+			int[] rows = new int[4];
+			
+			// half arguments add up to a multiple of pi, an odd one would make det(A) = -1
+			if( Math.abs(Math.abs(sum) - Math.PI) < 0.00001 ) {
+				t0 = MArgs[1];
+				t1 = MArgs[2];
+				t2 = MArgs[3]-Math.signum(sum)*Math.PI;
+				t3 = MArgs[0];
+				
+				rows[0] = 1;
+				rows[1] = 2;
+				rows[2] = 3;
+				rows[3] = 0;
+				negate[0] = !negate[0];
+			} else {
+				t0 = MArgs[2];
+				t1 = MArgs[3];
+				t2 = MArgs[0];
+				t3 = MArgs[1];
+				
+				rows[0] = 2;
+				rows[1] = 3;
+				rows[2] = 0;
+				rows[3] = 1;
+			}
 			
-		} else {
-			t0 = MArgs[2];
-			t1 = MArgs[3];
-			t2 = MArgs[0];
-			t3 = MArgs[1];
+			// adjoint of the transpose is the conjugate
+			double[] kRe = ws.vector(16), kIm = ws.vector(16);
+			for (int i = 0; i < 4; i++) {
+				int r = rows[i];
+				int v = order[r];
+				for (int j = 0; j < 4; j++) {
+					double vr = vecRe[v*4+j], vi = vecIm[v*4+j];
+					kRe[i*4+j] = negate[r] ? -vr : vr;
+					kIm[i*4+j] = negate[r] ? vi : -vi;
+				}
+			}
+			
+			// A = diag(e^(i*t0), ..., e^(i*t3)), as Matrix.matrixFromArgs
+			double[] args = ws.vector(4), cos = ws.vector(4), sin = ws.vector(4);
+			args[0] = t0;
+			args[1] = t1;
+			args[2] = t2;
+			args[3] = t3;
+			BatchTrig.sincos(4, args, sin, cos);
+			double[] aRe = ws.vector(16), aIm = ws.vector(16);
+			for (int i = 0; i < 4; i++) {
+				aRe[i*5] = cos[i];
+				aIm[i*5] = sin[i];
+			}
 			
-			k2C[0] = MsqEigVecs[2];
-			k2C[1] = MsqEigVecs[3];
-			k2C[2] = MsqEigVecs[0];
-			k2C[3] = MsqEigVecs[1];
+			abc[0] = (t0 + t1)/2.0;
+			abc[1] = (t1 + t3)/2.0;
+			abc[2] = (t0 + t3)/2.0;
+			
+			return new Matrix4[] {new Matrix4(kRe, kIm), new Matrix4(aRe, aIm)};
 		}
-		
-		Matrix K2so4 = Matrix.transpose(new Matrix(k2C));
-		K2so4.adjoint();
-		
-		Matrix A = Matrix.matrixFromArgs(t0, t1, t2, t3);
-		
-		abc[0] = (t0 + t1)/2.0;
-		abc[1] = (t1 + t3)/2.0;
-		abc[2] = (t0 + t3)/2.0;
-
-		return new Matrix[]{K2so4, A};
 	}
 	
 	public static double[] positiveSU2SU2(Matrix that) {
-		Matrix A = associateSO4(that);
+		return positiveSU2SU2(Matrix4.of(that));
+	}
+	
+	public static double[] positiveSU2SU2(Matrix4 that) {
+		Matrix4 A = associateSO4(that);
 	
 		double[] abcd = abcd(A);
-		double[] pqrs = pqrs(A, abcd[0]);
-		
+		double[] pqrs = pqrs(A, abcd);
+
 		double t1 = abcd[0]*abcd[1];
 		double t2 = abcd[0]*abcd[2];
 		double t3 = pqrs[0]*pqrs[1];
@@ -580,16 +866,16 @@ public class TwoQubit {
 			pqrsf[3] = pqrs[3];
 		}
 
-		final Matrix leftFactor = leftFactor(abcdf);
+		final Matrix4 leftFactor = leftFactor4(abcdf);
 
-		final Matrix rightFactor = rightFactor(pqrsf);
+		final Matrix4 rightFactor = rightFactor4(pqrsf);
 
 		final double[] a = new double[3];
 		final double[] b = new double[3];
 
 		Thread thread1 = new Thread(new Runnable() {
 			public void run() {
-				Matrix left = Matrix.mul(Matrix.B(), leftFactor, Matrix.adjoint(Matrix.B()));
+				Matrix4 left = Matrix4.B.mul(leftFactor).mul(Matrix4.B_ADJOINT);
 				double[] m = SU2SU2(left);
 				a[0] = m[3];
 				a[1] = m[4];
@@ -599,7 +885,7 @@ public class TwoQubit {
 
 		Thread thread2 = new Thread(new Runnable() {
 			public void run() {
-				Matrix right = Matrix.mul(Matrix.B(), rightFactor, Matrix.adjoint(Matrix.B()));
+				Matrix4 right = Matrix4.B.mul(rightFactor).mul(Matrix4.B_ADJOINT);
 				double[] m = SU2SU2(right);
 				b[0] = m[0];
 				b[1] = m[1];
@@ -0,0 +1,410 @@
+package matrix;
+
+/**
+ * Eigenvalues and eigenvectors of a general complex nxn matrix on primitive arrays <br />
+ * Port of opensourcephysics.ComplexEigenvalueDecomposition (stabilized elementary
+ * reduction to Hessenberg form, cxhess, and LR iteration, cxeig2c) that works on
+ * the re/im planes of a Matrix instead of Complex[][] and can skip the eigenvectors.
+ * Unlike the original the Hessenberg multipliers are kept below the subdiagonal
+ * and the row interchanges are recorded step by step (as in EISPACK comhes),
+ * cxeig2c needs both to start the eigenvector transformation <br />
+ * The LR iteration deflates at 2^-23, so Matrix.eigenDecomposition only uses the
+ * closed form for 1x1 and 2x2 and leaves larger matrices to ComplexSchur
+ * @author Arsen Babakhanyan
+ */
+final class ComplexEigen {
+	
+	// relative size of a negligible subdiagonal element (same as the original)
+	private static final double ACC = Math.pow(2.0, -23);
+	
+	private ComplexEigen() {
+	}
+	
+	/**
+	 * Computes eigenvalues of re + i*im into valRe, valIm, and if vecRe is not null the
+	 * eigenvectors as columns of vecRe + i*vecIm (not normalized) <br />
+	 * re and im are overwritten, returns false if the iteration did not converge
+	 */
+	static boolean decompose(int n, double[] re, double[] im, double[] valRe, double[] valIm,
+			double[] vecRe, double[] vecIm) {
+		boolean vectors = vecRe != null;
+		if (n == 1) {
+			valRe[0] = re[0];
+			valIm[0] = im[0];
+			if (vectors) {
+				vecRe[0] = 1;
+				vecIm[0] = 0;
+			}
+			return true;
+		}
+		if (n == 2) {
+			twoByTwo(re, im, valRe, valIm, vecRe, vecIm);
+			return true;
+		}
+		
+		int[] rowcol = new int[n];
+		hessenberg(n, re, im, rowcol);
+		return lr(n, re, im, rowcol, valRe, valIm, vecRe, vecIm);
+	}
+	
+	/**
+	 * Roots of the characteristic polynomial, eigenvectors normalized
+	 */
+	private static void twoByTwo(double[] re, double[] im, double[] valRe, double[] valIm,
+			double[] vecRe, double[] vecIm) {
+		double[] tmp = new double[2];
+		// b = a00 + a11, c = a00*a11 - a01*a10
+		double bRe = re[0] + re[3], bIm = im[0] + im[3];
+		double cRe = (re[0]*re[3] - im[0]*im[3]) - (re[1]*re[2] - im[1]*im[2]);
+		double cIm = (im[0]*re[3] + re[0]*im[3]) - (im[1]*re[2] + re[1]*im[2]);
+		sqrt(bRe*bRe - bIm*bIm - 4*cRe, 2*bRe*bIm - 4*cIm, tmp);
+		valRe[0] = (bRe + tmp[0])/2;
+		valIm[0] = (bIm + tmp[1])/2;
+		valRe[1] = (bRe - tmp[0])/2;
+		valIm[1] = (bIm - tmp[1])/2;
+		if (vecRe == null)
+			return;
+		
+		// eigenvectors in columns
+		double zr0 = -re[1], zi0 = -im[1];
+		double zr1 = re[0] - valRe[0], zi1 = im[0] - valIm[0];
+		double t = Math.sqrt(zr0*zr0 + zi0*zi0 + zr1*zr1 + zi1*zi1);
+		vecRe[0] = zr0/t;
+		vecIm[0] = zi0/t;
+		vecRe[2] = zr1/t;
+		vecIm[2] = zi1/t;
+		zr0 = re[3] - valRe[1];
+		zi0 = im[3] - valIm[1];
+		zr1 = -re[2];
+		zi1 = -im[2];
+		t = Math.sqrt(zr0*zr0 + zi0*zi0 + zr1*zr1 + zi1*zi1);
+		vecRe[1] = zr0/t;
+		vecIm[1] = zi0/t;
+		vecRe[3] = zr1/t;
+		vecIm[3] = zi1/t;
+	}
+	
+	/**
+	 * Reduces a to upper Hessenberg form by stabilized elementary similarity transformations,
+	 * rowcol[m] gets the row swapped with row m at step m and the multipliers stay below the subdiagonal
+	 */
+	private static void hessenberg(int n, double[] re, double[] im, int[] rowcol) {
+		double[] y = new double[2];
+		double tmp;
+		for (int m = 1; m < n-1; m++) {
+			int i = m;
+			double xRe = 0, xIm = 0;
+			for (int j = m; j < n; j++) {
+				if (sumabs(re[j*n+m-1], im[j*n+m-1]) > sumabs(xRe, xIm)) {
+					xRe = re[j*n+m-1];
+					xIm = im[j*n+m-1];
+					i = j;
+				}
+			}
+			
+			rowcol[m] = i;
+			if (i != m) {
+				for (int j = m-1; j < n; j++) {
+					tmp = re[i*n+j]; re[i*n+j] = re[m*n+j]; re[m*n+j] = tmp;
+					tmp = im[i*n+j]; im[i*n+j] = im[m*n+j]; im[m*n+j] = tmp;
+				}
+				for (int j = 0; j < n; j++) {
+					tmp = re[j*n+i]; re[j*n+i] = re[j*n+m]; re[j*n+m] = tmp;
+					tmp = im[j*n+i]; im[j*n+i] = im[j*n+m]; im[j*n+m] = tmp;
+				}
+			}
+			
+			if (sumabs(xRe, xIm) == 0)
+				continue;
+			for (int ii = m+1; ii < n; ii++) {
+				if (sumabs(re[ii*n+m-1], im[ii*n+m-1]) == 0)
+					continue;
+				
+				div(re[ii*n+m-1], im[ii*n+m-1], xRe, xIm, y);
+				double yr = y[0], yi = y[1];
+				re[ii*n+m-1] = yr;
+				im[ii*n+m-1] = yi;
+				for (int j = m; j < n; j++) {
+					double ar = re[m*n+j], ai = im[m*n+j];
+					re[ii*n+j] -= (yr*ar) - (yi*ai);
+					im[ii*n+j] -= (yi*ar) + (yr*ai);
+				}
+				for (int j = 0; j < n; j++) {
+					double ar = re[j*n+ii], ai = im[j*n+ii];
+					re[j*n+m] += (yr*ar) - (yi*ai);
+					im[j*n+m] += (yi*ar) + (yr*ai);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * LR iteration on the Hessenberg matrix, then back substitution for the eigenvectors
+	 */
+	private static boolean lr(int n, double[] re, double[] im, int[] rowcol,
+			double[] valRe, double[] valIm, double[] vecRe, double[] vecIm) {
+		boolean vectors = vecRe != null;
+		double[] z = new double[2];
+		boolean[] interchanged = new boolean[n];
+		double tRe = 0, tIm = 0, tmp;
+		int low = 0;
+		int itn = 30*n;
+		
+		if (vectors) {
+			// transformation of the Hessenberg reduction
+			for (int i = 0; i < n*n; i++) {
+				vecRe[i] = (i % (n+1) == 0) ? 1 : 0;
+				vecIm[i] = 0;
+			}
+			for (int ii = n-2; ii > 0; ii--) {
+				int j = rowcol[ii];
+				for (int k = ii+1; k < n; k++) {
+					vecRe[k*n+ii] = re[k*n+ii-1];
+					vecIm[k*n+ii] = im[k*n+ii-1];
+				}
+				if (ii != j) {
+					for (int k = ii; k < n; k++) {
+						vecRe[ii*n+k] = vecRe[j*n+k];
+						vecIm[ii*n+k] = vecIm[j*n+k];
+						vecRe[j*n+k] = 0;
+						vecIm[j*n+k] = 0;
+					}
+					vecRe[j*n+ii] = 1;
+				}
+			}
+		}
+		
+		int ien = n-1;
+		while (low <= ien) {
+			int its = 0;
+			while (true) {
+				// look for single small subdiagonal element
+				int k = low;
+				for (int kk = ien; kk > low; kk--) {
+					double ahr = sumabs(re[kk*n+kk-1], im[kk*n+kk-1]);
+					double aahr = ACC*(sumabs(re[(kk-1)*n+kk-1], im[(kk-1)*n+kk-1]) + sumabs(re[kk*n+kk], im[kk*n+kk]));
+					if (ahr <= aahr) {
+						k = kk;
+						break;
+					}
+				}
+				if (k == ien)
+					break;
+				if (itn <= 0)
+					return false;
+				
+				// shift
+				double sRe, sIm;
+				if (its == 10 || its == 20) {
+					sRe = Math.abs(re[ien*n+ien-1]) + Math.abs(re[(ien-1)*n+ien-2]);
+					sIm = Math.abs(im[ien*n+ien-1]) + Math.abs(im[(ien-1)*n+ien-2]);
+				} else {
+					sRe = re[ien*n+ien];
+					sIm = im[ien*n+ien];
+					double ar = re[(ien-1)*n+ien], ai = im[(ien-1)*n+ien];
+					double br = re[ien*n+ien-1], bi = im[ien*n+ien-1];
+					double xRe = (ar*br) - (ai*bi), xIm = (ai*br) + (ar*bi);
+					if (sumabs(xRe, xIm) > 0) {
+						double yRe = (re[(ien-1)*n+ien-1] - sRe)/2, yIm = (im[(ien-1)*n+ien-1] - sIm)/2;
+						sqrt((yRe*yRe) - (yIm*yIm) + xRe, 2*yRe*yIm + xIm, z);
+						if (yRe*z[0] + yIm*z[1] < 0) {
+							z[0] = -z[0];
+							z[1] = -z[1];
+						}
+						div(xRe, xIm, yRe + z[0], yIm + z[1], z);
+						sRe -= z[0];
+						sIm -= z[1];
+					}
+				}
+				for (int i = low; i <= ien; i++) {
+					re[i*n+i] -= sRe;
+					im[i*n+i] -= sIm;
+				}
+				tRe += sRe;
+				tIm += sIm;
+				its++;
+				itn--;
+				
+				// look for two consecutive small subdiagonal elements
+				int j = k+1;
+				double xr = sumabs(re[(ien-1)*n+ien-1], im[(ien-1)*n+ien-1]);
+				double yr = sumabs(re[ien*n+ien-1], im[ien*n+ien-1]);
+				double zr = sumabs(re[ien*n+ien], im[ien*n+ien]);
+				int m = k;
+				for (int mm = ien-1; mm >= j; mm--) {
+					double yi = yr;
+					yr = sumabs(re[mm*n+mm-1], im[mm*n+mm-1]);
+					double xi = zr;
+					zr = xr;
+					xr = sumabs(re[(mm-1)*n+mm-1], im[(mm-1)*n+mm-1]);
+					if (yr <= (ACC*zr/yi*(zr+xr+xi))) {
+						m = mm;
+						break;
+					}
+				}
+				
+				// triangular decomposition A = L*R
+				for (int i = m+1; i <= ien; i++) {
+					int p = (i-1)*n+i-1, q = i*n+i-1;
+					if (sumabs(re[p], im[p]) >= sumabs(re[q], im[q])) {
+						div(re[q], im[q], re[p], im[p], z);
+						interchanged[i] = false;
+					} else {
+						for (int jj = i-1; jj < n; jj++) {
+							tmp = re[(i-1)*n+jj]; re[(i-1)*n+jj] = re[i*n+jj]; re[i*n+jj] = tmp;
+							tmp = im[(i-1)*n+jj]; im[(i-1)*n+jj] = im[i*n+jj]; im[i*n+jj] = tmp;
+						}
+						// after the interchange row i-1 holds the old row i
+						div(re[q], im[q], re[p], im[p], z);
+						interchanged[i] = true;
+					}
+					double zRe = z[0], zIm = z[1];
+					re[q] = zRe;
+					im[q] = zIm;
+					for (int jj = i; jj < n; jj++) {
+						double ar = re[(i-1)*n+jj], ai = im[(i-1)*n+jj];
+						re[i*n+jj] -= (zRe*ar) - (zIm*ai);
+						im[i*n+jj] -= (zIm*ar) + (zRe*ai);
+					}
+				}
+				
+				// composition R*L = H
+				for (int jj = m+1; jj <= ien; jj++) {
+					double xRe = re[jj*n+jj-1], xIm = im[jj*n+jj-1];
+					re[jj*n+jj-1] = 0;
+					im[jj*n+jj-1] = 0;
+					if (interchanged[jj]) {
+						for (int i = low; i <= jj; i++) {
+							tmp = re[i*n+jj-1]; re[i*n+jj-1] = re[i*n+jj]; re[i*n+jj] = tmp;
+							tmp = im[i*n+jj-1]; im[i*n+jj-1] = im[i*n+jj]; im[i*n+jj] = tmp;
+						}
+						if (vectors) {
+							for (int i = low; i < n; i++) {
+								tmp = vecRe[i*n+jj-1]; vecRe[i*n+jj-1] = vecRe[i*n+jj]; vecRe[i*n+jj] = tmp;
+								tmp = vecIm[i*n+jj-1]; vecIm[i*n+jj-1] = vecIm[i*n+jj]; vecIm[i*n+jj] = tmp;
+							}
+						}
+					}
+					for (int i = low; i <= jj; i++) {
+						double ar = re[i*n+jj], ai = im[i*n+jj];
+						re[i*n+jj-1] += (xRe*ar) - (xIm*ai);
+						im[i*n+jj-1] += (xIm*ar) + (xRe*ai);
+					}
+					if (vectors) {
+						for (int i = low; i < n; i++) {
+							double ar = vecRe[i*n+jj], ai = vecIm[i*n+jj];
+							vecRe[i*n+jj-1] += (xRe*ar) - (xIm*ai);
+							vecIm[i*n+jj-1] += (xIm*ar) + (xRe*ai);
+						}
+					}
+				}
+			}
+			
+			// a root found
+			valRe[ien] = re[ien*n+ien] + tRe;
+			valIm[ien] = im[ien*n+ien] + tIm;
+			ien--;
+		}
+		if (!vectors)
+			return true;
+		
+		// all roots found
+		double anorm = 0;
+		for (int i = 0; i < n; i++) {
+			anorm += sumabs(valRe[i], valIm[i]);
+			for (int jj = i+1; jj < n; jj++)
+				anorm += sumabs(re[i*n+jj], im[i*n+jj]);
+		}
+		if (anorm == 0)
+			return true;
+		double accnorm = anorm*ACC;
+		
+		// back substitution, eigenvectors of the upper triangular form
+		for (ien = n-1; ien > low; ien--) {
+			double xRe = valRe[ien], xIm = valIm[ien];
+			for (int i = ien-1; i >= low; i--) {
+				double zRe = re[i*n+ien], zIm = im[i*n+ien];
+				for (int jj = i+1; jj < ien; jj++) {
+					double ar = re[i*n+jj], ai = im[i*n+jj];
+					double br = re[jj*n+ien], bi = im[jj*n+ien];
+					zRe += (ar*br) - (ai*bi);
+					zIm += (ai*br) + (ar*bi);
+				}
+				double yRe = xRe - valRe[i], yIm = xIm - valIm[i];
+				if (sumabs(yRe, yIm) == 0) {
+					yRe = accnorm;
+					yIm = 0;
+				}
+				div(zRe, zIm, yRe, yIm, z);
+				re[i*n+ien] = z[0];
+				im[i*n+ien] = z[1];
+			}
+		}
+		
+		// multiply by the transformation to get the eigenvectors of the full matrix
+		for (int jj = n-1; jj >= 0; jj--) {
+			for (int i = 0; i < n; i++) {
+				double zRe = vecRe[i*n+jj], zIm = vecIm[i*n+jj];
+				for (int k = 0; k < jj; k++) {
+					double ar = vecRe[i*n+k], ai = vecIm[i*n+k];
+					double br = re[k*n+jj], bi = im[k*n+jj];
+					zRe += (ar*br) - (ai*bi);
+					zIm += (ai*br) + (ar*bi);
+				}
+				vecRe[i*n+jj] = zRe;
+				vecIm[i*n+jj] = zIm;
+			}
+		}
+		return true;
+	}
+	
+	static double sumabs(double re, double im) {
+		return Math.abs(re) + Math.abs(im);
+	}
+	
+	/**
+	 * Writes (ar + ai*i) / (br + bi*i) into out, the scaled division of Complex.div
+	 */
+	static void div(double ar, double ai, double br, double bi, double[] out) {
+		double r, den;
+		if (Math.abs(br) >= Math.abs(bi)) {
+			r = bi/br;
+			den = br + r*bi;
+			out[0] = (ar + r*ai)/den;
+			out[1] = (ai - r*ar)/den;
+		} else {
+			r = br/bi;
+			den = bi + r*br;
+			out[0] = (ar*r + ai)/den;
+			out[1] = (ai*r - ar)/den;
+		}
+	}
+	
+	/**
+	 * Writes the principal square root of re + im*i into out, as Complex.sqrt
+	 */
+	static void sqrt(double re, double im, double[] out) {
+		if (re == 0 && im == 0) {
+			out[0] = 0;
+			out[1] = 0;
+			return;
+		}
+		double absRe = Math.abs(re), absIm = Math.abs(im), w, r;
+		if (absRe >= absIm) {
+			r = absIm/absRe;
+			w = Math.sqrt(absRe)*Math.sqrt(0.5*(1.0 + Math.sqrt(1.0 + r*r)));
+		} else {
+			r = absRe/absIm;
+			w = Math.sqrt(absIm)*Math.sqrt(0.5*(r + Math.sqrt(1.0 + r*r)));
+		}
+		if (re >= 0) {
+			out[0] = w;
+			out[1] = im/(2.0*w);
+		} else {
+			if (im < 0)
+				w = -w;
+			out[0] = im/(2.0*w);
+			out[1] = w;
+		}
+	}
+}
@@ -0,0 +1,609 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Complex matrix multiplication kernels working on split planes
+ * (real parts and imaginary parts stored row by row in separate arrays) <br />
+ * The kernels are written so that the innermost loop runs over one
+ * contiguous row of b and c without branches or allocation, which lets the
+ * JIT compile it to packed SIMD instructions <br />
+ * Large products are cut into tiles that fit into cache and bands of output
+ * rows are computed in parallel on a ForkJoinPool
+ * @author Arsen Babakhanyan
+ */
+public final class ComplexGemm {
+	
+	/**
+	 * Algorithm used for complex products <br />
+	 * STANDARD - four real multiplications per complex product <br />
+	 * GAUSS_3M - three real matrix products on the real and imaginary planes: <br />
+	 * T1 = Ar*Br, T2 = Ai*Bi, T3 = (Ar+Ai)*(Br+Bi), Cr = T1 - T2, Ci = T3 - T1 - T2 <br />
+	 * It saves a quarter of the multiplications. The real part is as accurate as
+	 * with STANDARD, for the imaginary part only a weaker bound holds
+	 * (Higham, Stability of a method for multiplying complex matrices with three
+	 * real matrix multiplications, 1992): elementwise, to first order in u = 2^-53, <br />
+	 * |Ci' - Ci| &lt;= (n+4) u (|Ar|+|Ai|)(|Br|+|Bi|) <br />
+	 * instead of n u (|Ar||Bi| + |Ai||Br|), so imaginary parts that are small
+	 * compared to the entries of a and b can lose relative accuracy.
+	 * For unitary operands all entries are at most 1 in modulus and the error
+	 * of every element stays below 2(n+4)u
+	 */
+	public enum Algorithm {
+		STANDARD, GAUSS_3M
+	}
+	
+	// below this size the register blocked kernel does not pay off
+	private static final int SMALL = 8;
+	
+	// tile size used when none is set, 128x128 tile of b takes 256KB (both planes)
+	private static final int DEFAULT_TILE = 128;
+	
+	// tile size, 0 means it is chosen from the matrix size
+	private static volatile int tileSize = 0;
+	
+	// from this size on products are tiled and run in parallel
+	private static volatile int parallelThreshold = 128;
+	
+	private static volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+	
+	private static volatile Algorithm algorithm = Algorithm.STANDARD;
+	
+	// GAUSS_3M is used only from this size on, below it the extra passes cost more than they save
+	private static volatile int gauss3MThreshold = 64;
+	
+	// kinds of product a MulTask computes
+	private static final int PLAIN = 0;
+	private static final int TRANS_A = 1;
+	private static final int TRANS_B = 2;
+	
+	private ComplexGemm() {
+	}
+	
+	/**
+	 * Sets the tile size (rows and columns) of the blocked multiply, 0 lets it be chosen automatically
+	 */
+	public static void setTileSize(int size) {
+		if (size < 0)
+			throw new IllegalArgumentException("Tile size must not be negative");
+		tileSize = size;
+	}
+	
+	/**
+	 * Returns the tile size used for nxn products
+	 */
+	public static int getTileSize(int n) {
+		int size = tileSize;
+		if (size == 0)
+			size = DEFAULT_TILE;
+		return Math.min(size, n);
+	}
+	
+	/**
+	 * Sets the matrix size from which products are tiled and split across threads
+	 */
+	public static void setParallelThreshold(int n) {
+		parallelThreshold = n;
+	}
+	
+	/**
+	 * Returns the matrix size from which products are tiled and split across threads
+	 */
+	public static int getParallelThreshold() {
+		return parallelThreshold;
+	}
+	
+	/**
+	 * Sets the pool that runs parallel products (common pool by default)
+	 */
+	public static void setPool(ForkJoinPool forkJoinPool) {
+		if (forkJoinPool == null)
+			throw new NullPointerException();
+		pool = forkJoinPool;
+	}
+	
+	/**
+	 * Sets the algorithm used for complex products (STANDARD by default)
+	 */
+	public static void setAlgorithm(Algorithm alg) {
+		if (alg == null)
+			throw new NullPointerException();
+		algorithm = alg;
+	}
+	
+	/**
+	 * Returns the algorithm used for complex products
+	 */
+	public static Algorithm getAlgorithm() {
+		return algorithm;
+	}
+	
+	/**
+	 * Sets the matrix size from which GAUSS_3M is used when it is selected
+	 */
+	public static void setGauss3MThreshold(int n) {
+		gauss3MThreshold = n;
+	}
+	
+	/**
+	 * Computes c = a * b for nxn matrices given by their planes, c must not be a or b
+	 */
+	static void mul(int n, double[] ar, double[] ai, double[] br, double[] bi, double[] cr, double[] ci) {
+		if (algorithm == Algorithm.GAUSS_3M && n >= gauss3MThreshold)
+			mul3M(n, ar, ai, br, bi, cr, ci);
+		else if (n < SMALL)
+			mulScalar(n, ar, ai, br, bi, cr, ci);
+		else if (n < parallelThreshold)
+			mulRows(n, 0, n, ar, ai, br, bi, cr, ci);
+		else
+			mulParallel(n, ar, ai, br, bi, cr, ci);
+	}
+	
+	/**
+	 * Computes c = transpose(a) * b, or adjoint(a) * b if conjugate is set,
+	 * without forming the transpose, c must not be a or b <br />
+	 * Four rows of c take four neighbouring elements of a row of a, so a is
+	 * still read along its rows
+	 */
+	static void mulTransA(int n, double[] ar, double[] ai, boolean conjugate, double[] br, double[] bi, double[] cr, double[] ci) {
+		double sign = conjugate ? -1 : 1;
+		if (n < parallelThreshold)
+			mulTransARows(n, 0, n, ar, ai, sign, br, bi, cr, ci);
+		else
+			invoke(new MulTask(TRANS_A, sign, n, 0, n, 0, grain(n), ar, ai, br, bi, cr, ci));
+	}
+	
+	/**
+	 * Computes c = a * transpose(b), or a * adjoint(b) if conjugate is set,
+	 * without forming the transpose, c must not be a or b <br />
+	 * Element (i, j) is the dot product of row i of a with row j of b,
+	 * so both operands are read along contiguous rows
+	 */
+	static void mulTransB(int n, double[] ar, double[] ai, double[] br, double[] bi, boolean conjugate, double[] cr, double[] ci) {
+		double sign = conjugate ? -1 : 1;
+		if (n < parallelThreshold)
+			mulTransBRows(n, 0, n, ar, ai, br, bi, sign, cr, ci);
+		else
+			invoke(new MulTask(TRANS_B, sign, n, 0, n, 0, grain(n), ar, ai, br, bi, cr, ci));
+	}
+	
+	/**
+	 * Computes rows [rowFrom, rowTo) of c = transpose(a) * b, imaginary parts of a are multiplied by sign
+	 */
+	static void mulTransARows(int n, int rowFrom, int rowTo, double[] ar, double[] ai, double sign, double[] br, double[] bi, double[] cr, double[] ci) {
+		int i = rowFrom;
+		for (; i + 3 < rowTo; i += 4) {
+			int c0 = i*n, c1 = c0+n, c2 = c1+n, c3 = c2+n;
+			for (int j = 0; j < n; j++) {
+				cr[c0+j] = 0; ci[c0+j] = 0;
+				cr[c1+j] = 0; ci[c1+j] = 0;
+				cr[c2+j] = 0; ci[c2+j] = 0;
+				cr[c3+j] = 0; ci[c3+j] = 0;
+			}
+			
+			for (int k = 0; k < n; k++) {
+				int kRow = k*n;
+				// elements (i..i+3, k) of transpose(a) are (k, i..i+3) of a
+				double x0r = ar[kRow+i], x0i = sign*ai[kRow+i];
+				double x1r = ar[kRow+i+1], x1i = sign*ai[kRow+i+1];
+				double x2r = ar[kRow+i+2], x2i = sign*ai[kRow+i+2];
+				double x3r = ar[kRow+i+3], x3i = sign*ai[kRow+i+3];
+				for (int j = 0; j < n; j++) {
+					double yr = br[kRow+j];
+					double yi = bi[kRow+j];
+					cr[c0+j] += (x0r*yr) - (x0i*yi);
+					ci[c0+j] += (x0i*yr) + (x0r*yi);
+					cr[c1+j] += (x1r*yr) - (x1i*yi);
+					ci[c1+j] += (x1i*yr) + (x1r*yi);
+					cr[c2+j] += (x2r*yr) - (x2i*yi);
+					ci[c2+j] += (x2i*yr) + (x2r*yi);
+					cr[c3+j] += (x3r*yr) - (x3i*yi);
+					ci[c3+j] += (x3i*yr) + (x3r*yi);
+				}
+			}
+		}
+		for (; i < rowTo; i++) {
+			int c0 = i*n;
+			for (int j = 0; j < n; j++) {
+				cr[c0+j] = 0;
+				ci[c0+j] = 0;
+			}
+			
+			for (int k = 0; k < n; k++) {
+				int kRow = k*n;
+				double xr = ar[kRow+i], xi = sign*ai[kRow+i];
+				for (int j = 0; j < n; j++) {
+					double yr = br[kRow+j];
+					double yi = bi[kRow+j];
+					cr[c0+j] += (xr*yr) - (xi*yi);
+					ci[c0+j] += (xi*yr) + (xr*yi);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes rows [rowFrom, rowTo) of c = a * transpose(b), imaginary parts of b are multiplied by sign <br />
+	 * Every row of a is used for four rows of b at a time
+	 */
+	static void mulTransBRows(int n, int rowFrom, int rowTo, double[] ar, double[] ai, double[] br, double[] bi, double sign, double[] cr, double[] ci) {
+		for (int i = rowFrom; i < rowTo; i++) {
+			int iRow = i*n;
+			int j = 0;
+			for (; j + 3 < n; j += 4) {
+				int j0 = j*n, j1 = j0+n, j2 = j1+n, j3 = j2+n;
+				double s0r = 0, s0i = 0, s1r = 0, s1i = 0, s2r = 0, s2i = 0, s3r = 0, s3i = 0;
+				for (int k = 0; k < n; k++) {
+					double xr = ar[iRow+k], xi = ai[iRow+k];
+					double y0r = br[j0+k], y0i = sign*bi[j0+k];
+					double y1r = br[j1+k], y1i = sign*bi[j1+k];
+					double y2r = br[j2+k], y2i = sign*bi[j2+k];
+					double y3r = br[j3+k], y3i = sign*bi[j3+k];
+					s0r += (xr*y0r) - (xi*y0i);
+					s0i += (xi*y0r) + (xr*y0i);
+					s1r += (xr*y1r) - (xi*y1i);
+					s1i += (xi*y1r) + (xr*y1i);
+					s2r += (xr*y2r) - (xi*y2i);
+					s2i += (xi*y2r) + (xr*y2i);
+					s3r += (xr*y3r) - (xi*y3i);
+					s3i += (xi*y3r) + (xr*y3i);
+				}
+				cr[iRow+j] = s0r; ci[iRow+j] = s0i;
+				cr[iRow+j+1] = s1r; ci[iRow+j+1] = s1i;
+				cr[iRow+j+2] = s2r; ci[iRow+j+2] = s2i;
+				cr[iRow+j+3] = s3r; ci[iRow+j+3] = s3i;
+			}
+			for (; j < n; j++) {
+				int jRow = j*n;
+				double sumRe = 0, sumIm = 0;
+				for (int k = 0; k < n; k++) {
+					double xr = ar[iRow+k], xi = ai[iRow+k];
+					double yr = br[jRow+k], yi = sign*bi[jRow+k];
+					sumRe += (xr*yr) - (xi*yi);
+					sumIm += (xi*yr) + (xr*yi);
+				}
+				cr[iRow+j] = sumRe;
+				ci[iRow+j] = sumIm;
+			}
+		}
+	}
+	
+	/**
+	 * Computes c = a * b tile by tile with bands of rows of c spread over the pool
+	 */
+	static void mulParallel(int n, double[] ar, double[] ai, double[] br, double[] bi, double[] cr, double[] ci) {
+		invoke(new MulTask(PLAIN, 1, n, 0, n, getTileSize(n), grain(n), ar, ai, br, bi, cr, ci));
+	}
+	
+	/**
+	 * Returns the number of rows of c a parallel task computes without splitting further
+	 */
+	static int grain(int n) {
+		// a few bands per worker so that uneven workers still balance out
+		int grain = n / (4 * pool.getParallelism());
+		return Math.max(4, grain - grain % 4);
+	}
+	
+	/**
+	 * Runs the task on the pool, directly if the caller already is one of its workers
+	 */
+	static void invoke(ForkJoinTask<?> task) {
+		ForkJoinPool p = pool;
+		if (ForkJoinTask.getPool() == p)
+			task.invoke();
+		else
+			p.invoke(task);
+	}
+	
+	/**
+	 * Computes c = a * b with three real products (see Algorithm.GAUSS_3M) <br />
+	 * The three nxn temporaries come from the Workspace of the calling thread,
+	 * so products run back to back reuse them. Above Workspace.RETAINED doubles
+	 * they are dropped again after the call, the product costs far more than the allocation
+	 */
+	static void mul3M(int n, double[] ar, double[] ai, double[] br, double[] bi, double[] cr, double[] ci) {
+		try (Workspace ws = Workspace.open()) {
+			double[] sa = ws.vector(n*n);
+			double[] sb = ws.vector(n*n);
+			double[] t2 = ws.vector(n*n);
+			
+			for (int idx = 0; idx < sa.length; idx++) {
+				sa[idx] = ar[idx] + ai[idx];
+				sb[idx] = br[idx] + bi[idx];
+			}
+			
+			realMul(n, ar, br, cr); // T1
+			realMul(n, ai, bi, t2); // T2
+			realMul(n, sa, sb, ci); // T3
+			
+			for (int idx = 0; idx < t2.length; idx++) {
+				ci[idx] = ci[idx] - cr[idx] - t2[idx];
+				cr[idx] = cr[idx] - t2[idx];
+			}
+		}
+	}
+	
+	/**
+	 * Computes c = a * b for real nxn matrices, c must not be a or b
+	 */
+	static void realMul(int n, double[] a, double[] b, double[] c) {
+		int tile = getTileSize(n);
+		if (n < parallelThreshold) {
+			realMulBlocked(n, 0, n, tile, a, b, c);
+			return;
+		}
+		
+		invoke(new RealMulTask(n, 0, n, tile, grain(n), a, b, c));
+	}
+	
+	/**
+	 * Computes rows [rowFrom, rowTo) of the real product c = a * b tile by tile
+	 */
+	static void realMulBlocked(int n, int rowFrom, int rowTo, int tile, double[] a, double[] b, double[] c) {
+		for (int idx = rowFrom*n; idx < rowTo*n; idx++)
+			c[idx] = 0;
+		
+		for (int k0 = 0; k0 < n; k0 += tile) {
+			int k1 = Math.min(k0 + tile, n);
+			for (int j0 = 0; j0 < n; j0 += tile) {
+				int j1 = Math.min(j0 + tile, n);
+				int i = rowFrom;
+				for (; i + 3 < rowTo; i += 4) {
+					int c0 = i*n, c1 = c0+n, c2 = c1+n, c3 = c2+n;
+					for (int k = k0; k < k1; k++) {
+						double x0 = a[c0+k], x1 = a[c1+k], x2 = a[c2+k], x3 = a[c3+k];
+						int kRow = k*n;
+						for (int j = j0; j < j1; j++) {
+							double y = b[kRow+j];
+							c[c0+j] += x0*y;
+							c[c1+j] += x1*y;
+							c[c2+j] += x2*y;
+							c[c3+j] += x3*y;
+						}
+					}
+				}
+				for (; i < rowTo; i++) {
+					int c0 = i*n;
+					for (int k = k0; k < k1; k++) {
+						double x = a[c0+k];
+						int kRow = k*n;
+						for (int j = j0; j < j1; j++)
+							c[c0+j] += x*b[kRow+j];
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes rows [rowFrom, rowTo) of c = a * b, going through a and b in tiles of
+	 * size tile x tile so the current tile of b stays in cache for the whole band
+	 */
+	static void mulBlocked(int n, int rowFrom, int rowTo, int tile, double[] ar, double[] ai, double[] br, double[] bi, double[] cr, double[] ci) {
+		for (int idx = rowFrom*n; idx < rowTo*n; idx++) {
+			cr[idx] = 0;
+			ci[idx] = 0;
+		}
+		
+		// k tiles are outermost, every element of c still sums its terms in order of k
+		for (int k0 = 0; k0 < n; k0 += tile) {
+			int k1 = Math.min(k0 + tile, n);
+			for (int j0 = 0; j0 < n; j0 += tile) {
+				int j1 = Math.min(j0 + tile, n);
+				int i = rowFrom;
+				for (; i + 3 < rowTo; i += 4)
+					block4(n, i, k0, k1, j0, j1, ar, ai, br, bi, cr, ci);
+				for (; i < rowTo; i++)
+					block1(n, i, k0, k1, j0, j1, ar, ai, br, bi, cr, ci);
+			}
+		}
+	}
+	
+	/**
+	 * Computes rows [rowFrom, rowTo) of c = a * b, four rows of a at a time
+	 */
+	static void mulRows(int n, int rowFrom, int rowTo, double[] ar, double[] ai, double[] br, double[] bi, double[] cr, double[] ci) {
+		int i = rowFrom;
+		for (; i + 3 < rowTo; i += 4)
+			kernel4(n, i, ar, ai, br, bi, cr, ci);
+		for (; i < rowTo; i++)
+			kernel1(n, i, ar, ai, br, bi, cr, ci);
+	}
+	
+	/**
+	 * Plain i-k-j loop, used for small matrices and as reference
+	 */
+	static void mulScalar(int n, double[] ar, double[] ai, double[] br, double[] bi, double[] cr, double[] ci) {
+		for (int i = 0; i < n; i++)
+			kernel1(n, i, ar, ai, br, bi, cr, ci);
+	}
+	
+	/**
+	 * Computes row i of c = a * b
+	 */
+	private static void kernel1(int n, int i, double[] ar, double[] ai, double[] br, double[] bi, double[] cr, double[] ci) {
+		int c0 = i*n;
+		for (int j = 0; j < n; j++) {
+			cr[c0+j] = 0;
+			ci[c0+j] = 0;
+		}
+		
+		for (int k = 0; k < n; k++) {
+			double xr = ar[c0+k];
+			double xi = ai[c0+k];
+			int kRow = k*n;
+			for (int j = 0; j < n; j++) {
+				double yr = br[kRow+j];
+				double yi = bi[kRow+j];
+				cr[c0+j] += (xr*yr) - (xi*yi);
+				ci[c0+j] += (xi*yr) + (xr*yi);
+			}
+		}
+	}
+	
+	/**
+	 * Computes rows i..i+3 of c = a * b, every loaded element of b is used four times
+	 */
+	private static void kernel4(int n, int i, double[] ar, double[] ai, double[] br, double[] bi, double[] cr, double[] ci) {
+		int c0 = i*n, c1 = c0+n, c2 = c1+n, c3 = c2+n;
+		for (int j = 0; j < n; j++) {
+			cr[c0+j] = 0; ci[c0+j] = 0;
+			cr[c1+j] = 0; ci[c1+j] = 0;
+			cr[c2+j] = 0; ci[c2+j] = 0;
+			cr[c3+j] = 0; ci[c3+j] = 0;
+		}
+		
+		for (int k = 0; k < n; k++) {
+			double x0r = ar[c0+k], x0i = ai[c0+k];
+			double x1r = ar[c1+k], x1i = ai[c1+k];
+			double x2r = ar[c2+k], x2i = ai[c2+k];
+			double x3r = ar[c3+k], x3i = ai[c3+k];
+			int kRow = k*n;
+			for (int j = 0; j < n; j++) {
+				double yr = br[kRow+j];
+				double yi = bi[kRow+j];
+				cr[c0+j] += (x0r*yr) - (x0i*yi);
+				ci[c0+j] += (x0i*yr) + (x0r*yi);
+				cr[c1+j] += (x1r*yr) - (x1i*yi);
+				ci[c1+j] += (x1i*yr) + (x1r*yi);
+				cr[c2+j] += (x2r*yr) - (x2i*yi);
+				ci[c2+j] += (x2i*yr) + (x2r*yi);
+				cr[c3+j] += (x3r*yr) - (x3i*yi);
+				ci[c3+j] += (x3i*yr) + (x3r*yi);
+			}
+		}
+	}
+	
+	/**
+	 * Adds a[i, k0..k1) * b[k0..k1, j0..j1) to row i of c
+	 */
+	private static void block1(int n, int i, int k0, int k1, int j0, int j1, double[] ar, double[] ai, double[] br, double[] bi, double[] cr, double[] ci) {
+		int c0 = i*n;
+		for (int k = k0; k < k1; k++) {
+			double xr = ar[c0+k];
+			double xi = ai[c0+k];
+			int kRow = k*n;
+			for (int j = j0; j < j1; j++) {
+				double yr = br[kRow+j];
+				double yi = bi[kRow+j];
+				cr[c0+j] += (xr*yr) - (xi*yi);
+				ci[c0+j] += (xi*yr) + (xr*yi);
+			}
+		}
+	}
+	
+	/**
+	 * Adds a[i..i+3, k0..k1) * b[k0..k1, j0..j1) to rows i..i+3 of c
+	 */
+	private static void block4(int n, int i, int k0, int k1, int j0, int j1, double[] ar, double[] ai, double[] br, double[] bi, double[] cr, double[] ci) {
+		int c0 = i*n, c1 = c0+n, c2 = c1+n, c3 = c2+n;
+		for (int k = k0; k < k1; k++) {
+			double x0r = ar[c0+k], x0i = ai[c0+k];
+			double x1r = ar[c1+k], x1i = ai[c1+k];
+			double x2r = ar[c2+k], x2i = ai[c2+k];
+			double x3r = ar[c3+k], x3i = ai[c3+k];
+			int kRow = k*n;
+			for (int j = j0; j < j1; j++) {
+				double yr = br[kRow+j];
+				double yi = bi[kRow+j];
+				cr[c0+j] += (x0r*yr) - (x0i*yi);
+				ci[c0+j] += (x0i*yr) + (x0r*yi);
+				cr[c1+j] += (x1r*yr) - (x1i*yi);
+				ci[c1+j] += (x1i*yr) + (x1r*yi);
+				cr[c2+j] += (x2r*yr) - (x2i*yi);
+				ci[c2+j] += (x2i*yr) + (x2r*yi);
+				cr[c3+j] += (x3r*yr) - (x3i*yi);
+				ci[c3+j] += (x3i*yr) + (x3r*yi);
+			}
+		}
+	}
+	
+	/**
+	 * Splits the rows of c in halves until a band is at most grain rows long
+	 */
+	private static final class MulTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final int kind, n, rowFrom, rowTo, tile, grain;
+		// multiplies imaginary parts of the transposed operand
+		private final double sign;
+		private final double[] ar, ai, br, bi, cr, ci;
+		
+		MulTask(int kind, double sign, int n, int rowFrom, int rowTo, int tile, int grain, double[] ar, double[] ai, double[] br, double[] bi, double[] cr, double[] ci) {
+			this.kind = kind;
+			this.sign = sign;
+			this.n = n;
+			this.rowFrom = rowFrom;
+			this.rowTo = rowTo;
+			this.tile = tile;
+			this.grain = grain;
+			this.ar = ar;
+			this.ai = ai;
+			this.br = br;
+			this.bi = bi;
+			this.cr = cr;
+			this.ci = ci;
+		}
+		
+		@Override
+		protected void compute() {
+			if (rowTo - rowFrom <= grain) {
+				if (kind == TRANS_A)
+					mulTransARows(n, rowFrom, rowTo, ar, ai, sign, br, bi, cr, ci);
+				else if (kind == TRANS_B)
+					mulTransBRows(n, rowFrom, rowTo, ar, ai, br, bi, sign, cr, ci);
+				else
+					mulBlocked(n, rowFrom, rowTo, tile, ar, ai, br, bi, cr, ci);
+				return;
+			}
+			
+			// keep the split on a multiple of 4 so bands use the 4 row kernel
+			int mid = rowFrom + (rowTo - rowFrom) / 2;
+			mid -= (mid - rowFrom) % 4;
+			if (mid == rowFrom)
+				mid = rowFrom + 4;
+			invokeAll(new MulTask(kind, sign, n, rowFrom, mid, tile, grain, ar, ai, br, bi, cr, ci),
+					new MulTask(kind, sign, n, mid, rowTo, tile, grain, ar, ai, br, bi, cr, ci));
+		}
+	}
+	
+	/**
+	 * Same as MulTask for products of real matrices
+	 */
+	private static final class RealMulTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final int n, rowFrom, rowTo, tile, grain;
+		private final double[] a, b, c;
+		
+		RealMulTask(int n, int rowFrom, int rowTo, int tile, int grain, double[] a, double[] b, double[] c) {
+			this.n = n;
+			this.rowFrom = rowFrom;
+			this.rowTo = rowTo;
+			this.tile = tile;
+			this.grain = grain;
+			this.a = a;
+			this.b = b;
+			this.c = c;
+		}
+		
+		@Override
+		protected void compute() {
+			if (rowTo - rowFrom <= grain) {
+				realMulBlocked(n, rowFrom, rowTo, tile, a, b, c);
+				return;
+			}
+			
+			int mid = rowFrom + (rowTo - rowFrom) / 2;
+			mid -= (mid - rowFrom) % 4;
+			if (mid == rowFrom)
+				mid = rowFrom + 4;
+			invokeAll(new RealMulTask(n, rowFrom, mid, tile, grain, a, b, c),
+					new RealMulTask(n, mid, rowTo, tile, grain, a, b, c));
+		}
+	}
+}
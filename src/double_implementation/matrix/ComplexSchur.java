@@ -0,0 +1,642 @@
+package matrix;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Eigenvalues and eigenvectors of a general complex nxn matrix through its Schur form,
+ * A = Z*T*adjoint(Z), for the large matrices Matrix.eigenDecomposition gets <br />
+ * The matrix is reduced to upper Hessenberg form by Householder reflections, a panel
+ * of BLOCK of them at a time (as LAPACK zgehrd): the panel only touches the columns
+ * it reduces, and the rest of the matrix gets the whole block as a few rank-BLOCK
+ * updates, split across the ForkJoinPool of ComplexGemm for large matrices. Then
+ * single shift QR sweeps with Givens rotations bring the Hessenberg matrix to
+ * triangular form, and the eigenvectors of T are solved by back substitution and
+ * multiplied by Z
+ * @author Arsen Babakhanyan
+ */
+final class ComplexSchur {
+	
+	// reflectors per panel
+	private static final int BLOCK = 32;
+	
+	private static final double EPS = Math.ulp(1.0);
+	
+	// kinds of panel update tasks
+	private static final int PRODUCT = 0, RIGHT = 1, LEFT = 2, ACCUMULATE = 3;
+	
+	private final int n;
+	// the matrix, overwritten by H and then by T
+	private final double[] hr, hi;
+	// adjoint of the unitary Z of A = Z*T*adjoint(Z), null in the eigenvalues only mode,
+	// the transformations are applied to its rows, like to the rows of the matrix
+	private final double[] zr, zi;
+	
+	// current panel: reflectors V (n x BLOCK, zero above the subdiagonal), triangular
+	// factor T and Y = A*V*T of Q = I - V*T*adjoint(V), column j of Y is complete once
+	// reflector j is, and V transposed for the updates that run along its columns
+	private final double[] vr, vi, tr, ti, yr, yi, vtr, vti;
+	// column being reduced, its reflector and A times the reflector
+	private final double[] xr, xi, ur, ui, pr, pi;
+	private int k0, width, reflector;
+	private final boolean parallel;
+	private final int grain;
+	
+	private ComplexSchur(int n, double[] re, double[] im, boolean vectors) {
+		this.n = n;
+		this.hr = re;
+		this.hi = im;
+		if (vectors) {
+			zr = new double[n*n];
+			zi = new double[n*n];
+			for (int i = 0; i < n; i++)
+				zr[i*n+i] = 1;
+		} else {
+			zr = null;
+			zi = null;
+		}
+		vr = new double[n*BLOCK];
+		vi = new double[n*BLOCK];
+		tr = new double[BLOCK*BLOCK];
+		ti = new double[BLOCK*BLOCK];
+		yr = new double[n*BLOCK];
+		yi = new double[n*BLOCK];
+		vtr = new double[BLOCK*n];
+		vti = new double[BLOCK*n];
+		xr = new double[n];
+		xi = new double[n];
+		ur = new double[n];
+		ui = new double[n];
+		pr = new double[n];
+		pi = new double[n];
+		parallel = n >= ComplexGemm.getParallelThreshold();
+		grain = ComplexGemm.grain(n);
+	}
+	
+	/**
+	 * Computes eigenvalues of re + i*im into valRe, valIm, and if vecRe is not null the
+	 * eigenvectors as columns of vecRe + i*vecIm (normalized) <br />
+	 * re and im are overwritten, returns false if the iteration did not converge
+	 */
+	static boolean decompose(int n, double[] re, double[] im, double[] valRe, double[] valIm,
+			double[] vecRe, double[] vecIm) {
+		boolean vectors = vecRe != null;
+		ComplexSchur schur = new ComplexSchur(n, re, im, vectors);
+		schur.hessenberg();
+		if (!schur.qr(valRe, valIm))
+			return false;
+		if (vectors)
+			schur.eigenvectors(vecRe, vecIm);
+		return true;
+	}
+	
+	/**
+	 * Same as decompose for a normal matrix (unitary or Hermitian), its Schur form is
+	 * diagonal, so the columns of Z are already orthonormal eigenvectors and the back
+	 * substitution is skipped
+	 */
+	static boolean decomposeNormal(int n, double[] re, double[] im, double[] valRe, double[] valIm,
+			double[] vecRe, double[] vecIm) {
+		boolean vectors = vecRe != null;
+		ComplexSchur schur = new ComplexSchur(n, re, im, vectors);
+		schur.hessenberg();
+		if (!schur.qr(valRe, valIm))
+			return false;
+		if (vectors) {
+			for (int i = 0; i < n; i++) {
+				for (int k = 0; k < n; k++) {
+					vecRe[i*n+k] = schur.zr[k*n+i];
+					vecIm[i*n+k] = -schur.zi[k*n+i];
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Reduces the matrix to upper Hessenberg form panel by panel, Z collects the reflections
+	 */
+	private void hessenberg() {
+		for (k0 = 0; k0 < n-2; k0 += BLOCK) {
+			width = Math.min(BLOCK, n-2-k0);
+			reducePanel();
+			
+			for (int r = k0+1; r < n; r++) {
+				for (int i = 0; i < width; i++) {
+					vtr[i*n+r] = vr[r*BLOCK+i];
+					vti[i*n+r] = vi[r*BLOCK+i];
+				}
+			}
+			
+			// columns right of the panel: A = adjoint(Q) * (A - Y*adjoint(V))
+			run(RIGHT, 0, n);
+			run(LEFT, k0+width, n);
+			// adjoint(Z*Q) = adjoint(Q) * adjoint(Z)
+			if (zr != null)
+				run(ACCUMULATE, 0, n);
+		}
+	}
+	
+	/**
+	 * Reduces the columns [k0, k0+width) and builds V, T and Y, the columns right
+	 * of the panel are left as they were, they are only read for A*v
+	 */
+	private void reducePanel() {
+		Arrays.fill(vr, 0);
+		Arrays.fill(vi, 0);
+		for (int j = 0; j < width; j++) {
+			int c = k0 + j;
+			
+			// column c with the reflections of the panel so far applied from both sides
+			for (int r = 0; r < n; r++) {
+				double sr = hr[r*n+c], si = hi[r*n+c];
+				for (int i = 0; i < j; i++) {
+					// Y[r][i] * conj(V[c][i])
+					double ar = yr[r*BLOCK+i], ai = yi[r*BLOCK+i];
+					double br = vr[c*BLOCK+i], bi = vi[c*BLOCK+i];
+					sr -= (ar*br) + (ai*bi);
+					si -= (ai*br) - (ar*bi);
+				}
+				xr[r] = sr;
+				xi[r] = si;
+			}
+			applyLeft(j);
+			
+			// reflector with adjoint(I - tau*v*adjoint(v)) * x[c+1..] = beta*e1 (as zlarfg)
+			double alphaRe = xr[c+1], alphaIm = xi[c+1];
+			double norm = 0;
+			for (int r = c+2; r < n; r++)
+				norm += (xr[r]*xr[r]) + (xi[r]*xi[r]);
+			double tauRe = 0, tauIm = 0, beta = alphaRe;
+			vr[(c+1)*BLOCK+j] = 1;
+			if (norm != 0 || alphaIm != 0) {
+				beta = -Math.copySign(Math.sqrt((alphaRe*alphaRe) + (alphaIm*alphaIm) + norm), alphaRe);
+				tauRe = (beta - alphaRe)/beta;
+				tauIm = -alphaIm/beta;
+				// v = x / (alpha - beta)
+				double dr = alphaRe - beta, di = alphaIm;
+				double den = (dr*dr) + (di*di);
+				double sr = dr/den, si = -di/den;
+				for (int r = c+2; r < n; r++) {
+					vr[r*BLOCK+j] = (xr[r]*sr) - (xi[r]*si);
+					vi[r*BLOCK+j] = (xi[r]*sr) + (xr[r]*si);
+				}
+			}
+			
+			// the reduced column is final, later reflections of the panel do not reach it
+			for (int r = 0; r <= c; r++) {
+				hr[r*n+c] = xr[r];
+				hi[r*n+c] = xi[r];
+			}
+			hr[(c+1)*n+c] = beta;
+			hi[(c+1)*n+c] = 0;
+			for (int r = c+2; r < n; r++) {
+				hr[r*n+c] = 0;
+				hi[r*n+c] = 0;
+			}
+			
+			// w = adjoint(V) * v for the earlier reflectors, kept in x
+			for (int i = 0; i < j; i++) {
+				double sr = 0, si = 0;
+				for (int r = c+1; r < n; r++) {
+					double ar = vr[r*BLOCK+i], ai = vi[r*BLOCK+i];
+					double br = vr[r*BLOCK+j], bi = vi[r*BLOCK+j];
+					sr += (ar*br) + (ai*bi);
+					si += (ar*bi) - (ai*br);
+				}
+				xr[i] = sr;
+				xi[i] = si;
+			}
+			
+			// column j of T = [-tau * T * w ; tau]
+			for (int i = 0; i < j; i++) {
+				double sr = 0, si = 0;
+				for (int l = i; l < j; l++) {
+					double ar = tr[i*BLOCK+l], ai = ti[i*BLOCK+l];
+					sr += (ar*xr[l]) - (ai*xi[l]);
+					si += (ai*xr[l]) + (ar*xi[l]);
+				}
+				tr[i*BLOCK+j] = -((tauRe*sr) - (tauIm*si));
+				ti[i*BLOCK+j] = -((tauIm*sr) + (tauRe*si));
+			}
+			for (int i = j; i < BLOCK; i++) {
+				tr[i*BLOCK+j] = 0;
+				ti[i*BLOCK+j] = 0;
+			}
+			tr[j*BLOCK+j] = tauRe;
+			ti[j*BLOCK+j] = tauIm;
+			
+			// column j of Y = tau * (A*v - Y*w), A*v only reads the columns right of c
+			for (int r = c+1; r < n; r++) {
+				ur[r] = vr[r*BLOCK+j];
+				ui[r] = vi[r*BLOCK+j];
+			}
+			reflector = j;
+			run(PRODUCT, 0, n);
+			for (int r = 0; r < n; r++) {
+				double sr = pr[r], si = pi[r];
+				for (int i = 0; i < j; i++) {
+					double ar = yr[r*BLOCK+i], ai = yi[r*BLOCK+i];
+					sr -= (ar*xr[i]) - (ai*xi[i]);
+					si -= (ai*xr[i]) + (ar*xi[i]);
+				}
+				yr[r*BLOCK+j] = (tauRe*sr) - (tauIm*si);
+				yi[r*BLOCK+j] = (tauIm*sr) + (tauRe*si);
+			}
+		}
+	}
+	
+	/**
+	 * Computes x = adjoint(Q) * x for the first j reflectors of the panel
+	 */
+	private void applyLeft(int j) {
+		if (j == 0)
+			return;
+		double[] wr = new double[j], wi = new double[j];
+		for (int r = k0+1; r < n; r++) {
+			double br = xr[r], bi = xi[r];
+			for (int i = 0; i < j; i++) {
+				double ar = vr[r*BLOCK+i], ai = vi[r*BLOCK+i];
+				wr[i] += (ar*br) + (ai*bi);
+				wi[i] += (ar*bi) - (ai*br);
+			}
+		}
+		conjugateTransposedT(j, wr, wi, 1);
+		for (int r = k0+1; r < n; r++) {
+			double sr = 0, si = 0;
+			for (int i = 0; i < j; i++) {
+				double ar = vr[r*BLOCK+i], ai = vi[r*BLOCK+i];
+				sr += (ar*wr[i]) - (ai*wi[i]);
+				si += (ai*wr[i]) + (ar*wi[i]);
+			}
+			xr[r] -= sr;
+			xi[r] -= si;
+		}
+	}
+	
+	/**
+	 * Computes w = adjoint(T) * w for m interleaved vectors w[i*m+col], T of order j
+	 */
+	private void conjugateTransposedT(int j, double[] wr, double[] wi, int m) {
+		// row i of adjoint(T) only needs rows 0..i of w, so go from the bottom up
+		for (int i = j-1; i >= 0; i--) {
+			for (int col = 0; col < m; col++) {
+				double sr = 0, si = 0;
+				for (int l = 0; l <= i; l++) {
+					// conj(T[l][i]) * w[l]
+					double ar = tr[l*BLOCK+i], ai = -ti[l*BLOCK+i];
+					double br = wr[l*m+col], bi = wi[l*m+col];
+					sr += (ar*br) - (ai*bi);
+					si += (ai*br) + (ar*bi);
+				}
+				wr[i*m+col] = sr;
+				wi[i*m+col] = si;
+			}
+		}
+	}
+	
+	/**
+	 * Runs the update of the given kind on [from, to), split over the pool for large matrices
+	 */
+	private void run(int kind, int from, int to) {
+		if (parallel && to - from > grain)
+			ComplexGemm.invoke(new PanelTask(this, kind, from, to, grain));
+		else
+			update(kind, from, to);
+	}
+	
+	private void update(int kind, int from, int to) {
+		switch (kind) {
+		case PRODUCT:
+			product(from, to);
+			break;
+		case RIGHT:
+			updateRight(from, to);
+			break;
+		case LEFT:
+			updateLeft(hr, hi, from, to);
+			break;
+		default:
+			updateLeft(zr, zi, from, to);
+		}
+	}
+	
+	/**
+	 * Computes rows [from, to) of p = A*v for the last reflector, v is zero above row c+1
+	 */
+	private void product(int from, int to) {
+		int c = k0 + reflector;
+		for (int r = from; r < to; r++) {
+			int r0 = r*n;
+			double sr = 0, si = 0;
+			for (int col = c+1; col < n; col++) {
+				double ar = hr[r0+col], ai = hi[r0+col];
+				double br = ur[col], bi = ui[col];
+				sr += (ar*br) - (ai*bi);
+				si += (ai*br) + (ar*bi);
+			}
+			pr[r] = sr;
+			pi[r] = si;
+		}
+	}
+	
+	/**
+	 * Computes rows [from, to) of A = A - Y*adjoint(V) for the columns right of the panel
+	 */
+	private void updateRight(int from, int to) {
+		int c1 = k0 + width;
+		for (int r = from; r < to; r++) {
+			int r0 = r*n;
+			for (int i = 0; i < width; i++) {
+				double ar = yr[r*BLOCK+i], ai = yi[r*BLOCK+i];
+				int i0 = i*n;
+				for (int col = c1; col < n; col++) {
+					// Y[r][i] * conj(V[col][i])
+					double br = vtr[i0+col], bi = vti[i0+col];
+					hr[r0+col] -= (ar*br) + (ai*bi);
+					hi[r0+col] -= (ai*br) - (ar*bi);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes columns [from, to) of a = a - V*adjoint(T)*adjoint(V)*a, the matrix
+	 * or adjoint(Z)
+	 */
+	private void updateLeft(double[] re, double[] im, int from, int to) {
+		int m = to - from;
+		double[] wr = new double[width*m], wi = new double[width*m];
+		for (int r = k0+1; r < n; r++) {
+			int r0 = r*n + from;
+			for (int i = 0; i < width; i++) {
+				// conj(V[r][i]) * a[r][col]
+				double ar = vr[r*BLOCK+i], ai = -vi[r*BLOCK+i];
+				int w0 = i*m;
+				for (int col = 0; col < m; col++) {
+					double br = re[r0+col], bi = im[r0+col];
+					wr[w0+col] += (ar*br) - (ai*bi);
+					wi[w0+col] += (ai*br) + (ar*bi);
+				}
+			}
+		}
+		conjugateTransposedT(width, wr, wi, m);
+		for (int r = k0+1; r < n; r++) {
+			int r0 = r*n + from;
+			for (int i = 0; i < width; i++) {
+				double ar = vr[r*BLOCK+i], ai = vi[r*BLOCK+i];
+				if (ar == 0 && ai == 0)
+					continue;
+				int w0 = i*m;
+				for (int col = 0; col < m; col++) {
+					double br = wr[w0+col], bi = wi[w0+col];
+					re[r0+col] -= (ar*br) - (ai*bi);
+					im[r0+col] -= (ai*br) + (ar*bi);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Brings the Hessenberg matrix to triangular form by shifted QR sweeps, deflating
+	 * at negligible subdiagonal elements, the diagonal goes to valRe, valIm
+	 */
+	private boolean qr(double[] valRe, double[] valIm) {
+		boolean vectors = zr != null;
+		double[] z = new double[2];
+		double norm = 0;
+		for (int i = 0; i < n*n; i++)
+			norm = Math.max(norm, ComplexEigen.sumabs(hr[i], hi[i]));
+		
+		int itn = 30*n, its = 0;
+		int hiRow = n-1;
+		while (hiRow >= 0) {
+			// look for single small subdiagonal element
+			int l = 0;
+			for (int k = hiRow; k > 0; k--) {
+				double s = ComplexEigen.sumabs(hr[(k-1)*n+k-1], hi[(k-1)*n+k-1]) + ComplexEigen.sumabs(hr[k*n+k], hi[k*n+k]);
+				if (s == 0)
+					s = norm;
+				if (ComplexEigen.sumabs(hr[k*n+k-1], hi[k*n+k-1]) <= EPS*s) {
+					hr[k*n+k-1] = 0;
+					hi[k*n+k-1] = 0;
+					l = k;
+					break;
+				}
+			}
+			if (l == hiRow) {
+				valRe[hiRow] = hr[hiRow*n+hiRow];
+				valIm[hiRow] = hi[hiRow*n+hiRow];
+				hiRow--;
+				its = 0;
+				continue;
+			}
+			if (itn <= 0)
+				return false;
+			
+			// shift
+			double sRe = hr[hiRow*n+hiRow], sIm = hi[hiRow*n+hiRow];
+			if (its == 10 || its == 20) {
+				// exceptional shift (as zlahqr)
+				sRe += 0.75*Math.abs(hr[hiRow*n+hiRow-1]);
+			} else {
+				// eigenvalue of the trailing 2x2 block closest to its last diagonal element
+				double ar = hr[(hiRow-1)*n+hiRow], ai = hi[(hiRow-1)*n+hiRow];
+				double br = hr[hiRow*n+hiRow-1], bi = hi[hiRow*n+hiRow-1];
+				double xRe = (ar*br) - (ai*bi), xIm = (ai*br) + (ar*bi);
+				if (ComplexEigen.sumabs(xRe, xIm) > 0) {
+					double yRe = (hr[(hiRow-1)*n+hiRow-1] - sRe)/2, yIm = (hi[(hiRow-1)*n+hiRow-1] - sIm)/2;
+					ComplexEigen.sqrt((yRe*yRe) - (yIm*yIm) + xRe, 2*yRe*yIm + xIm, z);
+					if (yRe*z[0] + yIm*z[1] < 0) {
+						z[0] = -z[0];
+						z[1] = -z[1];
+					}
+					ComplexEigen.div(xRe, xIm, yRe + z[0], yIm + z[1], z);
+					sRe -= z[0];
+					sIm -= z[1];
+				}
+			}
+			its++;
+			itn--;
+			
+			sweep(l, hiRow, sRe, sIm, vectors);
+		}
+		return true;
+	}
+	
+	/**
+	 * One implicit QR sweep with shift s on the active block [l, hiRow], the bulge
+	 * is chased down by Givens rotations G, H = G*H*adjoint(G) and adjoint(Z) = G*adjoint(Z)
+	 */
+	private void sweep(int l, int hiRow, double sRe, double sIm, boolean vectors) {
+		// with eigenvectors the whole T is needed, otherwise only the active block
+		int colTo = vectors ? n : hiRow+1;
+		int rowFrom = vectors ? 0 : l;
+		
+		double fRe = hr[l*n+l] - sRe, fIm = hi[l*n+l] - sIm;
+		double gRe = hr[(l+1)*n+l], gIm = hi[(l+1)*n+l];
+		for (int k = l; k < hiRow; k++) {
+			if (k > l) {
+				fRe = hr[k*n+k-1];
+				fIm = hi[k*n+k-1];
+				gRe = hr[(k+1)*n+k-1];
+				gIm = hi[(k+1)*n+k-1];
+			}
+			
+			// G = [c s; -conj(s) c] with c real and G*[f; g] = [r; 0] (as zlartg)
+			double absF = Math.hypot(fRe, fIm), absG = Math.hypot(gRe, gIm);
+			double c, snRe, snIm, rRe, rIm;
+			if (absG == 0) {
+				c = 1;
+				snRe = 0;
+				snIm = 0;
+				rRe = fRe;
+				rIm = fIm;
+			} else if (absF == 0) {
+				c = 0;
+				snRe = gRe/absG;
+				snIm = -gIm/absG;
+				rRe = absG;
+				rIm = 0;
+			} else {
+				double norm = Math.hypot(absF, absG);
+				double phRe = fRe/absF, phIm = fIm/absF;
+				c = absF/norm;
+				// s = (f/|f|) * conj(g) / norm
+				snRe = ((phRe*gRe) + (phIm*gIm))/norm;
+				snIm = ((phIm*gRe) - (phRe*gIm))/norm;
+				rRe = phRe*norm;
+				rIm = phIm*norm;
+			}
+			
+			if (k > l) {
+				hr[k*n+k-1] = rRe;
+				hi[k*n+k-1] = rIm;
+				hr[(k+1)*n+k-1] = 0;
+				hi[(k+1)*n+k-1] = 0;
+			}
+			
+			rotateRows(hr, hi, k, k, colTo, c, snRe, snIm);
+			rotateColumns(hr, hi, k, rowFrom, Math.min(k+2, hiRow)+1, c, snRe, snIm);
+			if (vectors)
+				rotateRows(zr, zi, k, 0, n, c, snRe, snIm);
+		}
+	}
+	
+	/**
+	 * Computes rows k, k+1 of the columns [from, to) as G = [c s; -conj(s) c] times them
+	 */
+	private void rotateRows(double[] re, double[] im, int k, int from, int to, double c, double snRe, double snIm) {
+		int k0Row = k*n, k1Row = (k+1)*n;
+		for (int j = from; j < to; j++) {
+			double ar = re[k0Row+j], ai = im[k0Row+j];
+			double br = re[k1Row+j], bi = im[k1Row+j];
+			re[k0Row+j] = c*ar + (snRe*br) - (snIm*bi);
+			im[k0Row+j] = c*ai + (snIm*br) + (snRe*bi);
+			re[k1Row+j] = c*br - ((snRe*ar) + (snIm*ai));
+			im[k1Row+j] = c*bi - ((snRe*ai) - (snIm*ar));
+		}
+	}
+	
+	/**
+	 * Computes columns k, k+1 of the rows [from, to) times adjoint(G) = [c -s; conj(s) c]
+	 */
+	private void rotateColumns(double[] re, double[] im, int k, int from, int to, double c, double snRe, double snIm) {
+		for (int i = from; i < to; i++) {
+			int p = i*n+k;
+			double ar = re[p], ai = im[p];
+			double br = re[p+1], bi = im[p+1];
+			re[p] = c*ar + (snRe*br) + (snIm*bi);
+			im[p] = c*ai + (snRe*bi) - (snIm*br);
+			re[p+1] = c*br - ((snRe*ar) - (snIm*ai));
+			im[p+1] = c*bi - ((snIm*ar) + (snRe*ai));
+		}
+	}
+	
+	/**
+	 * Solves T*x = t_kk*x for every k by back substitution and writes the normalized
+	 * Z*x as column k of vecRe + i*vecIm
+	 */
+	private void eigenvectors(double[] vecRe, double[] vecIm) {
+		double norm = 0;
+		for (int i = 0; i < n; i++) {
+			for (int j = i; j < n; j++)
+				norm = Math.max(norm, ComplexEigen.sumabs(hr[i*n+j], hi[i*n+j]));
+		}
+		// replaces differences of equal eigenvalues
+		double small = Math.max(EPS*norm, Double.MIN_NORMAL);
+		double[] z = new double[2];
+		
+		double[] er = new double[n*n], ei = new double[n*n];
+		for (int k = n-1; k >= 0; k--) {
+			double lr = hr[k*n+k], li = hi[k*n+k];
+			er[k*n+k] = 1;
+			for (int i = k-1; i >= 0; i--) {
+				double sr = 0, si = 0;
+				int i0 = i*n;
+				for (int j = i+1; j <= k; j++) {
+					double ar = hr[i0+j], ai = hi[i0+j];
+					double br = er[j*n+k], bi = ei[j*n+k];
+					sr += (ar*br) - (ai*bi);
+					si += (ai*br) + (ar*bi);
+				}
+				double dr = hr[i0+i] - lr, di = hi[i0+i] - li;
+				if (ComplexEigen.sumabs(dr, di) < small) {
+					dr = small;
+					di = 0;
+				}
+				ComplexEigen.div(-sr, -si, dr, di, z);
+				er[i0+k] = z[0];
+				ei[i0+k] = z[1];
+			}
+		}
+		
+		// Z*x with Z kept as its adjoint
+		ComplexGemm.mulTransA(n, zr, zi, true, er, ei, vecRe, vecIm);
+		
+		double[] colNorm = new double[n];
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < n; k++)
+				colNorm[k] += (vecRe[i*n+k]*vecRe[i*n+k]) + (vecIm[i*n+k]*vecIm[i*n+k]);
+		}
+		for (int k = 0; k < n; k++)
+			colNorm[k] = 1/Math.sqrt(colNorm[k]);
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < n; k++) {
+				vecRe[i*n+k] *= colNorm[k];
+				vecIm[i*n+k] *= colNorm[k];
+			}
+		}
+	}
+	
+	/**
+	 * Splits the range of a panel update in halves until it is at most grain long
+	 */
+	private static final class PanelTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final ComplexSchur schur;
+		private final int kind, from, to, grain;
+		
+		PanelTask(ComplexSchur schur, int kind, int from, int to, int grain) {
+			this.schur = schur;
+			this.kind = kind;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				schur.update(kind, from, to);
+				return;
+			}
+			
+			int mid = from + (to - from) / 2;
+			invokeAll(new PanelTask(schur, kind, from, mid, grain),
+					new PanelTask(schur, kind, mid, to, grain));
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package matrix;
+
+import complex_numbers.BatchTrig;
+import complex_numbers.ComplexNumber;
+
+/**
+ * Diagonal operator, multiplying by it scales rows (from the left) or columns (from the right)
+ * @author Arsen Babakhanyan
+ */
+public final class DiagonalOperator extends Operator {
+	
+	// diagonal elements
+	private final double[] re;
+	private final double[] im;
+	
+	/**
+	 * Creates diagonal operator with diagonal real[i] + imaginary[i]*i, the arrays are copied
+	 */
+	public DiagonalOperator(double[] real, double[] imaginary) {
+		if (real.length != imaginary.length)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		re = real.clone();
+		im = imaginary.clone();
+	}
+	
+	/**
+	 * Returns diagonal operator with the given diagonal elements, counterpart of Matrix.diag
+	 */
+	public static DiagonalOperator of(ComplexNumber[] that) {
+		double[] real = new double[that.length];
+		double[] imaginary = new double[that.length];
+		for (int i = 0; i < that.length; i++) {
+			real[i] = that[i].getReal();
+			imaginary[i] = that[i].getImaginary();
+		}
+		return new DiagonalOperator(real, imaginary);
+	}
+	
+	/**
+	 * Returns diagonal operator with values e^(i*tetta0), e^(i*tetta1) ..., counterpart of Matrix.matrixFromArgs
+	 */
+	public static DiagonalOperator fromArgs(double... args) {
+		double[] real = new double[args.length];
+		double[] imaginary = new double[args.length];
+		BatchTrig.sincos(args.length, args, imaginary, real);
+		return new DiagonalOperator(real, imaginary);
+	}
+	
+	@Override
+	public int len() {
+		return re.length;
+	}
+	
+	/**
+	 * Returns diagonal element i
+	 */
+	public ComplexNumber getElement(int i) {
+		return new ComplexNumber(re[i], im[i]);
+	}
+	
+	@Override
+	public Operator adjoint() {
+		double[] imaginary = new double[im.length];
+		for (int i = 0; i < im.length; i++)
+			imaginary[i] = -im[i];
+		return new DiagonalOperator(re, imaginary);
+	}
+	
+	@Override
+	void applyLeft(int n, double[] ar, double[] ai, double[] cr, double[] ci) {
+		for (int i = 0; i < n; i++) {
+			double dr = re[i], di = im[i];
+			int row = i*n;
+			for (int j = row; j < row+n; j++) {
+				double xr = ar[j], xi = ai[j];
+				cr[j] = (dr*xr) - (di*xi);
+				ci[j] = (di*xr) + (dr*xi);
+			}
+		}
+	}
+	
+	@Override
+	void applyRight(int n, double[] ar, double[] ai, double[] cr, double[] ci) {
+		for (int i = 0; i < n; i++) {
+			int row = i*n;
+			for (int j = 0; j < n; j++) {
+				double xr = ar[row+j], xi = ai[row+j];
+				cr[row+j] = (xr*re[j]) - (xi*im[j]);
+				ci[row+j] = (xi*re[j]) + (xr*im[j]);
+			}
+		}
+	}
+}
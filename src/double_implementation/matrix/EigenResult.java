@@ -0,0 +1,144 @@
+package matrix;
+
+import complex_numbers.ComplexNumber;
+
+/**
+ * Eigenvalues, and optionally eigenvectors, of a complex nxn matrix <br />
+ * Returned by Matrix.eigenDecomposition, values and vectors are kept in
+ * primitive arrays, eigenvector k is column k and has length 1 <br />
+ * The residual |A*v - l*v| is about 1e-15 * |A| for every solver. How close
+ * values and vectors are to the exact ones also depends on the conditioning:
+ * eigenvectors of repeated or close eigenvalues of a GENERAL (non normal)
+ * matrix can be far off, the error grows with n and with the distance of
+ * the matrix from normal
+ * @author Arsen Babakhanyan
+ */
+public final class EigenResult {
+	
+	/**
+	 * Structure of the decomposed matrix, it decides the solver <br />
+	 * HERMITIAN: tridiagonal reduction and QL (HermitianEigen), real ascending eigenvalues <br />
+	 * UNITARY: Schur form (ComplexSchur), which is diagonal for normal matrices <br />
+	 * GENERAL: Schur form (ComplexSchur) from dimension 3 on, closed form for 1x1 and 2x2 <br />
+	 * Eigenvectors of HERMITIAN and UNITARY are orthonormal, also for repeated eigenvalues
+	 */
+	public enum Structure {
+		GENERAL, HERMITIAN, UNITARY
+	}
+	
+	private final int n;
+	private final double[] valRe, valIm;
+	// null in the eigenvalues only mode
+	private final double[] vecRe, vecIm;
+	private final boolean converged;
+	private final Structure structure;
+	
+	EigenResult(int n, double[] valRe, double[] valIm, double[] vecRe, double[] vecIm, boolean converged, Structure structure) {
+		this.n = n;
+		this.valRe = valRe;
+		this.valIm = valIm;
+		this.vecRe = vecRe;
+		this.vecIm = vecIm;
+		this.converged = converged;
+		this.structure = structure;
+	}
+	
+	/**
+	 * Returnes dimension of the decomposed matrix
+	 */
+	public int len() {
+		return n;
+	}
+	
+	/**
+	 * Returns false if the iteration stopped before all eigenvalues were found
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+	
+	/**
+	 * Returns structure the solver was chosen for
+	 */
+	public Structure getStructure() {
+		return structure;
+	}
+	
+	/**
+	 * Returns true if eigenvectors were computed
+	 */
+	public boolean hasEigenvectors() {
+		return vecRe != null;
+	}
+	
+	/**
+	 * Returns real part of k-th eigenvalue
+	 */
+	public double getValueReal(int k) {
+		return valRe[k];
+	}
+	
+	/**
+	 * Returns imaginary part of k-th eigenvalue
+	 */
+	public double getValueImaginary(int k) {
+		return valIm[k];
+	}
+	
+	/**
+	 * Returns k-th eigenvalue
+	 */
+	public ComplexNumber getValue(int k) {
+		return new ComplexNumber(valRe[k], valIm[k]);
+	}
+	
+	/**
+	 * Returns all eigenvalues
+	 */
+	public ComplexNumber[] getValues() {
+		ComplexNumber[] values = new ComplexNumber[n];
+		for (int k = 0; k < n; k++)
+			values[k] = new ComplexNumber(valRe[k], valIm[k]);
+		return values;
+	}
+	
+	/**
+	 * Returns real part of element i of k-th eigenvector
+	 */
+	public double getVectorReal(int i, int k) {
+		checkVectors();
+		return vecRe[i*n+k];
+	}
+	
+	/**
+	 * Returns imaginary part of element i of k-th eigenvector
+	 */
+	public double getVectorImaginary(int i, int k) {
+		checkVectors();
+		return vecIm[i*n+k];
+	}
+	
+	/**
+	 * Returns k-th eigenvector
+	 */
+	public ComplexNumber[] getVector(int k) {
+		checkVectors();
+		ComplexNumber[] vector = new ComplexNumber[n];
+		for (int i = 0; i < n; i++)
+			vector[i] = new ComplexNumber(vecRe[i*n+k], vecIm[i*n+k]);
+		return vector;
+	}
+	
+	/**
+	 * Returns matrix with the eigenvectors as columns
+	 */
+	public Matrix getVectors() {
+		checkVectors();
+		return new Matrix(n, vecRe.clone(), vecIm.clone());
+	}
+	
+	private void checkVectors() {
+		if (vecRe == null)
+			throw new IllegalStateException("Eigenvectors were not computed");
+	}
+}
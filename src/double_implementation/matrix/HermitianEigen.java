@@ -0,0 +1,271 @@
+package matrix;
+
+/**
+ * Eigenvalues and eigenvectors of a Hermitian nxn matrix on primitive arrays <br />
+ * Householder reflections reduce the matrix to a real symmetric tridiagonal T
+ * (as LAPACK zhetd2, the subdiagonal comes out real), the implicit QL iteration
+ * of EISPACK tql2 diagonalizes T with real rotations, and the reflections are
+ * applied to its eigenvectors. Eigenvalues are real and ascending, eigenvectors
+ * orthonormal also for repeated eigenvalues
+ * @author Arsen Babakhanyan
+ */
+final class HermitianEigen {
+	
+	private static final double EPS = Math.ulp(1.0);
+	
+	private HermitianEigen() {
+	}
+	
+	/**
+	 * Computes eigenvalues of re + i*im into valRe (valIm is set to 0), and if vecRe is not
+	 * null the orthonormal eigenvectors as columns of vecRe + i*vecIm <br />
+	 * re and im are overwritten, returns false if the iteration did not converge
+	 */
+	static boolean decompose(int n, double[] re, double[] im, double[] valRe, double[] valIm,
+			double[] vecRe, double[] vecIm) {
+		boolean vectors = vecRe != null;
+		double[] e = new double[n];
+		double[] tauRe = new double[n], tauIm = new double[n];
+		tridiagonalize(n, re, im, valRe, e, tauRe, tauIm);
+		
+		// eigenvectors of T as rows, rotations then run along contiguous rows
+		double[] z = null;
+		if (vectors) {
+			z = new double[n*n];
+			for (int i = 0; i < n; i++)
+				z[i*n+i] = 1;
+		}
+		if (!ql(n, valRe, e, z))
+			return false;
+		for (int i = 0; i < n; i++)
+			valIm[i] = 0;
+		if (!vectors)
+			return true;
+		
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < n; k++) {
+				vecRe[i*n+k] = z[k*n+i];
+				vecIm[i*n+k] = 0;
+			}
+		}
+		backTransform(n, re, im, tauRe, tauIm, vecRe, vecIm);
+		return true;
+	}
+	
+	/**
+	 * Reduces the Hermitian matrix to tridiagonal form, diagonal to d and subdiagonal to e,
+	 * reflector k is I - tau_k*v*adjoint(v) with v = (1, re + i*im below the subdiagonal of column k)
+	 */
+	private static void tridiagonalize(int n, double[] re, double[] im, double[] d, double[] e,
+			double[] tauRe, double[] tauIm) {
+		double[] xr = new double[n], xi = new double[n];
+		for (int k = 0; k < n-1; k++) {
+			int k1 = k+1;
+			// reflector with adjoint(H) * a[k+1.., k] = beta*e1, beta real (as zlarfg)
+			double alphaRe = re[k1*n+k], alphaIm = im[k1*n+k];
+			double norm = 0;
+			for (int r = k+2; r < n; r++)
+				norm += (re[r*n+k]*re[r*n+k]) + (im[r*n+k]*im[r*n+k]);
+			d[k] = re[k*n+k];
+			if (norm == 0 && alphaIm == 0) {
+				e[k] = alphaRe;
+				continue;
+			}
+			
+			double beta = -Math.copySign(Math.sqrt((alphaRe*alphaRe) + (alphaIm*alphaIm) + norm), alphaRe);
+			double tr = (beta - alphaRe)/beta, ti = -alphaIm/beta;
+			double dr = alphaRe - beta, di = alphaIm;
+			double den = (dr*dr) + (di*di);
+			double sr = dr/den, si = -di/den;
+			for (int r = k+2; r < n; r++) {
+				double ar = re[r*n+k], ai = im[r*n+k];
+				re[r*n+k] = (ar*sr) - (ai*si);
+				im[r*n+k] = (ai*sr) + (ar*si);
+			}
+			re[k1*n+k] = 1;
+			im[k1*n+k] = 0;
+			e[k] = beta;
+			tauRe[k] = tr;
+			tauIm[k] = ti;
+			
+			// x = tau * A22 * v
+			for (int r = k1; r < n; r++) {
+				int r0 = r*n;
+				double pr = 0, pi = 0;
+				for (int c = k1; c < n; c++) {
+					double ar = re[r0+c], ai = im[r0+c];
+					double vr = re[c*n+k], vi = im[c*n+k];
+					pr += (ar*vr) - (ai*vi);
+					pi += (ai*vr) + (ar*vi);
+				}
+				xr[r] = (tr*pr) - (ti*pi);
+				xi[r] = (ti*pr) + (tr*pi);
+			}
+			
+			// w = x - 1/2 * tau * (adjoint(x) * v) * v, kept in x
+			double hr = 0, hi = 0;
+			for (int r = k1; r < n; r++) {
+				double vr = re[r*n+k], vi = im[r*n+k];
+				hr += (xr[r]*vr) + (xi[r]*vi);
+				hi += (xr[r]*vi) - (xi[r]*vr);
+			}
+			double ar = -0.5*((tr*hr) - (ti*hi)), ai = -0.5*((ti*hr) + (tr*hi));
+			for (int r = k1; r < n; r++) {
+				double vr = re[r*n+k], vi = im[r*n+k];
+				xr[r] += (ar*vr) - (ai*vi);
+				xi[r] += (ai*vr) + (ar*vi);
+			}
+			
+			// A22 = A22 - v*adjoint(w) - w*adjoint(v)
+			for (int r = k1; r < n; r++) {
+				int r0 = r*n;
+				double vr = re[r*n+k], vi = im[r*n+k];
+				double wr = xr[r], wi = xi[r];
+				for (int c = k1; c < n; c++) {
+					double cr = re[c*n+k], ci = im[c*n+k];
+					re[r0+c] -= (vr*xr[c]) + (vi*xi[c]) + (wr*cr) + (wi*ci);
+					im[r0+c] -= (vi*xr[c]) - (vr*xi[c]) + (wi*cr) - (wr*ci);
+				}
+			}
+		}
+		d[n-1] = re[(n-1)*n+n-1];
+		e[n-1] = 0;
+	}
+	
+	/**
+	 * Implicit QL iteration of tql2 on the tridiagonal d, e (e[i] next to d[i] and d[i+1]),
+	 * rows of z, if not null, are rotated along, eigenvalues are sorted ascending
+	 */
+	private static boolean ql(int n, double[] d, double[] e, double[] z) {
+		double f = 0, tst1 = 0;
+		for (int l = 0; l < n; l++) {
+			// find small subdiagonal element
+			tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+			int m = l;
+			while (m < n-1 && Math.abs(e[m]) > EPS*tst1)
+				m++;
+			
+			int its = 0;
+			while (m > l) {
+				if (++its > 30)
+					return false;
+				
+				// compute implicit shift
+				double g = d[l];
+				double p = (d[l+1] - g)/(2.0*e[l]);
+				double r = Math.hypot(p, 1.0);
+				if (p < 0)
+					r = -r;
+				d[l] = e[l]/(p + r);
+				d[l+1] = e[l]*(p + r);
+				double dl1 = d[l+1];
+				double h = g - d[l];
+				for (int i = l+2; i < n; i++)
+					d[i] -= h;
+				f += h;
+				
+				// implicit QL transformation
+				p = d[m];
+				double c = 1, c2 = c, c3 = c;
+				double el1 = e[l+1];
+				double s = 0, s2 = 0;
+				for (int i = m-1; i >= l; i--) {
+					c3 = c2;
+					c2 = c;
+					s2 = s;
+					g = c*e[i];
+					h = c*p;
+					r = Math.hypot(p, e[i]);
+					e[i+1] = s*r;
+					s = e[i]/r;
+					c = p/r;
+					p = c*d[i] - s*g;
+					d[i+1] = h + s*(c*g + s*d[i]);
+					if (z != null)
+						rotate(n, z, i, c, s);
+				}
+				p = -s*s2*c3*el1*e[l]/dl1;
+				e[l] = s*p;
+				d[l] = c*p;
+				
+				if (Math.abs(e[l]) <= EPS*tst1)
+					break;
+			}
+			d[l] += f;
+			e[l] = 0;
+		}
+		
+		// selection sort, keeps the rows of z with their eigenvalues
+		for (int i = 0; i < n-1; i++) {
+			int k = i;
+			for (int j = i+1; j < n; j++) {
+				if (d[j] < d[k])
+					k = j;
+			}
+			if (k == i)
+				continue;
+			double tmp = d[k];
+			d[k] = d[i];
+			d[i] = tmp;
+			if (z != null) {
+				for (int j = 0; j < n; j++) {
+					tmp = z[i*n+j];
+					z[i*n+j] = z[k*n+j];
+					z[k*n+j] = tmp;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Computes rows i, i+1 of z as [c -s; s c] times them
+	 */
+	private static void rotate(int n, double[] z, int i, double c, double s) {
+		int i0 = i*n, i1 = (i+1)*n;
+		for (int k = 0; k < n; k++) {
+			double h = z[i1+k];
+			z[i1+k] = s*z[i0+k] + c*h;
+			z[i0+k] = c*z[i0+k] - s*h;
+		}
+	}
+	
+	/**
+	 * Computes v = H_0 * H_1 * ... * H_(n-2) * v for the reflectors of tridiagonalize
+	 */
+	private static void backTransform(int n, double[] re, double[] im, double[] tauRe, double[] tauIm,
+			double[] vecRe, double[] vecIm) {
+		double[] wr = new double[n], wi = new double[n];
+		for (int k = n-2; k >= 0; k--) {
+			double tr = tauRe[k], ti = tauIm[k];
+			if (tr == 0 && ti == 0)
+				continue;
+			
+			// w = adjoint(v) * rows k+1.. of the eigenvectors
+			for (int c = 0; c < n; c++) {
+				wr[c] = 0;
+				wi[c] = 0;
+			}
+			for (int r = k+1; r < n; r++) {
+				double vr = re[r*n+k], vi = -im[r*n+k];
+				int r0 = r*n;
+				for (int c = 0; c < n; c++) {
+					double br = vecRe[r0+c], bi = vecIm[r0+c];
+					wr[c] += (vr*br) - (vi*bi);
+					wi[c] += (vi*br) + (vr*bi);
+				}
+			}
+			
+			// rows -= (tau*v) * w
+			for (int r = k+1; r < n; r++) {
+				double vr = re[r*n+k], vi = im[r*n+k];
+				double ar = (tr*vr) - (ti*vi), ai = (ti*vr) + (tr*vi);
+				int r0 = r*n;
+				for (int c = 0; c < n; c++) {
+					vecRe[r0+c] -= (ar*wr[c]) - (ai*wi[c]);
+					vecIm[r0+c] -= (ai*wr[c]) + (ar*wi[c]);
+				}
+			}
+		}
+	}
+}
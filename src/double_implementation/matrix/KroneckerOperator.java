@@ -0,0 +1,163 @@
+package matrix;
+
+/**
+ * Kronecker product F1 (x) F2 (x) ... (x) Fk of small dense factors <br />
+ * It is applied as k products with I (x) Fi (x) I, each of which mixes only
+ * the rows (or columns) that differ in the index of Fi, so applying it costs
+ * O(n^2 (d1 + ... + dk)) instead of O(n^3). The shared identity
+ * Matrix.IDENTITY_2 is skipped
+ * @author Arsen Babakhanyan
+ */
+public final class KroneckerOperator extends Operator {
+	
+	private final Matrix[] factors;
+	private final int n;
+	
+	/**
+	 * Creates Kronecker product of the given factors, first factor acts on the most significant index
+	 */
+	public KroneckerOperator(Matrix... factors) {
+		if (factors.length == 0)
+			throw new IllegalArgumentException("No factors");
+		this.factors = factors.clone();
+		int len = 1;
+		for (Matrix f : factors)
+			len *= f.len();
+		n = len;
+	}
+	
+	@Override
+	public int len() {
+		return n;
+	}
+	
+	/**
+	 * Returns the number of factors
+	 */
+	public int getFactorCount() {
+		return factors.length;
+	}
+	
+	/**
+	 * Returns factor i
+	 */
+	public Matrix getFactor(int i) {
+		return factors[i];
+	}
+	
+	@Override
+	public Operator adjoint() {
+		Matrix[] adjoints = new Matrix[factors.length];
+		for (int i = 0; i < factors.length; i++)
+			adjoints[i] = Matrix.sharedAdjoint(factors[i]);
+		return new KroneckerOperator(adjoints);
+	}
+	
+	@Override
+	void applyLeft(int n, double[] ar, double[] ai, double[] cr, double[] ci) {
+		apply(true, n, ar, ai, cr, ci);
+	}
+	
+	@Override
+	void applyRight(int n, double[] ar, double[] ai, double[] cr, double[] ci) {
+		apply(false, n, ar, ai, cr, ci);
+	}
+	
+	/**
+	 * Applies the factors one by one, the two output buffers take turns so that the last factor writes into c
+	 */
+	private void apply(boolean left, int n, double[] ar, double[] ai, double[] cr, double[] ci) {
+		int count = 0;
+		for (Matrix f : factors) {
+			if (f != Matrix.IDENTITY_2)
+				count++;
+		}
+		if (count == 0) {
+			System.arraycopy(ar, 0, cr, 0, n*n);
+			System.arraycopy(ai, 0, ci, 0, n*n);
+			return;
+		}
+		
+		double[] tr = count > 1 ? new double[n*n] : null;
+		double[] ti = count > 1 ? new double[n*n] : null;
+		double[] sr = ar, si = ai;
+		int lo = n;
+		for (Matrix f : factors) {
+			int d = f.len();
+			lo /= d;
+			if (f == Matrix.IDENTITY_2)
+				continue;
+			
+			count--;
+			double[] dr = count % 2 == 0 ? cr : tr;
+			double[] di = count % 2 == 0 ? ci : ti;
+			if (left)
+				factorLeft(n, d, lo, f.realPlane(), f.imaginaryPlane(), sr, si, dr, di);
+			else
+				factorRight(n, d, lo, f.realPlane(), f.imaginaryPlane(), sr, si, dr, di);
+			sr = dr;
+			si = di;
+		}
+	}
+	
+	/**
+	 * Computes c = (I (x) f (x) I) * a, f is dxd and the identity after it is lo x lo <br />
+	 * Row (h, m, l) of c is the sum over m' of f[m][m'] times row (h, m', l) of a
+	 */
+	private static void factorLeft(int n, int d, int lo, double[] fr, double[] fi, double[] ar, double[] ai, double[] cr, double[] ci) {
+		int block = d*lo;
+		for (int h = 0; h < n; h += block) {
+			for (int m = 0; m < d; m++) {
+				for (int l = 0; l < lo; l++) {
+					int c0 = (h + m*lo + l)*n;
+					for (int j = 0; j < n; j++) {
+						cr[c0+j] = 0;
+						ci[c0+j] = 0;
+					}
+					for (int k = 0; k < d; k++) {
+						double xr = fr[m*d+k], xi = fi[m*d+k];
+						if (xr == 0 && xi == 0)
+							continue;
+						int a0 = (h + k*lo + l)*n;
+						for (int j = 0; j < n; j++) {
+							double yr = ar[a0+j], yi = ai[a0+j];
+							cr[c0+j] += (xr*yr) - (xi*yi);
+							ci[c0+j] += (xi*yr) + (xr*yi);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes c = a * (I (x) f (x) I), f is dxd and the identity after it is lo x lo <br />
+	 * Column (h, m, l) of c is the sum over m' of column (h, m', l) of a times f[m'][m]
+	 */
+	private static void factorRight(int n, int d, int lo, double[] fr, double[] fi, double[] ar, double[] ai, double[] cr, double[] ci) {
+		int block = d*lo;
+		for (int i = 0; i < n; i++) {
+			int row = i*n;
+			for (int j = row; j < row+n; j++) {
+				cr[j] = 0;
+				ci[j] = 0;
+			}
+			for (int h = row; h < row+n; h += block) {
+				for (int k = 0; k < d; k++) {
+					for (int m = 0; m < d; m++) {
+						double yr = fr[k*d+m], yi = fi[k*d+m];
+						if (yr == 0 && yi == 0)
+							continue;
+						int a0 = h + k*lo;
+						int c0 = h + m*lo;
+						for (int l = 0; l < lo; l++) {
+							double xr = ar[a0+l], xi = ai[a0+l];
+							cr[c0+l] += (xr*yr) - (xi*yi);
+							ci[c0+l] += (xi*yr) + (xr*yi);
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,359 @@
+package matrix;
+
+import java.util.concurrent.RecursiveAction;
+
+import complex_numbers.ComplexNumber;
+
+/**
+ * LU factorization with partial pivoting, P*A = L*U, of a complex nxn matrix <br />
+ * The factorization is computed once by LU.of(matrix) and then gives the
+ * determinant, solutions for any number of right-hand sides and the inverse
+ * without repeating the O(n^3) elimination <br />
+ * The algorithm is the blocked right-looking one: a panel of columns is
+ * factored, the matching block row of U is solved, and the trailing matrix
+ * gets one rank-b update, whose rows are split across the ForkJoinPool of
+ * ComplexGemm for large matrices
+ * @author Arsen Babakhanyan
+ */
+public final class LU {
+	
+	// columns per panel
+	private static final int BLOCK = 32;
+	
+	// pivots smaller than this make the matrix singular (same limit the old elimination used)
+	private static final double SINGULAR = 1.0E-10;
+	
+	private final int n;
+	// L below the diagonal (unit diagonal not stored) and U on and above it, row by row
+	private final double[] re, im;
+	// row i of L*U is row perm[i] of the matrix
+	private final int[] perm;
+	// +1 or -1, sign of the row permutation
+	private int sign = 1;
+	// first column with a pivot smaller than SINGULAR, n if there is none
+	private int small;
+	private boolean singular;
+	
+	private LU(int n, double[] re, double[] im) {
+		this.n = n;
+		this.re = re;
+		this.im = im;
+		this.perm = new int[n];
+		this.small = n;
+		for (int i = 0; i < n; i++)
+			perm[i] = i;
+	}
+	
+	/**
+	 * Returns LU factorization of that, that is not changed
+	 */
+	public static LU of(Matrix that) {
+		int n = that.len();
+		LU lu = new LU(n, that.realPlane().clone(), that.imaginaryPlane().clone());
+		lu.factor();
+		return lu;
+	}
+	
+	/**
+	 * Returnes dimension of the factored matrix
+	 */
+	public int len() {
+		return n;
+	}
+	
+	/**
+	 * Returns true if a pivot was smaller than 1e-10
+	 */
+	public boolean isSingular() {
+		return singular;
+	}
+	
+	/**
+	 * Returns determinant of the factored matrix, 0 if a pivot before the last one is smaller than 1e-10 <br />
+	 * The last pivot is not tested (as in the old elimination), so a tiny determinant is returned as it is
+	 */
+	public ComplexNumber determinant() {
+		if (small < n-1)
+			return new ComplexNumber(0.0, 0.0);
+		
+		double detRe = sign, detIm = 0, tmp;
+		for (int i = 0; i < n; i++) {
+			double ur = re[i*n+i], ui = im[i*n+i];
+			tmp = (detRe*ur) - (detIm*ui);
+			detIm = (detIm*ur) + (detRe*ui);
+			detRe = tmp;
+		}
+		return new ComplexNumber(detRe, detIm);
+	}
+	
+	/**
+	 * Returns X with A*X = rhs, every column of rhs is one right-hand side
+	 */
+	public Matrix solve(Matrix rhs) {
+		if (rhs.len() != n)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		
+		Matrix x = new Matrix(n);
+		permuteRows(n, rhs.realPlane(), rhs.imaginaryPlane(), x.realPlane(), x.imaginaryPlane());
+		substitute(n, x.realPlane(), x.imaginaryPlane());
+		return x;
+	}
+	
+	/**
+	 * Returns x with A*x = rhs
+	 */
+	public ComplexNumber[] solve(ComplexNumber[] rhs) {
+		if (rhs.length != n)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		
+		double[] br = new double[n], bi = new double[n];
+		for (int i = 0; i < n; i++) {
+			br[i] = rhs[i].getReal();
+			bi[i] = rhs[i].getImaginary();
+		}
+		double[] xr = new double[n], xi = new double[n];
+		permuteRows(1, br, bi, xr, xi);
+		substitute(1, xr, xi);
+		
+		ComplexNumber[] x = new ComplexNumber[n];
+		for (int i = 0; i < n; i++)
+			x[i] = new ComplexNumber(xr[i], xi[i]);
+		return x;
+	}
+	
+	/**
+	 * Solves A*X = B in place for m right-hand sides, real and imaginary hold B
+	 * as n rows of m elements and get X
+	 */
+	public void solve(int m, double[] real, double[] imaginary) {
+		if (real.length != n*m || imaginary.length != n*m)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		
+		double[] xr = new double[n*m], xi = new double[n*m];
+		permuteRows(m, real, imaginary, xr, xi);
+		substitute(m, xr, xi);
+		System.arraycopy(xr, 0, real, 0, n*m);
+		System.arraycopy(xi, 0, imaginary, 0, n*m);
+	}
+	
+	/**
+	 * Returns inverse of the factored matrix
+	 */
+	public Matrix inverse() {
+		Matrix x = new Matrix(n);
+		double[] xr = x.realPlane();
+		// P*I has a single 1 per row
+		for (int i = 0; i < n; i++)
+			xr[i*n+perm[i]] = 1;
+		substitute(n, xr, x.imaginaryPlane());
+		return x;
+	}
+	
+	/**
+	 * Copies rows of b (n rows of m elements) into x in pivoted order
+	 */
+	private void permuteRows(int m, double[] br, double[] bi, double[] xr, double[] xi) {
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(br, perm[i]*m, xr, i*m, m);
+			System.arraycopy(bi, perm[i]*m, xi, i*m, m);
+		}
+	}
+	
+	/**
+	 * Solves L*U*X = X in place, X has n rows of m elements
+	 */
+	private void substitute(int m, double[] xr, double[] xi) {
+		if (singular)
+			throw new RuntimeException("Matrix is singular.");
+		
+		// forward substitution with the unit lower triangle
+		for (int i = 1; i < n; i++) {
+			int x0 = i*m;
+			for (int k = 0; k < i; k++) {
+				double lr = re[i*n+k], li = im[i*n+k];
+				subtractRow(m, lr, li, xr, xi, k*m, x0);
+			}
+		}
+		
+		// back substitution with the upper triangle
+		for (int i = n-1; i >= 0; i--) {
+			int x0 = i*m;
+			for (int k = i+1; k < n; k++) {
+				double ur = re[i*n+k], ui = im[i*n+k];
+				subtractRow(m, ur, ui, xr, xi, k*m, x0);
+			}
+			
+			double ur = re[i*n+i], ui = im[i*n+i];
+			double denom = (ur*ur) + (ui*ui);
+			for (int j = x0; j < x0+m; j++) {
+				double tmp = (xr[j]*ur + xi[j]*ui)/denom;
+				xi[j] = (xi[j]*ur - xr[j]*ui)/denom;
+				xr[j] = tmp;
+			}
+		}
+	}
+	
+	/**
+	 * Computes x[dst..dst+m) -= (fr + fi*i) * x[src..src+m)
+	 */
+	private static void subtractRow(int m, double fr, double fi, double[] xr, double[] xi, int src, int dst) {
+		if (fr == 0 && fi == 0)
+			return;
+		for (int j = 0; j < m; j++) {
+			double yr = xr[src+j], yi = xi[src+j];
+			xr[dst+j] -= (fr*yr) - (fi*yi);
+			xi[dst+j] -= (fi*yr) + (fr*yi);
+		}
+	}
+	
+	/**
+	 * Factors the matrix in place panel by panel
+	 */
+	private void factor() {
+		for (int k0 = 0; k0 < n; k0 += BLOCK) {
+			int k1 = Math.min(k0 + BLOCK, n);
+			factorPanel(k0, k1);
+			if (k1 == n)
+				break;
+			
+			solveBlockRow(k0, k1);
+			
+			// A22 -= L21 * U12
+			int rows = n - k1;
+			if ((long)rows*rows*(k1-k0) < 1L << 20 || n < ComplexGemm.getParallelThreshold()) {
+				updateRows(k0, k1, k1, n);
+			} else {
+				ComplexGemm.invoke(new UpdateTask(this, k0, k1, k1, n, ComplexGemm.grain(rows)));
+			}
+		}
+	}
+	
+	/**
+	 * Factors columns [k0, k1) of the rows k0.. with partial pivoting,
+	 * whole rows are swapped so the permutation holds for every column
+	 */
+	private void factorPanel(int k0, int k1) {
+		for (int k = k0; k < k1; k++) {
+			int p = k;
+			double max = ComplexNumber.abs(re[k*n+k], im[k*n+k]);
+			for (int i = k+1; i < n; i++) {
+				double abs = ComplexNumber.abs(re[i*n+k], im[i*n+k]);
+				if (abs > max) {
+					max = abs;
+					p = i;
+				}
+			}
+			
+			if (p != k) {
+				swapRows(p, k);
+				sign = -sign;
+			}
+			
+			if (max < SINGULAR) {
+				singular = true;
+				small = Math.min(small, k);
+				continue;
+			}
+			
+			// multiply by 1/pivot instead of dividing every element
+			double pr = re[k*n+k], pi = im[k*n+k];
+			double denom = (pr*pr) + (pi*pi);
+			double invRe = pr/denom, invIm = -pi/denom;
+			for (int i = k+1; i < n; i++) {
+				int i0 = i*n;
+				double ar = re[i0+k], ai = im[i0+k];
+				double lr = (ar*invRe) - (ai*invIm);
+				double li = (ai*invRe) + (ar*invIm);
+				re[i0+k] = lr;
+				im[i0+k] = li;
+				
+				for (int j = k+1; j < k1; j++) {
+					double ur = re[k*n+j], ui = im[k*n+j];
+					re[i0+j] -= (lr*ur) - (li*ui);
+					im[i0+j] -= (li*ur) + (lr*ui);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes U12 = inverse(L11) * A12 for the rows [k0, k1) and the columns k1..
+	 */
+	private void solveBlockRow(int k0, int k1) {
+		for (int k = k0; k < k1; k++) {
+			for (int i = k+1; i < k1; i++) {
+				double lr = re[i*n+k], li = im[i*n+k];
+				if (lr == 0 && li == 0)
+					continue;
+				for (int j = k1; j < n; j++) {
+					double ur = re[k*n+j], ui = im[k*n+j];
+					re[i*n+j] -= (lr*ur) - (li*ui);
+					im[i*n+j] -= (li*ur) + (lr*ui);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes rows [rowFrom, rowTo) of A22 -= L21 * U12 for the panel [k0, k1)
+	 */
+	private void updateRows(int k0, int k1, int rowFrom, int rowTo) {
+		for (int i = rowFrom; i < rowTo; i++) {
+			int i0 = i*n;
+			for (int k = k0; k < k1; k++) {
+				double lr = re[i0+k], li = im[i0+k];
+				if (lr == 0 && li == 0)
+					continue;
+				int k0Row = k*n;
+				for (int j = k1; j < n; j++) {
+					double ur = re[k0Row+j], ui = im[k0Row+j];
+					re[i0+j] -= (lr*ur) - (li*ui);
+					im[i0+j] -= (li*ur) + (lr*ui);
+				}
+			}
+		}
+	}
+	
+	private void swapRows(int a, int b) {
+		double tmp;
+		for (int j = 0; j < n; j++) {
+			tmp = re[a*n+j]; re[a*n+j] = re[b*n+j]; re[b*n+j] = tmp;
+			tmp = im[a*n+j]; im[a*n+j] = im[b*n+j]; im[b*n+j] = tmp;
+		}
+		int p = perm[a];
+		perm[a] = perm[b];
+		perm[b] = p;
+	}
+	
+	/**
+	 * Splits the rows of the trailing update in halves until a band is at most grain rows long
+	 */
+	private static final class UpdateTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final LU lu;
+		private final int k0, k1, rowFrom, rowTo, grain;
+		
+		UpdateTask(LU lu, int k0, int k1, int rowFrom, int rowTo, int grain) {
+			this.lu = lu;
+			this.k0 = k0;
+			this.k1 = k1;
+			this.rowFrom = rowFrom;
+			this.rowTo = rowTo;
+			this.grain = grain;
+		}
+		
+		@Override
+		protected void compute() {
+			if (rowTo - rowFrom <= grain) {
+				lu.updateRows(k0, k1, rowFrom, rowTo);
+				return;
+			}
+			
+			int mid = rowFrom + (rowTo - rowFrom) / 2;
+			invokeAll(new UpdateTask(lu, k0, k1, rowFrom, mid, grain),
+					new UpdateTask(lu, k0, k1, mid, rowTo, grain));
+		}
+	}
+}
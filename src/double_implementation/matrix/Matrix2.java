@@ -0,0 +1,264 @@
+package matrix;
+
+import complex_numbers.BatchTrig;
+import complex_numbers.ComplexNumber;
+
+/**
+ * Immutable 2x2 complex matrix kept in primitive fields <br />
+ * Used on the one qubit hot path instead of the general Matrix,
+ * every operation is fully unrolled and creates at most the result object
+ * @author Arsen Babakhanyan
+ */
+public final class Matrix2 {
+	
+	// real parts, rIJ is the element in row I and column J
+	private final double r00, r01, r10, r11;
+	// imaginary parts, iIJ is the element in row I and column J
+	private final double i00, i01, i10, i11;
+	
+	/**
+	 * Identity matrix
+	 */
+	public static final Matrix2 IDENTITY = new Matrix2(1, 0, 0, 0, 0, 0, 1, 0);
+	
+	/**
+	 * Pauli X matrix, see Matrix.PAULIX()
+	 */
+	public static final Matrix2 PAULI_X = new Matrix2(0, 0, 1, 0, 1, 0, 0, 0);
+	
+	/**
+	 * Pauli Y matrix, see Matrix.PAULIY()
+	 */
+	public static final Matrix2 PAULI_Y = new Matrix2(0, 0, 0, -1, 0, 1, 0, 0);
+	
+	/**
+	 * Pauli Z matrix, see Matrix.PAULIZ()
+	 */
+	public static final Matrix2 PAULI_Z = new Matrix2(1, 0, 0, 0, 0, 0, -1, 0);
+	
+	/**
+	 * Creates Matrix2 from real and imaginary parts of its elements, row by row
+	 */
+	public Matrix2(double r00, double i00, double r01, double i01,
+			double r10, double i10, double r11, double i11) {
+		this.r00 = r00; this.i00 = i00;
+		this.r01 = r01; this.i01 = i01;
+		this.r10 = r10; this.i10 = i10;
+		this.r11 = r11; this.i11 = i11;
+	}
+	
+	/**
+	 * Returns Matrix2 with elements of the given 2x2 Matrix
+	 */
+	public static Matrix2 of(Matrix that) {
+		if (that.len() != 2)
+			throw new IllegalArgumentException("Matrix must be of size 2x2");
+		double[] re = that.realPlane();
+		double[] im = that.imaginaryPlane();
+		return new Matrix2(re[0], im[0], re[1], im[1], re[2], im[2], re[3], im[3]);
+	}
+	
+	/**
+	 * Returns this matrix as a general Matrix
+	 */
+	public Matrix toMatrix() {
+		Matrix m = new Matrix(2);
+		double[] re = m.realPlane();
+		double[] im = m.imaginaryPlane();
+		re[0] = r00; im[0] = i00;
+		re[1] = r01; im[1] = i01;
+		re[2] = r10; im[2] = i10;
+		re[3] = r11; im[3] = i11;
+		return m;
+	}
+	
+	/**
+	 * Returns real part of the element in the given row and column
+	 */
+	public double getReal(int row, int col) {
+		switch (row*2 + col) {
+		case 0: return r00;
+		case 1: return r01;
+		case 2: return r10;
+		case 3: return r11;
+		default: throw new IndexOutOfBoundsException();
+		}
+	}
+	
+	/**
+	 * Returns imaginary part of the element in the given row and column
+	 */
+	public double getImaginary(int row, int col) {
+		switch (row*2 + col) {
+		case 0: return i00;
+		case 1: return i01;
+		case 2: return i10;
+		case 3: return i11;
+		default: throw new IndexOutOfBoundsException();
+		}
+	}
+	
+	/**
+	 * Returns element in the given row and column
+	 */
+	public ComplexNumber getElement(int row, int col) {
+		return new ComplexNumber(getReal(row, col), getImaginary(row, col));
+	}
+	
+	/**
+	 * Returns this * that
+	 */
+	public Matrix2 mul(Matrix2 that) {
+		return new Matrix2(
+				(r00*that.r00 - i00*that.i00) + (r01*that.r10 - i01*that.i10),
+				(i00*that.r00 + r00*that.i00) + (i01*that.r10 + r01*that.i10),
+				(r00*that.r01 - i00*that.i01) + (r01*that.r11 - i01*that.i11),
+				(i00*that.r01 + r00*that.i01) + (i01*that.r11 + r01*that.i11),
+				(r10*that.r00 - i10*that.i00) + (r11*that.r10 - i11*that.i10),
+				(i10*that.r00 + r10*that.i00) + (i11*that.r10 + r11*that.i10),
+				(r10*that.r01 - i10*that.i01) + (r11*that.r11 - i11*that.i11),
+				(i10*that.r01 + r10*that.i01) + (i11*that.r11 + r11*that.i11));
+	}
+	
+	/**
+	 * Returns this * value for real value
+	 */
+	public Matrix2 mul(double value) {
+		return new Matrix2(r00*value, i00*value, r01*value, i01*value,
+				r10*value, i10*value, r11*value, i11*value);
+	}
+	
+	/**
+	 * Returns this / value for real value
+	 */
+	public Matrix2 div(double value) {
+		return new Matrix2(r00/value, i00/value, r01/value, i01/value,
+				r10/value, i10/value, r11/value, i11/value);
+	}
+	
+	/**
+	 * Returns adjoint (conjugate transpose) of this matrix
+	 */
+	public Matrix2 adjoint() {
+		return new Matrix2(r00, -i00, r10, -i10, r01, -i01, r11, -i11);
+	}
+	
+	/**
+	 * Returns transpose of this matrix
+	 */
+	public Matrix2 transpose() {
+		return new Matrix2(r00, i00, r10, i10, r01, i01, r11, i11);
+	}
+	
+	/**
+	 * Returns conjugate of this matrix
+	 */
+	public Matrix2 conjugate() {
+		return new Matrix2(r00, -i00, r01, -i01, r10, -i10, r11, -i11);
+	}
+	
+	/**
+	 * Returns determinant of this matrix
+	 */
+	public ComplexNumber determinant() {
+		return new ComplexNumber(
+				(r00*r11 - i00*i11) - (r01*r10 - i01*i10),
+				(i00*r11 + r00*i11) - (i01*r10 + r01*i10));
+	}
+	
+	/**
+	 * Returns Kronecker product this (x) that
+	 */
+	public Matrix4 kron(Matrix2 that) {
+		return new Matrix4(
+				r00*that.r00 - i00*that.i00, i00*that.r00 + r00*that.i00, r00*that.r01 - i00*that.i01, i00*that.r01 + r00*that.i01,
+				r01*that.r00 - i01*that.i00, i01*that.r00 + r01*that.i00, r01*that.r01 - i01*that.i01, i01*that.r01 + r01*that.i01,
+				r00*that.r10 - i00*that.i10, i00*that.r10 + r00*that.i10, r00*that.r11 - i00*that.i11, i00*that.r11 + r00*that.i11,
+				r01*that.r10 - i01*that.i10, i01*that.r10 + r01*that.i10, r01*that.r11 - i01*that.i11, i01*that.r11 + r01*that.i11,
+				r10*that.r00 - i10*that.i00, i10*that.r00 + r10*that.i00, r10*that.r01 - i10*that.i01, i10*that.r01 + r10*that.i01,
+				r11*that.r00 - i11*that.i00, i11*that.r00 + r11*that.i00, r11*that.r01 - i11*that.i01, i11*that.r01 + r11*that.i01,
+				r10*that.r10 - i10*that.i10, i10*that.r10 + r10*that.i10, r10*that.r11 - i10*that.i11, i10*that.r11 + r10*that.i11,
+				r11*that.r10 - i11*that.i10, i11*that.r10 + r11*that.i10, r11*that.r11 - i11*that.i11, i11*that.r11 + r11*that.i11);
+	}
+	
+	/**
+	 * Returns Kronecker product first (x) second
+	 */
+	public static Matrix4 kron(Matrix2 first, Matrix2 second) {
+		return first.kron(second);
+	}
+	
+	/**
+	 * Returns rotation matrix around X axis by angle = value, see OneQubit.RX
+	 */
+	public static Matrix2 RX(double value) {
+		double cosa = Math.cos(value);
+		double sina = Math.sin(value);
+		return new Matrix2(cosa, 0, 0, sina, 0, sina, cosa, 0);
+	}
+	
+	/**
+	 * Returns rotation matrix around Y axis by angle = value, see OneQubit.RY
+	 */
+	public static Matrix2 RY(double value) {
+		double cosa = Math.cos(value);
+		double sina = Math.sin(value);
+		return new Matrix2(cosa, 0, sina, 0, -sina, 0, cosa, 0);
+	}
+	
+	/**
+	 * Returns rotation matrix around Z axis by angle = value, see OneQubit.RZ
+	 */
+	public static Matrix2 RZ(double value) {
+		double cosa = Math.cos(value);
+		double sina = Math.sin(value);
+		return new Matrix2(cosa, sina, 0, 0, 0, 0, cosa, -sina);
+	}
+	
+	/**
+	 * Returns rotation matrices around X axis by the given angles, RX(values[k]) for each k <br />
+	 * Sines and cosines are computed together by BatchTrig.sincos
+	 */
+	public static Matrix2[] RX(double[] values) {
+		int count = values.length;
+		double[] cos = new double[count], sin = new double[count];
+		BatchTrig.sincos(count, values, sin, cos);
+		
+		Matrix2[] rotations = new Matrix2[count];
+		for (int k = 0; k < count; k++)
+			rotations[k] = new Matrix2(cos[k], 0, 0, sin[k], 0, sin[k], cos[k], 0);
+		return rotations;
+	}
+	
+	/**
+	 * Returns rotation matrices around Y axis by the given angles, RY(values[k]) for each k
+	 */
+	public static Matrix2[] RY(double[] values) {
+		int count = values.length;
+		double[] cos = new double[count], sin = new double[count];
+		BatchTrig.sincos(count, values, sin, cos);
+		
+		Matrix2[] rotations = new Matrix2[count];
+		for (int k = 0; k < count; k++)
+			rotations[k] = new Matrix2(cos[k], 0, sin[k], 0, -sin[k], 0, cos[k], 0);
+		return rotations;
+	}
+	
+	/**
+	 * Returns rotation matrices around Z axis by the given angles, RZ(values[k]) for each k
+	 */
+	public static Matrix2[] RZ(double[] values) {
+		int count = values.length;
+		double[] cos = new double[count], sin = new double[count];
+		BatchTrig.sincos(count, values, sin, cos);
+		
+		Matrix2[] rotations = new Matrix2[count];
+		for (int k = 0; k < count; k++)
+			rotations[k] = new Matrix2(cos[k], sin[k], 0, 0, 0, 0, cos[k], -sin[k]);
+		return rotations;
+	}
+	
+	public String toString() {
+		return toMatrix().toString();
+	}
+}
@@ -0,0 +1,302 @@
+package matrix;
+
+import complex_numbers.ComplexNumber;
+
+/**
+ * Immutable 4x4 complex matrix kept in primitive fields <br />
+ * Used on the two qubit hot path instead of the general Matrix,
+ * every operation is fully unrolled and creates at most the result object
+ * @author Arsen Babakhanyan
+ */
+public final class Matrix4 {
+	
+	// real parts, rIJ is the element in row I and column J
+	private final double r00, r01, r02, r03, r10, r11, r12, r13,
+			r20, r21, r22, r23, r30, r31, r32, r33;
+	// imaginary parts, iIJ is the element in row I and column J
+	private final double i00, i01, i02, i03, i10, i11, i12, i13,
+			i20, i21, i22, i23, i30, i31, i32, i33;
+	
+	/**
+	 * Identity matrix
+	 */
+	public static final Matrix4 IDENTITY = new Matrix4(
+			new double[] {1, 0, 0, 0,  0, 1, 0, 0,  0, 0, 1, 0,  0, 0, 0, 1},
+			new double[16]);
+	
+	/**
+	 * CNOT, see Matrix.CNOT()
+	 */
+	public static final Matrix4 CNOT = new Matrix4(
+			new double[] {1, 0, 0, 0,  0, 1, 0, 0,  0, 0, 0, 1,  0, 0, 1, 0},
+			new double[16]);
+	
+	/**
+	 * Bell state matrix (magic basis), see Matrix.B()
+	 */
+	public static final Matrix4 B = new Matrix4(
+			new double[] {1, 0, 0, 0,  0, 0, 1, 0,  0, 0, -1, 0,  1, 0, 0, 0},
+			new double[] {0, 0, 0, 1,  0, 1, 0, 0,  0, 1, 0, 0,  0, 0, 0, -1});
+	
+	/**
+	 * Adjoint of the magic basis matrix B
+	 */
+	public static final Matrix4 B_ADJOINT = B.adjoint();
+	
+	Matrix4(double r00, double i00, double r01, double i01, double r02, double i02, double r03, double i03,
+			double r10, double i10, double r11, double i11, double r12, double i12, double r13, double i13,
+			double r20, double i20, double r21, double i21, double r22, double i22, double r23, double i23,
+			double r30, double i30, double r31, double i31, double r32, double i32, double r33, double i33) {
+		this.r00 = r00; this.i00 = i00;
+		this.r01 = r01; this.i01 = i01;
+		this.r02 = r02; this.i02 = i02;
+		this.r03 = r03; this.i03 = i03;
+		this.r10 = r10; this.i10 = i10;
+		this.r11 = r11; this.i11 = i11;
+		this.r12 = r12; this.i12 = i12;
+		this.r13 = r13; this.i13 = i13;
+		this.r20 = r20; this.i20 = i20;
+		this.r21 = r21; this.i21 = i21;
+		this.r22 = r22; this.i22 = i22;
+		this.r23 = r23; this.i23 = i23;
+		this.r30 = r30; this.i30 = i30;
+		this.r31 = r31; this.i31 = i31;
+		this.r32 = r32; this.i32 = i32;
+		this.r33 = r33; this.i33 = i33;
+	}
+	
+	/**
+	 * Creates Matrix4 from planes of real and imaginary parts (16 elements each, row by row)
+	 */
+	public Matrix4(double[] re, double[] im) {
+		this(re[0], im[0], re[1], im[1], re[2], im[2], re[3], im[3],
+				re[4], im[4], re[5], im[5], re[6], im[6], re[7], im[7],
+				re[8], im[8], re[9], im[9], re[10], im[10], re[11], im[11],
+				re[12], im[12], re[13], im[13], re[14], im[14], re[15], im[15]);
+	}
+	
+	/**
+	 * Returns Matrix4 with elements of the given 4x4 Matrix
+	 */
+	public static Matrix4 of(Matrix that) {
+		if (that.len() != 4)
+			throw new IllegalArgumentException("Matrix must be of size 4x4");
+		return new Matrix4(that.realPlane(), that.imaginaryPlane());
+	}
+	
+	/**
+	 * Returns this matrix as a general Matrix
+	 */
+	public Matrix toMatrix() {
+		Matrix m = new Matrix(4);
+		copyTo(m.realPlane(), m.imaginaryPlane());
+		return m;
+	}
+	
+	/**
+	 * Copies elements into planes of real and imaginary parts (16 elements each, row by row)
+	 */
+	public void copyTo(double[] re, double[] im) {
+		re[0] = r00; im[0] = i00;
+		re[1] = r01; im[1] = i01;
+		re[2] = r02; im[2] = i02;
+		re[3] = r03; im[3] = i03;
+		re[4] = r10; im[4] = i10;
+		re[5] = r11; im[5] = i11;
+		re[6] = r12; im[6] = i12;
+		re[7] = r13; im[7] = i13;
+		re[8] = r20; im[8] = i20;
+		re[9] = r21; im[9] = i21;
+		re[10] = r22; im[10] = i22;
+		re[11] = r23; im[11] = i23;
+		re[12] = r30; im[12] = i30;
+		re[13] = r31; im[13] = i31;
+		re[14] = r32; im[14] = i32;
+		re[15] = r33; im[15] = i33;
+	}
+	
+	/**
+	 * Returns real part of the element in the given row and column
+	 */
+	public double getReal(int row, int col) {
+		switch (row*4 + col) {
+		case 0: return r00;
+		case 1: return r01;
+		case 2: return r02;
+		case 3: return r03;
+		case 4: return r10;
+		case 5: return r11;
+		case 6: return r12;
+		case 7: return r13;
+		case 8: return r20;
+		case 9: return r21;
+		case 10: return r22;
+		case 11: return r23;
+		case 12: return r30;
+		case 13: return r31;
+		case 14: return r32;
+		case 15: return r33;
+		default: throw new IndexOutOfBoundsException();
+		}
+	}
+	
+	/**
+	 * Returns imaginary part of the element in the given row and column
+	 */
+	public double getImaginary(int row, int col) {
+		switch (row*4 + col) {
+		case 0: return i00;
+		case 1: return i01;
+		case 2: return i02;
+		case 3: return i03;
+		case 4: return i10;
+		case 5: return i11;
+		case 6: return i12;
+		case 7: return i13;
+		case 8: return i20;
+		case 9: return i21;
+		case 10: return i22;
+		case 11: return i23;
+		case 12: return i30;
+		case 13: return i31;
+		case 14: return i32;
+		case 15: return i33;
+		default: throw new IndexOutOfBoundsException();
+		}
+	}
+	
+	/**
+	 * Returns element in the given row and column
+	 */
+	public ComplexNumber getElement(int row, int col) {
+		return new ComplexNumber(getReal(row, col), getImaginary(row, col));
+	}
+	
+	/**
+	 * Returns this * that
+	 */
+	public Matrix4 mul(Matrix4 that) {
+		return new Matrix4(
+				(r00*that.r00 - i00*that.i00) + (r01*that.r10 - i01*that.i10) + (r02*that.r20 - i02*that.i20) + (r03*that.r30 - i03*that.i30),
+				(i00*that.r00 + r00*that.i00) + (i01*that.r10 + r01*that.i10) + (i02*that.r20 + r02*that.i20) + (i03*that.r30 + r03*that.i30),
+				(r00*that.r01 - i00*that.i01) + (r01*that.r11 - i01*that.i11) + (r02*that.r21 - i02*that.i21) + (r03*that.r31 - i03*that.i31),
+				(i00*that.r01 + r00*that.i01) + (i01*that.r11 + r01*that.i11) + (i02*that.r21 + r02*that.i21) + (i03*that.r31 + r03*that.i31),
+				(r00*that.r02 - i00*that.i02) + (r01*that.r12 - i01*that.i12) + (r02*that.r22 - i02*that.i22) + (r03*that.r32 - i03*that.i32),
+				(i00*that.r02 + r00*that.i02) + (i01*that.r12 + r01*that.i12) + (i02*that.r22 + r02*that.i22) + (i03*that.r32 + r03*that.i32),
+				(r00*that.r03 - i00*that.i03) + (r01*that.r13 - i01*that.i13) + (r02*that.r23 - i02*that.i23) + (r03*that.r33 - i03*that.i33),
+				(i00*that.r03 + r00*that.i03) + (i01*that.r13 + r01*that.i13) + (i02*that.r23 + r02*that.i23) + (i03*that.r33 + r03*that.i33),
+				(r10*that.r00 - i10*that.i00) + (r11*that.r10 - i11*that.i10) + (r12*that.r20 - i12*that.i20) + (r13*that.r30 - i13*that.i30),
+				(i10*that.r00 + r10*that.i00) + (i11*that.r10 + r11*that.i10) + (i12*that.r20 + r12*that.i20) + (i13*that.r30 + r13*that.i30),
+				(r10*that.r01 - i10*that.i01) + (r11*that.r11 - i11*that.i11) + (r12*that.r21 - i12*that.i21) + (r13*that.r31 - i13*that.i31),
+				(i10*that.r01 + r10*that.i01) + (i11*that.r11 + r11*that.i11) + (i12*that.r21 + r12*that.i21) + (i13*that.r31 + r13*that.i31),
+				(r10*that.r02 - i10*that.i02) + (r11*that.r12 - i11*that.i12) + (r12*that.r22 - i12*that.i22) + (r13*that.r32 - i13*that.i32),
+				(i10*that.r02 + r10*that.i02) + (i11*that.r12 + r11*that.i12) + (i12*that.r22 + r12*that.i22) + (i13*that.r32 + r13*that.i32),
+				(r10*that.r03 - i10*that.i03) + (r11*that.r13 - i11*that.i13) + (r12*that.r23 - i12*that.i23) + (r13*that.r33 - i13*that.i33),
+				(i10*that.r03 + r10*that.i03) + (i11*that.r13 + r11*that.i13) + (i12*that.r23 + r12*that.i23) + (i13*that.r33 + r13*that.i33),
+				(r20*that.r00 - i20*that.i00) + (r21*that.r10 - i21*that.i10) + (r22*that.r20 - i22*that.i20) + (r23*that.r30 - i23*that.i30),
+				(i20*that.r00 + r20*that.i00) + (i21*that.r10 + r21*that.i10) + (i22*that.r20 + r22*that.i20) + (i23*that.r30 + r23*that.i30),
+				(r20*that.r01 - i20*that.i01) + (r21*that.r11 - i21*that.i11) + (r22*that.r21 - i22*that.i21) + (r23*that.r31 - i23*that.i31),
+				(i20*that.r01 + r20*that.i01) + (i21*that.r11 + r21*that.i11) + (i22*that.r21 + r22*that.i21) + (i23*that.r31 + r23*that.i31),
+				(r20*that.r02 - i20*that.i02) + (r21*that.r12 - i21*that.i12) + (r22*that.r22 - i22*that.i22) + (r23*that.r32 - i23*that.i32),
+				(i20*that.r02 + r20*that.i02) + (i21*that.r12 + r21*that.i12) + (i22*that.r22 + r22*that.i22) + (i23*that.r32 + r23*that.i32),
+				(r20*that.r03 - i20*that.i03) + (r21*that.r13 - i21*that.i13) + (r22*that.r23 - i22*that.i23) + (r23*that.r33 - i23*that.i33),
+				(i20*that.r03 + r20*that.i03) + (i21*that.r13 + r21*that.i13) + (i22*that.r23 + r22*that.i23) + (i23*that.r33 + r23*that.i33),
+				(r30*that.r00 - i30*that.i00) + (r31*that.r10 - i31*that.i10) + (r32*that.r20 - i32*that.i20) + (r33*that.r30 - i33*that.i30),
+				(i30*that.r00 + r30*that.i00) + (i31*that.r10 + r31*that.i10) + (i32*that.r20 + r32*that.i20) + (i33*that.r30 + r33*that.i30),
+				(r30*that.r01 - i30*that.i01) + (r31*that.r11 - i31*that.i11) + (r32*that.r21 - i32*that.i21) + (r33*that.r31 - i33*that.i31),
+				(i30*that.r01 + r30*that.i01) + (i31*that.r11 + r31*that.i11) + (i32*that.r21 + r32*that.i21) + (i33*that.r31 + r33*that.i31),
+				(r30*that.r02 - i30*that.i02) + (r31*that.r12 - i31*that.i12) + (r32*that.r22 - i32*that.i22) + (r33*that.r32 - i33*that.i32),
+				(i30*that.r02 + r30*that.i02) + (i31*that.r12 + r31*that.i12) + (i32*that.r22 + r32*that.i22) + (i33*that.r32 + r33*that.i32),
+				(r30*that.r03 - i30*that.i03) + (r31*that.r13 - i31*that.i13) + (r32*that.r23 - i32*that.i23) + (r33*that.r33 - i33*that.i33),
+				(i30*that.r03 + r30*that.i03) + (i31*that.r13 + r31*that.i13) + (i32*that.r23 + r32*that.i23) + (i33*that.r33 + r33*that.i33));
+	}
+	
+	/**
+	 * Returns adjoint (conjugate transpose) of this matrix
+	 */
+	public Matrix4 adjoint() {
+		return new Matrix4(
+				r00, -i00, r10, -i10, r20, -i20, r30, -i30,
+				r01, -i01, r11, -i11, r21, -i21, r31, -i31,
+				r02, -i02, r12, -i12, r22, -i22, r32, -i32,
+				r03, -i03, r13, -i13, r23, -i23, r33, -i33);
+	}
+	
+	/**
+	 * Returns transpose of this matrix
+	 */
+	public Matrix4 transpose() {
+		return new Matrix4(
+				r00, i00, r10, i10, r20, i20, r30, i30,
+				r01, i01, r11, i11, r21, i21, r31, i31,
+				r02, i02, r12, i12, r22, i22, r32, i32,
+				r03, i03, r13, i13, r23, i23, r33, i33);
+	}
+	
+	/**
+	 * Returns conjugate of this matrix
+	 */
+	public Matrix4 conjugate() {
+		return new Matrix4(
+				r00, -i00, r01, -i01, r02, -i02, r03, -i03,
+				r10, -i10, r11, -i11, r12, -i12, r13, -i13,
+				r20, -i20, r21, -i21, r22, -i22, r23, -i23,
+				r30, -i30, r31, -i31, r32, -i32, r33, -i33);
+	}
+	
+	/**
+	 * Returns this * value for real value
+	 */
+	public Matrix4 mul(double value) {
+		return new Matrix4(
+				r00*value, i00*value, r01*value, i01*value, r02*value, i02*value, r03*value, i03*value,
+				r10*value, i10*value, r11*value, i11*value, r12*value, i12*value, r13*value, i13*value,
+				r20*value, i20*value, r21*value, i21*value, r22*value, i22*value, r23*value, i23*value,
+				r30*value, i30*value, r31*value, i31*value, r32*value, i32*value, r33*value, i33*value);
+	}
+	
+	/**
+	 * Returns determinant of this matrix (expansion by 2x2 minors of the first two rows)
+	 */
+	public ComplexNumber determinant() {
+		double[] d = new double[2];
+		determinant(d);
+		return new ComplexNumber(d[0], d[1]);
+	}
+	
+	/**
+	 * Writes real and imaginary parts of the determinant to result[0] and result[1]
+	 */
+	public void determinant(double[] result) {
+		double s0r = (r00*r11 - i00*i11) - (r01*r10 - i01*i10);
+		double s0i = (i00*r11 + r00*i11) - (i01*r10 + r01*i10);
+		double s1r = (r00*r12 - i00*i12) - (r02*r10 - i02*i10);
+		double s1i = (i00*r12 + r00*i12) - (i02*r10 + r02*i10);
+		double s2r = (r00*r13 - i00*i13) - (r03*r10 - i03*i10);
+		double s2i = (i00*r13 + r00*i13) - (i03*r10 + r03*i10);
+		double s3r = (r01*r12 - i01*i12) - (r02*r11 - i02*i11);
+		double s3i = (i01*r12 + r01*i12) - (i02*r11 + r02*i11);
+		double s4r = (r01*r13 - i01*i13) - (r03*r11 - i03*i11);
+		double s4i = (i01*r13 + r01*i13) - (i03*r11 + r03*i11);
+		double s5r = (r02*r13 - i02*i13) - (r03*r12 - i03*i12);
+		double s5i = (i02*r13 + r02*i13) - (i03*r12 + r03*i12);
+		double c0r = (r20*r31 - i20*i31) - (r21*r30 - i21*i30);
+		double c0i = (i20*r31 + r20*i31) - (i21*r30 + r21*i30);
+		double c1r = (r20*r32 - i20*i32) - (r22*r30 - i22*i30);
+		double c1i = (i20*r32 + r20*i32) - (i22*r30 + r22*i30);
+		double c2r = (r20*r33 - i20*i33) - (r23*r30 - i23*i30);
+		double c2i = (i20*r33 + r20*i33) - (i23*r30 + r23*i30);
+		double c3r = (r21*r32 - i21*i32) - (r22*r31 - i22*i31);
+		double c3i = (i21*r32 + r21*i32) - (i22*r31 + r22*i31);
+		double c4r = (r21*r33 - i21*i33) - (r23*r31 - i23*i31);
+		double c4i = (i21*r33 + r21*i33) - (i23*r31 + r23*i31);
+		double c5r = (r22*r33 - i22*i33) - (r23*r32 - i23*i32);
+		double c5i = (i22*r33 + r22*i33) - (i23*r32 + r23*i32);
+		result[0] = (s0r*c5r - s0i*c5i) - (s1r*c4r - s1i*c4i) + (s2r*c3r - s2i*c3i) + (s3r*c2r - s3i*c2i) - (s4r*c1r - s4i*c1i) + (s5r*c0r - s5i*c0i);
+		result[1] = (s0i*c5r + s0r*c5i) - (s1i*c4r + s1r*c4i) + (s2i*c3r + s2r*c3i) + (s3i*c2r + s3r*c2i) - (s4i*c1r + s4r*c1i) + (s5i*c0r + s5r*c0i);
+	}
+	
+	public String toString() {
+		return toMatrix().toString();
+	}
+}
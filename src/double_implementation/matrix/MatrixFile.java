@@ -0,0 +1,324 @@
+package matrix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file of count complex nxn matrices of the same dimension, read by mapping the file <br />
+ * The file starts with a header of 32 bytes: magic "CMAT", format version, n, a reserved int,
+ * count as long and 8 reserved bytes. Matrices follow one after the other, each row by row
+ * as pairs (real, imaginary) of little-endian float64, so matrix k starts at byte
+ * 32 + 16*n*n*k <br />
+ * A MatrixFile is a read-only view of the mapped file, elements are read straight from the
+ * mapping without a copy. It keeps no state between calls, so one instance can be read by
+ * several threads and files can be read in parallel. Writer writes the format through a buffer
+ * @author Arsen Babakhanyan
+ */
+public final class MatrixFile {
+	
+	// "CMAT" read as little-endian int
+	private static final int MAGIC = 'C' | ('M' << 8) | ('A' << 16) | ('T' << 24);
+	
+	private static final int VERSION = 1;
+	
+	private static final int HEADER_BYTES = 32;
+	
+	// largest mapped chunk in bytes, a chunk holds whole matrices
+	private static final long MAX_CHUNK_BYTES = 1L << 30;
+	
+	// bytes a Writer collects before it writes to the channel
+	private static final int WRITE_BUFFER_BYTES = 1 << 20;
+	
+	private final int n;
+	private final long count;
+	private final int perChunk;
+	// interleaved (real, imaginary) pairs of the matrices of a chunk
+	private final DoubleBuffer[] chunks;
+	
+	private MatrixFile(int n, long count, int perChunk, DoubleBuffer[] chunks) {
+		this.n = n;
+		this.count = count;
+		this.perChunk = perChunk;
+		this.chunks = chunks;
+	}
+	
+	/**
+	 * Returns read-only view of the given matrix file <br />
+	 * Throws IOException if the file has no valid header or is shorter than the header says
+	 */
+	public static MatrixFile open(Path file) throws IOException {
+		// the mapping stays valid after the channel is closed
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_BYTES)
+				throw new IOException("Not a matrix file: " + file);
+			
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt(0) != MAGIC)
+				throw new IOException("Not a matrix file: " + file);
+			if (header.getInt(4) != VERSION)
+				throw new IOException("Unsupported matrix file version " + header.getInt(4) + ": " + file);
+			int n = header.getInt(8);
+			long count = header.getLong(16);
+			long matrixBytes = 16L*n*n;
+			if (n <= 0 || count < 0 || matrixBytes > MAX_CHUNK_BYTES)
+				throw new IOException("Illegal matrix file header: " + file);
+			if (size - HEADER_BYTES < count*matrixBytes)
+				throw new IOException("Truncated matrix file: " + file);
+			
+			int perChunk = (int)Math.min(MAX_CHUNK_BYTES / matrixBytes, Math.max(count, 1));
+			int chunkCount = (int)((count + perChunk - 1) / perChunk);
+			DoubleBuffer[] chunks = new DoubleBuffer[chunkCount];
+			for (int c = 0; c < chunkCount; c++) {
+				long first = (long)c*perChunk;
+				long bytes = Math.min(perChunk, count - first)*matrixBytes;
+				chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first*matrixBytes, bytes)
+						.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			}
+			return new MatrixFile(n, count, perChunk, chunks);
+		}
+	}
+	
+	/**
+	 * Returns writer of a new matrix file of nxn matrices, an existing file is replaced
+	 */
+	public static Writer create(Path file, int n) throws IOException {
+		return new Writer(file, n);
+	}
+	
+	/**
+	 * Writes the given matrices of equal dimension to a new file
+	 */
+	public static void write(Path file, Matrix... matrices) throws IOException {
+		if (matrices.length == 0)
+			throw new IllegalArgumentException("No matrices to write");
+		
+		try (Writer writer = create(file, matrices[0].len())) {
+			for (Matrix m : matrices)
+				writer.write(m);
+		}
+	}
+	
+	/**
+	 * Returnes dimension of the matrices in the file
+	 */
+	public int len() {
+		return n;
+	}
+	
+	/**
+	 * Returns number of matrices in the file
+	 */
+	public long count() {
+		return count;
+	}
+	
+	/**
+	 * Returns real part of element [row][col] of matrix k
+	 */
+	public double getReal(long k, int row, int col) {
+		checkIndex(k, row, col);
+		return chunks[(int)(k / perChunk)].get(2*(int)(k % perChunk)*n*n + 2*(row*n + col));
+	}
+	
+	/**
+	 * Returns imaginary part of element [row][col] of matrix k
+	 */
+	public double getImaginary(long k, int row, int col) {
+		checkIndex(k, row, col);
+		return chunks[(int)(k / perChunk)].get(2*(int)(k % perChunk)*n*n + 2*(row*n + col) + 1);
+	}
+	
+	/**
+	 * Returns matrix k as new Matrix
+	 */
+	public Matrix get(long k) {
+		Matrix m = new Matrix(n);
+		read(k, m.realPlane(), m.imaginaryPlane(), 0);
+		return m;
+	}
+	
+	/**
+	 * Copies matrix k row by row into real and imaginary from index offset on
+	 */
+	public void read(long k, double[] real, double[] imaginary, int offset) {
+		checkMatrix(k, 1);
+		int size = n*n;
+		if (offset < 0 || real.length - offset < size || imaginary.length - offset < size)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		
+		DoubleBuffer chunk = chunks[(int)(k / perChunk)];
+		int base = 2*(int)(k % perChunk)*size;
+		for (int e = 0; e < size; e++) {
+			real[offset+e] = chunk.get(base + 2*e);
+			imaginary[offset+e] = chunk.get(base + 2*e + 1);
+		}
+	}
+	
+	/**
+	 * Copies batch matrices starting at matrix first into real and imaginary as struct of
+	 * arrays: element e (row*n+col) of matrix first+b is at [e*batch + b], the layout of
+	 * SymmetricEigen4.decomposeBatch
+	 */
+	public void readBatch(long first, int batch, double[] real, double[] imaginary) {
+		checkMatrix(first, batch);
+		int size = n*n;
+		if (real.length < size*batch || imaginary.length < size*batch)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		
+		for (int b = 0; b < batch; b++) {
+			long k = first + b;
+			DoubleBuffer chunk = chunks[(int)(k / perChunk)];
+			int base = 2*(int)(k % perChunk)*size;
+			for (int e = 0; e < size; e++) {
+				real[e*batch + b] = chunk.get(base + 2*e);
+				imaginary[e*batch + b] = chunk.get(base + 2*e + 1);
+			}
+		}
+	}
+	
+	private void checkIndex(long k, int row, int col) {
+		if (k < 0 || k >= count || row < 0 || row >= n || col < 0 || col >= n)
+			throw new IndexOutOfBoundsException("Element [" + row + "][" + col + "] of matrix " + k
+					+ " is out of " + count + " matrices " + n + "x" + n);
+	}
+	
+	private void checkMatrix(long first, int batch) {
+		if (first < 0 || batch < 0 || first + batch > count)
+			throw new IndexOutOfBoundsException("Matrices " + first + ".." + (first+batch-1)
+					+ " are out of " + count + " matrices");
+	}
+	
+	/**
+	 * Writes matrices of one dimension to a new matrix file through a buffer <br />
+	 * The number of matrices goes into the header on close, a file that was not closed
+	 * reads as having no matrices. A Writer must be used by one thread at a time
+	 */
+	public static final class Writer implements AutoCloseable {
+		
+		private final int n;
+		private final FileChannel channel;
+		private final ByteBuffer bytes;
+		// view of bytes that the pairs are put into
+		private final DoubleBuffer buffer;
+		private long count;
+		
+		private Writer(Path file, int n) throws IOException {
+			if (n <= 0 || 16L*n*n > MAX_CHUNK_BYTES)
+				throw new RuntimeException("Illegal matrix dimensions.");
+			
+			this.n = n;
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			bytes = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			buffer = bytes.asDoubleBuffer();
+			try {
+				writeHeader(0);
+				channel.position(HEADER_BYTES);
+			} catch (IOException e) {
+				channel.close();
+				throw e;
+			}
+		}
+		
+		/**
+		 * Returnes dimension of the written matrices
+		 */
+		public int len() {
+			return n;
+		}
+		
+		/**
+		 * Returns number of matrices written so far
+		 */
+		public long count() {
+			return count;
+		}
+		
+		/**
+		 * Appends that to the file
+		 */
+		public void write(Matrix that) throws IOException {
+			if (that.len() != n)
+				throw new RuntimeException("Illegal matrix dimensions.");
+			
+			write(that.realPlane(), that.imaginaryPlane(), 0);
+		}
+		
+		/**
+		 * Appends the matrix stored row by row in real and imaginary from index offset on
+		 */
+		public void write(double[] real, double[] imaginary, int offset) throws IOException {
+			int size = n*n;
+			if (offset < 0 || real.length - offset < size || imaginary.length - offset < size)
+				throw new RuntimeException("Illegal matrix dimensions.");
+			
+			for (int e = 0; e < size; e++)
+				put(real[offset+e], imaginary[offset+e]);
+			count++;
+		}
+		
+		/**
+		 * Appends batch matrices stored as struct of arrays (element e of matrix b at [e*batch + b]),
+		 * the layout of MatrixFile.readBatch
+		 */
+		public void writeBatch(int batch, double[] real, double[] imaginary) throws IOException {
+			int size = n*n;
+			if (batch < 0 || real.length < size*batch || imaginary.length < size*batch)
+				throw new RuntimeException("Illegal matrix dimensions.");
+			
+			for (int b = 0; b < batch; b++) {
+				for (int e = 0; e < size; e++)
+					put(real[e*batch + b], imaginary[e*batch + b]);
+			}
+			count += batch;
+		}
+		
+		/**
+		 * Writes the buffered matrices and the header and closes the file
+		 */
+		@Override
+		public void close() throws IOException {
+			if (!channel.isOpen())
+				return;
+			try {
+				flush();
+				writeHeader(count);
+			} finally {
+				channel.close();
+			}
+		}
+		
+		private void put(double real, double imaginary) throws IOException {
+			// the buffer holds an even number of doubles, a pair is never split
+			if (!buffer.hasRemaining())
+				flush();
+			buffer.put(real);
+			buffer.put(imaginary);
+		}
+		
+		private void flush() throws IOException {
+			bytes.clear();
+			bytes.limit(8*buffer.position());
+			while (bytes.hasRemaining())
+				channel.write(bytes);
+			buffer.clear();
+		}
+		
+		private void writeHeader(long matrices) throws IOException {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(0, MAGIC);
+			header.putInt(4, VERSION);
+			header.putInt(8, n);
+			header.putLong(16, matrices);
+			long position = 0;
+			while (header.hasRemaining())
+				position += channel.write(header, position);
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package matrix;
+
+/**
+ * Matrix operations that write their result into a matrix given by the caller
+ * instead of creating a new one, so loops calling them create no matrices
+ * and no ComplexNumber objects <br />
+ * No-alias contract: the output matrix must not be one of the inputs (or share
+ * its storage), otherwise the input would be overwritten while it is still read.
+ * Such calls are rejected with IllegalArgumentException. Inputs may alias each other.
+ * The output must have the right size and must not be read-only
+ * @author Arsen Babakhanyan
+ */
+public final class MatrixOps {
+	
+	private MatrixOps() {
+	}
+	
+	/**
+	 * Computes out = a * b, transposed and adjoint views are multiplied without copying
+	 */
+	public static void mul(Matrix a, Matrix b, Matrix out) {
+		checkSizes(a, b, out);
+		checkNoAlias(out, a, b);
+		Matrix.product(a, b, out.realPlane(), out.imaginaryPlane());
+	}
+	
+	/**
+	 * Computes out = op * a without forming op
+	 */
+	public static void mul(Operator op, Matrix a, Matrix out) {
+		op.applyLeft(a, out);
+	}
+	
+	/**
+	 * Computes out = a * op without forming op
+	 */
+	public static void mul(Matrix a, Operator op, Matrix out) {
+		op.applyRight(a, out);
+	}
+	
+	/**
+	 * Computes out = a * adjoint(b) without forming the adjoint
+	 */
+	public static void mulAdjoint(Matrix a, Matrix b, Matrix out) {
+		mul(a, Matrix.adjointView(b), out);
+	}
+	
+	/**
+	 * Computes out = adjoint(a)
+	 */
+	public static void adjoint(Matrix a, Matrix out) {
+		int n = checkSizes(a, a, out);
+		checkNoAlias(out, a, a);
+		double[] ar = a.realPlane(), ai = a.imaginaryPlane();
+		double[] cr = out.realPlane(), ci = out.imaginaryPlane();
+		
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				cr[j*n+i] = ar[i*n+j];
+				ci[j*n+i] = -ai[i*n+j];
+			}
+		}
+	}
+	
+	/**
+	 * Computes out = transpose(a)
+	 */
+	public static void transpose(Matrix a, Matrix out) {
+		int n = checkSizes(a, a, out);
+		checkNoAlias(out, a, a);
+		double[] ar = a.realPlane(), ai = a.imaginaryPlane();
+		double[] cr = out.realPlane(), ci = out.imaginaryPlane();
+		
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				cr[j*n+i] = ar[i*n+j];
+				ci[j*n+i] = ai[i*n+j];
+			}
+		}
+	}
+	
+	/**
+	 * Computes out = a (x) b, out must be of size a.len()*b.len()
+	 */
+	public static void kron(Matrix a, Matrix b, Matrix out) {
+		int lenA = a.len();
+		int lenB = b.len();
+		int lenC = lenA*lenB;
+		if (out.len() != lenC)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		out.checkWritable();
+		checkNoAlias(out, a, b);
+		
+		double[] aRe = a.realPlane(), aIm = a.imaginaryPlane();
+		double[] bRe = b.realPlane(), bIm = b.imaginaryPlane();
+		double[] cRe = out.realPlane(), cIm = out.imaginaryPlane();
+		double ar, ai, br, bi;
+		
+		for (int i = 0; i < lenA; i++) {
+			for (int j = 0; j < lenA; j++) {
+				ar = aRe[i*lenA+j];
+				ai = aIm[i*lenA+j];
+				for (int k = 0; k < lenB; k++) {
+					int cRow = (i*lenB+k)*lenC + j*lenB;
+					for (int l = 0; l < lenB; l++) {
+						br = bRe[k*lenB+l];
+						bi = bIm[k*lenB+l];
+						cRe[cRow+l] = (ar*br) - (ai*bi);
+						cIm[cRow+l] = (ai*br) + (ar*bi);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes out = a + b
+	 */
+	public static void add(Matrix a, Matrix b, Matrix out) {
+		checkSizes(a, b, out);
+		double[] ar = a.realPlane(), ai = a.imaginaryPlane();
+		double[] br = b.realPlane(), bi = b.imaginaryPlane();
+		double[] cr = out.realPlane(), ci = out.imaginaryPlane();
+		
+		// element by element, so out may be a or b here
+		for (int i = 0; i < cr.length; i++) {
+			cr[i] = ar[i] + br[i];
+			ci[i] = ai[i] + bi[i];
+		}
+	}
+	
+	/**
+	 * Computes out = a - b
+	 */
+	public static void sub(Matrix a, Matrix b, Matrix out) {
+		checkSizes(a, b, out);
+		double[] ar = a.realPlane(), ai = a.imaginaryPlane();
+		double[] br = b.realPlane(), bi = b.imaginaryPlane();
+		double[] cr = out.realPlane(), ci = out.imaginaryPlane();
+		
+		// element by element, so out may be a or b here
+		for (int i = 0; i < cr.length; i++) {
+			cr[i] = ar[i] - br[i];
+			ci[i] = ai[i] - bi[i];
+		}
+	}
+	
+	/**
+	 * Computes out = a
+	 */
+	public static void copy(Matrix a, Matrix out) {
+		checkSizes(a, a, out);
+		a.copyTo(out.realPlane(), out.imaginaryPlane());
+	}
+	
+	/**
+	 * Checks that a, b and out are of the same size and out can be written, returns the size
+	 */
+	private static int checkSizes(Matrix a, Matrix b, Matrix out) {
+		int n = a.len();
+		if (b.len() != n || out.len() != n)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		out.checkWritable();
+		return n;
+	}
+	
+	/**
+	 * Throws IllegalArgumentException if out shares storage with a or b (views included)
+	 */
+	private static void checkNoAlias(Matrix out, Matrix a, Matrix b) {
+		double[] plane = out.realPlane();
+		if (plane == a.storage().realPlane() || plane == b.storage().realPlane())
+			throw new IllegalArgumentException("Output matrix must not be one of the inputs");
+	}
+}
@@ -0,0 +1,430 @@
+package matrix;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streaming reader of complex matrices in the text layout of ComplexMatrix.write <br />
+ * A matrix is an optional size line "n" or "n n" followed by n*n elements "(re, im)"
+ * row by row, separated by any white space. Several matrices can follow each other <br />
+ * The text is read byte by byte from a channel through a buffer or straight from a
+ * (mapped) ByteBuffer, and no String is created for a number: digits are collected into
+ * a long and converted by the Clinger fast path or the Eisel-Lemire algorithm, both
+ * correctly rounded. Only numbers with more than 19 significant digits and the rare
+ * inputs those two can not decide go through Double.parseDouble <br />
+ * A reader must be used by one thread at a time, different readers are independent
+ * @author Arsen Babakhanyan
+ */
+public final class MatrixTextReader implements AutoCloseable {
+	
+	private static final int BUFFER_BYTES = 1 << 16;
+	
+	// exact powers of ten of the fast path
+	private static final double[] POWERS_OF_TEN = new double[23];
+	
+	// range of decimal exponents of the Eisel-Lemire tables
+	private static final int MIN_EXPONENT = -342;
+	private static final int MAX_EXPONENT = 308;
+	
+	// 128 bit mantissas of 5^q (rounded up for negative q), high and low 64 bits
+	private static final long[] POWERS_HIGH = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+	private static final long[] POWERS_LOW = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+	
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1]*10;
+		
+		BigInteger five = BigInteger.valueOf(5);
+		for (int q = MIN_EXPONENT; q <= MAX_EXPONENT; q++) {
+			BigInteger c;
+			if (q >= 0) {
+				c = five.pow(q);
+				int bits = c.bitLength();
+				c = bits > 128 ? c.shiftRight(bits - 128) : c.shiftLeft(128 - bits);
+			} else {
+				BigInteger power = five.pow(-q);
+				int z = power.bitLength();
+				int b = q >= -27 ? z + 127 : 2*z + 128;
+				c = BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+				if (c.bitLength() > 128)
+					c = c.shiftRight(c.bitLength() - 128);
+			}
+			POWERS_HIGH[q - MIN_EXPONENT] = c.shiftRight(64).longValue();
+			POWERS_LOW[q - MIN_EXPONENT] = c.longValue();
+		}
+	}
+	
+	// null when reading from a buffer only
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buffer;
+	
+	// bytes of the current number, only used when Double.parseDouble has to decide
+	private byte[] token = new byte[32];
+	private int tokenLength;
+	
+	private long line = 1;
+	
+	/**
+	 * Creates reader of the text from channel, the channel is closed by close()
+	 */
+	public MatrixTextReader(ReadableByteChannel channel) {
+		this.channel = channel;
+		buffer = ByteBuffer.allocate(BUFFER_BYTES);
+		buffer.flip();
+	}
+	
+	/**
+	 * Creates reader of the text between position and limit of buffer
+	 */
+	public MatrixTextReader(ByteBuffer buffer) {
+		this.channel = null;
+		this.buffer = buffer;
+	}
+	
+	/**
+	 * Returns reader of the given file, files up to 2GB are mapped, larger ones are streamed
+	 */
+	public static MatrixTextReader open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		if (channel.size() > Integer.MAX_VALUE)
+			return new MatrixTextReader(channel);
+		
+		// the mapping stays valid after the channel is closed
+		try {
+			return new MatrixTextReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Returns next matrix, its size line is required, or null at the end of the text
+	 */
+	public Matrix read() throws IOException {
+		skipSpace();
+		int c = peek();
+		if (c < 0)
+			return null;
+		if (!isDigit(c))
+			throw error("matrix size expected");
+		
+		Matrix m = new Matrix(size());
+		elements(m.len(), m.realPlane(), m.imaginaryPlane(), 0, 1);
+		return m;
+	}
+	
+	/**
+	 * Reads next nxn matrix row by row into real and imaginary from index offset on <br />
+	 * A size line is optional and must be n if given, returns false at the end of the text
+	 */
+	public boolean read(int n, double[] real, double[] imaginary, int offset) throws IOException {
+		if (offset < 0 || real.length - offset < n*n || imaginary.length - offset < n*n)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		
+		if (!start(n))
+			return false;
+		elements(n, real, imaginary, offset, 1);
+		return true;
+	}
+	
+	/**
+	 * Reads up to batch nxn matrices into real and imaginary as struct of arrays, element e
+	 * (row*n+col) of matrix b at [e*batch + b] as in MatrixFile.readBatch <br />
+	 * Returns number of matrices read, less than batch only at the end of the text
+	 */
+	public int readBatch(int n, int batch, double[] real, double[] imaginary) throws IOException {
+		if (batch < 0 || real.length < n*n*batch || imaginary.length < n*n*batch)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		
+		for (int b = 0; b < batch; b++) {
+			if (!start(n))
+				return b;
+			elements(n, real, imaginary, b, batch);
+		}
+		return batch;
+	}
+	
+	/**
+	 * Closes the channel, does nothing for a buffer
+	 */
+	@Override
+	public void close() throws IOException {
+		if (channel != null)
+			channel.close();
+	}
+	
+	/**
+	 * Skips to the next matrix and reads its size line if there is one, returns false at the end
+	 */
+	private boolean start(int n) throws IOException {
+		skipSpace();
+		int c = peek();
+		if (c < 0)
+			return false;
+		if (isDigit(c) && size() != n)
+			throw error("matrix of size " + n + " expected");
+		return true;
+	}
+	
+	/**
+	 * Reads size line "n" or "n n", the matrix must be square
+	 */
+	private int size() throws IOException {
+		int rows = integer();
+		int c;
+		while ((c = peek()) == ' ' || c == '\t')
+			buffer.get();
+		if (isDigit(c) && integer() != rows)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		if (rows <= 0)
+			throw error("illegal matrix size");
+		return rows;
+	}
+	
+	/**
+	 * Reads n*n elements, element e goes to [offset + e*stride]
+	 */
+	private void elements(int n, double[] real, double[] imaginary, int offset, int stride) throws IOException {
+		int size = n*n;
+		for (int e = 0; e < size; e++) {
+			skipSpace();
+			expect('(');
+			skipSpace();
+			real[offset + e*stride] = number();
+			skipSpace();
+			expect(',');
+			skipSpace();
+			imaginary[offset + e*stride] = number();
+			skipSpace();
+			expect(')');
+		}
+	}
+	
+	private int integer() throws IOException {
+		int value = 0;
+		int c;
+		while (isDigit(c = peek())) {
+			if (value > (Integer.MAX_VALUE - 9) / 10)
+				throw error("matrix size too large");
+			value = 10*value + (c - '0');
+			buffer.get();
+		}
+		return value;
+	}
+	
+	/**
+	 * Reads decimal number with optional sign, fraction and exponent, or NaN or Infinity
+	 */
+	private double number() throws IOException {
+		tokenLength = 0;
+		int c = peek();
+		boolean negative = c == '-';
+		if (c == '-' || c == '+')
+			c = take();
+		if (c == 'N' || c == 'n' || c == 'I' || c == 'i')
+			return word(negative);
+		
+		long mantissa = 0;
+		// significant digits in mantissa, digits after the 19th are dropped
+		int digits = 0;
+		int exponent = 0;
+		boolean any = false, dropped = false;
+		while (isDigit(c)) {
+			any = true;
+			if (digits < 19) {
+				mantissa = 10*mantissa + (c - '0');
+				if (mantissa != 0)
+					digits++;
+			} else {
+				exponent++;
+				dropped |= c != '0';
+			}
+			c = take();
+		}
+		if (c == '.') {
+			c = take();
+			while (isDigit(c)) {
+				any = true;
+				if (digits < 19) {
+					mantissa = 10*mantissa + (c - '0');
+					if (mantissa != 0)
+						digits++;
+					exponent--;
+				} else {
+					dropped |= c != '0';
+				}
+				c = take();
+			}
+		}
+		if (!any)
+			throw error("number expected");
+		if (c == 'e' || c == 'E') {
+			c = take();
+			boolean negativeExponent = c == '-';
+			if (c == '-' || c == '+')
+				c = take();
+			if (!isDigit(c))
+				throw error("exponent expected");
+			int e = 0;
+			while (isDigit(c)) {
+				if (e < 100000)
+					e = 10*e + (c - '0');
+				c = take();
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+		
+		if (!dropped) {
+			double value = toDouble(mantissa, exponent);
+			if (value == value)
+				return negative ? -value : value;
+		}
+		return Double.parseDouble(new String(token, 0, tokenLength, StandardCharsets.ISO_8859_1));
+	}
+	
+	/**
+	 * Reads NaN or Infinity, also lower case nan, inf and infinity
+	 */
+	private double word(boolean negative) throws IOException {
+		int c = peek();
+		while ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))
+			c = take();
+		int sign = token[0] == '-' || token[0] == '+' ? 1 : 0;
+		String word = new String(token, sign, tokenLength - sign, StandardCharsets.ISO_8859_1);
+		if (word.equalsIgnoreCase("nan"))
+			return Double.NaN;
+		if (word.equalsIgnoreCase("inf") || word.equalsIgnoreCase("infinity"))
+			return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		throw error("number expected");
+	}
+	
+	/**
+	 * Returns mantissa*10^exponent correctly rounded (mantissa is unsigned), or NaN if Double.parseDouble has to decide
+	 */
+	static double toDouble(long mantissa, int exponent) {
+		if (mantissa == 0)
+			return 0;
+		// Clinger: both operands and the result of one operation are exact or correctly rounded
+		if ((mantissa >>> 53) == 0 && exponent >= -22 && exponent <= 22)
+			return exponent >= 0 ? mantissa*POWERS_OF_TEN[exponent] : mantissa/POWERS_OF_TEN[-exponent];
+		if (exponent < MIN_EXPONENT)
+			return 0;
+		if (exponent > MAX_EXPONENT)
+			return Double.POSITIVE_INFINITY;
+		return eiselLemire(mantissa, exponent);
+	}
+	
+	/**
+	 * Eisel-Lemire: mantissa*10^exponent from the upper bits of the product of the normalized
+	 * mantissa and a 128 bit 5^exponent, NaN if those bits do not decide the rounding
+	 * or the result is subnormal
+	 */
+	private static double eiselLemire(long mantissa, int exponent) {
+		int shift = Long.numberOfLeadingZeros(mantissa);
+		long man = mantissa << shift;
+		long exp2 = ((217706L*exponent) >> 16) + 64 + 1023 - shift;
+		
+		long high = POWERS_HIGH[exponent - MIN_EXPONENT];
+		long xHi = multiplyHigh(man, high), xLo = man*high;
+		if ((xHi & 0x1FF) == 0x1FF && Long.compareUnsigned(xLo + man, man) < 0) {
+			// truncated product may be too low, add the lower 64 bits of the power
+			long low = POWERS_LOW[exponent - MIN_EXPONENT];
+			long yHi = multiplyHigh(man, low), yLo = man*low;
+			long mergedHi = xHi, mergedLo = xLo + yHi;
+			if (Long.compareUnsigned(mergedLo, xLo) < 0)
+				mergedHi++;
+			if ((mergedHi & 0x1FF) == 0x1FF && mergedLo + 1 == 0 && Long.compareUnsigned(yLo + man, man) < 0)
+				return Double.NaN;
+			xHi = mergedHi;
+			xLo = mergedLo;
+		}
+		
+		long msb = xHi >>> 63;
+		long bits = xHi >>> (msb + 9);
+		exp2 -= 1 ^ msb;
+		// exactly half way between two doubles
+		if (xLo == 0 && (xHi & 0x1FF) == 0 && (bits & 3) == 1)
+			return Double.NaN;
+		
+		bits += bits & 1;
+		bits >>>= 1;
+		if ((bits >>> 53) != 0) {
+			bits >>>= 1;
+			exp2++;
+		}
+		if (exp2 <= 0 || exp2 >= 0x7FF)
+			return Double.NaN;
+		return Double.longBitsToDouble((exp2 << 52) | (bits & 0xFFFFFFFFFFFFFL));
+	}
+	
+	/**
+	 * Returns upper 64 bits of the unsigned product a*b
+	 */
+	private static long multiplyHigh(long a, long b) {
+		return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+	}
+	
+	private void skipSpace() throws IOException {
+		int c;
+		while ((c = peek()) == ' ' || c == '\n' || c == '\r' || c == '\t') {
+			if (c == '\n')
+				line++;
+			buffer.get();
+		}
+	}
+	
+	private void expect(int expected) throws IOException {
+		if (peek() != expected)
+			throw error("'" + (char)expected + "' expected");
+		buffer.get();
+	}
+	
+	/**
+	 * Keeps the current byte in token, moves past it and returns the next one
+	 */
+	private int take() throws IOException {
+		if (tokenLength == token.length)
+			token = Arrays.copyOf(token, 2*tokenLength);
+		token[tokenLength++] = buffer.get();
+		return peek();
+	}
+	
+	/**
+	 * Returns current byte without moving past it, -1 at the end of the text
+	 */
+	private int peek() throws IOException {
+		if (!buffer.hasRemaining() && !fill())
+			return -1;
+		return buffer.get(buffer.position()) & 0xFF;
+	}
+	
+	private boolean fill() throws IOException {
+		if (channel == null)
+			return false;
+		buffer.clear();
+		int read;
+		do {
+			read = channel.read(buffer);
+		} while (read == 0);
+		buffer.flip();
+		return read > 0;
+	}
+	
+	private IOException error(String message) throws IOException {
+		int c = peek();
+		return new IOException("Malformed matrix text at line " + line + ": " + message
+				+ (c < 0 ? ", found end of text" : ", found '" + (char)c + "'"));
+	}
+	
+	private static boolean isDigit(int c) {
+		return c >= '0' && c <= '9';
+	}
+}
@@ -0,0 +1,435 @@
+package matrix;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streaming writer of matrices and angle vectors as text, to an Appendable, a ByteBuffer or a channel <br />
+ * Doubles are written as the shortest decimal that reads back as the same double (Schubfach
+ * algorithm of R. Giulietti), in the layout of Double.toString: plain from 10^-3 to 10^7 and
+ * d.dddE(exponent) otherwise. Text is formatted into a byte buffer that is handed to the
+ * target when it is full and on flush, no String is created for a number <br />
+ * full writes the layout of ComplexMatrix.write that MatrixTextReader reads, sparse writes
+ * "row col (re, im)" for the non-zero elements only and angles writes a vector as "[a, b, c]" <br />
+ * Call flush after the last write. A writer must be used by one thread at a time
+ * @author Arsen Babakhanyan
+ */
+public final class MatrixWriter implements Flushable {
+	
+	private static final int BUFFER_BYTES = 1 << 13;
+	
+	// longest text of one number or index
+	private static final int MAX_NUMBER_BYTES = 32;
+	
+	// binary format of double
+	private static final int Q_MIN = -1074;
+	private static final long C_MIN = 1L << 52;
+	private static final long T_MASK = C_MIN - 1;
+	private static final long C_TINY = 3;
+	private static final long MASK_63 = (1L << 63) - 1;
+	
+	// range of decimal exponents of the table of powers of ten
+	private static final int K_MIN = -324;
+	private static final int K_MAX = 292;
+	
+	// g = floor(10^-k * 2^(125 - flog2pow10(-k))) + 1 = g1*2^63 + g0
+	private static final long[] G1 = new long[K_MAX - K_MIN + 1];
+	private static final long[] G0 = new long[K_MAX - K_MIN + 1];
+	
+	private static final long[] POWERS_OF_TEN = new long[19];
+	
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = 10*POWERS_OF_TEN[i-1];
+		
+		BigInteger ten = BigInteger.TEN;
+		for (int k = K_MIN; k <= K_MAX; k++) {
+			int e = 125 - flog2pow10(-k);
+			BigInteger g;
+			if (k <= 0) {
+				g = ten.pow(-k);
+				g = e >= 0 ? g.shiftLeft(e) : g.shiftRight(-e);
+			} else {
+				g = BigInteger.ONE.shiftLeft(e).divide(ten.pow(k));
+			}
+			g = g.add(BigInteger.ONE);
+			G1[k - K_MIN] = g.shiftRight(63).longValue();
+			G0[k - K_MIN] = g.longValue() & MASK_63;
+		}
+	}
+	
+	// exactly one target is not null
+	private final Appendable appendable;
+	private final ByteBuffer target;
+	private final WritableByteChannel channel;
+	
+	private final byte[] bytes = new byte[BUFFER_BYTES];
+	private int length;
+	// views of bytes for the channel and of chars for the Appendable
+	private final ByteBuffer wrapped;
+	private final char[] chars;
+	private final CharBuffer charBuffer;
+	
+	private MatrixWriter(Appendable appendable, ByteBuffer target, WritableByteChannel channel) {
+		this.appendable = appendable;
+		this.target = target;
+		this.channel = channel;
+		wrapped = channel != null ? ByteBuffer.wrap(bytes) : null;
+		chars = appendable != null ? new char[BUFFER_BYTES] : null;
+		charBuffer = appendable != null ? CharBuffer.wrap(chars) : null;
+	}
+	
+	/**
+	 * Creates writer to out, for example a StringBuilder, a Writer or System.out
+	 */
+	public MatrixWriter(Appendable out) {
+		this(out, null, null);
+	}
+	
+	/**
+	 * Creates writer of ASCII bytes into out from its position on, flush throws
+	 * BufferOverflowException if they do not fit
+	 */
+	public MatrixWriter(ByteBuffer out) {
+		this(null, out, null);
+	}
+	
+	/**
+	 * Creates writer of ASCII bytes to out
+	 */
+	public MatrixWriter(WritableByteChannel out) {
+		this(null, null, out);
+	}
+	
+	/**
+	 * Writes value as the shortest decimal that reads back as value
+	 */
+	public MatrixWriter number(double value) throws IOException {
+		reserve(MAX_NUMBER_BYTES);
+		length = format(value, bytes, length);
+		return this;
+	}
+	
+	/**
+	 * Writes complex number as "(re, im)"
+	 */
+	public MatrixWriter complex(double re, double im) throws IOException {
+		reserve(2*MAX_NUMBER_BYTES + 4);
+		bytes[length++] = '(';
+		length = format(re, bytes, length);
+		bytes[length++] = ',';
+		bytes[length++] = ' ';
+		length = format(im, bytes, length);
+		bytes[length++] = ')';
+		return this;
+	}
+	
+	/**
+	 * Writes that as size line and one "(re, im)" line per element, row by row, and a blank line
+	 */
+	public void full(Matrix that) throws IOException {
+		int n = that.len();
+		double[] re = that.realPlane(), im = that.imaginaryPlane();
+		integer(n).newLine();
+		for (int e = 0; e < n*n; e++)
+			complex(re[e], im[e]).newLine();
+		newLine();
+	}
+	
+	/**
+	 * Writes that as size line and one "row col (re, im)" line per element whose real or
+	 * imaginary part is larger than tolerance in absolute value, and a blank line
+	 */
+	public void sparse(Matrix that, double tolerance) throws IOException {
+		int n = that.len();
+		double[] re = that.realPlane(), im = that.imaginaryPlane();
+		integer(n).newLine();
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				int e = i*n+j;
+				if (Math.abs(re[e]) <= tolerance && Math.abs(im[e]) <= tolerance)
+					continue;
+				integer(i).space();
+				integer(j).space();
+				complex(re[e], im[e]).newLine();
+			}
+		}
+		newLine();
+	}
+	
+	/**
+	 * Writes angles as one line "[a, b, c]", the layout of Arrays.toString
+	 */
+	public void angles(double[] angles) throws IOException {
+		angles(angles, 0, angles.length);
+	}
+	
+	/**
+	 * Writes count angles from index offset on as one line "[a, b, c]"
+	 */
+	public void angles(double[] angles, int offset, int count) throws IOException {
+		reserve(1);
+		bytes[length++] = '[';
+		for (int i = 0; i < count; i++) {
+			if (i != 0) {
+				reserve(2);
+				bytes[length++] = ',';
+				bytes[length++] = ' ';
+			}
+			number(angles[offset+i]);
+		}
+		reserve(1);
+		bytes[length++] = ']';
+		newLine();
+	}
+	
+	/**
+	 * Writes decimal integer
+	 */
+	public MatrixWriter integer(long value) throws IOException {
+		reserve(MAX_NUMBER_BYTES);
+		if (value < 0) {
+			bytes[length++] = '-';
+			if (value == Long.MIN_VALUE) {
+				length = ascii("9223372036854775808", bytes, length);
+				return this;
+			}
+			value = -value;
+		}
+		int digits = 1;
+		while (digits < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[digits])
+			digits++;
+		length = putDigits(value, digits, bytes, length);
+		return this;
+	}
+	
+	/**
+	 * Writes line break
+	 */
+	public MatrixWriter newLine() throws IOException {
+		reserve(1);
+		bytes[length++] = '\n';
+		return this;
+	}
+	
+	private MatrixWriter space() throws IOException {
+		reserve(1);
+		bytes[length++] = ' ';
+		return this;
+	}
+	
+	/**
+	 * Hands the buffered text to the target and flushes the target if it is Flushable
+	 */
+	@Override
+	public void flush() throws IOException {
+		drain();
+		if (appendable instanceof Flushable)
+			((Flushable)appendable).flush();
+	}
+	
+	/**
+	 * Makes room for count bytes in the buffer
+	 */
+	private void reserve(int count) throws IOException {
+		if (length + count > BUFFER_BYTES)
+			drain();
+	}
+	
+	private void drain() throws IOException {
+		if (length == 0)
+			return;
+		if (channel != null) {
+			wrapped.clear();
+			wrapped.limit(length);
+			while (wrapped.hasRemaining())
+				channel.write(wrapped);
+		} else if (target != null) {
+			target.put(bytes, 0, length);
+		} else {
+			for (int i = 0; i < length; i++)
+				chars[i] = (char)bytes[i];
+			charBuffer.clear();
+			charBuffer.limit(length);
+			appendable.append(charBuffer);
+		}
+		length = 0;
+	}
+	
+	/**
+	 * Writes shortest decimal of v into buf from index pos on and returns the index after it,
+	 * at most 32 bytes
+	 */
+	static int format(double v, byte[] buf, int pos) {
+		long bits = Double.doubleToRawLongBits(v);
+		long t = bits & T_MASK;
+		int bq = (int)(bits >>> 52) & 0x7FF;
+		if (bq == 0x7FF)
+			return ascii(t != 0 ? "NaN" : bits > 0 ? "Infinity" : "-Infinity", buf, pos);
+		
+		if (bits < 0)
+			buf[pos++] = '-';
+		if (bq != 0) {
+			// normal value, v = c*2^-mq
+			int mq = -Q_MIN + 1 - bq;
+			long c = C_MIN | t;
+			if (0 < mq && mq < 53) {
+				// integer values are exact
+				long f = c >> mq;
+				if (f << mq == c)
+					return layout(f, 0, buf, pos);
+			}
+			return schubfach(-mq, c, 0, buf, pos);
+		}
+		if (t != 0)
+			return t < C_TINY ? schubfach(Q_MIN, 10*t, -1, buf, pos) : schubfach(Q_MIN, t, 0, buf, pos);
+		return ascii("0.0", buf, pos);
+	}
+	
+	/**
+	 * Finds shortest decimal in the rounding interval of c*2^q and writes it (figure 7 of
+	 * Giulietti, "The Schubfach way to render doubles")
+	 */
+	private static int schubfach(int q, long c, int dk, byte[] buf, int pos) {
+		int out = (int)c & 1;
+		long cb = c << 2;
+		long cbr = cb + 2;
+		long cbl;
+		int k;
+		if (c != C_MIN || q == Q_MIN) {
+			// regular spacing of neighbours
+			cbl = cb - 2;
+			k = flog10pow2(q);
+		} else {
+			// the lower neighbour is closer
+			cbl = cb - 1;
+			k = flog10threeQuartersPow2(q);
+		}
+		int h = q + flog2pow10(-k) + 2;
+		long g1 = G1[k - K_MIN], g0 = G0[k - K_MIN];
+		
+		long vb = roundOdd(g1, g0, cb << h);
+		long vbl = roundOdd(g1, g0, cbl << h);
+		long vbr = roundOdd(g1, g0, cbr << h);
+		
+		long s = vb >> 2;
+		if (s >= 100) {
+			// try one digit less, sp10 = 10*floor(s/10)
+			long sp10 = 10*Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+			long tp10 = sp10 + 10;
+			boolean upin = vbl + out <= sp10 << 2;
+			boolean wpin = (tp10 << 2) + out <= vbr;
+			if (upin != wpin)
+				return layout(upin ? sp10 : tp10, k, buf, pos);
+		}
+		
+		long t = s + 1;
+		boolean uin = vbl + out <= s << 2;
+		boolean win = (t << 2) + out <= vbr;
+		if (uin != win)
+			return layout(uin ? s : t, k + dk, buf, pos);
+		// both are in the interval, the closer one wins, the even one on a tie
+		long cmp = vb - ((s + t) << 1);
+		return layout(cmp < 0 || (cmp == 0 && (s & 1) == 0) ? s : t, k + dk, buf, pos);
+	}
+	
+	/**
+	 * Returns g*cp/2^127 rounded to odd, g = g1*2^63 + g0
+	 */
+	private static long roundOdd(long g1, long g0, long cp) {
+		long x1 = Math.multiplyHigh(g0, cp);
+		long y0 = g1*cp;
+		long y1 = Math.multiplyHigh(g1, cp);
+		long z = (y0 >>> 1) + x1;
+		long vbp = y1 + (z >>> 63);
+		return vbp | (((z & MASK_63) + MASK_63) >>> 63);
+	}
+	
+	/**
+	 * Writes f*10^e (f > 0) in the layout of Double.toString
+	 */
+	private static int layout(long f, int e, byte[] buf, int pos) {
+		while (f % 10 == 0) {
+			f /= 10;
+			e++;
+		}
+		int len = flog10pow2(64 - Long.numberOfLeadingZeros(f));
+		if (len < POWERS_OF_TEN.length && f >= POWERS_OF_TEN[len])
+			len++;
+		// f*10^e = 0.(digits of f)*10^point
+		int point = e + len;
+		
+		if (0 < point && point <= 7) {
+			if (len <= point) {
+				pos = putDigits(f, len, buf, pos);
+				for (int i = len; i < point; i++)
+					buf[pos++] = '0';
+				buf[pos++] = '.';
+				buf[pos++] = '0';
+			} else {
+				pos = putDigits(f / POWERS_OF_TEN[len - point], point, buf, pos);
+				buf[pos++] = '.';
+				pos = putDigits(f % POWERS_OF_TEN[len - point], len - point, buf, pos);
+			}
+			return pos;
+		}
+		if (-3 < point && point <= 0) {
+			buf[pos++] = '0';
+			buf[pos++] = '.';
+			for (int i = point; i < 0; i++)
+				buf[pos++] = '0';
+			return putDigits(f, len, buf, pos);
+		}
+		
+		pos = putDigits(f / POWERS_OF_TEN[len-1], 1, buf, pos);
+		buf[pos++] = '.';
+		if (len > 1)
+			pos = putDigits(f % POWERS_OF_TEN[len-1], len-1, buf, pos);
+		else
+			buf[pos++] = '0';
+		buf[pos++] = 'E';
+		int exponent = point - 1;
+		if (exponent < 0) {
+			buf[pos++] = '-';
+			exponent = -exponent;
+		}
+		return putDigits(exponent, exponent >= 100 ? 3 : exponent >= 10 ? 2 : 1, buf, pos);
+	}
+	
+	/**
+	 * Writes the lowest count decimal digits of value, with leading zeros
+	 */
+	private static int putDigits(long value, int count, byte[] buf, int pos) {
+		for (int i = pos + count - 1; i >= pos; i--) {
+			buf[i] = (byte)('0' + value % 10);
+			value /= 10;
+		}
+		return pos + count;
+	}
+	
+	private static int ascii(String text, byte[] buf, int pos) {
+		for (int i = 0; i < text.length(); i++)
+			buf[pos++] = (byte)text.charAt(i);
+		return pos;
+	}
+	
+	// floor(log10(2^e))
+	private static int flog10pow2(int e) {
+		return (int)((e*661_971_961_083L) >> 41);
+	}
+	
+	// floor(log10(3/4 * 2^e))
+	private static int flog10threeQuartersPow2(int e) {
+		return (int)((e*661_971_961_083L - 274_743_187_321L) >> 41);
+	}
+	
+	// floor(log2(10^e))
+	private static int flog2pow10(int e) {
+		return (int)((e*913_124_641_741L) >> 38);
+	}
+}
@@ -0,0 +1,476 @@
+package matrix;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.RecursiveAction;
+
+import complex_numbers.ComplexNumber;
+
+/**
+ * NxN complex matrix stored outside of the Java heap, for unitaries that do
+ * not fit into the arrays of Matrix (a 14 qubit unitary has 2^28 elements) <br />
+ * The planes of real and imaginary parts are kept in direct or file mapped
+ * buffers. A buffer is indexed by int, so every plane is cut into chunks of
+ * whole rows of at most 1GB. Elements are addressed by (row, column) and
+ * every access is bounds checked <br />
+ * Products and adjoints stream through the operands in bands of rows that
+ * are copied into small heap buffers, so the heap only holds a few bands at
+ * a time and the garbage collector never scans the matrix itself <br />
+ * Direct memory is limited by -XX:MaxDirectMemorySize, which defaults to the
+ * heap size (-Xmx), so allocate(n) needs 16*n*n bytes of that budget. Larger
+ * matrices should be mapped from a file with map(file, n), the operating
+ * system pages them in and out. close() frees the memory or unmaps the file
+ * right away instead of when the garbage collector finds the buffers: <br />
+ * try (OffHeapMatrix m = OffHeapMatrix.allocate(n)) { ... }
+ * @author Arsen Babakhanyan
+ */
+public final class OffHeapMatrix implements AutoCloseable {
+	
+	// largest chunk of one plane in bytes
+	private static final long MAX_CHUNK_BYTES = 1L << 30;
+	
+	// rows of a band that a product or adjoint copies to the heap at once
+	private static final int DEFAULT_BAND = 64;
+	
+	private final int n;
+	private final int rowsPerChunk;
+	private final DoubleBuffer[] re;
+	private final DoubleBuffer[] im;
+	// underlying buffers, re and im of chunk c are 2*c and 2*c+1
+	private final ByteBuffer[] buffers;
+	private final boolean mapped;
+	private boolean closed;
+	
+	// sun.misc.Unsafe and its invokeCleaner(ByteBuffer) (Java 9 on), null if not available
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+	
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> type = Class.forName("sun.misc.Unsafe");
+			Field field = type.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// close() leaves the buffers to the garbage collector
+			unsafe = null;
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+	
+	private OffHeapMatrix(int n, int rowsPerChunk, DoubleBuffer[] re, DoubleBuffer[] im, ByteBuffer[] buffers, boolean mapped) {
+		this.n = n;
+		this.rowsPerChunk = rowsPerChunk;
+		this.re = re;
+		this.im = im;
+		this.buffers = buffers;
+		this.mapped = mapped;
+	}
+	
+	/**
+	 * Returns nxn zero matrix in direct (off-heap) memory <br />
+	 * Throws OutOfMemoryError if the 16*n*n bytes exceed what is left of -XX:MaxDirectMemorySize
+	 * (by default the heap size), map(file, n) has no such limit
+	 */
+	public static OffHeapMatrix allocate(int n) {
+		int rows = rowsPerChunk(n);
+		int chunks = (n + rows - 1) / rows;
+		DoubleBuffer[] re = new DoubleBuffer[chunks];
+		DoubleBuffer[] im = new DoubleBuffer[chunks];
+		ByteBuffer[] buffers = new ByteBuffer[2*chunks];
+		
+		try {
+			for (int c = 0; c < chunks; c++) {
+				int bytes = chunkRows(n, rows, c) * n * 8;
+				buffers[2*c] = ByteBuffer.allocateDirect(bytes);
+				buffers[2*c+1] = ByteBuffer.allocateDirect(bytes);
+				re[c] = buffers[2*c].order(ByteOrder.nativeOrder()).asDoubleBuffer();
+				im[c] = buffers[2*c+1].order(ByteOrder.nativeOrder()).asDoubleBuffer();
+			}
+		} catch (OutOfMemoryError e) {
+			// give back the chunks allocated so far
+			free(buffers);
+			OutOfMemoryError error = new OutOfMemoryError(16L*n*n + " bytes of direct memory for " + n + "x" + n
+					+ " matrix exceed -XX:MaxDirectMemorySize, use OffHeapMatrix.map for matrices this large");
+			error.initCause(e);
+			throw error;
+		}
+		return new OffHeapMatrix(n, rows, re, im, buffers, false);
+	}
+	
+	/**
+	 * Returns nxn matrix mapped from the given file, the file is created or extended if needed <br />
+	 * The file holds all real parts row by row followed by all imaginary parts,
+	 * little-endian float64, so it is 16*n*n bytes long. Changes are written to the file,
+	 * force() makes sure they reached the disk
+	 */
+	public static OffHeapMatrix map(Path file, int n) throws IOException {
+		int rows = rowsPerChunk(n);
+		int chunks = (n + rows - 1) / rows;
+		DoubleBuffer[] re = new DoubleBuffer[chunks];
+		DoubleBuffer[] im = new DoubleBuffer[chunks];
+		ByteBuffer[] mapped = new ByteBuffer[2*chunks];
+		long plane = 8L*n*n;
+		
+		// the mapping stays valid after the channel is closed
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			for (int c = 0; c < chunks; c++) {
+				long offset = 8L*c*rows*n;
+				long bytes = 8L*chunkRows(n, rows, c)*n;
+				mapped[2*c] = channel.map(FileChannel.MapMode.READ_WRITE, offset, bytes);
+				mapped[2*c+1] = channel.map(FileChannel.MapMode.READ_WRITE, plane + offset, bytes);
+				re[c] = mapped[2*c].order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+				im[c] = mapped[2*c+1].order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			}
+		}
+		return new OffHeapMatrix(n, rows, re, im, mapped, true);
+	}
+	
+	/**
+	 * Returns copy of that in direct memory
+	 */
+	public static OffHeapMatrix of(Matrix that) {
+		int n = that.len();
+		OffHeapMatrix m = allocate(n);
+		double[] re = that.realPlane();
+		double[] im = that.imaginaryPlane();
+		for (int i = 0; i < n; i++)
+			m.setRows(i, 1, re, im, i*n);
+		return m;
+	}
+	
+	/**
+	 * Returns copy of this matrix on the heap, the matrix must fit into arrays of Matrix
+	 */
+	public Matrix toMatrix() {
+		if ((long)n*n > Integer.MAX_VALUE - 8)
+			throw new RuntimeException("Matrix is too large for the heap");
+		
+		Matrix m = new Matrix(n);
+		double[] re = m.realPlane();
+		double[] im = m.imaginaryPlane();
+		for (int i = 0; i < n; i++)
+			getRows(i, 1, re, im, i*n);
+		return m;
+	}
+	
+	/**
+	 * Returnes dimension of the matrix
+	 */
+	public int len() {
+		return n;
+	}
+	
+	/**
+	 * Returns true if the matrix is mapped from a file
+	 */
+	public boolean isMapped() {
+		return mapped;
+	}
+	
+	/**
+	 * Writes the changes of a mapped matrix to the file, does nothing for direct memory
+	 */
+	public void force() {
+		checkOpen();
+		if (!mapped)
+			return;
+		for (ByteBuffer b : buffers)
+			((MappedByteBuffer)b).force();
+	}
+	
+	/**
+	 * Frees the direct memory or unmaps the file, changes of a mapped matrix stay in the file <br />
+	 * Later accesses throw IllegalStateException. The matrix must not be in use by another thread
+	 */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		free(buffers);
+	}
+	
+	/**
+	 * Returns true if close() was called
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * Releases the memory of the given buffers now if the JVM allows it, otherwise when they are collected
+	 */
+	private static void free(ByteBuffer[] buffers) {
+		for (int i = 0; i < buffers.length; i++) {
+			if (buffers[i] != null && INVOKE_CLEANER != null) {
+				try {
+					INVOKE_CLEANER.invoke(UNSAFE, buffers[i]);
+				} catch (ReflectiveOperationException e) {
+					// left to the garbage collector
+				}
+			}
+			buffers[i] = null;
+		}
+	}
+	
+	/**
+	 * Returns real part of the element matrix[row][col]
+	 */
+	public double getReal(int row, int col) {
+		checkIndex(row, col);
+		return re[row / rowsPerChunk].get((row % rowsPerChunk)*n + col);
+	}
+	
+	/**
+	 * Returns imaginary part of the element matrix[row][col]
+	 */
+	public double getImaginary(int row, int col) {
+		checkIndex(row, col);
+		return im[row / rowsPerChunk].get((row % rowsPerChunk)*n + col);
+	}
+	
+	/**
+	 * Returns the element matrix[row][col]
+	 */
+	public ComplexNumber getElement(int row, int col) {
+		return new ComplexNumber(getReal(row, col), getImaginary(row, col));
+	}
+	
+	/**
+	 * Sets to element matrix[row][col] = real + imaginary*i
+	 */
+	public void setElement(int row, int col, double real, double imaginary) {
+		checkIndex(row, col);
+		int idx = (row % rowsPerChunk)*n + col;
+		re[row / rowsPerChunk].put(idx, real);
+		im[row / rowsPerChunk].put(idx, imaginary);
+	}
+	
+	/**
+	 * Copies count rows starting at row into real and imaginary from index offset on
+	 */
+	public void getRows(int row, int count, double[] real, double[] imaginary, int offset) {
+		checkRows(row, count);
+		for (int i = row; i < row+count; i++) {
+			int idx = (i % rowsPerChunk)*n;
+			int dst = offset + (i-row)*n;
+			re[i / rowsPerChunk].get(idx, real, dst, n);
+			im[i / rowsPerChunk].get(idx, imaginary, dst, n);
+		}
+	}
+	
+	/**
+	 * Copies count rows starting at row from real and imaginary (from index offset on) into the matrix
+	 */
+	public void setRows(int row, int count, double[] real, double[] imaginary, int offset) {
+		checkRows(row, count);
+		for (int i = row; i < row+count; i++) {
+			int idx = (i % rowsPerChunk)*n;
+			int src = offset + (i-row)*n;
+			re[i / rowsPerChunk].put(idx, real, src, n);
+			im[i / rowsPerChunk].put(idx, imaginary, src, n);
+		}
+	}
+	
+	/**
+	 * Computes out = a * b, out must not be a or b <br />
+	 * Bands of rows of out are computed in parallel, each band streams through b
+	 * once and adds its terms in order of k, so the result is the same as Matrix.mul
+	 */
+	public static void mul(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix out) {
+		int n = a.n;
+		if (b.n != n || out.n != n)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		if (out == a || out == b)
+			throw new IllegalArgumentException("Output matrix must not be one of the inputs");
+		a.checkOpen();
+		b.checkOpen();
+		out.checkOpen();
+		
+		ComplexGemm.invoke(new BandTask(a, b, out, 0, n, Math.min(DEFAULT_BAND, n)));
+	}
+	
+	/**
+	 * Computes out = adjoint(a) block by block, out must not be a
+	 */
+	public static void adjoint(OffHeapMatrix a, OffHeapMatrix out) {
+		int n = a.n;
+		if (out.n != n)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		if (out == a)
+			throw new IllegalArgumentException("Output matrix must not be the input");
+		a.checkOpen();
+		out.checkOpen();
+		
+		int band = Math.min(DEFAULT_BAND, n);
+		double[] ar = new double[band*n];
+		double[] ai = new double[band*n];
+		double[] tr = new double[band];
+		double[] ti = new double[band];
+		
+		for (int i0 = 0; i0 < n; i0 += band) {
+			int rows = Math.min(band, n-i0);
+			a.getRows(i0, rows, ar, ai, 0);
+			// column j of the band is the segment [i0, i0+rows) of row j of out
+			for (int j = 0; j < n; j++) {
+				for (int i = 0; i < rows; i++) {
+					tr[i] = ar[i*n+j];
+					ti[i] = -ai[i*n+j];
+				}
+				int idx = (j % out.rowsPerChunk)*n + i0;
+				out.re[j / out.rowsPerChunk].put(idx, tr, 0, rows);
+				out.im[j / out.rowsPerChunk].put(idx, ti, 0, rows);
+			}
+		}
+	}
+	
+	/**
+	 * Computes the rows [i0, i0+rows) of out = a * b, b is read in bands of band rows
+	 */
+	private static void mulBand(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix out, int i0, int rows, int band) {
+		int n = a.n;
+		double[] ar = new double[rows*n];
+		double[] ai = new double[rows*n];
+		double[] br = new double[band*n];
+		double[] bi = new double[band*n];
+		double[] cr = new double[rows*n];
+		double[] ci = new double[rows*n];
+		a.getRows(i0, rows, ar, ai, 0);
+		
+		for (int k0 = 0; k0 < n; k0 += band) {
+			int kRows = Math.min(band, n-k0);
+			b.getRows(k0, kRows, br, bi, 0);
+			
+			int i = 0;
+			for (; i + 3 < rows; i += 4) {
+				int c0 = i*n, c1 = c0+n, c2 = c1+n, c3 = c2+n;
+				for (int k = 0; k < kRows; k++) {
+					double x0r = ar[c0+k0+k], x0i = ai[c0+k0+k];
+					double x1r = ar[c1+k0+k], x1i = ai[c1+k0+k];
+					double x2r = ar[c2+k0+k], x2i = ai[c2+k0+k];
+					double x3r = ar[c3+k0+k], x3i = ai[c3+k0+k];
+					int kRow = k*n;
+					for (int j = 0; j < n; j++) {
+						double yr = br[kRow+j];
+						double yi = bi[kRow+j];
+						cr[c0+j] += (x0r*yr) - (x0i*yi);
+						ci[c0+j] += (x0i*yr) + (x0r*yi);
+						cr[c1+j] += (x1r*yr) - (x1i*yi);
+						ci[c1+j] += (x1i*yr) + (x1r*yi);
+						cr[c2+j] += (x2r*yr) - (x2i*yi);
+						ci[c2+j] += (x2i*yr) + (x2r*yi);
+						cr[c3+j] += (x3r*yr) - (x3i*yi);
+						ci[c3+j] += (x3i*yr) + (x3r*yi);
+					}
+				}
+			}
+			for (; i < rows; i++) {
+				int c0 = i*n;
+				for (int k = 0; k < kRows; k++) {
+					double xr = ar[c0+k0+k], xi = ai[c0+k0+k];
+					int kRow = k*n;
+					for (int j = 0; j < n; j++) {
+						double yr = br[kRow+j];
+						double yi = bi[kRow+j];
+						cr[c0+j] += (xr*yr) - (xi*yi);
+						ci[c0+j] += (xi*yr) + (xr*yi);
+					}
+				}
+			}
+		}
+		
+		out.setRows(i0, rows, cr, ci, 0);
+	}
+	
+	/**
+	 * Returns the number of whole rows that fit into one chunk
+	 */
+	private static int rowsPerChunk(int n) {
+		if (n <= 0 || 8L*n > MAX_CHUNK_BYTES)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		return (int)Math.min(n, MAX_CHUNK_BYTES / (8L*n));
+	}
+	
+	/**
+	 * Returns the number of rows in chunk c
+	 */
+	private static int chunkRows(int n, int rowsPerChunk, int c) {
+		return Math.min(rowsPerChunk, n - c*rowsPerChunk);
+	}
+	
+	/**
+	 * Throws IndexOutOfBoundsException if (row, col) is outside of the matrix
+	 */
+	private void checkIndex(int row, int col) {
+		checkOpen();
+		if (row < 0 || col < 0 || row >= n || col >= n)
+			throw new IndexOutOfBoundsException("(" + row + ", " + col + ") outside of " + n + "x" + n);
+	}
+	
+	/**
+	 * Throws IndexOutOfBoundsException if rows [row, row+count) are outside of the matrix
+	 */
+	private void checkRows(int row, int count) {
+		checkOpen();
+		if (row < 0 || count < 0 || row > n - count)
+			throw new IndexOutOfBoundsException("rows [" + row + ", " + (row+count) + ") outside of " + n + "x" + n);
+	}
+	
+	/**
+	 * Throws IllegalStateException if the matrix was closed, its memory may already be reused
+	 */
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("OffHeapMatrix is closed");
+	}
+	
+	/**
+	 * Splits the rows of out in halves until a band is at most band rows long
+	 */
+	private static final class BandTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final OffHeapMatrix a, b, out;
+		private final int rowFrom, rowTo, band;
+		
+		BandTask(OffHeapMatrix a, OffHeapMatrix b, OffHeapMatrix out, int rowFrom, int rowTo, int band) {
+			this.a = a;
+			this.b = b;
+			this.out = out;
+			this.rowFrom = rowFrom;
+			this.rowTo = rowTo;
+			this.band = band;
+		}
+		
+		@Override
+		protected void compute() {
+			if (rowTo - rowFrom <= band) {
+				mulBand(a, b, out, rowFrom, rowTo - rowFrom, band);
+				return;
+			}
+			
+			int mid = rowFrom + (rowTo - rowFrom) / 2;
+			mid -= (mid - rowFrom) % band;
+			if (mid == rowFrom)
+				mid = rowFrom + band;
+			invokeAll(new BandTask(a, b, out, rowFrom, mid, band),
+					new BandTask(a, b, out, mid, rowTo, band));
+		}
+	}
+}
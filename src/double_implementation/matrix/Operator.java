@@ -0,0 +1,83 @@
+package matrix;
+
+/**
+ * Structured nxn operator that is applied to dense matrices without being
+ * formed as a dense matrix itself <br />
+ * Subclasses know their structure (diagonal, permutation, Kronecker product,
+ * Pauli string) and apply it in O(n^2) or close to it instead of the O(n^3)
+ * of a dense product, see Matrix.mul(Operator, Matrix) and Matrix.mul(Matrix, Operator)
+ * @author Arsen Babakhanyan
+ */
+public abstract class Operator {
+	
+	/**
+	 * Returns dimension of the operator
+	 */
+	public abstract int len();
+	
+	/**
+	 * Returns adjoint of the operator
+	 */
+	public abstract Operator adjoint();
+	
+	/**
+	 * Computes c = this * a for nxn planes, c is not a
+	 */
+	abstract void applyLeft(int n, double[] ar, double[] ai, double[] cr, double[] ci);
+	
+	/**
+	 * Computes c = a * this for nxn planes, c is not a
+	 */
+	abstract void applyRight(int n, double[] ar, double[] ai, double[] cr, double[] ci);
+	
+	/**
+	 * Computes out = this * that, out must not share storage with that
+	 */
+	public void applyLeft(Matrix that, Matrix out) {
+		int n = checkSizes(that, out);
+		double[] ar = that.realPlane();
+		checkNoAlias(ar, out);
+		applyLeft(n, ar, that.imaginaryPlane(), out.realPlane(), out.imaginaryPlane());
+	}
+	
+	/**
+	 * Computes out = that * this, out must not share storage with that
+	 */
+	public void applyRight(Matrix that, Matrix out) {
+		int n = checkSizes(that, out);
+		double[] ar = that.realPlane();
+		checkNoAlias(ar, out);
+		applyRight(n, ar, that.imaginaryPlane(), out.realPlane(), out.imaginaryPlane());
+	}
+	
+	/**
+	 * Returns the operator as dense matrix
+	 */
+	public Matrix toMatrix() {
+		int n = len();
+		double[] idRe = new double[n*n];
+		for (int i = 0; i < n; i++)
+			idRe[i*n+i] = 1;
+		
+		Matrix m = new Matrix(n);
+		applyLeft(n, idRe, new double[n*n], m.realPlane(), m.imaginaryPlane());
+		return m;
+	}
+	
+	public String toString() {
+		return toMatrix().toString();
+	}
+	
+	private int checkSizes(Matrix that, Matrix out) {
+		int n = len();
+		if (that.len() != n || out.len() != n)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		out.checkWritable();
+		return n;
+	}
+	
+	private static void checkNoAlias(double[] plane, Matrix out) {
+		if (plane == out.realPlane())
+			throw new IllegalArgumentException("Output matrix must not be the input");
+	}
+}
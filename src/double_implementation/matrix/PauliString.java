@@ -0,0 +1,121 @@
+package matrix;
+
+/**
+ * Tensor product of Pauli matrices and identities, for example "IXZ" = I (x) X (x) Z <br />
+ * Such an operator maps basis vector j to phase(j) * e_(j xor flip), where flip
+ * has the qubits with X or Y set and phase(j) is i^(number of Y) times -1 for every
+ * set bit of j on a Y or Z qubit. Applying it moves and scales rows or columns, O(n^2)
+ * @author Arsen Babakhanyan
+ */
+public final class PauliString extends Operator {
+	
+	private final String paulis;
+	private final int n;
+	// qubits that are flipped (X or Y)
+	private final int flipMask;
+	// qubits that give -1 on |1> (Y or Z)
+	private final int signMask;
+	// i^(number of Y)
+	private final double phaseRe, phaseIm;
+	
+	/**
+	 * Creates Pauli string from letters I, X, Y, Z, first letter acts on the most significant qubit
+	 */
+	public PauliString(String paulis) {
+		int qubits = paulis.length();
+		if (qubits == 0 || qubits > 30)
+			throw new IllegalArgumentException("Pauli string must have 1 to 30 letters");
+		
+		int flip = 0, sign = 0, ys = 0;
+		for (int q = 0; q < qubits; q++) {
+			int bit = 1 << (qubits-1-q);
+			switch (paulis.charAt(q)) {
+			case 'I':
+				break;
+			case 'X':
+				flip |= bit;
+				break;
+			case 'Y':
+				flip |= bit;
+				sign |= bit;
+				ys++;
+				break;
+			case 'Z':
+				sign |= bit;
+				break;
+			default:
+				throw new IllegalArgumentException("Illegal Pauli letter " + paulis.charAt(q));
+			}
+		}
+		
+		this.paulis = paulis;
+		this.n = 1 << qubits;
+		this.flipMask = flip;
+		this.signMask = sign;
+		// Y|0> = i|1>, Y|1> = -i|0>
+		double[] powersOfI = {1, 0, -1, 0};
+		this.phaseRe = powersOfI[ys % 4];
+		this.phaseIm = powersOfI[(ys+3) % 4];
+	}
+	
+	/**
+	 * Returns I (x) ... (x) I (x) Z on the given number of qubits
+	 */
+	public static PauliString lastZ(int qubits) {
+		StringBuilder sb = new StringBuilder();
+		for (int q = 0; q < qubits-1; q++)
+			sb.append('I');
+		return new PauliString(sb.append('Z').toString());
+	}
+	
+	@Override
+	public int len() {
+		return n;
+	}
+	
+	/**
+	 * Returns the letters of the string
+	 */
+	public String getPaulis() {
+		return paulis;
+	}
+	
+	/**
+	 * Pauli strings are Hermitian, returns this
+	 */
+	@Override
+	public Operator adjoint() {
+		return this;
+	}
+	
+	@Override
+	void applyLeft(int n, double[] ar, double[] ai, double[] cr, double[] ci) {
+		// row j of a, times phase(j), becomes row j^flip of c
+		for (int j = 0; j < n; j++) {
+			double s = (Integer.bitCount(j & signMask) & 1) == 0 ? 1 : -1;
+			double pr = s*phaseRe, pi = s*phaseIm;
+			int a0 = j*n;
+			int c0 = (j ^ flipMask)*n;
+			for (int k = 0; k < n; k++) {
+				double xr = ar[a0+k], xi = ai[a0+k];
+				cr[c0+k] = (pr*xr) - (pi*xi);
+				ci[c0+k] = (pi*xr) + (pr*xi);
+			}
+		}
+	}
+	
+	@Override
+	void applyRight(int n, double[] ar, double[] ai, double[] cr, double[] ci) {
+		// column j of c is column j^flip of a times phase(j)
+		for (int i = 0; i < n; i++) {
+			int row = i*n;
+			for (int j = 0; j < n; j++) {
+				double s = (Integer.bitCount(j & signMask) & 1) == 0 ? 1 : -1;
+				double pr = s*phaseRe, pi = s*phaseIm;
+				double xr = ar[row+(j ^ flipMask)], xi = ai[row+(j ^ flipMask)];
+				cr[row+j] = (xr*pr) - (xi*pi);
+				ci[row+j] = (xi*pr) + (xr*pi);
+			}
+		}
+	}
+}
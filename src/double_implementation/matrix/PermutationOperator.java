@@ -0,0 +1,72 @@
+package matrix;
+
+/**
+ * Permutation operator P with P e_j = e_perm[j] <br />
+ * Multiplying by it only moves rows (from the left) or columns (from the right)
+ * @author Arsen Babakhanyan
+ */
+public final class PermutationOperator extends Operator {
+	
+	private final int[] perm;
+	
+	/**
+	 * Creates permutation operator that maps basis vector j to perm[j], the array is copied
+	 */
+	public PermutationOperator(int... perm) {
+		boolean[] seen = new boolean[perm.length];
+		for (int p : perm) {
+			if (p < 0 || p >= perm.length || seen[p])
+				throw new IllegalArgumentException("Not a permutation");
+			seen[p] = true;
+		}
+		this.perm = perm.clone();
+	}
+	
+	/**
+	 * Returns the permutation operator of CNOT (first qubit controls the second)
+	 */
+	public static PermutationOperator CNOT() {
+		return new PermutationOperator(0, 1, 3, 2);
+	}
+	
+	@Override
+	public int len() {
+		return perm.length;
+	}
+	
+	/**
+	 * Returns the index basis vector j is mapped to
+	 */
+	public int get(int j) {
+		return perm[j];
+	}
+	
+	@Override
+	public Operator adjoint() {
+		int[] inverse = new int[perm.length];
+		for (int j = 0; j < perm.length; j++)
+			inverse[perm[j]] = j;
+		return new PermutationOperator(inverse);
+	}
+	
+	@Override
+	void applyLeft(int n, double[] ar, double[] ai, double[] cr, double[] ci) {
+		// row j of a becomes row perm[j] of c
+		for (int j = 0; j < n; j++) {
+			System.arraycopy(ar, j*n, cr, perm[j]*n, n);
+			System.arraycopy(ai, j*n, ci, perm[j]*n, n);
+		}
+	}
+	
+	@Override
+	void applyRight(int n, double[] ar, double[] ai, double[] cr, double[] ci) {
+		// column j of c is column perm[j] of a
+		for (int i = 0; i < n; i++) {
+			int row = i*n;
+			for (int j = 0; j < n; j++) {
+				cr[row+j] = ar[row+perm[j]];
+				ci[row+j] = ai[row+perm[j]];
+			}
+		}
+	}
+}
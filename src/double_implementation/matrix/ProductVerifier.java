@@ -0,0 +1,165 @@
+package matrix;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Randomized check that a chain of factors multiplies to an expected matrix
+ * (Freivalds' algorithm) <br />
+ * Instead of forming F1*F2*...*Fk, which costs O(k*n^3), every factor is applied
+ * to a random vector x with entries +1 or -1, which costs O(k*n^2), and the result
+ * is compared with expected*x. A component of the product that differs from the
+ * expected one by d moves one component of the probe result by exactly +d or -d,
+ * and every component of the probe results is held to the tolerance of one element
+ * (plus an allowance for the rounding of the probe products). So if some element
+ * differs by more than the tolerance, like Matrix.equals would reject, a single probe
+ * misses that with probability at most 1/2 and ceil(log2(1/p)) independent probes
+ * accept the wrong product with probability at most p. The bound says nothing about
+ * differences below the tolerance, those are accepted or rejected as the probes fall.
+ * All probes go through the factors together as one block of columns <br />
+ * Usage: new ProductVerifier(1e-9).verify(U, K1, A, K2)
+ * @author Arsen Babakhanyan
+ */
+public final class ProductVerifier {
+	
+	private final int probes;
+	private final Random random;
+	// largest allowed difference of one element, like Matrix.equals
+	private double tolerance = 0.000001;
+	
+	/**
+	 * Creates verifier that accepts a wrong product with probability at most falseAcceptProbability
+	 */
+	public ProductVerifier(double falseAcceptProbability) {
+		this(falseAcceptProbability, new Random());
+	}
+	
+	/**
+	 * Creates verifier that draws its probes from the given random source (for reproducible checks)
+	 */
+	public ProductVerifier(double falseAcceptProbability, Random random) {
+		if (!(falseAcceptProbability > 0 && falseAcceptProbability < 1))
+			throw new IllegalArgumentException("Probability must be in (0, 1)");
+		this.probes = (int)Math.ceil(Math.log(1/falseAcceptProbability) / Math.log(2));
+		this.random = random;
+	}
+	
+	/**
+	 * Sets the largest difference of one element the product may have from the expected matrix <br />
+	 * It is also the largest difference allowed in one component of a probe result
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+	
+	/**
+	 * Returns the number of probe vectors used per check
+	 */
+	public int getProbes() {
+		return probes;
+	}
+	
+	/**
+	 * Returns true if expected equals factors[0] * factors[1] * ... (up to the false accept probability)
+	 */
+	public boolean verify(Matrix expected, Matrix... factors) {
+		int n = expected.len();
+		double[][] planes = new double[2*factors.length][];
+		for (int f = 0; f < factors.length; f++) {
+			if (factors[f].len() != n)
+				throw new RuntimeException("Illegal matrix dimensions.");
+			planes[2*f] = factors[f].realPlane();
+			planes[2*f+1] = factors[f].imaginaryPlane();
+		}
+		double[] er = expected.realPlane();
+		double[] ei = expected.imaginaryPlane();
+		
+		// all probes at once, n rows of probes columns, so every element of a factor is loaded once
+		int m = probes;
+		double[] xr = new double[n*m], xi = new double[n*m];
+		double[] yr = new double[n*m], yi = new double[n*m];
+		double[] zr = new double[n*m], zi = new double[n*m];
+		double[] swap;
+		for (int i = 0; i < xr.length; i++)
+			xr[i] = random.nextBoolean() ? 1 : -1;
+		
+		// y = expected * x
+		mulProbes(n, m, er, ei, xr, xi, yr, yi);
+		
+		// x = F1 * (F2 * ... (Fk * x)), the last factor is applied first
+		for (int f = factors.length-1; f >= 0; f--) {
+			mulProbes(n, m, planes[2*f], planes[2*f+1], xr, xi, zr, zi);
+			swap = xr; xr = zr; zr = swap;
+			swap = xi; xi = zi; zi = swap;
+		}
+		
+		double limit = tolerance + roundoff(n, expected, factors);
+		for (int i = 0; i < xr.length; i++) {
+			if (Math.abs(xr[i] - yr[i]) > limit || Math.abs(xi[i] - yi[i]) > limit)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns true if expected equals the product of the factors in list order
+	 */
+	public boolean verify(Matrix expected, List<Matrix> factors) {
+		return verify(expected, factors.toArray(new Matrix[factors.size()]));
+	}
+	
+	/**
+	 * Returns bound of the rounding error in one component of the probe results <br />
+	 * A product with an nxn matrix a adds at most about n*eps*||a|| times the largest
+	 * component of the vector, ||a|| the largest row sum of absolute values. The probe
+	 * components are +1 or -1, the result of the chain grows at most by the product of
+	 * the factor norms
+	 */
+	private static double roundoff(int n, Matrix expected, Matrix[] factors) {
+		double eps = Math.ulp(1.0);
+		double chain = 0;
+		double growth = 1;
+		for (int f = factors.length-1; f >= 0; f--) {
+			growth *= normInf(n, factors[f]);
+			chain += growth;
+		}
+		return 2*n*eps*(chain + normInf(n, expected));
+	}
+	
+	/**
+	 * Returns the largest row sum of absolute values of the components of that
+	 */
+	private static double normInf(int n, Matrix that) {
+		double[] re = that.realPlane(), im = that.imaginaryPlane();
+		double norm = 0;
+		for (int i = 0; i < n; i++) {
+			double sum = 0;
+			for (int k = i*n; k < i*n+n; k++)
+				sum += Math.abs(re[k]) + Math.abs(im[k]);
+			norm = Math.max(norm, sum);
+		}
+		return norm;
+	}
+	
+	/**
+	 * Computes y = a * x for nxn a and x of n rows with m probes each
+	 */
+	private static void mulProbes(int n, int m, double[] ar, double[] ai, double[] xr, double[] xi, double[] yr, double[] yi) {
+		for (int i = 0; i < n; i++) {
+			int y0 = i*m;
+			for (int j = y0; j < y0+m; j++) {
+				yr[j] = 0;
+				yi[j] = 0;
+			}
+			for (int k = 0; k < n; k++) {
+				double a = ar[i*n+k], b = ai[i*n+k];
+				int x0 = k*m;
+				for (int j = 0; j < m; j++) {
+					double cr = xr[x0+j], ci = xi[x0+j];
+					yr[y0+j] += (a*cr) - (b*ci);
+					yi[y0+j] += (b*cr) + (a*ci);
+				}
+			}
+		}
+	}
+}
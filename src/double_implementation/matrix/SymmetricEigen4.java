@@ -0,0 +1,488 @@
+package matrix;
+
+import java.util.Arrays;
+
+/**
+ * Eigen decomposition of 4x4 complex symmetric matrices M = X + iY whose real
+ * and imaginary parts commute (for example M = G^T*G for unitary G) <br />
+ * Such M is diagonalized by a real orthogonal Q, Q*M*Q^T = D. Q is found by the
+ * cyclic Jacobi method on the real symmetric X + c*Y, every eigenvector of M is an
+ * eigenvector of it. When X + c*Y has a repeated eigenvalue that M does not have
+ * the result is not diagonal, so the check is repeated with another c <br />
+ * Inside an eigenspace of a repeated eigenvalue of M any orthonormal basis would do,
+ * the one Jacobi ends in depends on rounding. So every eigenspace gets a canonical basis,
+ * see canonical, and decompose and decomposeBatch give the same result for repeated
+ * eigenvalues as well <br />
+ * Matrices are double[16], row by row
+ * @author Arsen Babakhanyan
+ */
+public final class SymmetricEigen4 {
+	
+	// weights of the imaginary part tried one after the other
+	private static final double[] MIXES = {0.5772156649015329, 1.6180339887498949, -0.7071067811865476, 2.718281828459045};
+	
+	// largest off diagonal element of Q*M*Q^T allowed, relative to the largest element of M
+	private static final double OFF_DIAGONAL = 1.0E-10;
+	
+	private static final int MAX_SWEEPS = 50;
+	
+	// eigenvalues closer than this, relative to the largest one, are taken as one repeated eigenvalue
+	private static final double REPEATED = 1.0E-9;
+	
+	private SymmetricEigen4() {
+	}
+	
+	/**
+	 * Diagonalizes re + i*im, q gets the eigenvectors as rows (real orthogonal, determinant +1)
+	 * and valRe, valIm the matching eigenvalues, the basis is made canonical by canonical <br />
+	 * Returns false if the real and imaginary parts do not commute, then the outputs are undefined
+	 */
+	public static boolean decompose(double[] re, double[] im, double[] q, double[] valRe, double[] valIm) {
+		double scale = 0;
+		for (int i = 0; i < 16; i++)
+			scale = Math.max(scale, Math.max(Math.abs(re[i]), Math.abs(im[i])));
+		if (scale == 0) {
+			identity(q);
+			for (int i = 0; i < 4; i++) {
+				valRe[i] = 0;
+				valIm[i] = 0;
+			}
+			return true;
+		}
+		
+		double[] a = new double[16];
+		double[] dRe = new double[16], dIm = new double[16];
+		for (double c : MIXES) {
+			// symmetric part only, so rounding in M does not make it one sided
+			for (int i = 0; i < 4; i++) {
+				for (int j = 0; j < 4; j++)
+					a[i*4+j] = 0.5*((re[i*4+j] + re[j*4+i]) + c*(im[i*4+j] + im[j*4+i]));
+			}
+			jacobi(a, q);
+			
+			rotate(q, re, dRe);
+			rotate(q, im, dIm);
+			if (offDiagonal(dRe, dIm) > OFF_DIAGONAL*scale)
+				continue;
+			
+			for (int i = 0; i < 4; i++) {
+				valRe[i] = dRe[i*5];
+				valIm[i] = dIm[i*5];
+			}
+			canonical(q, valRe, valIm);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Diagonalizes count matrices at once, the same as decompose for each of them <br />
+	 * Arrays are struct of arrays: element e (row*4+col) of matrix b is at [e*count + b],
+	 * eigenvalue k of matrix b at [k*count + b]. Every rotation is applied to all matrices
+	 * in one loop over b, so the work is in long branch free loops instead of 4x4 steps.
+	 * Matrices that need another weight c are finished one by one <br />
+	 * ok[b] gets the result decompose would return for matrix b, the number of false values is returned
+	 */
+	public static int decomposeBatch(int count, double[] re, double[] im, double[] q,
+			double[] valRe, double[] valIm, boolean[] ok) {
+		if (re.length < 16*count || im.length < 16*count || q.length < 16*count
+				|| valRe.length < 4*count || valIm.length < 4*count || ok.length < count)
+			throw new RuntimeException("Illegal matrix dimensions.");
+		
+		// one array per element, every loop below then reads and writes
+		// all arrays at the same index and the JIT can use vector instructions
+		double[][] mRe = planes(count, re), mIm = planes(count, im);
+		double[][] a = new double[16][count], v = new double[16][count];
+		double c = MIXES[0];
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 4; j++) {
+				double[] aij = a[i*4+j], rij = mRe[i*4+j], rji = mRe[j*4+i], iij = mIm[i*4+j], iji = mIm[j*4+i];
+				for (int b = 0; b < count; b++)
+					aij[b] = 0.5*((rij[b] + rji[b]) + c*(iij[b] + iji[b]));
+			}
+		}
+		jacobiBatch(count, a, v);
+		
+		double[][] dRe = new double[16][count], dIm = new double[16][count], t = new double[16][count];
+		rotateBatch(count, v, mRe, dRe, t);
+		rotateBatch(count, v, mIm, dIm, t);
+		
+		for (int e = 0; e < 16; e++)
+			System.arraycopy(v[e], 0, q, e*count, count);
+		for (int k = 0; k < 4; k++) {
+			System.arraycopy(dRe[k*5], 0, valRe, k*count, count);
+			System.arraycopy(dIm[k*5], 0, valIm, k*count, count);
+		}
+		
+		// largest element of M against largest off diagonal element of Q*M*Q^T
+		double[] scale = t[0], off = t[1];
+		Arrays.fill(scale, 0);
+		Arrays.fill(off, 0);
+		for (int e = 0; e < 16; e++) {
+			double[] re0 = mRe[e], im0 = mIm[e], dRe0 = dRe[e], dIm0 = dIm[e];
+			for (int b = 0; b < count; b++)
+				scale[b] = Math.max(scale[b], Math.max(Math.abs(re0[b]), Math.abs(im0[b])));
+			if (e % 5 == 0)
+				continue;
+			for (int b = 0; b < count; b++)
+				off[b] = Math.max(off[b], Math.max(Math.abs(dRe0[b]), Math.abs(dIm0[b])));
+		}
+		
+		int failed = 0;
+		double[] xRe = new double[16], xIm = new double[16], xq = new double[16];
+		double[] lRe = new double[4], lIm = new double[4];
+		for (int b = 0; b < count; b++) {
+			ok[b] = off[b] <= OFF_DIAGONAL*scale[b];
+			if (ok[b]) {
+				// the same canonical basis and determinant as decompose
+				for (int e = 0; e < 16; e++)
+					xq[e] = q[e*count+b];
+				for (int k = 0; k < 4; k++) {
+					lRe[k] = valRe[k*count+b];
+					lIm[k] = valIm[k*count+b];
+				}
+				canonical(xq, lRe, lIm);
+			} else {
+				// repeated eigenvalue of X + c*Y or no common eigenvectors at all, decompose goes on with the other weights
+				for (int e = 0; e < 16; e++) {
+					xRe[e] = re[e*count+b];
+					xIm[e] = im[e*count+b];
+				}
+				ok[b] = decompose(xRe, xIm, xq, lRe, lIm);
+				if (!ok[b])
+					failed++;
+			}
+			for (int e = 0; e < 16; e++)
+				q[e*count+b] = xq[e];
+			for (int k = 0; k < 4; k++) {
+				valRe[k*count+b] = lRe[k];
+				valIm[k*count+b] = lIm[k];
+			}
+		}
+		return failed;
+	}
+	
+	/**
+	 * Diagonalizes real symmetric a in place with cyclic Jacobi rotations,
+	 * q gets the eigenvectors as rows, the eigenvalues are left on the diagonal of a
+	 */
+	public static void jacobi(double[] a, double[] q) {
+		identity(q);
+		
+		for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+			double off = 0, diag = 0;
+			for (int i = 0; i < 4; i++) {
+				diag += a[i*5]*a[i*5];
+				for (int j = i+1; j < 4; j++)
+					off += a[i*4+j]*a[i*4+j];
+			}
+			if (off <= 1.0E-30*diag || off == 0)
+				return;
+			
+			for (int p = 0; p < 3; p++) {
+				for (int r = p+1; r < 4; r++) {
+					double apr = a[p*4+r];
+					if (apr == 0)
+						continue;
+					
+					// rotation that zeroes a[p][r], the smaller of the two angles,
+					// computed as in jacobiBatch so that both take the same rotations
+					double d = a[r*5] - a[p*5];
+					double t = Math.copySign(2.0, d)*apr / (Math.abs(d) + Math.sqrt(d*d + 4*apr*apr) + Double.MIN_NORMAL);
+					double cos = 1/Math.sqrt(t*t + 1);
+					double sin = t*cos;
+					
+					// a = J^T * a * J, columns then rows
+					for (int k = 0; k < 4; k++) {
+						double akp = a[k*4+p], akr = a[k*4+r];
+						a[k*4+p] = cos*akp - sin*akr;
+						a[k*4+r] = sin*akp + cos*akr;
+					}
+					for (int k = 0; k < 4; k++) {
+						double apk = a[p*4+k], ark = a[r*4+k];
+						a[p*4+k] = cos*apk - sin*ark;
+						a[r*4+k] = sin*apk + cos*ark;
+					}
+					a[p*4+r] = 0;
+					a[r*4+p] = 0;
+					
+					// rows of q are the columns of the accumulated J
+					for (int k = 0; k < 4; k++) {
+						double qpk = q[p*4+k], qrk = q[r*4+k];
+						q[p*4+k] = cos*qpk - sin*qrk;
+						q[r*4+k] = sin*qpk + cos*qrk;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Cyclic Jacobi on count matrices, a[e][b] is element e of matrix b,
+	 * sweeps go on until every matrix has converged
+	 */
+	private static void jacobiBatch(int count, double[][] a, double[][] q) {
+		for (int e = 0; e < 16; e += 5)
+			Arrays.fill(q[e], 1);
+		
+		double[] cos = new double[count], sin = new double[count];
+		for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+			boolean converged = true;
+			for (int b = 0; b < count && converged; b++) {
+				double off = 0, diag = 0;
+				for (int i = 0; i < 4; i++) {
+					diag += a[i*5][b]*a[i*5][b];
+					for (int j = i+1; j < 4; j++)
+						off += a[i*4+j][b]*a[i*4+j][b];
+				}
+				converged = off <= 1.0E-30*diag || off == 0;
+			}
+			if (converged)
+				return;
+			
+			for (int p = 0; p < 3; p++) {
+				for (int r = p+1; r < 4; r++) {
+					double[] app = a[p*5], arr = a[r*5], apr = a[p*4+r];
+					
+					// same rotation as jacobi, tan = sign(d)*2*apr / (|d| + sqrt(d^2 + 4*apr^2)) with d = arr - app
+					// is 0 without a branch when apr is 0
+					for (int b = 0; b < count; b++) {
+						double d = arr[b] - app[b];
+						double tan = Math.copySign(2.0, d)*apr[b] / (Math.abs(d) + Math.sqrt(d*d + 4*apr[b]*apr[b]) + Double.MIN_NORMAL);
+						double cs = 1/Math.sqrt(tan*tan + 1);
+						cos[b] = cs;
+						sin[b] = tan*cs;
+					}
+					
+					for (int k = 0; k < 4; k++) {
+						rotate(count, cos, sin, a[k*4+p], a[k*4+r]);
+					}
+					for (int k = 0; k < 4; k++) {
+						rotate(count, cos, sin, a[p*4+k], a[r*4+k]);
+						rotate(count, cos, sin, q[p*4+k], q[r*4+k]);
+					}
+					Arrays.fill(a[p*4+r], 0);
+					Arrays.fill(a[r*4+p], 0);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes x, y = cos*x - sin*y, sin*x + cos*y element by element
+	 */
+	private static void rotate(int count, double[] cos, double[] sin, double[] x, double[] y) {
+		for (int b = 0; b < count; b++) {
+			double xb = x[b], yb = y[b];
+			x[b] = cos[b]*xb - sin[b]*yb;
+			y[b] = sin[b]*xb + cos[b]*yb;
+		}
+	}
+	
+	/**
+	 * Computes d = q * m * q^T for count matrices, t is scratch
+	 */
+	private static void rotateBatch(int count, double[][] q, double[][] m, double[][] d, double[][] t) {
+		for (int i = 0; i < 16; i++) {
+			Arrays.fill(t[i], 0);
+			Arrays.fill(d[i], 0);
+		}
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 4; j++) {
+				double[] tij = t[i*4+j];
+				for (int k = 0; k < 4; k++) {
+					double[] qik = q[i*4+k], mkj = m[k*4+j];
+					for (int b = 0; b < count; b++)
+						tij[b] += qik[b]*mkj[b];
+				}
+			}
+		}
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 4; j++) {
+				double[] dij = d[i*4+j];
+				for (int k = 0; k < 4; k++) {
+					double[] tik = t[i*4+k], qjk = q[j*4+k];
+					for (int b = 0; b < count; b++)
+						dij[b] += tik[b]*qjk[b];
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Splits struct of arrays flat into one array per element
+	 */
+	private static double[][] planes(int count, double[] flat) {
+		double[][] planes = new double[16][count];
+		for (int e = 0; e < 16; e++)
+			System.arraycopy(flat, e*count, planes[e], 0, count);
+		return planes;
+	}
+	
+	/**
+	 * Makes the eigenvectors in q (rows) and eigenvalues valRe + i*valIm canonical <br />
+	 * A single eigenvector gets the sign of its first component of magnitude at least 0.35.
+	 * Eigenvalues closer than REPEATED are made equal, the basis of their eigenspace is
+	 * built from its projector P column by column: the first column of P, without the
+	 * vectors already taken, whose square norm is at least 1/8 (there always is one of at
+	 * least 1/4) is normalized and taken. So the basis depends only on the eigenspace and
+	 * its vectors keep the positions of the eigenspace in increasing order.
+	 * Eigenvalues within rounding of the real axis are made real, so -1 has argument +pi.
+	 * Finally the last row is negated if the determinant is -1
+	 */
+	private static void canonical(double[] q, double[] valRe, double[] valIm) {
+		double largest = 0;
+		for (int i = 0; i < 4; i++)
+			largest = Math.max(largest, valRe[i]*valRe[i] + valIm[i]*valIm[i]);
+		double limit = REPEATED*Math.sqrt(largest);
+		
+		// group[k] is the smallest index of an eigenvalue equal to eigenvalue k
+		int[] group = {0, 1, 2, 3};
+		boolean repeated = false;
+		for (int i = 0; i < 4; i++) {
+			for (int j = i+1; j < 4; j++) {
+				double dRe = valRe[i] - valRe[j], dIm = valIm[i] - valIm[j];
+				if (dRe*dRe + dIm*dIm <= limit*limit && group[j] != group[i]) {
+					int from = Math.max(group[i], group[j]), to = Math.min(group[i], group[j]);
+					for (int k = 0; k < 4; k++) {
+						if (group[k] == from)
+							group[k] = to;
+					}
+					repeated = true;
+				}
+			}
+		}
+		
+		for (int k = 0; k < 4; k++) {
+			if (Math.abs(valIm[k]) <= limit)
+				valIm[k] = 0;
+			
+			int c = 0;
+			while (q[k*4+c]*q[k*4+c] < 0.125)
+				c++;
+			if (q[k*4+c] < 0) {
+				for (int i = 0; i < 4; i++)
+					q[k*4+i] = -q[k*4+i];
+			}
+		}
+		if (repeated)
+			canonicalSpaces(q, valRe, valIm, group);
+		
+		if (determinant(q) < 0) {
+			for (int j = 12; j < 16; j++)
+				q[j] = -q[j];
+		}
+	}
+	
+	/**
+	 * Gives every eigenspace of a repeated eigenvalue the basis described in canonical,
+	 * eigenvalue k is equal to eigenvalue group[k]
+	 */
+	private static void canonicalSpaces(double[] q, double[] valRe, double[] valIm, int[] group) {
+		double[] p = new double[16];
+		double[] basis = new double[16];
+		for (int g = 0; g < 4; g++) {
+			int size = 0;
+			double sumRe = 0, sumIm = 0;
+			Arrays.fill(p, 0);
+			for (int k = 0; k < 4; k++) {
+				if (group[k] != g)
+					continue;
+				size++;
+				sumRe += valRe[k];
+				sumIm += valIm[k];
+				for (int i = 0; i < 4; i++) {
+					for (int j = 0; j < 4; j++)
+						p[i*4+j] += q[k*4+i]*q[k*4+j];
+				}
+			}
+			if (size < 2)
+				continue;
+			
+			// Gram-Schmidt on the columns of the projector P
+			int taken = 0;
+			for (int c = 0; c < 4 && taken < size; c++) {
+				double norm = 0;
+				for (int i = 0; i < 4; i++) {
+					double x = p[i*4+c];
+					for (int t = 0; t < taken; t++)
+						x -= basis[t*4+i]*basis[t*4+c];
+					basis[taken*4+i] = x;
+					norm += x*x;
+				}
+				if (norm < 0.125)
+					continue;
+				norm = Math.sqrt(norm);
+				for (int i = 0; i < 4; i++)
+					basis[taken*4+i] /= norm;
+				taken++;
+			}
+			
+			double mRe = sumRe/size, mIm = sumIm/size;
+			for (int k = 0, t = 0; k < 4; k++) {
+				if (group[k] != g)
+					continue;
+				System.arraycopy(basis, t*4, q, k*4, 4);
+				valRe[k] = mRe;
+				valIm[k] = mIm;
+				t++;
+			}
+		}
+	}
+	
+	/**
+	 * Computes d = q * m * q^T
+	 */
+	private static void rotate(double[] q, double[] m, double[] d) {
+		double[] t = new double[16];
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 4; j++) {
+				double s = 0;
+				for (int k = 0; k < 4; k++)
+					s += q[i*4+k]*m[k*4+j];
+				t[i*4+j] = s;
+			}
+		}
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 4; j++) {
+				double s = 0;
+				for (int k = 0; k < 4; k++)
+					s += t[i*4+k]*q[j*4+k];
+				d[i*4+j] = s;
+			}
+		}
+	}
+	
+	private static double offDiagonal(double[] re, double[] im) {
+		double max = 0;
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 4; j++) {
+				if (i != j)
+					max = Math.max(max, Math.max(Math.abs(re[i*4+j]), Math.abs(im[i*4+j])));
+			}
+		}
+		return max;
+	}
+	
+	private static double determinant(double[] m) {
+		// expansion by 2x2 minors of the first two rows and the last two rows
+		double s0 = m[0]*m[5] - m[1]*m[4];
+		double s1 = m[0]*m[6] - m[2]*m[4];
+		double s2 = m[0]*m[7] - m[3]*m[4];
+		double s3 = m[1]*m[6] - m[2]*m[5];
+		double s4 = m[1]*m[7] - m[3]*m[5];
+		double s5 = m[2]*m[7] - m[3]*m[6];
+		double c5 = m[10]*m[15] - m[11]*m[14];
+		double c4 = m[9]*m[15] - m[11]*m[13];
+		double c3 = m[9]*m[14] - m[10]*m[13];
+		double c2 = m[8]*m[15] - m[11]*m[12];
+		double c1 = m[8]*m[14] - m[10]*m[12];
+		double c0 = m[8]*m[13] - m[9]*m[12];
+		return s0*c5 - s1*c4 + s2*c3 + s3*c2 - s4*c1 + s5*c0;
+	}
+	
+	private static void identity(double[] q) {
+		for (int i = 0; i < 16; i++)
+			q[i] = (i % 5 == 0) ? 1 : 0;
+	}
+}
@@ -0,0 +1,189 @@
+package matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per thread pool of scratch matrices and vectors for the temporaries of one
+ * decomposition call <br />
+ * Usage: <br />
+ * try (Workspace ws = Workspace.open()) { Matrix tmp = ws.matrix(n); ... } <br />
+ * Buffers are handed out in order and the same call sequence gets the same
+ * buffers back next time, so after the first call nothing is allocated.
+ * Closing the scope only moves the cursors back (O(1)), scopes can be nested.
+ * Buffers must not be used after their scope is closed and must not be
+ * returned to callers, copy results out instead. Buffers of more than
+ * RETAINED doubles are dropped when the outermost scope closes, so one
+ * large product does not stay on the thread
+ * @author Arsen Babakhanyan
+ */
+public final class Workspace implements AutoCloseable {
+	
+	private static final ThreadLocal<Workspace> LOCAL = new ThreadLocal<Workspace>() {
+		@Override
+		protected Workspace initialValue() {
+			return new Workspace();
+		}
+	};
+	
+	// largest buffer (in doubles) kept after the outermost scope, 2 MB
+	static final int RETAINED = 1 << 18;
+	
+	private final List<Matrix> matrices = new ArrayList<>();
+	private final List<double[]> vectors = new ArrayList<>();
+	
+	// next buffer to hand out
+	private int matrixCursor;
+	private int vectorCursor;
+	// doubles held by the buffers handed out so far
+	private long doublesInUse;
+	// set when a buffer of more than RETAINED doubles was allocated
+	private boolean oversized;
+	
+	// cursors saved by open(), one entry per open scope
+	private int[] marks = new int[8];
+	private long[] doubleMarks = new long[4];
+	private int depth;
+	
+	private int matrixHighWaterMark;
+	private int vectorHighWaterMark;
+	private long doublesHighWaterMark;
+	
+	private Workspace() {
+	}
+	
+	/**
+	 * Opens a new scope on the workspace of the current thread and returns the workspace
+	 */
+	public static Workspace open() {
+		Workspace ws = LOCAL.get();
+		ws.push();
+		return ws;
+	}
+	
+	/**
+	 * Returns nxn zero matrix valid until the current scope is closed
+	 */
+	public Matrix matrix(int n) {
+		checkOpen();
+		Matrix m;
+		if (matrixCursor < matrices.size() && matrices.get(matrixCursor) != null && matrices.get(matrixCursor).len() == n) {
+			m = matrices.get(matrixCursor);
+			Arrays.fill(m.realPlane(), 0);
+			Arrays.fill(m.imaginaryPlane(), 0);
+		} else {
+			// first call or a different call sequence, the old buffer is replaced
+			m = new Matrix(n);
+			oversized |= 2L*n*n > RETAINED;
+			if (matrixCursor < matrices.size())
+				matrices.set(matrixCursor, m);
+			else
+				matrices.add(m);
+		}
+		matrixCursor++;
+		doublesInUse += 2L*n*n;
+		matrixHighWaterMark = Math.max(matrixHighWaterMark, matrixCursor);
+		doublesHighWaterMark = Math.max(doublesHighWaterMark, doublesInUse);
+		return m;
+	}
+	
+	/**
+	 * Returns zero vector of given length valid until the current scope is closed
+	 */
+	public double[] vector(int length) {
+		checkOpen();
+		double[] v;
+		if (vectorCursor < vectors.size() && vectors.get(vectorCursor) != null && vectors.get(vectorCursor).length == length) {
+			v = vectors.get(vectorCursor);
+			Arrays.fill(v, 0);
+		} else {
+			v = new double[length];
+			oversized |= length > RETAINED;
+			if (vectorCursor < vectors.size())
+				vectors.set(vectorCursor, v);
+			else
+				vectors.add(v);
+		}
+		vectorCursor++;
+		doublesInUse += length;
+		vectorHighWaterMark = Math.max(vectorHighWaterMark, vectorCursor);
+		doublesHighWaterMark = Math.max(doublesHighWaterMark, doublesInUse);
+		return v;
+	}
+	
+	/**
+	 * Closes the innermost scope, its buffers are handed out again by the next calls
+	 */
+	@Override
+	public void close() {
+		checkOpen();
+		depth--;
+		matrixCursor = marks[2*depth];
+		vectorCursor = marks[2*depth+1];
+		doublesInUse = doubleMarks[depth];
+		if (depth == 0 && oversized)
+			release();
+	}
+	
+	/**
+	 * Drops the buffers of more than RETAINED doubles, the next call that needs one allocates it again
+	 */
+	private void release() {
+		oversized = false;
+		for (int i = 0; i < matrices.size(); i++) {
+			Matrix m = matrices.get(i);
+			if (m != null && 2L*m.len()*m.len() > RETAINED)
+				matrices.set(i, null);
+		}
+		for (int i = 0; i < vectors.size(); i++) {
+			double[] v = vectors.get(i);
+			if (v != null && v.length > RETAINED)
+				vectors.set(i, null);
+		}
+	}
+	
+	/**
+	 * Returns the largest number of matrices that were in use at the same time
+	 */
+	public int getMatrixHighWaterMark() {
+		return matrixHighWaterMark;
+	}
+	
+	/**
+	 * Returns the largest number of vectors that were in use at the same time
+	 */
+	public int getVectorHighWaterMark() {
+		return vectorHighWaterMark;
+	}
+	
+	/**
+	 * Returns the largest number of doubles (matrices and vectors together) that were in use at the same time
+	 */
+	public long getHighWaterMark() {
+		return doublesHighWaterMark;
+	}
+	
+	/**
+	 * Returns the number of scopes that are open on this workspace
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	private void push() {
+		if (depth == doubleMarks.length) {
+			marks = Arrays.copyOf(marks, 4*depth);
+			doubleMarks = Arrays.copyOf(doubleMarks, 2*depth);
+		}
+		marks[2*depth] = matrixCursor;
+		marks[2*depth+1] = vectorCursor;
+		doubleMarks[depth] = doublesInUse;
+		depth++;
+	}
+	
+	private void checkOpen() {
+		if (depth == 0)
+			throw new IllegalStateException("Workspace is not open");
+	}
+}
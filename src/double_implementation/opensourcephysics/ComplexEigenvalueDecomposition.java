@@ -60,73 +60,129 @@ public class ComplexEigenvalueDecomposition {
       System.out.println("zero size matrix"); //$NON-NLS-1$
       return;
     }
+    double Ar[][] = new double[n][n], Ai[][] = new double[n][n];
+    double lambdaR[] = new double[n], lambdaI[] = new double[n];
+    double vecR[][] = new double[n][n], vecI[][] = new double[n][n];
+    PrimitiveComplexMatrix.fromComplex(A, Ar, Ai);
+    eigen(Ar, Ai, lambdaR, lambdaI, vecR, vecI, fail);
+    PrimitiveComplexMatrix.toComplex(lambdaR, lambdaI, lambda);
+    PrimitiveComplexMatrix.toComplex(vecR, vecI, vec);
+  } // end eigen
+
+  /**
+   * Obtains the eigenvalues and eigenvectors of a complex matrix given by its
+   * real and imaginary parts, no Complex is allocated.
+   *
+   * Input
+   * @parameter double [][] Ar, Ai real and imaginary parts of A
+   * @parameter double [] empty vectors lambdaR, lambdaI
+   * @parameter double [][] empty eigenvector matrices vecR, vecI
+   * @parameter unset single element boolean [] fail
+   *
+   * Ouput: as eigen(A, lambda, vec, fail), with the same results
+   */
+  public static void eigen(double Ar[][], double Ai[][], double lambdaR[], double lambdaI[], double vecR[][], double vecI[][], boolean fail[]) {
+    if((Ar==null)||(Ai==null)||(lambdaR==null)||(lambdaI==null)||(vecR==null)||(vecI==null)) {
+      System.out.println("Error in Eigen.eigen,"+" null or inconsistent array sizes."); //$NON-NLS-1$ //$NON-NLS-2$
+      return;
+    }
+    int n = Ar.length;
+    if((Ar[0].length!=n)||(Ai.length!=n)||(vecR.length!=n)||(vecR[0].length!=n)||(vecI.length!=n)||(lambdaR.length!=n)||(lambdaI.length!=n)) {
+      System.out.println("Error in Eigen.eigen,"+" inconsistent array sizes."); //$NON-NLS-1$ //$NON-NLS-2$
+      return;
+    }
+    fail[0] = false;
+    // special cases
+    if(n<1) {
+      System.out.println("zero size matrix"); //$NON-NLS-1$
+      return;
+    }
     int rowcol[] = new int[n];
-    Complex B[][] = new Complex[n][n];
-    ComplexMatrix.copy(A, B);
+    double Br[][] = new double[n][n], Bi[][] = new double[n][n];
+    PrimitiveComplexMatrix.copy(Ar, Ai, Br, Bi);
     if(n==1) {
-      lambda[0] = B[0][0];
-      vec[0][0] = new Complex(1.0, 0.0);
+      lambdaR[0] = Br[0][0];
+      lambdaI[0] = Bi[0][0];
+      vecR[0][0] = 1.0;
+      vecI[0][0] = 0.0;
       return;
     }
     if(n==2) {
-      twobytwo(B, lambda, vec);
+      twobytwo(Br, Bi, lambdaR, lambdaI, vecR, vecI);
       return;
     }
-    //System.out.println("calling cxhess");
-    cxhess(B, rowcol);
+    cxhess(Br, Bi, rowcol);
     for(int i = 0; i<n; i++) {
-      lambda[i] = new Complex(-999.0, -999.0);
+      lambdaR[i] = -999.0;
+      lambdaI[i] = -999.0;
     }
-    //System.out.println("calling cxeig2c");
-    cxeig2c(B, lambda, vec, rowcol, fail);
+    cxeig2c(Br, Bi, lambdaR, lambdaI, vecR, vecI, rowcol, fail);
   } // end eigen
 
-  private static void twobytwo(Complex A[][], Complex lambda[], Complex vec[][]) {
-    Complex b, c, rad, l1, l2;
-    Complex Z[] = new Complex[2];
-    double t;
-    b = A[0][0].add(A[1][1]);              // negative
-    c = A[0][0].mul(A[1][1]);
-    c = c.subtract(A[0][1].mul(A[1][0]));
-    rad = (b.mul(b)).subtract(c.mul(4.0)); // a==1
-    rad = rad.sqrt();
-    l1 = (b.add(rad)).div(2.0);
-    l2 = (b.subtract(rad)).div(2.0);
-    lambda[0] = l1;
-    lambda[1] = l2;
+  private static void twobytwo(double Ar[][], double Ai[][], double lambdaR[], double lambdaI[], double vecR[][], double vecI[][]) {
+    double br, bi, cr, ci, radr, radi, l1r, l1i, l2r, l2i, t;
+    double z[] = new double[2];
+    double Zr[] = new double[2], Zi[] = new double[2];
+    br = Ar[0][0]+Ar[1][1]; // negative
+    bi = Ai[0][0]+Ai[1][1];
+    cr = Ar[0][0]*Ar[1][1]-Ai[0][0]*Ai[1][1];
+    ci = Ai[0][0]*Ar[1][1]+Ar[0][0]*Ai[1][1];
+    cr = cr-(Ar[0][1]*Ar[1][0]-Ai[0][1]*Ai[1][0]);
+    ci = ci-(Ai[0][1]*Ar[1][0]+Ar[0][1]*Ai[1][0]);
+    radr = (br*br-bi*bi)-cr*4.0; // a==1
+    radi = (bi*br+br*bi)-ci*4.0;
+    PrimitiveComplexMatrix.sqrt(radr, radi, z);
+    radr = z[0];
+    radi = z[1];
+    l1r = (br+radr)/2.0;
+    l1i = (bi+radi)/2.0;
+    l2r = (br-radr)/2.0;
+    l2i = (bi-radi)/2.0;
+    lambdaR[0] = l1r;
+    lambdaI[0] = l1i;
+    lambdaR[1] = l2r;
+    lambdaI[1] = l2i;
     // eigenvectors in columns
-    Z[0] = A[0][1].neg();
-    Z[1] = A[0][0].subtract(l1);
-    t = ComplexMatrix.norm2(Z);
-    vec[0][0] = Z[0].div(t);
-    vec[1][0] = Z[1].div(t);
-    Z[0] = A[1][1].subtract(l2);
-    Z[1] = A[1][0].neg();
-    t = ComplexMatrix.norm2(Z);
-    vec[0][1] = Z[0].div(t);
-    vec[1][1] = Z[1].div(t);
+    Zr[0] = -Ar[0][1];
+    Zi[0] = -Ai[0][1];
+    Zr[1] = Ar[0][0]-l1r;
+    Zi[1] = Ai[0][0]-l1i;
+    t = PrimitiveComplexMatrix.norm2(Zr, Zi);
+    vecR[0][0] = Zr[0]/t;
+    vecI[0][0] = Zi[0]/t;
+    vecR[1][0] = Zr[1]/t;
+    vecI[1][0] = Zi[1]/t;
+    Zr[0] = Ar[1][1]-l2r;
+    Zi[0] = Ai[1][1]-l2i;
+    Zr[1] = -Ar[1][0];
+    Zi[1] = -Ai[1][0];
+    t = PrimitiveComplexMatrix.norm2(Zr, Zi);
+    vecR[0][1] = Zr[0]/t;
+    vecI[0][1] = Zi[0]/t;
+    vecR[1][1] = Zr[1]/t;
+    vecI[1][1] = Zi[1]/t;
   }
 
-  private static double sumabs(Complex Z) {
-    return Math.abs(Z.re())+Math.abs(Z.im());
+  private static double sumabs(double re, double im) {
+    return Math.abs(re)+Math.abs(im);
   } // end sumabs
 
-  private static void cxhess(Complex A[][], int rowcol[]) {
-    int i, k, t;
-    Complex x;
-    Complex y;
-    //System.out.println("cxhess(A, rowcol)");
-    int n = A.length; // checked before call
+  private static void cxhess(double Ar[][], double Ai[][], int rowcol[]) {
+    int i, t;
+    double xr, xi, yr, yi, tmp;
+    double z[] = new double[2];
+    int n = Ar.length; // checked before call
     for(int j = 0; j<n; j++) {
       rowcol[j] = j;
     }
-    k = 0;
-    for(int m = k+1; m<n-1; m++) {            // main reduction loop
+    for(int m = 1; m<n-1; m++) {              // main reduction loop
       i = m;
-      x = new Complex(0.0, 0.0);
+      xr = 0.0;
+      xi = 0.0;
       for(int j = m; j<n; j++) {
-        if(sumabs(A[j][m-1])>sumabs(x)) {
-          x = A[j][m-1];
+        if(sumabs(Ar[j][m-1], Ai[j][m-1])>sumabs(xr, xi)) {
+          xr = Ar[j][m-1];
+          xi = Ai[j][m-1];
           i = j;
         }
       }
@@ -136,88 +192,95 @@ public class ComplexEigenvalueDecomposition {
         rowcol[m] = rowcol[i];
         rowcol[i] = t;
         for(int j = m-1; j<n; j++) {
-          y = A[i][j];
-          A[i][j] = A[m][j];
-          A[m][j] = y;
+          tmp = Ar[i][j];
+          Ar[i][j] = Ar[m][j];
+          Ar[m][j] = tmp;
+          tmp = Ai[i][j];
+          Ai[i][j] = Ai[m][j];
+          Ai[m][j] = tmp;
         }
         for(int j = 0; j<n; j++) {            // for J in 1..N loop
-          y = A[j][i];
-          A[j][i] = A[j][m];
-          A[j][m] = y;
+          tmp = Ar[j][i];
+          Ar[j][i] = Ar[j][m];
+          Ar[j][m] = tmp;
+          tmp = Ai[j][i];
+          Ai[j][i] = Ai[j][m];
+          Ai[j][m] = tmp;
         }
       }
-      if(sumabs(x)!=0.0) {
+      if(sumabs(xr, xi)!=0.0) {
+        double mr[] = Ar[m], mi[] = Ai[m];
         for(int ii = m+1; ii<n; ii++) {
-          y = A[ii][m-1];
-          if(sumabs(y)>0.0) {
-            y = y.div(x);
-            A[ii][m-1] = y;
+          double rr[] = Ar[ii], ri[] = Ai[ii];
+          if(sumabs(rr[m-1], ri[m-1])>0.0) {
+            PrimitiveComplexMatrix.div(rr[m-1], ri[m-1], xr, xi, z);
+            yr = z[0];
+            yi = z[1];
             for(int j = m; j<n; j++) {
-              A[ii][j] = A[ii][j].subtract(y.mul(A[m][j]));
+              rr[j] = rr[j]-(yr*mr[j]-yi*mi[j]);
+              ri[j] = ri[j]-(yi*mr[j]+yr*mi[j]);
             }
             for(int j = 0; j<n; j++) {
-              A[j][m] = A[j][m].add(y.mul(A[j][ii]));
+              Ar[j][m] = Ar[j][m]+(yr*Ar[j][ii]-yi*Ai[j][ii]);
+              Ai[j][m] = Ai[j][m]+(yi*Ar[j][ii]+yr*Ai[j][ii]);
             }
           }                                   // end if
-          A[ii][m-1] = new Complex(0.0, 0.0); // just cleanup
+          rr[m-1] = 0.0;                      // just cleanup
+          ri[m-1] = 0.0;
         }
       }                                       // end if
     }                                         // end main reduction loop
-    //System.out.println("result of cxhess=");
-    //ComplexMatrix.print(A);
-    //System.out.println("based on rowcol interchanges=");
-    //Matrix.print(rowcol);
-    //System.out.println(" ");
   }                                           // end cxhess
 
-  private static void cxeig2c(Complex A[][], Complex lambda[], Complex vec[][], int rowcol[], boolean fail[]) {
+  private static void cxeig2c(double Ar[][], double Ai[][], double lambdaR[], double lambdaI[], double vecR[][], double vecI[][], int rowcol[], boolean fail[]) {
     int j, k, m, mm, low, its, itn, ien;
     double anorm = 0.0;
-    double ahr, aahr, acc, xr, xi, yr, yi, zr;
-    Complex accnorm;
-    Complex x, y, z, yy, T, S;
-    int n = A.length; // checked in driver
+    double ahr, aahr, acc, xr, xi, yr, yi, zr, zi, tmp;
+    double accnorm;
+    double Tr, Ti, Sr, Si;
+    double z[] = new double[2];
+    int n = Ar.length; // checked in driver
     low = 0;
     acc = Math.pow(2.0, -23);
-    //System.out.println("acc="+acc+" = 2^-23");
-    T = new Complex(0.0, 0.0);
+    Tr = 0.0;
+    Ti = 0.0;
     itn = 30*n; // heuristic on maximum iterations
-    ComplexMatrix.identity(vec); // initialize to identity Matrix
+    PrimitiveComplexMatrix.identity(vecR, vecI); // initialize to identity Matrix
     // starting from Hessenberg reduction
     for(int ii = n-2; ii>0; ii--) { // for i in reverse A'FIRST+1..A'LAST-1 loop
       j = rowcol[ii];
       for(k = ii+1; k<n; k++) {     // for K in i+1..A'LAST loop
-        vec[k][ii] = A[k][ii-1];
+        vecR[k][ii] = Ar[k][ii-1];
+        vecI[k][ii] = Ai[k][ii-1];
       }
       if(ii!=j) {
         for(k = ii; k<n; k++) {     // for k in i..A'LAST loop
-          vec[ii][k] = vec[j][k];
-          vec[j][k] = new Complex(0.0, 0.0);
+          vecR[ii][k] = vecR[j][k];
+          vecI[ii][k] = vecI[j][k];
+          vecR[j][k] = 0.0;
+          vecI[j][k] = 0.0;
         }
-        vec[j][ii] = new Complex(1.0, 0.0);
+        vecR[j][ii] = 1.0;
+        vecI[j][ii] = 0.0;
       }
     }
     ien = n-1; // used as subscript, loop test <=ien
     // ien is decremented
     while(low<=ien) {                     // 260
-      //System.out.println("260 low="+low+", ien="+ien);
       its = 0;
       // look for small single subdiagonal element
       L280:
       while(true) {                       // 280
-        //System.out.println("in 280");
         k = low;
         // for kk in reverse low+1..ien loop  // 300
         for(int kk = ien; kk>low; kk--) { // 300
-          //System.out.println("300 kk="+kk);
-          ahr = sumabs(A[kk][kk-1]);
-          aahr = acc*(sumabs(A[kk-1][kk-1])+sumabs(A[kk][kk]));
+          ahr = sumabs(Ar[kk][kk-1], Ai[kk][kk-1]);
+          aahr = acc*(sumabs(Ar[kk-1][kk-1], Ai[kk-1][kk-1])+sumabs(Ar[kk][kk], Ai[kk][kk]));
           if(ahr<=aahr) {
             k = kk;
             break;
           }
         }                                 // 300
-        //System.out.println("exiting 300 with k="+k);
         if(k==ien) {
           break L280;                     // exit L280 when k = ien;  // 780
         }
@@ -227,39 +290,49 @@ public class ComplexEigenvalueDecomposition {
         }
         // compute shift
         if((its==10)||(its==20)) {
-          S = new Complex(Math.abs(A[ien][ien-1].re())+Math.abs(A[ien-1][ien-2].re()), Math.abs(A[ien][ien-1].im())+Math.abs(A[ien-1][ien-2].im()));
+          Sr = Math.abs(Ar[ien][ien-1])+Math.abs(Ar[ien-1][ien-2]);
+          Si = Math.abs(Ai[ien][ien-1])+Math.abs(Ai[ien-1][ien-2]);
         } else {
-          S = A[ien][ien];
-          x = A[ien-1][ien].mul(A[ien][ien-1]);
-          if(sumabs(x)>0.0) {
-            y = (A[ien-1][ien-1].subtract(S)).div(new Complex(2.0, 0.0));
-            z = ((y.mul(y)).add(x)).sqrt();
-            if(y.re()*z.re()+y.im()*z.im()<0.0) {
-              z = z.neg();
+          Sr = Ar[ien][ien];
+          Si = Ai[ien][ien];
+          xr = Ar[ien-1][ien]*Ar[ien][ien-1]-Ai[ien-1][ien]*Ai[ien][ien-1];
+          xi = Ai[ien-1][ien]*Ar[ien][ien-1]+Ar[ien-1][ien]*Ai[ien][ien-1];
+          if(sumabs(xr, xi)>0.0) {
+            PrimitiveComplexMatrix.div(Ar[ien-1][ien-1]-Sr, Ai[ien-1][ien-1]-Si, 2.0, 0.0, z);
+            yr = z[0];
+            yi = z[1];
+            PrimitiveComplexMatrix.sqrt((yr*yr-yi*yi)+xr, (yi*yr+yr*yi)+xi, z);
+            zr = z[0];
+            zi = z[1];
+            if(yr*zr+yi*zi<0.0) {
+              zr = -zr;
+              zi = -zi;
             }
-            yy = y.add(z);
-            S = S.subtract(x.div(yy));
+            PrimitiveComplexMatrix.div(xr, xi, yr+zr, yi+zi, z);
+            Sr = Sr-z[0];
+            Si = Si-z[1];
           }                                 // end if;
         }                                   // end if;  //  400
         for(int i = low; i<=ien; i++) {     // for i in low..ien loop  // 420
-          A[i][i] = A[i][i].subtract(S);
+          Ar[i][i] = Ar[i][i]-Sr;
+          Ai[i][i] = Ai[i][i]-Si;
         }                                   // end loop;  //  420
-        T = T.add(S);
+        Tr = Tr+Sr;
+        Ti = Ti+Si;
         its = its+1;
         itn = itn-1;
         j = k+1;
         // look for two consecutive small sub-diagonal elements
-        xr = sumabs(A[ien-1][ien-1]);
-        yr = sumabs(A[ien][ien-1]);
-        zr = sumabs(A[ien][ien]);
+        xr = sumabs(Ar[ien-1][ien-1], Ai[ien-1][ien-1]);
+        yr = sumabs(Ar[ien][ien-1], Ai[ien][ien-1]);
+        zr = sumabs(Ar[ien][ien], Ai[ien][ien]);
         m = k;
         for(mm = ien-1; mm>=j; mm--) {      // for mm in reverse j..ien-1 loop  // 460
-          //System.out.println("460 mm="+mm+", m="+m+", j="+j);
           yi = yr;
-          yr = sumabs(A[mm][mm-1]);
+          yr = sumabs(Ar[mm][mm-1], Ai[mm][mm-1]);
           xi = zr;
           zr = xr;
-          xr = sumabs(A[mm-1][mm-1]);
+          xr = sumabs(Ar[mm-1][mm-1], Ai[mm-1][mm-1]);
           if(yr<=(acc*zr/yi*(zr+xr+xi))) {
             m = mm;
             break;
@@ -267,92 +340,126 @@ public class ComplexEigenvalueDecomposition {
         }                                   // end loop;  //  460
         // triangular decomposition  A = L*R
         for(int i = m+1; i<=ien; i++) {     // for i in m+1..ien loop  // 620
-          //System.out.println("620 mm="+mm+", m="+m+", i="+i);
-          x = A[i-1][i-1];
-          y = A[i][i-1];
-          if(sumabs(x)>=sumabs(y)) {
-            z = y.div(x);
-            lambda[i] = new Complex(-1.0, 0.0);
+          xr = Ar[i-1][i-1];
+          xi = Ai[i-1][i-1];
+          yr = Ar[i][i-1];
+          yi = Ai[i][i-1];
+          if(sumabs(xr, xi)>=sumabs(yr, yi)) {
+            PrimitiveComplexMatrix.div(yr, yi, xr, xi, z);
+            lambdaR[i] = -1.0;
+            lambdaI[i] = 0.0;
           } else {
             // interchange rows of A
             for(int jj = i-1; jj<n; jj++) { // for j in i-1..n loop  // 540
-              z = A[i-1][jj];
-              A[i-1][jj] = A[i][jj];
-              A[i][jj] = z;
+              tmp = Ar[i-1][jj];
+              Ar[i-1][jj] = Ar[i][jj];
+              Ar[i][jj] = tmp;
+              tmp = Ai[i-1][jj];
+              Ai[i-1][jj] = Ai[i][jj];
+              Ai[i][jj] = tmp;
             }                               // end loop;  //  540
-            z = x.div(y);
-            lambda[i] = new Complex(1.0, 0.0);
+            PrimitiveComplexMatrix.div(xr, xi, yr, yi, z);
+            lambdaR[i] = 1.0;
+            lambdaI[i] = 0.0;
           }                                 // end if;
-          A[i][i-1] = z;
+          zr = z[0];
+          zi = z[1];
+          double pr[] = Ar[i-1], pi[] = Ai[i-1], rr[] = Ar[i], ri[] = Ai[i];
+          rr[i-1] = zr;
+          ri[i-1] = zi;
           for(int jj = i; jj<n; jj++) {     // for j in i .. N loop  // 600
-            A[i][jj] = A[i][jj].subtract(z.mul(A[i-1][jj]));
+            rr[jj] = rr[jj]-(zr*pr[jj]-zi*pi[jj]);
+            ri[jj] = ri[jj]-(zi*pr[jj]+zr*pi[jj]);
           }                                 // end loop;  //  600
         }                                   // end loop;  //  620
         // composition R*L = H
         for(int jj = m+1; jj<=ien; jj++) {  // for j in m+1..ien loop  // 760
-          x = A[jj][jj-1];
-          A[jj][jj-1] = new Complex(0.0, 0.0);
+          xr = Ar[jj][jj-1];
+          xi = Ai[jj][jj-1];
+          Ar[jj][jj-1] = 0.0;
+          Ai[jj][jj-1] = 0.0;
           // interchange columns of A and vec if necessary
-          if(lambda[jj].re()>0.0) {
+          if(lambdaR[jj]>0.0) {
             for(int i = low; i<=jj; i++) {  // for i in low .. j loop  // 660
-              z = A[i][jj-1];
-              A[i][jj-1] = A[i][jj];
-              A[i][jj] = z;
+              tmp = Ar[i][jj-1];
+              Ar[i][jj-1] = Ar[i][jj];
+              Ar[i][jj] = tmp;
+              tmp = Ai[i][jj-1];
+              Ai[i][jj-1] = Ai[i][jj];
+              Ai[i][jj] = tmp;
             }                               // end loop;  //  660
             for(int i = low; i<n; i++) {    // for i in low .. N loop  // 680
-              z = vec[i][jj-1];
-              vec[i][jj-1] = vec[i][jj];
-              vec[i][jj] = z;
+              tmp = vecR[i][jj-1];
+              vecR[i][jj-1] = vecR[i][jj];
+              vecR[i][jj] = tmp;
+              tmp = vecI[i][jj-1];
+              vecI[i][jj-1] = vecI[i][jj];
+              vecI[i][jj] = tmp;
             }                               // end loop;  //  680
           }                                 // end if
           // end interchange columns
           for(int i = low; i<=jj; i++) {    // for i in low..j loop  // 720
-            A[i][jj-1] = A[i][jj-1].add(x.mul(A[i][jj]));
+            Ar[i][jj-1] = Ar[i][jj-1]+(xr*Ar[i][jj]-xi*Ai[i][jj]);
+            Ai[i][jj-1] = Ai[i][jj-1]+(xi*Ar[i][jj]+xr*Ai[i][jj]);
           }                                 // 720
           for(int i = low; i<n; i++) {      // for i in low..N loop  // 740
-            vec[i][jj-1] = vec[i][jj-1].add(x.mul(vec[i][jj]));
+            vecR[i][jj-1] = vecR[i][jj-1]+(xr*vecR[i][jj]-xi*vecI[i][jj]);
+            vecI[i][jj-1] = vecI[i][jj-1]+(xi*vecR[i][jj]+xr*vecI[i][jj]);
           }                                 // 740
           // end accumulate transformations
         }                                   // 760
       }                                     // 280
       // a root found
-      lambda[ien] = A[ien][ien].add(T);
+      lambdaR[ien] = Ar[ien][ien]+Tr;
+      lambdaI[ien] = Ai[ien][ien]+Ti;
       ien = ien-1;
     }                                       // end loop;  // 260 while
     // all roots found
     for(int i = 0; i<n; i++) {        // for i in A'RANGE loop
-      anorm = anorm+sumabs(lambda[i]);
+      anorm = anorm+sumabs(lambdaR[i], lambdaI[i]);
       for(int jj = i+1; jj<n; jj++) { // for j in i + 1 .. A'LAST loop
-        anorm = anorm+sumabs(A[i][jj]);
+        anorm = anorm+sumabs(Ar[i][jj], Ai[i][jj]);
       }
     }
-    accnorm = new Complex(anorm*Math.pow(2.0, -23), 0.0);
+    accnorm = anorm*Math.pow(2.0, -23);
     if((anorm==0.0)||(n<2)) {
       return; // done
     }
     // back substitute to set up vec of upper triangular form
     for(ien = n-1; ien>low; ien--) {      // for ien in reverse low+1..N loop
-      x = lambda[ien];
+      xr = lambdaR[ien];
+      xi = lambdaI[ien];
       for(int i = ien-1; i>=low; i--) {   // for i in reverse low .. ien - 1 loop
-        z = A[i][ien];
+        double rr[] = Ar[i], ri[] = Ai[i];
+        zr = rr[ien];
+        zi = ri[ien];
         for(int jj = i+1; jj<ien; jj++) { // for j in i+1..ien-1 loop
-          z = z.add(A[i][jj].mul(A[jj][ien]));
+          zr = zr+(rr[jj]*Ar[jj][ien]-ri[jj]*Ai[jj][ien]);
+          zi = zi+(ri[jj]*Ar[jj][ien]+rr[jj]*Ai[jj][ien]);
         }
-        y = x.subtract(lambda[i]);
-        if(sumabs(y)==0.0) {
-          y = accnorm;
+        yr = xr-lambdaR[i];
+        yi = xi-lambdaI[i];
+        if(sumabs(yr, yi)==0.0) {
+          yr = accnorm;
+          yi = 0.0;
         }
-        A[i][ien] = z.div(y);
+        PrimitiveComplexMatrix.div(zr, zi, yr, yi, z);
+        rr[ien] = z[0];
+        ri[ien] = z[1];
       }
     }
     // multiply by transformation Matrix to give vec of original full Matrix
     for(int jj = n-1; jj>=0; jj--) { // for j in reverse A'RANGE loop
       for(int i = 0; i<n; i++) {     // for i in A'RANGE loop
-        z = vec[i][jj];
+        double vr[] = vecR[i], vi[] = vecI[i];
+        zr = vr[jj];
+        zi = vi[jj];
         for(k = 0; k<jj; k++) {      // for k in A'first..j-1 loop
-          z = z.add(vec[i][k].mul(A[k][jj]));
+          zr = zr+(vr[k]*Ar[k][jj]-vi[k]*Ai[k][jj]);
+          zi = zi+(vi[k]*Ar[k][jj]+vr[k]*Ai[k][jj]);
         }
-        vec[i][jj] = z;
+        vr[jj] = zr;
+        vi[jj] = zi;
       }
     }
   }                                  // end cxeig2c
@@ -21,13 +21,13 @@ package opensourcephysics;
    void solve(Complex A[][], Complex Y[], Complex X[]);        X=A^-1*Y
    void invert(Complex A[][]);                                 A=A^-1
    Complex determinant(Complex A[]);                           d=det A
-   void eigenvalues(Complex A[][], ComplexV[][], Complex Y[]); V,Y=eigen A
+   int eigenvalues(Complex A[][], ComplexV[][], Complex Y[]);  V,Y=eigen A
    void eigenCheck(Complex A[][], V[][], Complex Y[]);         printout
    void multiply(Complex A[][], Complex B[][], Complex C[][]); C=A*B
    void add(Complex A[][], Complex B[][], Complex C[][]);      C=A+B
    void subtract(Complex C[][], Complex A[][], complex B[][]); C=A-B
    double norm1(Complex A[][]);                                d=norm1 A
-   double norm2(Complex A[][]);  sqrt largest eigenvalue A^T*A d=norm2 A
+   double norm2(Complex A[][]);  sqrt largest eigenvalue A^H*A d=norm2 A
    double normFro(Complex A[][]); Frobenius                    d=normFro A
    double normInf(Complex A[][]);                              d=normInf A
    void copy(Complex A[][], Complex B[][]);                    B=A
@@ -55,6 +55,7 @@ package opensourcephysics;
    void closeInput()
    void write(String, Complex[][])
    void closeOutput()
+   PrimitiveComplexMatrix has these operations on double arrays, without file IO
  **/
 
 import java.io.BufferedReader;
@@ -76,250 +77,89 @@ public strictfp class ComplexMatrix {
     // First written by Jon Squire December 1959 for IBM 650, translated to
     // other languages e.g. Fortran converted to Ada converted to C
     // converted to java
+    // the elimination runs on split planes in PrimitiveComplexMatrix.solve
     int n = A.length;
-    int m = n+1;
-    Complex B[][] = new Complex[n][m]; // working matrix
-    int row[] = new int[n];            // row interchange indicies
-    int hold, I_pivot;                 // pivot indicies
-    Complex pivot;                     // pivot element value
-    double abs_pivot;
     if((A[0].length!=n)||(Y.length!=n)||(X.length!=n)) {
       System.out.println("Error in ComplexMatrix.solve inconsistent array sizes."); //$NON-NLS-1$
     }
-    // build working data structure
-    for(int i = 0; i<n; i++) {
-      for(int j = 0; j<n; j++) {
-        B[i][j] = A[i][j];
-      }
-      B[i][n] = Y[i];
-    }
-    // set up row interchange vectors
-    for(int k = 0; k<n; k++) {
-      row[k] = k;
-    }
-    // begin main reduction loop
-    for(int k = 0; k<n; k++) {
-      // find largest element for pivot
-      pivot = B[row[k]][k];
-      abs_pivot = pivot.abs();
-      I_pivot = k;
-      for(int i = k+1; i<n; i++) {
-        if(B[row[i]][k].abs()>abs_pivot) {
-          I_pivot = i;
-          pivot = B[row[i]][k];
-          abs_pivot = pivot.abs();
-        }
-      }
-      // have pivot, interchange row indicies
-      hold = row[k];
-      row[k] = row[I_pivot];
-      row[I_pivot] = hold;
-      // check for near singular
-      if(abs_pivot<1.0E-10) {
-        for(int j = k+1; j<n+1; j++) {
-          B[row[k]][j] = new Complex(0.0, 0.0);
-        }
-        System.out.println("redundant row (singular) "+row[k]); //$NON-NLS-1$
-      }                                                         // singular, delete row
-        else {
-        // reduce about pivot
-        for(int j = k+1; j<n+1; j++) {
-          B[row[k]][j] = B[row[k]][j].div(B[row[k]][k]);
-        }
-        // inner reduction loop
-        for(int i = 0; i<n; i++) {
-          if(i!=k) {
-            for(int j = k+1; j<n+1; j++) {
-              B[row[i]][j] = B[row[i]][j].subtract(B[row[i]][k].mul(B[row[k]][j]));
-            }
-          }
-        }
-      }
-      // finished inner reduction
-    }
-    // end main reduction loop
-    // build X for return, unscrambling rows
-    for(int i = 0; i<n; i++) {
-      X[i] = B[row[i]][n];
-    }
+    double ar[][] = new double[n][n], ai[][] = new double[n][n];
+    double yr[] = new double[n], yi[] = new double[n];
+    double xr[] = new double[n], xi[] = new double[n];
+    PrimitiveComplexMatrix.fromComplex(A, ar, ai);
+    PrimitiveComplexMatrix.fromComplex(Y, yr, yi);
+    PrimitiveComplexMatrix.solve(ar, ai, yr, yi, xr, xi);
+    PrimitiveComplexMatrix.toComplex(xr, xi, X);
   } // end solve
 
   public static final void invert(Complex A[][]) {
     int n = A.length;
-    int row[] = new int[n];
-    int col[] = new int[n];
-    Complex temp[] = new Complex[n];
-    int hold, I_pivot, J_pivot;
-    Complex pivot;
-    double abs_pivot;
     if(A[0].length!=n) {
       System.out.println("Error in Complex.Matrix.invert,"+ //$NON-NLS-1$
         " matrix not square.");                             //$NON-NLS-1$
     }
-    // set up row and column interchange vectors
-    for(int k = 0; k<n; k++) {
-      row[k] = k;
-      col[k] = k;
-    }
-    // begin main reduction loop
-    for(int k = 0; k<n; k++) {
-      // find largest element for pivot
-      pivot = A[row[k]][col[k]];
-      I_pivot = k;
-      J_pivot = k;
-      for(int i = k; i<n; i++) {
-        for(int j = k; j<n; j++) {
-          abs_pivot = pivot.abs();
-          if(A[row[i]][col[j]].abs()>abs_pivot) {
-            I_pivot = i;
-            J_pivot = j;
-            pivot = A[row[i]][col[j]];
-          }
-        }
-      }
-      if(pivot.abs()<1.0E-10) {
-        System.out.println("ComplexMatrix is singular !"); //$NON-NLS-1$
-        return;
-      }
-      hold = row[k];
-      row[k] = row[I_pivot];
-      row[I_pivot] = hold;
-      hold = col[k];
-      col[k] = col[J_pivot];
-      col[J_pivot] = hold;
-      // reduce about pivot
-      A[row[k]][col[k]] = (new Complex(1.0, 0.0)).div(pivot);
-      for(int j = 0; j<n; j++) {
-        if(j!=k) {
-          A[row[k]][col[j]] = A[row[k]][col[j]].mul(A[row[k]][col[k]]);
-        }
-      }
-      // inner reduction loop
-      for(int i = 0; i<n; i++) {
-        if(k!=i) {
-          for(int j = 0; j<n; j++) {
-            if(k!=j) {
-              A[row[i]][col[j]] = A[row[i]][col[j]].subtract(A[row[i]][col[k]].mul(A[row[k]][col[j]]));
-            }
-          }
-          A[row[i]][col[k]] = A[row[i]][col[k]].mul(A[row[k]][col[k]]).neg();
-        }
-      }
-    }
-    // end main reduction loop
-    // unscramble rows
-    for(int j = 0; j<n; j++) {
-      for(int i = 0; i<n; i++) {
-        temp[col[i]] = A[row[i]][j];
-      }
-      for(int i = 0; i<n; i++) {
-        A[i][j] = temp[i];
-      }
-    }
-    // unscramble columns
-    for(int i = 0; i<n; i++) {
-      for(int j = 0; j<n; j++) {
-        temp[row[j]] = A[i][col[j]];
-      }
-      for(int j = 0; j<n; j++) {
-        A[i][j] = temp[j];
-      }
-    }
+    double ar[][] = new double[n][n], ai[][] = new double[n][n];
+    PrimitiveComplexMatrix.fromComplex(A, ar, ai);
+    // a singular A is left partly reduced, as it always was
+    PrimitiveComplexMatrix.invert(ar, ai);
+    PrimitiveComplexMatrix.toComplex(ar, ai, A);
   } // end invert
 
   public static final Complex determinant(final Complex A[][]) {
     int n = A.length;
-    Complex D = new Complex(1.0, 0.0); // determinant
-    Complex B[][] = new Complex[n][n]; // working matrix
-    int row[] = new int[n];            // row interchange indicies
-    int hold, I_pivot;                 // pivot indicies
-    Complex pivot;                     // pivot element value
-    double abs_pivot;
+    double D[] = new double[2]; // determinant
     if(A[0].length!=n) {
       System.out.println("Error in ComplexMatrix.determinant,"+ //$NON-NLS-1$
         " inconsistent array sizes.");                          //$NON-NLS-1$
     }
-    // build working matrix
-    for(int i = 0; i<n; i++) {
-      for(int j = 0; j<n; j++) {
-        B[i][j] = A[i][j];
-      }
-    }
-    // set up row interchange vectors
-    for(int k = 0; k<n; k++) {
-      row[k] = k;
-    }
-    // begin main reduction loop
-    for(int k = 0; k<n-1; k++) {
-      // find largest element for pivot
-      pivot = B[row[k]][k];
-      abs_pivot = pivot.abs();
-      I_pivot = k;
-      for(int i = k; i<n; i++) {
-        if(B[row[i]][k].abs()>abs_pivot) {
-          I_pivot = i;
-          pivot = B[row[i]][k];
-          abs_pivot = pivot.abs();
-        }
-      }
-      // have pivot, interchange row indicies
-      if(I_pivot!=k) {
-        hold = row[k];
-        row[k] = row[I_pivot];
-        row[I_pivot] = hold;
-        D = D.neg();
-      }
-      // check for near singular
-      if(abs_pivot<1.0E-10) {
-        return new Complex(0.0, 0.0);
-      }
-      D = D.mul(pivot);
-      // reduce about pivot
-      for(int j = k+1; j<n; j++) {
-        B[row[k]][j] = B[row[k]][j].div(B[row[k]][k]);
-      }
-      // inner reduction loop
-      for(int i = 0; i<n; i++) {
-        if(i!=k) {
-          for(int j = k+1; j<n; j++) {
-            B[row[i]][j] = B[row[i]][j].subtract(B[row[i]][k].mul(B[row[k]][j]));
-          }
-        }
-      }
-      // finished inner reduction
-    }
-    // end of main reduction loop
-    return D.mul(B[row[n-1]][n-1]);
+    double ar[][] = new double[n][n], ai[][] = new double[n][n];
+    PrimitiveComplexMatrix.fromComplex(A, ar, ai);
+    PrimitiveComplexMatrix.determinant(ar, ai, D);
+    return new Complex(D[0], D[1]);
   } // end determinant
 
-  public static final void eigenvalues(final Complex A[][], Complex V[][], Complex Y[]) {
-    // cyclic Jacobi iterative method of finding eigenvalues
-    // advertized for symmetric real
+  /**
+   * Relative size of the off-diagonal norm at which eigenvalues stops
+   */
+  public static final double JACOBI_TOLERANCE = 1.0e-12;
+
+  /**
+   * Largest number of sweeps eigenvalues makes
+   */
+  public static final int JACOBI_MAX_SWEEPS = 50;
+
+  public static final int eigenvalues(final Complex A[][], Complex V[][], Complex Y[]) {
+    return eigenvalues(A, V, Y, JACOBI_TOLERANCE);
+  } // end eigenvalues
+
+  /**
+   * Cyclic Jacobi method for Hermitian and, more generally, normal matrices.
+   * Every rotation is unitary and is applied in place to the two affected
+   * rows and columns only, so a sweep costs O(n^3). A = H1 + i*H2 with commuting
+   * Hermitian H1, H2 when A is normal, so each pair (p, q) is rotated with the
+   * Hermitian rotation of cos(f)*H1 + sin(f)*H2, f the argument of a_qq - a_pp,
+   * which separates the two diagonal elements the most. For Hermitian A this is
+   * the plain Hermitian rotation.
+   * Sweeps stop when the off-diagonal norm is below tolerance times the Frobenius norm.
+   *
+   * Output: Y gets the eigenvalues, the columns of V the eigenvectors.
+   * Returns the number of sweeps, JACOBI_MAX_SWEEPS if the tolerance was not reached.
+   */
+  public static final int eigenvalues(final Complex A[][], Complex V[][], Complex Y[], double tolerance) {
     int n = A.length;
-    Complex AA[][] = new Complex[n][n];
-    // double norm;  // removed by W. Christian
-    Complex c = new Complex(1.0, 0.0);
-    Complex s = new Complex(0.0, 0.0);
     if((A[0].length!=n)||(V.length!=n)||(V[0].length!=n)||(Y.length!=n)) {
       System.out.println("Error in ComplexMatrix.eigenvalues,"+ //$NON-NLS-1$
         " inconsistent array sizes.");                          //$NON-NLS-1$
-    }
-    identity(V); // start V as identity matrix
-    copy(A, AA);
-    for(int k = 0; k<n; k++) {
-      // norm=norm4(AA);  // removed by W. Christian
-      for(int i = 0; i<n-1; i++) {
-        for(int j = i+1; j<n; j++) {
-          schur2(AA, i, j, c, s);
-          mat44(i, j, c, s, AA, V);
-        }
-      } // end one iteration
-    }
-    // norm = norm4(AA); // final quality check if desired  // removed by W. Christian
-    for(int i = 0; i<n; i++) {
-      // copy eigenvalues back to caller
-      Y[i] = AA[i][i];
-    }
+      return 0;
+    }
+    double ar[][] = new double[n][n], ai[][] = new double[n][n];
+    double vr[][] = new double[n][n], vi[][] = new double[n][n];
+    double yr[] = new double[n], yi[] = new double[n];
+    PrimitiveComplexMatrix.fromComplex(A, ar, ai);
+    int sweeps = PrimitiveComplexMatrix.eigenvalues(ar, ai, vr, vi, yr, yi, tolerance);
+    // copy eigenvalues and eigenvectors back to caller
+    PrimitiveComplexMatrix.toComplex(yr, yi, Y);
+    PrimitiveComplexMatrix.toComplex(vr, vi, V);
+    return sweeps;
   } // end eigenvalues
 
   public static final void eigenCheck(final Complex A[][], final Complex V[][], final Complex Y[]) {
@@ -368,30 +208,6 @@ public strictfp class ComplexMatrix {
     System.out.println("norm ="+norm+" is eigen value error indication."); //$NON-NLS-1$ //$NON-NLS-2$
   }                                                                        // end eigenCheck
 
-  static void schur2(final Complex A[][], final int p, final int q, Complex c, Complex s) {
-    Complex tau;
-    Complex tau_tau_1;
-    Complex t;
-    if(A[0].length!=A.length) {
-      System.out.println("Error in schur2 of Complex jacobi,"+ //$NON-NLS-1$
-        " inconsistent array sizes.");                         //$NON-NLS-1$
-    }
-    if(A[p][q].abs()!=0.0) {
-      tau = (A[q][q].subtract(A[p][p])).div((A[p][q].mul(2.0)));
-      tau_tau_1 = (tau.mul(tau).add(1.0)).sqrt();
-      if(tau.abs()>=0.0) {
-        t = tau.add(tau_tau_1).invert();
-      } else {
-        t = (tau_tau_1.subtract(tau)).invert().neg();
-      }
-      c = (t.mul(t)).add(1.0).sqrt().invert();
-      s = t.mul(c);
-    } else {
-      c = new Complex(1.0, 0.0);
-      s = new Complex(0.0, 0.0);
-    }
-  } // end schur2
-
   static void mat22(final Complex c, final Complex s, final Complex A[][], Complex B[][]) {
     if((A.length!=2)||(A[0].length!=2)||(B.length!=2)||(B[0].length!=2)) {
       System.out.println("Error in mat22 of Jacobi, not both 2 by 2"); //$NON-NLS-1$
@@ -407,32 +223,6 @@ public strictfp class ComplexMatrix {
     B[1][1] = s.mul(T[0][1]).add(c.mul(T[1][1]));
   } // end mat2
 
-  static void mat44(final int p, final int q, final Complex c, final Complex s, final Complex A[][], Complex V[][]) {
-    int n = A.length;
-    Complex B[][] = new Complex[n][n];
-    Complex J[][] = new Complex[n][n];
-    if((A[0].length!=n)||(V.length!=n)||(V[0].length!=n)) {
-      System.out.println("Error in mat44 of Complex Jacobi,"+ //$NON-NLS-1$
-        " A or V not same and square");                       //$NON-NLS-1$
-    }
-    for(int i = 0; i<n; i++) {
-      for(int j = 0; j<n; j++) {
-        J[i][j] = new Complex(0.0, 0.0);
-      }
-      J[i][i] = new Complex(1.0, 0.0);
-    }
-    J[p][p] = c; /* J transpose */
-    J[p][q] = s.neg();
-    J[q][q] = c;
-    J[q][p] = s;
-    mul(J, A, B);
-    J[p][q] = s;
-    J[q][p] = s.neg();
-    mul(B, J, A);
-    mul(V, J, B);
-    copy(B, V);
-  }                                        // end mat44
-
   static double norm4(final Complex A[][]) // for Jacobi
   {
     int n = A.length;
@@ -458,14 +248,13 @@ public strictfp class ComplexMatrix {
       System.out.println("Error in ComplexMatrix.mul,"+ //$NON-NLS-1$
         " incompatible sizes");                         //$NON-NLS-1$
     }
-    for(int i = 0; i<ni; i++) {
-      for(int j = 0; j<nj; j++) {
-        C[i][j] = new Complex(0.0, 0.0);
-        for(int k = 0; k<nk; k++) {
-          C[i][j] = C[i][j].add(A[i][k].mul(B[k][j]));
-        }
-      }
-    }
+    double ar[][] = new double[ni][nk], ai[][] = new double[ni][nk];
+    double br[][] = new double[nk][nj], bi[][] = new double[nk][nj];
+    double cr[][] = new double[ni][nj], ci[][] = new double[ni][nj];
+    PrimitiveComplexMatrix.fromComplex(A, ar, ai);
+    PrimitiveComplexMatrix.fromComplex(B, br, bi);
+    PrimitiveComplexMatrix.mul(ar, ai, br, bi, cr, ci);
+    PrimitiveComplexMatrix.toComplex(cr, ci, C);
   } // end mul
 
   public static final void mul(final Complex A[][], final Complex B, Complex C[][]) {
@@ -580,30 +369,14 @@ public strictfp class ComplexMatrix {
   } // end normFro
 
   public static final double norm2(final Complex A[][]) {
-    double r = 0.0; // largest eigenvalue
     int n = A.length;
-    Complex B[][] = new Complex[n][n];
-    Complex V[][] = new Complex[n][n];
-    Complex BI[] = new Complex[n];
     if(A[0].length!=n) {
       System.out.println("Error in ComplexMatrix.norm2,"+ //$NON-NLS-1$
         " matrix not square.");                           //$NON-NLS-1$
     }
-    for(int i = 0; i<n;
-      i++) // B = A^T * A
-    {
-      for(int j = 0; j<n; j++) {
-        B[i][j] = new Complex(0.0, 0.0);
-        for(int k = 0; k<n; k++) {
-          B[i][j] = B[i][j].add(A[k][i].mul(A[k][j]));
-        }
-      }
-    }
-    eigenvalues(B, V, BI);
-    for(int i = 0; i<n; i++) {
-      r = Math.max(r, BI[i].abs());
-    }
-    return Math.sqrt(r);
+    double ar[][] = new double[n][n], ai[][] = new double[n][n];
+    PrimitiveComplexMatrix.fromComplex(A, ar, ai);
+    return PrimitiveComplexMatrix.norm2(ar, ai);
   } // end subtract
 
   public static final void copy(final Complex A[][], Complex B[][]) {
@@ -705,12 +478,13 @@ public strictfp class ComplexMatrix {
       System.out.println("Error in ComplexMatrix.mul,"+ //$NON-NLS-1$
         " incompatible sizes.");                        //$NON-NLS-1$
     }
-    for(int i = 0; i<ni; i++) {
-      C[i] = new Complex(0.0, 0.0);
-      for(int j = 0; j<nj; j++) {
-        C[i] = C[i].add(A[i][j].mul(B[j]));
-      }
-    }
+    double ar[][] = new double[ni][nj], ai[][] = new double[ni][nj];
+    double xr[] = new double[nj], xi[] = new double[nj];
+    double yr[] = new double[ni], yi[] = new double[ni];
+    PrimitiveComplexMatrix.fromComplex(A, ar, ai);
+    PrimitiveComplexMatrix.fromComplex(B, xr, xi);
+    PrimitiveComplexMatrix.mul(ar, ai, xr, xi, yr, yi);
+    PrimitiveComplexMatrix.toComplex(yr, yi, C);
   } // end mul
 
   public static final void add(final Complex X[], final Complex Y[], Complex Z[]) {
@@ -814,18 +588,11 @@ public strictfp class ComplexMatrix {
       System.out.println("Error in ComplexMatrix.fromRoots,"+ //$NON-NLS-1$
         " incompatible sizes");                               //$NON-NLS-1$
     }
-    Y[0] = X[0].neg();
-    Y[1] = new Complex(1.0);
-    if(n==1) {
-      return;
-    }
-    for(int i = 1; i<n; i++) {
-      Y[i+1] = new Complex(0.0);
-      for(int j = 0; j<=i; j++) {
-        Y[i+1-j] = Y[i-j].subtract(Y[i+1-j].mul(X[i]));
-      }
-      Y[0] = Y[0].mul(X[i]).neg();
-    }
+    double xr[] = new double[n], xi[] = new double[n];
+    double yr[] = new double[n+1], yi[] = new double[n+1];
+    PrimitiveComplexMatrix.fromComplex(X, xr, xi);
+    PrimitiveComplexMatrix.fromRoots(xr, xi, yr, yi);
+    PrimitiveComplexMatrix.toComplex(yr, yi, Y);
   }
 
   public static final void unitVector(Complex X[], int j) {
@@ -0,0 +1,985 @@
+package opensourcephysics;
+/*
+ * Open Source Physics software is free software as described near the bottom of this code file.
+ *
+ * For additional information and documentation on Open Source Physics please see:
+ * <http://www.opensourcephysics.org/>
+ */
+
+/**
+   PrimitiveComplexMatrix.java
+   ComplexMatrix on primitive arrays: a complex matrix A is given by its real
+   and imaginary parts Ar[][], Ai[][], a vector X by Xr[], Xi[] and a scalar b
+   by br, bi, so no Complex is allocated. Last arguments are output as in
+   ComplexMatrix, results of the same operations are the same.
+   void solve(Ar, Ai, Yr, Yi, Xr, Xi);                         X=A^-1*Y
+   void invert(Ar, Ai);                                        A=A^-1
+   void determinant(Ar, Ai, D[]);                              D[0]+i*D[1]=det A
+   int eigenvalues(Ar, Ai, Vr, Vi, Yr, Yi);                    V,Y=eigen A
+   void eigenCheck(Ar, Ai, Vr, Vi, Yr, Yi);                    printout
+   void mul(Ar, Ai, Br, Bi, Cr, Ci);                           C=A*B
+   void mul(Ar, Ai, br, bi, Cr, Ci);                           C=A*b
+   void add(Ar, Ai, Br, Bi, Cr, Ci);                           C=A+B
+   void add(Ar, Ai, br, bi, Cr, Ci);                           C=A+b
+   void subtract(Ar, Ai, Br, Bi, Cr, Ci);                      C=A-B
+   void subtract(Ar, Ai, br, bi, Cr, Ci);                      C=A-b
+   double norm1(Ar, Ai), norm2(Ar, Ai), normFro(Ar, Ai), normInf(Ar, Ai)
+   void copy(Ar, Ai, Br, Bi);                                  B=A
+   boolean equals(Ar, Ai, Br, Bi);                             A==B
+   void identity(Ar, Ai);                                      A=I
+   void zero(Ar, Ai);                                          A=0
+   void print(Ar, Ai);                                         A
+   void mul(Ar, Ai, Xr, Xi, Yr, Yi);                           Y=A*X
+   void add(Xr, Xi, Yr, Yi, Zr, Zi);                           Z=X+Y
+   void subtract(Xr, Xi, Yr, Yi, Zr, Zi);                      Z=X-Y
+   double norm1(Xr, Xi), norm2(Xr, Xi), normInf(Xr, Xi)
+   void copy(Xr, Xi, Yr, Yi);                                  Y=X
+   boolean equals(Xr, Xi, Yr, Yi);                             X==Y
+   void fromRoots(Xr, Xi, Yr, Yi);                             Y=coefficients
+   void unitVector(Xr, Xi, I);                                 X[I]=1, else 0
+   void zero(Xr, Xi);                                          X=0
+   void print(Xr, Xi);                                         X
+   adapters to and from Complex arrays:
+   void fromComplex(Complex A[][], Ar, Ai);                    (Ar,Ai)=A
+   void toComplex(Ar, Ai, Complex A[][]);                      A=(Ar,Ai)
+   void fromComplex(Complex X[], Xr, Xi);                      (Xr,Xi)=X
+   void toComplex(Xr, Xi, Complex X[]);                        X=(Xr,Xi)
+ **/
+
+/**
+ * Primitive array counterparts of the ComplexMatrix operations
+ */
+public class PrimitiveComplexMatrix {
+  public static void solve(final double Ar[][], final double Ai[][], final double Yr[], final double Yi[], double Xr[], double Xi[]) {
+    // Gauss-Jordan elimination using maximum pivot, as ComplexMatrix.solve
+    int n = Ar.length;
+    int m = n+1;
+    double Br[][] = new double[n][m]; // working matrix
+    double Bi[][] = new double[n][m];
+    int row[] = new int[n];           // row interchange indicies
+    double z[] = new double[2];
+    int hold, I_pivot;                // pivot indicies
+    double abs_pivot;
+    if((Ar[0].length!=n)||(Yr.length!=n)||(Xr.length!=n)) {
+      System.out.println("Error in PrimitiveComplexMatrix.solve inconsistent array sizes."); //$NON-NLS-1$
+    }
+    // build working data structure
+    for(int i = 0; i<n; i++) {
+      for(int j = 0; j<n; j++) {
+        Br[i][j] = Ar[i][j];
+        Bi[i][j] = Ai[i][j];
+      }
+      Br[i][n] = Yr[i];
+      Bi[i][n] = Yi[i];
+    }
+    // set up row interchange vectors
+    for(int k = 0; k<n; k++) {
+      row[k] = k;
+    }
+    // begin main reduction loop
+    for(int k = 0; k<n; k++) {
+      // find largest element for pivot
+      abs_pivot = abs(Br[row[k]][k], Bi[row[k]][k]);
+      I_pivot = k;
+      for(int i = k+1; i<n; i++) {
+        if(abs(Br[row[i]][k], Bi[row[i]][k])>abs_pivot) {
+          I_pivot = i;
+          abs_pivot = abs(Br[row[i]][k], Bi[row[i]][k]);
+        }
+      }
+      // have pivot, interchange row indicies
+      hold = row[k];
+      row[k] = row[I_pivot];
+      row[I_pivot] = hold;
+      double pr[] = Br[row[k]], pi[] = Bi[row[k]];
+      // check for near singular
+      if(abs_pivot<1.0E-10) {
+        for(int j = k+1; j<n+1; j++) {
+          pr[j] = 0.0;
+          pi[j] = 0.0;
+        }
+        System.out.println("redundant row (singular) "+row[k]); //$NON-NLS-1$
+      }                                                         // singular, delete row
+        else {
+        // reduce about pivot
+        for(int j = k+1; j<n+1; j++) {
+          div(pr[j], pi[j], pr[k], pi[k], z);
+          pr[j] = z[0];
+          pi[j] = z[1];
+        }
+        // inner reduction loop
+        for(int i = 0; i<n; i++) {
+          if(i!=k) {
+            double rr[] = Br[row[i]], ri[] = Bi[row[i]];
+            double fr = rr[k], fi = ri[k];
+            for(int j = k+1; j<n+1; j++) {
+              rr[j] = rr[j]-(fr*pr[j]-fi*pi[j]);
+              ri[j] = ri[j]-(fi*pr[j]+fr*pi[j]);
+            }
+          }
+        }
+      }
+      // finished inner reduction
+    }
+    // end main reduction loop
+    // build X for return, unscrambling rows
+    for(int i = 0; i<n; i++) {
+      Xr[i] = Br[row[i]][n];
+      Xi[i] = Bi[row[i]][n];
+    }
+  } // end solve
+
+  public static final void invert(double Ar[][], double Ai[][]) {
+    int n = Ar.length;
+    int row[] = new int[n];
+    int col[] = new int[n];
+    double tr[] = new double[n], ti[] = new double[n];
+    double z[] = new double[2];
+    int hold, I_pivot, J_pivot;
+    double pr, pi, abs_pivot;
+    if(Ar[0].length!=n) {
+      System.out.println("Error in PrimitiveComplexMatrix.invert,"+ //$NON-NLS-1$
+        " matrix not square.");                                     //$NON-NLS-1$
+    }
+    // set up row and column interchange vectors
+    for(int k = 0; k<n; k++) {
+      row[k] = k;
+      col[k] = k;
+    }
+    // begin main reduction loop
+    for(int k = 0; k<n; k++) {
+      // find largest element for pivot
+      pr = Ar[row[k]][col[k]];
+      pi = Ai[row[k]][col[k]];
+      I_pivot = k;
+      J_pivot = k;
+      for(int i = k; i<n; i++) {
+        for(int j = k; j<n; j++) {
+          abs_pivot = abs(pr, pi);
+          if(abs(Ar[row[i]][col[j]], Ai[row[i]][col[j]])>abs_pivot) {
+            I_pivot = i;
+            J_pivot = j;
+            pr = Ar[row[i]][col[j]];
+            pi = Ai[row[i]][col[j]];
+          }
+        }
+      }
+      if(abs(pr, pi)<1.0E-10) {
+        System.out.println("ComplexMatrix is singular !"); //$NON-NLS-1$
+        return;
+      }
+      hold = row[k];
+      row[k] = row[I_pivot];
+      row[I_pivot] = hold;
+      hold = col[k];
+      col[k] = col[J_pivot];
+      col[J_pivot] = hold;
+      // reduce about pivot
+      double kr[] = Ar[row[k]], ki[] = Ai[row[k]];
+      div(1.0, 0.0, pr, pi, z);
+      double dr = z[0], di = z[1];
+      kr[col[k]] = dr;
+      ki[col[k]] = di;
+      for(int j = 0; j<n; j++) {
+        if(j!=k) {
+          double xr = kr[col[j]], xi = ki[col[j]];
+          kr[col[j]] = xr*dr-xi*di;
+          ki[col[j]] = xi*dr+xr*di;
+        }
+      }
+      // inner reduction loop
+      for(int i = 0; i<n; i++) {
+        if(k!=i) {
+          double rr[] = Ar[row[i]], ri[] = Ai[row[i]];
+          double fr = rr[col[k]], fi = ri[col[k]];
+          for(int j = 0; j<n; j++) {
+            if(k!=j) {
+              double xr = kr[col[j]], xi = ki[col[j]];
+              rr[col[j]] = rr[col[j]]-(fr*xr-fi*xi);
+              ri[col[j]] = ri[col[j]]-(fi*xr+fr*xi);
+            }
+          }
+          rr[col[k]] = -(fr*dr-fi*di);
+          ri[col[k]] = -(fi*dr+fr*di);
+        }
+      }
+    }
+    // end main reduction loop
+    // unscramble rows
+    for(int j = 0; j<n; j++) {
+      for(int i = 0; i<n; i++) {
+        tr[col[i]] = Ar[row[i]][j];
+        ti[col[i]] = Ai[row[i]][j];
+      }
+      for(int i = 0; i<n; i++) {
+        Ar[i][j] = tr[i];
+        Ai[i][j] = ti[i];
+      }
+    }
+    // unscramble columns
+    for(int i = 0; i<n; i++) {
+      for(int j = 0; j<n; j++) {
+        tr[row[j]] = Ar[i][col[j]];
+        ti[row[j]] = Ai[i][col[j]];
+      }
+      for(int j = 0; j<n; j++) {
+        Ar[i][j] = tr[j];
+        Ai[i][j] = ti[j];
+      }
+    }
+  } // end invert
+
+  public static final void determinant(final double Ar[][], final double Ai[][], double D[]) {
+    int n = Ar.length;
+    double Dr = 1.0, Di = 0.0, tmp;     // determinant
+    double Br[][] = new double[n][n];   // working matrix
+    double Bi[][] = new double[n][n];
+    int row[] = new int[n];             // row interchange indicies
+    double z[] = new double[2];
+    int hold, I_pivot;                  // pivot indicies
+    double pr, pi, abs_pivot;
+    if(Ar[0].length!=n) {
+      System.out.println("Error in PrimitiveComplexMatrix.determinant,"+ //$NON-NLS-1$
+        " inconsistent array sizes.");                                   //$NON-NLS-1$
+    }
+    // build working matrix
+    for(int i = 0; i<n; i++) {
+      for(int j = 0; j<n; j++) {
+        Br[i][j] = Ar[i][j];
+        Bi[i][j] = Ai[i][j];
+      }
+    }
+    // set up row interchange vectors
+    for(int k = 0; k<n; k++) {
+      row[k] = k;
+    }
+    // begin main reduction loop
+    for(int k = 0; k<n-1; k++) {
+      // find largest element for pivot
+      pr = Br[row[k]][k];
+      pi = Bi[row[k]][k];
+      abs_pivot = abs(pr, pi);
+      I_pivot = k;
+      for(int i = k; i<n; i++) {
+        if(abs(Br[row[i]][k], Bi[row[i]][k])>abs_pivot) {
+          I_pivot = i;
+          pr = Br[row[i]][k];
+          pi = Bi[row[i]][k];
+          abs_pivot = abs(pr, pi);
+        }
+      }
+      // have pivot, interchange row indicies
+      if(I_pivot!=k) {
+        hold = row[k];
+        row[k] = row[I_pivot];
+        row[I_pivot] = hold;
+        Dr = -Dr;
+        Di = -Di;
+      }
+      // check for near singular
+      if(abs_pivot<1.0E-10) {
+        D[0] = 0.0;
+        D[1] = 0.0;
+        return;
+      }
+      tmp = Dr*pr-Di*pi;
+      Di = Di*pr+Dr*pi;
+      Dr = tmp;
+      // reduce about pivot
+      double kr[] = Br[row[k]], ki[] = Bi[row[k]];
+      for(int j = k+1; j<n; j++) {
+        div(kr[j], ki[j], kr[k], ki[k], z);
+        kr[j] = z[0];
+        ki[j] = z[1];
+      }
+      // inner reduction loop
+      for(int i = 0; i<n; i++) {
+        if(i!=k) {
+          double rr[] = Br[row[i]], ri[] = Bi[row[i]];
+          double fr = rr[k], fi = ri[k];
+          for(int j = k+1; j<n; j++) {
+            rr[j] = rr[j]-(fr*kr[j]-fi*ki[j]);
+            ri[j] = ri[j]-(fi*kr[j]+fr*ki[j]);
+          }
+        }
+      }
+      // finished inner reduction
+    }
+    // end of main reduction loop
+    pr = Br[row[n-1]][n-1];
+    pi = Bi[row[n-1]][n-1];
+    D[0] = Dr*pr-Di*pi;
+    D[1] = Di*pr+Dr*pi;
+  } // end determinant
+
+  public static final int eigenvalues(final double Ar[][], final double Ai[][], double Vr[][], double Vi[][], double Yr[], double Yi[]) {
+    return eigenvalues(Ar, Ai, Vr, Vi, Yr, Yi, ComplexMatrix.JACOBI_TOLERANCE);
+  } // end eigenvalues
+
+  /**
+   * Cyclic Jacobi method of ComplexMatrix.eigenvalues, A is not changed.
+   *
+   * Output: Y gets the eigenvalues, the columns of V the eigenvectors.
+   * Returns the number of sweeps, JACOBI_MAX_SWEEPS if the tolerance was not reached.
+   */
+  public static final int eigenvalues(final double Ar[][], final double Ai[][], double Vr[][], double Vi[][], double Yr[], double Yi[], double tolerance) {
+    int n = Ar.length;
+    if((Ar[0].length!=n)||(Vr.length!=n)||(Vr[0].length!=n)||(Yr.length!=n)) {
+      System.out.println("Error in PrimitiveComplexMatrix.eigenvalues,"+ //$NON-NLS-1$
+        " inconsistent array sizes.");                                   //$NON-NLS-1$
+      return 0;
+    }
+    double ar[][] = new double[n][n], ai[][] = new double[n][n];
+    double total = 0.0;
+    for(int i = 0; i<n; i++) {
+      for(int j = 0; j<n; j++) {
+        ar[i][j] = Ar[i][j];
+        ai[i][j] = Ai[i][j];
+        total = total+ar[i][j]*ar[i][j]+ai[i][j]*ai[i][j];
+        Vr[i][j] = 0.0;
+        Vi[i][j] = 0.0;
+      }
+      Vr[i][i] = 1.0;
+    }
+    double limit = tolerance*tolerance*total;
+    int sweeps = 0;
+    while((sweeps<ComplexMatrix.JACOBI_MAX_SWEEPS)&&(offNorm(ar, ai)>limit)) {
+      for(int p = 0; p<n-1; p++) {
+        for(int q = p+1; q<n; q++) {
+          rotate(ar, ai, Vr, Vi, p, q);
+        }
+      } // end one sweep
+      sweeps++;
+    }
+    for(int i = 0; i<n; i++) {
+      Yr[i] = ar[i][i];
+      Yi[i] = ai[i][i];
+    }
+    return sweeps;
+  } // end eigenvalues
+
+  // sum of |a_ij|^2 over i != j
+  private static double offNorm(final double ar[][], final double ai[][]) {
+    int n = ar.length;
+    double off = 0.0;
+    for(int i = 0; i<n; i++) {
+      for(int j = 0; j<n; j++) {
+        if(i!=j) {
+          off = off+ar[i][j]*ar[i][j]+ai[i][j]*ai[i][j];
+        }
+      }
+    }
+    return off;
+  } // end offNorm
+
+  // A = U^H*A*U and V = V*U for the unitary U that acts on p, q only,
+  // U = diag(1, w) * [c s; -s c] with w the phase that makes the pivot real
+  private static void rotate(double ar[][], double ai[][], double vr[][], double vi[][], final int p, final int q) {
+    int n = ar.length;
+    // direction of a_qq - a_pp, the Hermitian part of A is used if they are equal
+    double dr = ar[q][q]-ar[p][p], di = ai[q][q]-ai[p][p];
+    double d = Math.sqrt(dr*dr+di*di);
+    double cf = (d==0.0) ? 1.0 : dr/d, sf = (d==0.0) ? 0.0 : di/d;
+    // pivot of cf*H1 + sf*H2, H1 = (A + A^H)/2, H2 = (A - A^H)/2i
+    double xr = ar[p][q], xi = ai[p][q];
+    double yr = ar[q][p], yi = -ai[q][p];
+    double gr = cf*(xr+yr)/2+sf*(xi-yi)/2;
+    double gi = cf*(xi+yi)/2-sf*(xr-yr)/2;
+    double g = Math.sqrt(gr*gr+gi*gi);
+    if(g==0.0) {
+      return;
+    }
+    double hpp = cf*ar[p][p]+sf*ai[p][p];
+    double hqq = cf*ar[q][q]+sf*ai[q][q];
+    double theta = (hqq-hpp)/(2*g);
+    double t = (theta==0.0) ? 1.0 : Math.signum(theta)/(Math.abs(theta)+Math.sqrt(theta*theta+1));
+    double c = 1/Math.sqrt(t*t+1);
+    double s = t*c;
+    // w = conj(g)/|g|
+    double wr = gr/g, wi = -gi/g;
+    double tr, ti;
+    for(int k = 0; k<n; k++) { // columns p and q of A*U
+      tr = wr*ar[k][q]-wi*ai[k][q];
+      ti = wr*ai[k][q]+wi*ar[k][q];
+      xr = ar[k][p];
+      xi = ai[k][p];
+      ar[k][p] = c*xr-s*tr;
+      ai[k][p] = c*xi-s*ti;
+      ar[k][q] = s*xr+c*tr;
+      ai[k][q] = s*xi+c*ti;
+    }
+    for(int k = 0; k<n; k++) { // rows p and q of U^H*A, conj(w) scales row q
+      tr = wr*ar[q][k]+wi*ai[q][k];
+      ti = wr*ai[q][k]-wi*ar[q][k];
+      xr = ar[p][k];
+      xi = ai[p][k];
+      ar[p][k] = c*xr-s*tr;
+      ai[p][k] = c*xi-s*ti;
+      ar[q][k] = s*xr+c*tr;
+      ai[q][k] = s*xi+c*ti;
+    }
+    for(int k = 0; k<n; k++) { // columns p and q of V*U
+      tr = wr*vr[k][q]-wi*vi[k][q];
+      ti = wr*vi[k][q]+wi*vr[k][q];
+      xr = vr[k][p];
+      xi = vi[k][p];
+      vr[k][p] = c*xr-s*tr;
+      vi[k][p] = c*xi-s*ti;
+      vr[k][q] = s*xr+c*tr;
+      vi[k][q] = s*xi+c*ti;
+    }
+  } // end rotate
+
+  public static final void eigenCheck(final double Ar[][], final double Ai[][], final double Vr[][], final double Vi[][], final double Yr[], final double Yi[]) {
+    if((Ar==null)||(Vr==null)||(Yr==null)) {
+      return;
+    }
+    // check A * X = lambda X lambda=Y[i] X=V[i]
+    // check determinant(A- lambda I) = 0
+    int n = Ar.length;
+    double Br[][] = new double[n][n], Bi[][] = new double[n][n];
+    double Xr[] = new double[n], Xi[] = new double[n];
+    double Zr[] = new double[n], Zi[] = new double[n];
+    double Tr[] = new double[n], Ti[] = new double[n];
+    double D[] = new double[2];
+    double norm = 0.0;
+    if((Ar[0].length!=n)||(Vr.length!=n)||(Vr[0].length!=n)||(Yr.length!=n)) {
+      System.out.println("Error in PrimitiveComplexMatrix.eigenCheck,"+ //$NON-NLS-1$
+        " inconsistent array sizes.");                                  //$NON-NLS-1$
+    }
+    for(int i = 0; i<n; i++) {
+      for(int j = 0; j<n; j++) {
+        Xr[j] = Vr[j][i];
+        Xi[j] = Vi[j][i];
+      }
+      mul(Ar, Ai, Xr, Xi, Tr, Ti);
+      for(int j = 0; j<n; j++) {
+        Zr[j] = Tr[j]-(Yr[i]*Xr[j]-Yi[i]*Xi[j]);
+        Zi[j] = Ti[j]-(Yi[i]*Xr[j]+Yr[i]*Xi[j]);
+      }
+      System.out.println("check for near zero norm of Z["+i+"]=("+Zr[i]+", "+Zi[i]+")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+    norm = norm2(Zr, Zi);
+    System.out.println("norm ="+norm+" is eigen vector error indication 1."); //$NON-NLS-1$ //$NON-NLS-2$
+    determinant(Vr, Vi, D);
+    System.out.println("det V = ("+D[0]+", "+D[1]+")");                      //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    for(int i = 0; i<n; i++) {
+      for(int j = 0; j<n; j++) {
+        Zr[j] = Vr[j][i];
+        Zi[j] = Vi[j][i];
+      }
+      System.out.println("check for 1.0 = "+norm2(Zr, Zi)); //$NON-NLS-1$
+    }
+    for(int i = 0; i<n; i++) {
+      // B = A - lambda I
+      for(int j = 0; j<n; j++) {
+        for(int k = 0; k<n; k++) {
+          Br[j][k] = Ar[j][k];
+          Bi[j][k] = Ai[j][k];
+        }
+        Br[j][j] = Br[j][j]-Yr[i];
+        Bi[j][j] = Bi[j][j]-Yi[i];
+      }
+      determinant(Br, Bi, D);
+      Zr[i] = D[0];
+      Zi[i] = D[1];
+    }
+    norm = norm2(Zr, Zi);
+    System.out.println("norm ="+norm+" is eigen value error indication."); //$NON-NLS-1$ //$NON-NLS-2$
+  }                                                                        // end eigenCheck
+
+  public static final void mul(final double Ar[][], final double Ai[][], final double Br[][], final double Bi[][], double Cr[][], double Ci[][]) {
+    int ni = Ar.length;
+    int nk = Ar[0].length;
+    int nj = Br[0].length;
+    if((Br.length!=nk)||(Cr.length!=ni)||(Cr[0].length!=nj)) {
+      System.out.println("Error in PrimitiveComplexMatrix.mul,"+ //$NON-NLS-1$
+        " incompatible sizes");                                  //$NON-NLS-1$
+    }
+    // row i of C accumulates a_ik times row k of B, every loop runs along rows
+    for(int i = 0; i<ni; i++) {
+      double cr[] = Cr[i], ci[] = Ci[i];
+      for(int j = 0; j<nj; j++) {
+        cr[j] = 0.0;
+        ci[j] = 0.0;
+      }
+      for(int k = 0; k<nk; k++) {
+        double xr = Ar[i][k], xi = Ai[i][k];
+        double br[] = Br[k], bi[] = Bi[k];
+        for(int j = 0; j<nj; j++) {
+          cr[j] = cr[j]+(xr*br[j]-xi*bi[j]);
+          ci[j] = ci[j]+(xi*br[j]+xr*bi[j]);
+        }
+      }
+    }
+  } // end mul
+
+  public static final void mul(final double Ar[][], final double Ai[][], final double br, final double bi, double Cr[][], double Ci[][]) {
+    int ni = Ar.length;
+    int nj = Ar[0].length;
+    if((Cr.length!=ni)||(Cr[0].length!=nj)) {
+      System.out.println("Error in PrimitiveComplexMatrix.mul,"+ //$NON-NLS-1$
+        " incompatible sizes");                                  //$NON-NLS-1$
+    }
+    for(int i = 0; i<ni; i++) {
+      for(int j = 0; j<nj; j++) {
+        double xr = Ar[i][j], xi = Ai[i][j];
+        Cr[i][j] = xr*br-xi*bi;
+        Ci[i][j] = xi*br+xr*bi;
+      }
+    }
+  } // end mul
+
+  public static final void add(final double Ar[][], final double Ai[][], final double Br[][], final double Bi[][], double Cr[][], double Ci[][]) {
+    int ni = Ar.length;
+    int nj = Ar[0].length;
+    if((Br.length!=ni)||(Cr.length!=ni)||(Br[0].length!=nj)||(Cr[0].length!=nj)) {
+      System.out.println("Error in PrimitiveComplexMatrix.add,"+ //$NON-NLS-1$
+        " incompatible sizes");                                  //$NON-NLS-1$
+    }
+    for(int i = 0; i<ni; i++) {
+      for(int j = 0; j<nj; j++) {
+        Cr[i][j] = Ar[i][j]+Br[i][j];
+        Ci[i][j] = Ai[i][j]+Bi[i][j];
+      }
+    }
+  } // end add
+
+  public static final void add(final double Ar[][], final double Ai[][], final double br, final double bi, double Cr[][], double Ci[][]) {
+    int ni = Ar.length;
+    int nj = Ar[0].length;
+    if((Cr.length!=ni)||(Cr[0].length!=nj)) {
+      System.out.println("Error in PrimitiveComplexMatrix.add,"+ //$NON-NLS-1$
+        " incompatible sizes");                                  //$NON-NLS-1$
+    }
+    for(int i = 0; i<ni; i++) {
+      for(int j = 0; j<nj; j++) {
+        Cr[i][j] = Ar[i][j]+br;
+        Ci[i][j] = Ai[i][j]+bi;
+      }
+    }
+  } // end add
+
+  public static final void subtract(final double Ar[][], final double Ai[][], final double Br[][], final double Bi[][], double Cr[][], double Ci[][]) {
+    int ni = Ar.length;
+    int nj = Ar[0].length;
+    if((Br.length!=ni)||(Cr.length!=ni)||(Br[0].length!=nj)||(Cr[0].length!=nj)) {
+      System.out.println("Error in PrimitiveComplexMatrix.subtract,"+ //$NON-NLS-1$
+        " incompatible sizes");                                       //$NON-NLS-1$
+    }
+    for(int i = 0; i<ni; i++) {
+      for(int j = 0; j<nj; j++) {
+        Cr[i][j] = Ar[i][j]-Br[i][j];
+        Ci[i][j] = Ai[i][j]-Bi[i][j];
+      }
+    }
+  } // end subtract
+
+  public static final void subtract(final double Ar[][], final double Ai[][], final double br, final double bi, double Cr[][], double Ci[][]) {
+    int ni = Ar.length;
+    int nj = Ar[0].length;
+    if((Cr.length!=ni)||(Cr[0].length!=nj)) {
+      System.out.println("Error in PrimitiveComplexMatrix.subtract,"+ //$NON-NLS-1$
+        " incompatible sizes");                                       //$NON-NLS-1$
+    }
+    for(int i = 0; i<ni; i++) {
+      for(int j = 0; j<nj; j++) {
+        Cr[i][j] = Ar[i][j]-br;
+        Ci[i][j] = Ai[i][j]-bi;
+      }
+    }
+  } // end subtract
+
+  public static final double norm1(final double Ar[][], final double Ai[][]) {
+    double norm = 0.0;
+    double colSum;
+    int ni = Ar.length;
+    int nj = Ar[0].length;
+    for(int j = 0; j<nj; j++) {
+      colSum = 0.0;
+      for(int i = 0; i<ni; i++) {
+        colSum = colSum+abs(Ar[i][j], Ai[i][j]);
+      }
+      norm = Math.max(norm, colSum);
+    }
+    return norm;
+  } // end norm1
+
+  public static final double normInf(final double Ar[][], final double Ai[][]) {
+    double norm = 0.0;
+    double rowSum;
+    int ni = Ar.length;
+    int nj = Ar[0].length;
+    for(int i = 0; i<ni; i++) {
+      rowSum = 0.0;
+      for(int j = 0; j<nj; j++) {
+        rowSum = rowSum+abs(Ar[i][j], Ai[i][j]);
+      }
+      norm = Math.max(norm, rowSum);
+    }
+    return norm;
+  } // end normInf
+
+  public static final double normFro(final double Ar[][], final double Ai[][]) {
+    double norm = 0.0;
+    int n = Ar.length;
+    for(int i = 0; i<n; i++) {
+      for(int j = 0; j<n; j++) {
+        double a = abs(Ar[i][j], Ai[i][j]);
+        norm = norm+a*a;
+      }
+    }
+    return Math.sqrt(norm);
+  } // end normFro
+
+  public static final double norm2(final double Ar[][], final double Ai[][]) {
+    double r = 0.0; // largest eigenvalue
+    int n = Ar.length;
+    double Br[][] = new double[n][n], Bi[][] = new double[n][n];
+    double Vr[][] = new double[n][n], Vi[][] = new double[n][n];
+    double Yr[] = new double[n], Yi[] = new double[n];
+    if(Ar[0].length!=n) {
+      System.out.println("Error in PrimitiveComplexMatrix.norm2,"+ //$NON-NLS-1$
+        " matrix not square.");                                    //$NON-NLS-1$
+    }
+    for(int i = 0; i<n; i++) { // B = A^H * A
+      for(int j = 0; j<n; j++) {
+        double sr = 0.0, si = 0.0;
+        for(int k = 0; k<n; k++) {
+          double xr = Ar[k][i], xi = -Ai[k][i];
+          sr = sr+(xr*Ar[k][j]-xi*Ai[k][j]);
+          si = si+(xi*Ar[k][j]+xr*Ai[k][j]);
+        }
+        Br[i][j] = sr;
+        Bi[i][j] = si;
+      }
+    }
+    eigenvalues(Br, Bi, Vr, Vi, Yr, Yi);
+    for(int i = 0; i<n; i++) {
+      r = Math.max(r, abs(Yr[i], Yi[i]));
+    }
+    return Math.sqrt(r);
+  } // end norm2
+
+  public static final void copy(final double Ar[][], final double Ai[][], double Br[][], double Bi[][]) {
+    int ni = Ar.length;
+    int nj = Ar[0].length;
+    if((Br.length!=ni)||(Br[0].length!=nj)) {
+      System.out.println("Error in PrimitiveComplexMatrix.copy,"+ //$NON-NLS-1$
+        " inconsistent sizes.");                                  //$NON-NLS-1$
+    }
+    for(int i = 0; i<ni; i++) {
+      System.arraycopy(Ar[i], 0, Br[i], 0, nj);
+      System.arraycopy(Ai[i], 0, Bi[i], 0, nj);
+    }
+  } // end copy
+
+  /**
+   * Returns true if all elements are equal, ComplexMatrix.equals compares
+   * the Complex references instead
+   */
+  public static final boolean equals(final double Ar[][], final double Ai[][], final double Br[][], final double Bi[][]) {
+    int ni = Ar.length;
+    int nj = Ar[0].length;
+    if((Br.length!=ni)||(Br[0].length!=nj)) {
+      System.out.println("Error in PrimitiveComplexMatrix.equals,"+ //$NON-NLS-1$
+        " inconsistent sizes.");                                    //$NON-NLS-1$
+    }
+    for(int i = 0; i<ni; i++) {
+      for(int j = 0; j<nj; j++) {
+        if((Ar[i][j]!=Br[i][j])||(Ai[i][j]!=Bi[i][j])) {
+          return false;
+        }
+      }
+    }
+    return true;
+  } // end equals
+
+  public static final void identity(double Ar[][], double Ai[][]) {
+    int n = Ar.length;
+    if(n!=Ar[0].length) {
+      System.out.println("Error in PrimitiveComplexMatrix.identity,"+ //$NON-NLS-1$
+        " inconsistent sizes.");                                      //$NON-NLS-1$
+    }
+    zero(Ar, Ai);
+    for(int i = 0; i<n; i++) {
+      Ar[i][i] = 1.0;
+    }
+  } // end identity
+
+  public static final void zero(double Ar[][], double Ai[][]) {
+    int ni = Ar.length;
+    for(int i = 0; i<ni; i++) {
+      java.util.Arrays.fill(Ar[i], 0.0);
+      java.util.Arrays.fill(Ai[i], 0.0);
+    }
+  } // end zero
+
+  public static final void print(final double Ar[][], final double Ai[][]) {
+    int ni = Ar.length;
+    int nj = Ar[0].length;
+    for(int i = 0; i<ni; i++) {
+      for(int j = 0; j<nj; j++) {
+        System.out.println("A["+i+"]["+j+"]=("+Ar[i][j]+", "+Ai[i][j]+")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+      }
+    }
+  }                                                                         // end print
+
+  public static final void mul(final double Ar[][], final double Ai[][], final double Xr[], final double Xi[], double Yr[], double Yi[]) {
+    int ni = Ar.length;
+    int nj = Ar[0].length;
+    if((Xr.length!=nj)||(Yr.length!=ni)) {
+      System.out.println("Error in PrimitiveComplexMatrix.mul,"+ //$NON-NLS-1$
+        " incompatible sizes.");                                 //$NON-NLS-1$
+    }
+    for(int i = 0; i<ni; i++) {
+      double ar[] = Ar[i], ai[] = Ai[i];
+      double sr = 0.0, si = 0.0;
+      for(int j = 0; j<nj; j++) {
+        sr = sr+(ar[j]*Xr[j]-ai[j]*Xi[j]);
+        si = si+(ai[j]*Xr[j]+ar[j]*Xi[j]);
+      }
+      Yr[i] = sr;
+      Yi[i] = si;
+    }
+  } // end mul
+
+  public static final void add(final double Xr[], final double Xi[], final double Yr[], final double Yi[], double Zr[], double Zi[]) {
+    int n = Xr.length;
+    if((Yr.length!=n)||(Zr.length!=n)) {
+      System.out.println("Error in PrimitiveComplexMatrix.add,"+ //$NON-NLS-1$
+        " incompatible sizes.");                                 //$NON-NLS-1$
+    }
+    for(int i = 0; i<n; i++) {
+      Zr[i] = Xr[i]+Yr[i];
+      Zi[i] = Xi[i]+Yi[i];
+    }
+  } // end add
+
+  public static final void subtract(final double Xr[], final double Xi[], final double Yr[], final double Yi[], double Zr[], double Zi[]) {
+    int n = Xr.length;
+    if((Yr.length!=n)||(Zr.length!=n)) {
+      System.out.println("Error in PrimitiveComplexMatrix.subtract,"+ //$NON-NLS-1$
+        " incompatible sizes.");                                      //$NON-NLS-1$
+    }
+    for(int i = 0; i<n; i++) {
+      Zr[i] = Xr[i]-Yr[i];
+      Zi[i] = Xi[i]-Yi[i];
+    }
+  } // end subtract
+
+  public static final double norm1(final double Xr[], final double Xi[]) {
+    double norm = 0.0;
+    int n = Xr.length;
+    for(int i = 0; i<n; i++) {
+      norm = norm+abs(Xr[i], Xi[i]);
+    }
+    return norm;
+  } // end norm1
+
+  public static final double norm2(final double Xr[], final double Xi[]) {
+    double norm = 0.0;
+    int n = Xr.length;
+    for(int i = 0; i<n; i++) {
+      double a = abs(Xr[i], Xi[i]);
+      norm = norm+a*a;
+    }
+    return StrictMath.sqrt(norm);
+  } // end norm2
+
+  public static final double normInf(final double Xr[], final double Xi[]) {
+    double norm = 0.0;
+    int n = Xr.length;
+    for(int i = 0; i<n; i++) {
+      norm = Math.max(norm, abs(Xr[i], Xi[i]));
+    }
+    return norm;
+  } // end normInf
+
+  public static final void copy(final double Xr[], final double Xi[], double Yr[], double Yi[]) {
+    int n = Xr.length;
+    if(Yr.length!=n) {
+      System.out.println("Error in PrimitiveComplexMatrix.copy,"+ //$NON-NLS-1$
+        " incompatible sizes");                                   //$NON-NLS-1$
+    }
+    System.arraycopy(Xr, 0, Yr, 0, n);
+    System.arraycopy(Xi, 0, Yi, 0, n);
+  } // end copy
+
+  public static final boolean equals(final double Xr[], final double Xi[], final double Yr[], final double Yi[]) {
+    int n = Xr.length;
+    if(Yr.length!=n) {
+      System.out.println("Error in PrimitiveComplexMatrix.equals,"+ //$NON-NLS-1$
+        " incompatible sizes");                                     //$NON-NLS-1$
+    }
+    for(int i = 0; i<n; i++) {
+      if((Xr[i]!=Yr[i])||(Xi[i]!=Yi[i])) {
+        return false;
+      }
+    }
+    return true;
+  } // end equals
+
+  public static void fromRoots(final double Xr[], final double Xi[], double Yr[], double Yi[]) {
+    int n = Xr.length;
+    if(Yr.length!=n+1) {
+      System.out.println("Error in PrimitiveComplexMatrix.fromRoots,"+ //$NON-NLS-1$
+        " incompatible sizes");                                        //$NON-NLS-1$
+    }
+    Yr[0] = -Xr[0];
+    Yi[0] = -Xi[0];
+    Yr[1] = 1.0;
+    Yi[1] = 0.0;
+    if(n==1) {
+      return;
+    }
+    for(int i = 1; i<n; i++) {
+      double xr = Xr[i], xi = Xi[i], tmp;
+      Yr[i+1] = 0.0;
+      Yi[i+1] = 0.0;
+      for(int j = 0; j<=i; j++) {
+        double yr = Yr[i+1-j], yi = Yi[i+1-j];
+        Yr[i+1-j] = Yr[i-j]-(yr*xr-yi*xi);
+        Yi[i+1-j] = Yi[i-j]-(yi*xr+yr*xi);
+      }
+      tmp = -(Yr[0]*xr-Yi[0]*xi);
+      Yi[0] = -(Yi[0]*xr+Yr[0]*xi);
+      Yr[0] = tmp;
+    }
+  }
+
+  public static final void unitVector(double Xr[], double Xi[], int j) {
+    zero(Xr, Xi);
+    Xr[j] = 1.0;
+  } // end unitVector
+
+  public static final void zero(double Xr[], double Xi[]) {
+    java.util.Arrays.fill(Xr, 0.0);
+    java.util.Arrays.fill(Xi, 0.0);
+  } // end zero
+
+  public static final void print(final double Xr[], final double Xi[]) {
+    int n = Xr.length;
+    for(int i = 0; i<n; i++) {
+      System.out.println("X["+i+"]=("+Xr[i]+", "+Xi[i]+")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+  }                                                         // end print
+
+  public static final void fromComplex(final Complex A[][], double Ar[][], double Ai[][]) {
+    int ni = A.length;
+    int nj = A[0].length;
+    if((Ar.length!=ni)||(Ar[0].length!=nj)) {
+      System.out.println("Error in PrimitiveComplexMatrix.fromComplex,"+ //$NON-NLS-1$
+        " inconsistent sizes.");                                         //$NON-NLS-1$
+    }
+    for(int i = 0; i<ni; i++) {
+      for(int j = 0; j<nj; j++) {
+        Ar[i][j] = A[i][j].re();
+        Ai[i][j] = A[i][j].im();
+      }
+    }
+  } // end fromComplex
+
+  public static final void toComplex(final double Ar[][], final double Ai[][], Complex A[][]) {
+    int ni = Ar.length;
+    int nj = Ar[0].length;
+    if((A.length!=ni)||(A[0].length!=nj)) {
+      System.out.println("Error in PrimitiveComplexMatrix.toComplex,"+ //$NON-NLS-1$
+        " inconsistent sizes.");                                       //$NON-NLS-1$
+    }
+    for(int i = 0; i<ni; i++) {
+      for(int j = 0; j<nj; j++) {
+        A[i][j] = new Complex(Ar[i][j], Ai[i][j]);
+      }
+    }
+  } // end toComplex
+
+  public static final void fromComplex(final Complex X[], double Xr[], double Xi[]) {
+    int n = X.length;
+    if(Xr.length!=n) {
+      System.out.println("Error in PrimitiveComplexMatrix.fromComplex,"+ //$NON-NLS-1$
+        " incompatible sizes");                                          //$NON-NLS-1$
+    }
+    for(int i = 0; i<n; i++) {
+      Xr[i] = X[i].re();
+      Xi[i] = X[i].im();
+    }
+  } // end fromComplex
+
+  public static final void toComplex(final double Xr[], final double Xi[], Complex X[]) {
+    int n = Xr.length;
+    if(X.length!=n) {
+      System.out.println("Error in PrimitiveComplexMatrix.toComplex,"+ //$NON-NLS-1$
+        " incompatible sizes");                                        //$NON-NLS-1$
+    }
+    for(int i = 0; i<n; i++) {
+      X[i] = new Complex(Xr[i], Xi[i]);
+    }
+  } // end toComplex
+
+  /**
+   * Absolute value as Complex.abs
+   */
+  static double abs(final double re, final double im) {
+    double absRe = Math.abs(re);
+    double absIm = Math.abs(im);
+    if((absRe==0)&&(absIm==0)) {
+      return 0;
+    } else if(absRe>absIm) {
+      double temp = absIm/absRe;
+      return absRe*Math.sqrt(1+temp*temp);
+    } else {
+      double temp = absRe/absIm;
+      return absIm*Math.sqrt(1+temp*temp);
+    }
+  } // end abs
+
+  /**
+   * Writes (ar + i*ai)/(br + i*bi) into z, the scaled division of Complex.div
+   */
+  static void div(final double ar, final double ai, final double br, final double bi, double z[]) {
+    double r, den;
+    if(Math.abs(br)>=Math.abs(bi)) {
+      r = bi/br;
+      den = br+r*bi;
+      z[0] = (ar+r*ai)/den;
+      z[1] = (ai-r*ar)/den;
+    } else {
+      r = br/bi;
+      den = bi+r*br;
+      z[0] = (ar*r+ai)/den;
+      z[1] = (ai*r-ar)/den;
+    }
+  } // end div
+
+  /**
+   * Writes the principal square root of re + i*im into z, as Complex.sqrt
+   */
+  static void sqrt(final double re, final double im, double z[]) {
+    double absRe, absIm, w, r;
+    if((re==0)&&(im==0)) {
+      z[0] = 0;
+      z[1] = 0;
+      return;
+    }
+    absRe = Math.abs(re);
+    absIm = Math.abs(im);
+    if(absRe>=absIm) {
+      r = absIm/absRe;
+      w = Math.sqrt(absRe)*Math.sqrt(0.5*(1.0+Math.sqrt(1.0+r*r)));
+    } else {
+      r = absRe/absIm;
+      w = Math.sqrt(absIm)*Math.sqrt(0.5*(r+Math.sqrt(1.0+r*r)));
+    }
+    if(re>=0) {
+      z[0] = w;
+      z[1] = im/(2.0*w);
+    } else {
+      if(im<0) {
+        w = -w;
+      }
+      z[0] = im/(2.0*w);
+      z[1] = w;
+    }
+  } // end sqrt
+}